@@ -18,7 +18,14 @@ package org.bubblecloud.zigbee;
 import org.bubblecloud.zigbee.network.EndpointListener;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
 import org.bubblecloud.zigbee.network.ZigBeeNode;
+import org.bubblecloud.zigbee.network.ClusterMessage;
+import org.bubblecloud.zigbee.network.GroupMembershipRegistry;
+import org.bubblecloud.zigbee.api.cluster.impl.ClusterMessageImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.Command;
+import org.bubblecloud.zigbee.api.cluster.impl.core.ZCLFrame;
 import org.bubblecloud.zigbee.network.discovery.ZigBeeDiscoveryManager;
+import org.bubblecloud.zigbee.network.impl.NetworkStateJournal;
+import org.bubblecloud.zigbee.network.impl.ZigBeeNetworkManagerException;
 import org.bubblecloud.zigbee.network.impl.NetworkStateSerializer;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetwork;
 import org.bubblecloud.zigbee.network.model.DiscoveryMode;
@@ -47,6 +54,8 @@ import org.bubblecloud.zigbee.network.port.ZigBeePort;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -111,6 +120,18 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
      * Flag to reset the network on startup
      */
 	private boolean resetNetwork = false;
+    /**
+     * The format of serialized network state.
+     */
+    private NetworkStateSerializer.Format networkStateFormat = NetworkStateSerializer.Format.JSON;
+    /**
+     * The network state journal or null if not opened.
+     */
+    private NetworkStateJournal networkStateJournal;
+    /**
+     * The {@link SceneManager scene manager}.
+     */
+    private SceneManager sceneManager;
 
     /**
      * Constructor to configure the port interface.
@@ -163,6 +184,7 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
         network = ApplicationFrameworkLayer.getAFLayer(networkManager).getZigBeeNetwork();
 
         network.addEndpointListenerListener(this);
+        sceneManager = new SceneManager(networkManager);
 
         context = new ZigBeeApiContext();
 
@@ -244,6 +266,9 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
         permitJoin(false);
 
         discoveryManager.startup();
+        if (networkStateJournal != null) {
+            discoveryManager.rediscoverNodes(networkStateJournal.getDiscoveredNodes());
+        }
 
         return true;
     }
@@ -266,6 +291,12 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
         network.removeEndpointListener(this);
         discoveryManager.shutdown();
         networkManager.shutdown();
+        ApplicationFrameworkLayer.getAFLayer(networkManager).shutdown();
+        sceneManager.shutdown();
+        if (networkStateJournal != null) {
+            networkStateJournal.close();
+            networkStateJournal = null;
+        }
     }
 
     /**
@@ -331,13 +362,24 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
 	 * <p>
 	 * Creates a json string containing the network state which can be saved by
 	 * the application and restored next time the network starts. This allows
-	 * the network startup speed to be increased.
+	 * the network startup speed to be increased. The compact binary format can be
+	 * selected with {@link #setNetworkStateFormat(NetworkStateSerializer.Format)}.
 	 * 
-	 * @return the network state as a json {@link String}
+	 * @return the network state as a {@link String}
 	 */
     public String serializeNetworkState() {
         final NetworkStateSerializer networkStateSerializer = new NetworkStateSerializer();
-        return networkStateSerializer.serialize(network);
+        return networkStateSerializer.serialize(network, discoveryManager.getNeighbourGraph(), networkStateFormat);
+    }
+
+    /**
+     * Sets the format used by {@link #serializeNetworkState()}. The format of deserialized
+     * network state is detected, so state saved in JSON is migrated to binary by the next serialization.
+     *
+     * @param networkStateFormat the network state format
+     */
+    public void setNetworkStateFormat(final NetworkStateSerializer.Format networkStateFormat) {
+        this.networkStateFormat = networkStateFormat;
     }
 
 	/**
@@ -351,7 +393,38 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
 	 */
     public void deserializeNetworkState(final String networkState) {
         final NetworkStateSerializer networkStateSerializer = new NetworkStateSerializer();
-        networkStateSerializer.deserialize(networkManager, network, networkState);
+        networkStateSerializer.deserialize(networkManager, network, discoveryManager.getNeighbourGraph(), networkState);
+    }
+
+    /**
+     * Opens network state journal in the directory. The snapshot and journal found in the directory
+     * are restored to the network and after that each endpoint change is appended to the journal.
+     * Neighbour tables of link quality discovery are restored and journaled as well.
+     * Journaled nodes whose endpoints were not known are inspected again on {@link #startup()}.
+     * This is an incremental alternative to {@link #serializeNetworkState()} and has to be called
+     * before {@link #startup()}.
+     *
+     * @param directory the directory of the network state snapshot and journal
+     * @throws IOException if the network state can not be restored or the journal can not be opened
+     */
+    public void openNetworkStateJournal(final File directory) throws IOException {
+        final NetworkStateJournal journal = new NetworkStateJournal(networkManager, network,
+                discoveryManager.getNeighbourGraph(), directory, NetworkStateJournal.COMPACTION_THRESHOLD_DEFAULT);
+        journal.open();
+        networkStateJournal = journal;
+    }
+
+    /**
+     * Enables or disables warm start from the deserialized network state.
+     * <p>
+     * With warm start the restored nodes, endpoints and descriptors are trusted and initial
+     * browsing is complete right after startup. The restored nodes are revalidated in the background.
+     * Has to be set before {@link #startup()}.
+     *
+     * @param warmStart true to enable warm start
+     */
+    public void setWarmStart(final boolean warmStart) {
+        discoveryManager.setWarmStart(warmStart);
     }
 
 
@@ -391,6 +464,40 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
         return network;
     }
 
+    /**
+     * Gets the {@link GroupMembershipRegistry registry} of the group memberships of the endpoints.
+     *
+     * @return the group membership registry.
+     */
+    public GroupMembershipRegistry getGroupMembershipRegistry() {
+        return ApplicationFrameworkLayer.getAFLayer(networkManager).getGroupMembershipRegistry();
+    }
+
+    /**
+     * Gets the {@link SceneManager scene manager} which programs and recalls scenes of groups.
+     *
+     * @return the scene manager.
+     */
+    public SceneManager getSceneManager() {
+        return sceneManager;
+    }
+
+    /**
+     * Sends cluster command to all members of the group with a single group addressed transmission.
+     * Default response is disabled so that the members do not all respond to the command.
+     *
+     * @param groupId the group ID
+     * @param clusterId the cluster ID
+     * @param command the command
+     * @throws ZigBeeNetworkManagerException if the command could not be sent
+     */
+    public void sendGroupCommand(final int groupId, final int clusterId, final Command command)
+            throws ZigBeeNetworkManagerException {
+        final ClusterMessage message = new ClusterMessageImpl((short) clusterId, new ZCLFrame(command, false));
+        ApplicationFrameworkLayer.getAFLayer(networkManager).sendGroupMessage(groupId,
+                ZigBeeApiConstants.PROFILE_ID_HOME_AUTOMATION, message);
+    }
+
     /**
      * Gets a single {@link Device ZigBee device}
      * 
@@ -416,12 +523,7 @@ public class ZigBeeApi implements EndpointListener, DeviceListener {
      * @return the list of current ZigBee nodes
      */
     public List<ZigBeeNode> getNodes() {
-    	ArrayList<ZigBeeNode> nodes = new ArrayList<ZigBeeNode>();
-        for(ZigBeeNode n : network.getNodes().values()) {
-        	nodes.add(n);
-        }
-
-        return nodes;
+        return new ArrayList<ZigBeeNode>(network.getNodeList());
     }
 
     public void addDeviceListener(DeviceListener deviceListener) {
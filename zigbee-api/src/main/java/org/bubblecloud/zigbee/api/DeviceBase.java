@@ -25,6 +25,8 @@ package org.bubblecloud.zigbee.api;
 import org.bubblecloud.zigbee.ZigBeeApiContext;
 import org.bubblecloud.zigbee.network.ClusterListener;
 import org.bubblecloud.zigbee.network.ClusterMessage;
+import org.bubblecloud.zigbee.network.AttributeCache;
+import org.bubblecloud.zigbee.network.GroupMembershipRegistry;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
 import org.bubblecloud.zigbee.network.ZigBeeNode;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetworkManagerException;
@@ -443,6 +445,16 @@ public abstract class DeviceBase implements Device {
         return endpoint.removeClusterListener(listener);
     }
 
+    @Override
+    public AttributeCache getAttributeCache() {
+        return endpoint.getAttributeCache();
+    }
+
+    @Override
+    public GroupMembershipRegistry getGroupMembershipRegistry() {
+        return endpoint.getGroupMembershipRegistry();
+    }
+
     @Override
     public int getNetworkAddress() {
         return endpoint.getNetworkAddress();
@@ -0,0 +1,282 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.api;
+
+import org.bubblecloud.zigbee.api.cluster.impl.ClusterMessageImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
+import org.bubblecloud.zigbee.api.cluster.impl.api.general.Scenes;
+import org.bubblecloud.zigbee.api.cluster.impl.api.general.scenes.AddScenePayload;
+import org.bubblecloud.zigbee.api.cluster.impl.api.general.scenes.AddSceneResponse;
+import org.bubblecloud.zigbee.api.cluster.impl.api.general.scenes.StoreSceneResponse;
+import org.bubblecloud.zigbee.api.cluster.impl.core.ZCLFrame;
+import org.bubblecloud.zigbee.api.cluster.impl.general.ScenesCluster;
+import org.bubblecloud.zigbee.api.cluster.impl.general.scenes.RecallSceneCommand;
+import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.impl.ApplicationFrameworkLayer;
+import org.bubblecloud.zigbee.network.impl.ZigBeeNetworkManagerException;
+import org.bubblecloud.zigbee.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Orchestrates scenes of groups of endpoints. Scene definitions are stored per group and programmed
+ * to the group members with a bounded number of parallel invocations, reporting the status of each
+ * member. Scenes are recalled with a single group addressed frame instead of one invocation per member.
+ * <p>
+ * The group members are resolved from the {@link org.bubblecloud.zigbee.network.GroupMembershipRegistry}.
+ */
+public class SceneManager {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SceneManager.class);
+    /**
+     * The default maximum number of parallel scene programming invocations.
+     */
+    public static final int PROGRAMMING_CONCURRENCY_DEFAULT = 4;
+    /**
+     * The system property to override the maximum number of parallel scene programming invocations.
+     */
+    public static final String PROGRAMMING_CONCURRENCY_KEY = "zigbee.scene.programming.concurrency";
+
+    /**
+     * The application framework layer used to resolve group members and send group messages.
+     */
+    private final ApplicationFrameworkLayer af;
+    /**
+     * The scene definitions by group ID and scene ID.
+     */
+    private final Map<Integer, Map<Short, AddScenePayload>> scenes = new TreeMap<Integer, Map<Short, AddScenePayload>>();
+    /**
+     * The workers executing the scene programming invocations.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Operation executed on the scenes cluster of each group member.
+     */
+    private interface SceneOperation {
+        Status execute(ScenesCluster cluster) throws ZigBeeClusterException;
+    }
+
+    /**
+     * Constructor which sets the parallelism from system property or default.
+     *
+     * @param networkManager the network manager
+     */
+    public SceneManager(final ZigBeeNetworkManager networkManager) {
+        this(networkManager, getProgrammingConcurrency());
+    }
+
+    /**
+     * @param networkManager the network manager
+     * @param concurrency the maximum number of parallel scene programming invocations
+     */
+    public SceneManager(final ZigBeeNetworkManager networkManager, final int concurrency) {
+        af = ApplicationFrameworkLayer.getAFLayer(networkManager);
+        workers = Executors.newFixedThreadPool(Math.max(1, concurrency), new DaemonThreadFactory("SceneManager"));
+    }
+
+    private static int getProgrammingConcurrency() {
+        int aux = PROGRAMMING_CONCURRENCY_DEFAULT;
+        try {
+            aux = Integer.parseInt(System.getProperty(PROGRAMMING_CONCURRENCY_KEY));
+            logger.trace("Using PROGRAMMING_CONCURRENCY set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using PROGRAMMING_CONCURRENCY set as DEFAULT {}", aux);
+        }
+        return aux;
+    }
+
+    /**
+     * Stores scene definition for its group. Previous definition of the scene is replaced.
+     *
+     * @param scene the scene definition
+     */
+    public void defineScene(final AddScenePayload scene) {
+        synchronized (scenes) {
+            Map<Short, AddScenePayload> groupScenes = scenes.get(scene.getGroupId());
+            if (groupScenes == null) {
+                groupScenes = new TreeMap<Short, AddScenePayload>();
+                scenes.put(scene.getGroupId(), groupScenes);
+            }
+            groupScenes.put(scene.getSceneId(), scene);
+        }
+    }
+
+    /**
+     * Removes scene definition. The scene is not removed from the group members.
+     *
+     * @param groupId the group ID
+     * @param sceneId the scene ID
+     * @return the removed scene definition or null if the scene was not defined
+     */
+    public AddScenePayload removeSceneDefinition(final int groupId, final short sceneId) {
+        synchronized (scenes) {
+            final Map<Short, AddScenePayload> groupScenes = scenes.get(groupId);
+            if (groupScenes == null) {
+                return null;
+            }
+            final AddScenePayload scene = groupScenes.remove(sceneId);
+            if (groupScenes.isEmpty()) {
+                scenes.remove(groupId);
+            }
+            return scene;
+        }
+    }
+
+    /**
+     * Gets scene definition.
+     *
+     * @param groupId the group ID
+     * @param sceneId the scene ID
+     * @return the scene definition or null if the scene is not defined
+     */
+    public AddScenePayload getSceneDefinition(final int groupId, final short sceneId) {
+        synchronized (scenes) {
+            final Map<Short, AddScenePayload> groupScenes = scenes.get(groupId);
+            return groupScenes != null ? groupScenes.get(sceneId) : null;
+        }
+    }
+
+    /**
+     * Gets the scene definitions of group ordered by scene ID.
+     *
+     * @param groupId the group ID
+     * @return the list of scene definitions
+     */
+    public List<AddScenePayload> getSceneDefinitions(final int groupId) {
+        synchronized (scenes) {
+            final Map<Short, AddScenePayload> groupScenes = scenes.get(groupId);
+            if (groupScenes == null) {
+                return new ArrayList<AddScenePayload>();
+            }
+            return new ArrayList<AddScenePayload>(groupScenes.values());
+        }
+    }
+
+    /**
+     * Programs the defined scene to all members of its group.
+     *
+     * @param groupId the group ID
+     * @param sceneId the scene ID
+     * @return the status of each member
+     */
+    public Map<ZigBeeEndpoint, Status> programScene(final int groupId, final short sceneId) {
+        return programScene(groupId, sceneId, af.getGroupMembershipRegistry().getMembers(groupId));
+    }
+
+    /**
+     * Programs the defined scene to the endpoints.
+     *
+     * @param groupId the group ID
+     * @param sceneId the scene ID
+     * @param endpoints the endpoints
+     * @return the status of each endpoint
+     */
+    public Map<ZigBeeEndpoint, Status> programScene(final int groupId, final short sceneId,
+                                                    final Collection<ZigBeeEndpoint> endpoints) {
+        final AddScenePayload scene = getSceneDefinition(groupId, sceneId);
+        if (scene == null) {
+            throw new IllegalArgumentException("Scene " + sceneId + " of group " + groupId + " is not defined.");
+        }
+        return execute(endpoints, new SceneOperation() {
+            public Status execute(final ScenesCluster cluster) throws ZigBeeClusterException {
+                return ((AddSceneResponse) cluster.addScene(scene)).getStatus();
+            }
+        });
+    }
+
+    /**
+     * Stores the current state of all members of the group as the scene.
+     *
+     * @param groupId the group ID
+     * @param sceneId the scene ID
+     * @return the status of each member
+     */
+    public Map<ZigBeeEndpoint, Status> storeScene(final int groupId, final short sceneId) {
+        return execute(af.getGroupMembershipRegistry().getMembers(groupId), new SceneOperation() {
+            public Status execute(final ScenesCluster cluster) throws ZigBeeClusterException {
+                return ((StoreSceneResponse) cluster.storeScene(groupId, sceneId)).getStatus();
+            }
+        });
+    }
+
+    /**
+     * Recalls the scene on all members of the group with a single group addressed frame.
+     *
+     * @param groupId the group ID
+     * @param sceneId the scene ID
+     * @throws ZigBeeNetworkManagerException if the recall could not be sent
+     */
+    public void recallScene(final int groupId, final short sceneId) throws ZigBeeNetworkManagerException {
+        af.sendGroupMessage(groupId, ZigBeeApiConstants.PROFILE_ID_HOME_AUTOMATION,
+                new ClusterMessageImpl(Scenes.ID, new ZCLFrame(new RecallSceneCommand(groupId, sceneId), false)));
+    }
+
+    /**
+     * Stops the workers.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private Map<ZigBeeEndpoint, Status> execute(final Collection<ZigBeeEndpoint> endpoints,
+                                                final SceneOperation operation) {
+        final Map<ZigBeeEndpoint, Future<Status>> futures = new LinkedHashMap<ZigBeeEndpoint, Future<Status>>();
+        for (final ZigBeeEndpoint endpoint : endpoints) {
+            futures.put(endpoint, workers.submit(new Callable<Status>() {
+                public Status call() {
+                    if (!endpoint.providesInputCluster(Scenes.ID)) {
+                        return Status.UNSUP_CLUSTER_COMMAND;
+                    }
+                    try {
+                        return operation.execute(new ScenesCluster(endpoint));
+                    } catch (final ZigBeeClusterException e) {
+                        logger.warn("Scene operation failed on {}.", endpoint.getEndpointId(), e);
+                        return Status.FAILURE;
+                    }
+                }
+            }));
+        }
+
+        final Map<ZigBeeEndpoint, Status> statuses = new LinkedHashMap<ZigBeeEndpoint, Status>();
+        for (final Map.Entry<ZigBeeEndpoint, Future<Status>> entry : futures.entrySet()) {
+            try {
+                statuses.put(entry.getKey(), entry.getValue().get());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                statuses.put(entry.getKey(), Status.FAILURE);
+            } catch (final ExecutionException e) {
+                logger.warn("Scene operation failed on {}.", entry.getKey().getEndpointId(), e.getCause());
+                statuses.put(entry.getKey(), Status.FAILURE);
+            }
+        }
+        return statuses;
+    }
+}
@@ -34,6 +34,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.general.alarms.AlarmListener;
 import org.bubblecloud.zigbee.api.cluster.impl.api.general.alarms.GetAlarmResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.api.global.DefaultResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.general.AlarmsCluster;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 
 /**
@@ -87,6 +91,18 @@ public class AlarmsImpl implements Alarms {
         return alarmsCluster.getAvailableAttributes();
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        return alarmsCluster.readAttributes(attributes);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return alarmsCluster.writeAttributes(values);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return alarmsCluster.writeAttributesUndivided(values);
+    }
+
     public Attribute getAttributeAlarmCount() {
         return attribute;
     }
@@ -32,6 +32,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.event.PresentValueBridgeListeners;
 import org.bubblecloud.zigbee.api.cluster.impl.general.AnalogInputCluster;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * 
@@ -92,6 +96,18 @@ public class AnalogInputImpl implements AnalogInput {
 		return analogInputCluster.getAvailableAttributes();
 	}
 
+	public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+		return analogInputCluster.readAttributes(attributes);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return analogInputCluster.writeAttributes(values);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return analogInputCluster.writeAttributesUndivided(values);
+	}
+
 
 	public String getDescription() throws ZigBeeDeviceException {
 		 try {
@@ -31,6 +31,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.api.global.DefaultResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.general.BasicCluster;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
@@ -170,4 +174,16 @@ public class BasicImpl implements Basic {
         return basicCluster.getAvailableAttributes();
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        return basicCluster.readAttributes(attributes);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return basicCluster.writeAttributes(values);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return basicCluster.writeAttributesUndivided(values);
+    }
+
 }
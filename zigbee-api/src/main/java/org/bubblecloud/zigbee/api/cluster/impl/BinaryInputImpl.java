@@ -32,6 +32,10 @@ import org.bubblecloud.zigbee.api.ReportingConfiguration;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Attribute;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.general.BinaryInputCluster;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 
 /**
@@ -89,6 +93,18 @@ public class BinaryInputImpl implements BinaryInput {
         return binaryInput.getAvailableAttributes();
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        return binaryInput.readAttributes(attributes);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return binaryInput.writeAttributes(values);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return binaryInput.writeAttributesUndivided(values);
+    }
+
 
     public String getActiveText() throws ZigBeeDeviceException {
         try {
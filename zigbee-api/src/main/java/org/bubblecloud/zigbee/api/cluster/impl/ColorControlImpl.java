@@ -31,6 +31,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.api.global.DefaultResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.general.ColorControlCluster;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * 
@@ -67,6 +71,18 @@ public class ColorControlImpl implements ColorControl {
 		return colorControlCluster.getAvailableAttributes();
 	}
 
+	public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+		return colorControlCluster.readAttributes(attributes);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return colorControlCluster.writeAttributes(values);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return colorControlCluster.writeAttributesUndivided(values);
+	}
+
 	public Attribute getAttribute(int id) {
 		Attribute[] attributes = colorControlCluster.getAvailableAttributes();
 		for (int i = 0; i < attributes.length; i++) {
@@ -28,6 +28,11 @@ import org.bubblecloud.zigbee.api.cluster.general.StartupControl;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Attribute;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * PLACEHOLDER TO IMPLEMENT
@@ -58,6 +63,18 @@ public class CommissioningImpl implements Commissioning {
         return null;
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        throw new ZigBeeClusterException("Reading attributes is not supported by placeholder Commissioning cluster.");
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        throw new ZigBeeClusterException("Writing attributes is not supported by placeholder Commissioning cluster.");
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        throw new ZigBeeClusterException("Writing attributes is not supported by placeholder Commissioning cluster.");
+    }
+
     public Attribute getAttribute(int id) {
         // TODO Auto-generated method stub
         return null;
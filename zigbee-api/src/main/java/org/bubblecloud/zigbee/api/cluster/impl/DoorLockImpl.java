@@ -30,6 +30,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.general.DoorLockCluster;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * 
@@ -67,6 +71,18 @@ public class DoorLockImpl implements DoorLock {
 		return doorLockCluster.getAvailableAttributes();
 	}
 
+	public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+		return doorLockCluster.readAttributes(attributes);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return doorLockCluster.writeAttributes(values);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return doorLockCluster.writeAttributesUndivided(values);
+	}
+
 	public Attribute getAttribute(int id) {
 		Attribute[] attributes = doorLockCluster.getAvailableAttributes();
 		for (int i = 0; i < attributes.length; i++) {
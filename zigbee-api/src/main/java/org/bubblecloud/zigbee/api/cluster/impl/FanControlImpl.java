@@ -29,6 +29,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.general.FanControlCluster;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * 
@@ -65,6 +69,18 @@ public class FanControlImpl implements FanControl {
 		return fanControlCluster.getAvailableAttributes();
 	}
 
+	public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+		return fanControlCluster.readAttributes(attributes);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return fanControlCluster.writeAttributes(values);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return fanControlCluster.writeAttributesUndivided(values);
+	}
+
 	public Attribute getAttribute(int id) {
 		Attribute[] attributes = fanControlCluster.getAvailableAttributes();
 		for (int i = 0; i < attributes.length; i++) {
@@ -29,6 +29,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.general.FlowMeasurementCluster;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * 
@@ -65,6 +69,18 @@ public class FlowMeasurementImpl implements FlowMeasurement {
 		return flowMeasurementCluster.getAvailableAttributes();
 	}
 
+	public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+		return flowMeasurementCluster.readAttributes(attributes);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return flowMeasurementCluster.writeAttributes(values);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return flowMeasurementCluster.writeAttributesUndivided(values);
+	}
+
 	public Attribute getAttribute(int id) {
 		Attribute[] attributes = flowMeasurementCluster.getAvailableAttributes();
 		for (int i = 0; i < attributes.length; i++) {
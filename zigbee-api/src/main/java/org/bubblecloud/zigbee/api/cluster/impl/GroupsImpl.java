@@ -35,6 +35,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.general.groups.RemoveGroupRes
 import org.bubblecloud.zigbee.api.cluster.impl.api.general.groups.ViewGroupResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.api.global.DefaultResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.general.GroupsCluster;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
@@ -139,4 +143,16 @@ public class GroupsImpl implements Groups {
         return groupCluster.getAvailableAttributes();
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        return groupCluster.readAttributes(attributes);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return groupCluster.writeAttributes(values);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return groupCluster.writeAttributesUndivided(values);
+    }
+
 }
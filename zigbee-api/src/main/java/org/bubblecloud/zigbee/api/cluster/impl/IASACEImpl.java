@@ -33,6 +33,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.security_safety.ias_ace.Bypas
 import org.bubblecloud.zigbee.api.cluster.impl.api.security_safety.ias_ace.ZoneIDMapResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.api.security_safety.ias_ace.ZoneInformationResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.security_safety.IASACECluster;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * @author <a href="mailto:manlio.bacco@isti.cnr.it">Manlio Bacco</a>
@@ -63,6 +67,18 @@ public class IASACEImpl implements IASACE {
         return cluster.getAvailableAttributes();
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        return cluster.readAttributes(attributes);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return cluster.writeAttributes(values);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return cluster.writeAttributesUndivided(values);
+    }
+
     public Attribute getAttribute(int id) {
         Attribute[] attributes = cluster.getAvailableAttributes();
         for (int i = 0; i < attributes.length; i++) {
@@ -30,6 +30,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.general.IlluminanceLevelSensingCluster;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * 
@@ -66,6 +70,18 @@ public class IlluminanceLevelSensingImpl implements IlluminanceLevelSensing {
 		return illuminanceLevelSensingCluster.getAvailableAttributes();
 	}
 
+	public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+		return illuminanceLevelSensingCluster.readAttributes(attributes);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return illuminanceLevelSensingCluster.writeAttributes(values);
+	}
+
+	public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+		return illuminanceLevelSensingCluster.writeAttributesUndivided(values);
+	}
+
 	public Attribute getAttribute(int id) {
 		Attribute[] attributes = illuminanceLevelSensingCluster.getAvailableAttributes();
 		for (int i = 0; i < attributes.length; i++) {
@@ -31,8 +31,12 @@ import org.bubblecloud.zigbee.api.cluster.general.ReportRSSIMeasurementsListener
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Attribute;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Response;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
 
 import java.util.EnumSet;
+import java.util.Map;
 
 /**
  * PLACEHOLDER TO IMPLEMENT
@@ -63,6 +67,18 @@ public class RSSILocationImpl implements RSSILocation {
         return null;
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        throw new ZigBeeClusterException("Reading attributes is not supported by placeholder RSSI location cluster.");
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        throw new ZigBeeClusterException("Writing attributes is not supported by placeholder RSSI location cluster.");
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        throw new ZigBeeClusterException("Writing attributes is not supported by placeholder RSSI location cluster.");
+    }
+
     public Attribute getAttribute(int id) {
         // TODO Auto-generated method stub
         return null;
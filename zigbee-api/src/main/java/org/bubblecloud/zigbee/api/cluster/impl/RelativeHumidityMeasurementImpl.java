@@ -32,6 +32,11 @@ import org.bubblecloud.zigbee.api.ReportingConfiguration;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Attribute;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
 import org.bubblecloud.zigbee.api.cluster.impl.measureament_sensing.RelativeHumidityMeasurementCluster;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * Implementation of the {@link RelativeHumidityMeasurement} interface, that wraps the
@@ -105,6 +110,18 @@ public class RelativeHumidityMeasurementImpl implements RelativeHumidityMeasurem
         return relativeHumidityMeasurementCluster.getAvailableAttributes();
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        return relativeHumidityMeasurementCluster.readAttributes(attributes);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return relativeHumidityMeasurementCluster.writeAttributes(values);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return relativeHumidityMeasurementCluster.writeAttributesUndivided(values);
+    }
+
     public boolean subscribe(MeasuredValueListener listener) {
         return measureBridge.subscribe(listener);
     }
@@ -36,6 +36,10 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.general.scenes.RemoveSceneRes
 import org.bubblecloud.zigbee.api.cluster.impl.api.general.scenes.StoreSceneResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.api.general.scenes.ViewSceneResponse;
 import org.bubblecloud.zigbee.api.cluster.impl.general.ScenesCluster;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
+import java.util.Map;
 
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
@@ -177,4 +181,16 @@ public class ScenesImpl implements Scenes {
         return scenesCluster.getAvailableAttributes();
     }
 
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        return scenesCluster.readAttributes(attributes);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return scenesCluster.writeAttributes(values);
+    }
+
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return scenesCluster.writeAttributesUndivided(values);
+    }
+
 }
@@ -69,6 +69,15 @@ public interface Attribute {
      */
     public Object getValue() throws ZigBeeClusterException;
 
+    /**
+     * Gets the value of the attribute from the attribute cache of the endpoint if it has been
+     * received within the max age, otherwise reads it from the endpoint.
+     *
+     * @param maxAge the max age of the cached value in milliseconds, 0 to always read from the endpoint
+     * @return the current value of the attribute
+     */
+    public Object getValue(long maxAge) throws ZigBeeClusterException;
+
     /**
      * If the attribute can be written ({@link #isWritable()} this method set its value.
      *
@@ -22,7 +22,11 @@
 
 package org.bubblecloud.zigbee.api.cluster.impl.api.core;
 
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
@@ -112,4 +116,32 @@ public interface ZCLCluster {
      * @since 0.2.0
      */
     public Attribute getAttribute(int id);
+
+    /**
+     * Reads the given attributes with as few <i>Read Attributes</i> commands as possible.
+     *
+     * @param attributes the {@link Attribute}s to read
+     * @return the {@link ReadAttributesStatus} of each {@link Attribute} in the given order
+     * @throws ZigBeeClusterException if reading fails
+     */
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException;
+
+    /**
+     * Writes the given attribute values with as few <i>Write Attributes</i> commands as possible.
+     *
+     * @param values the values by {@link Attribute}
+     * @return the {@link WriteAttributesStatus} of each {@link Attribute}
+     * @throws ZigBeeClusterException if writing fails
+     */
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException;
+
+    /**
+     * Writes the given attribute values with a single <i>Write Attributes Undivided</i> command,
+     * so either all or none of the values are written.
+     *
+     * @param values the values by {@link Attribute}
+     * @return the {@link WriteAttributesStatus} of each {@link Attribute}
+     * @throws ZigBeeClusterException if the values do not fit to a single command or writing fails
+     */
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException;
 }
@@ -23,6 +23,7 @@
 package org.bubblecloud.zigbee.api.cluster.impl.core;
 
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.*;
+import org.bubblecloud.zigbee.network.AttributeCache;
 import org.bubblecloud.zigbee.network.ClusterMessage;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetworkManagerException;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
@@ -99,13 +100,41 @@ public class AttributeImpl implements Attribute {
                     "Trying to set the attribute " + getName() + "(" + getId() + ") that is Read Only"
             );
         }
-        doClusterWideWrite(o);
+        try {
+            doClusterWideWrite(o);
+        } finally {
+            invalidateCachedValue();
+        }
     }
 
+    /**
+     * Gets the value using the max age configured for this attribute in the attribute cache.
+     * @return the current value of the attribute
+     */
     public Object getValue() throws ZigBeeClusterException {
+        final AttributeCache cache = zbDevice.getAttributeCache();
+        return getValue(cache != null ? cache.getMaxAge(zclCluster.getId(), getId()) : 0);
+    }
+
+    public Object getValue(long maxAge) throws ZigBeeClusterException {
+        final AttributeCache cache = zbDevice.getAttributeCache();
+        if (cache == null || maxAge <= 0) {
+            return doClusterWideRead();
+        }
+        final Object value = cache.get(zclCluster.getId(), getId(), maxAge);
+        if (value != null) {
+            return value;
+        }
         return doClusterWideRead();
     }
 
+    private void invalidateCachedValue() {
+        final AttributeCache cache = zbDevice.getAttributeCache();
+        if (cache != null) {
+            cache.invalidate(zclCluster.getId(), getId());
+        }
+    }
+
     /**
      * Gets the {@link Reporter reporter} for this attribute.
      * <p>
@@ -155,6 +184,10 @@ public class AttributeImpl implements Attribute {
                     ReadAttributesResponse readResponse = new ReadAttributesResponseImpl(response, requestedAttributes);
                     ReadAttributesStatus attributeStatus = readResponse.getReadAttributeStatus()[0];
                     if (attributeStatus.getStatus() == Status.SUCCESS.id) {
+                        final AttributeCache cache = zbDevice.getAttributeCache();
+                        if (cache != null) {
+                            cache.put(zclCluster.getId(), getId(), attributeStatus.getAttributeData());
+                        }
                         return attributeStatus.getAttributeData();
                     } else {
                         Status state = Status.getStatus(attributeStatus.getStatus());
@@ -23,6 +23,20 @@
 package org.bubblecloud.zigbee.api.cluster.impl.core;
 
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.*;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.DefaultResponse;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesResponse;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributeRecord;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesResponse;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.global.DefaultResponseImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.global.read.ReadAttributeCommand;
+import org.bubblecloud.zigbee.api.cluster.impl.global.read.ReadAttributesResponseImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.global.write.WriteAttributeCommand;
+import org.bubblecloud.zigbee.api.cluster.impl.global.write.WriteAttributeRecordImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.global.write.WriteAttributeStatusImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.global.write.WriteAttributesResponseImpl;
+import org.bubblecloud.zigbee.network.AttributeCache;
 import org.bubblecloud.zigbee.network.ClusterMessage;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetworkManagerException;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
@@ -30,7 +44,12 @@ import org.bubblecloud.zigbee.api.cluster.impl.api.core.Reporter;
 import org.bubblecloud.zigbee.api.cluster.impl.ClusterMessageImpl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +64,40 @@ public abstract class ZCLClusterBase implements ZCLCluster {
 
     final public static Logger logger = LoggerFactory.getLogger(ZCLClusterBase.class);
 
+    /**
+     * The default maximum size of a ZCL frame in bytes, which fits an APS payload without fragmentation.
+     */
+    public static final int MAX_FRAME_SIZE_DEFAULT = 80;
+    /**
+     * The system property to override the maximum size of a ZCL frame.
+     */
+    public static final String MAX_FRAME_SIZE_KEY = "zigbee.zcl.max.frame.size";
+    /**
+     * The size of ZCL header without manufacturer code.
+     */
+    private static final int ZCL_HEADER_SIZE = 3;
+    /**
+     * The size of read attributes response record excluding the value.
+     */
+    private static final int READ_RECORD_SIZE = 4;
+    /**
+     * The size assumed for values of variable length types when estimating response size.
+     */
+    private static final int VARIABLE_LENGTH_ESTIMATE = 16;
+
+    protected static final int maxFrameSize;
+
+    static {
+        int aux = MAX_FRAME_SIZE_DEFAULT;
+        try {
+            aux = Integer.parseInt(System.getProperty(MAX_FRAME_SIZE_KEY));
+            logger.trace("Using MAX_FRAME_SIZE set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using MAX_FRAME_SIZE set as DEFAULT {}", aux);
+        }
+        maxFrameSize = aux;
+    }
+
     private ZigBeeEndpoint zbDevice;
     private boolean isDefaultResponseEnabled;
     private HashMap<Integer, Attribute> attributes;
@@ -121,6 +174,192 @@ public abstract class ZCLClusterBase implements ZCLCluster {
         }
     }
 
+    /**
+     * Reads attributes with as few Read Attributes commands as possible. The attributes are packed
+     * to commands so that the estimated response fits to {@link #MAX_FRAME_SIZE_KEY maximum frame size}.
+     * Attributes left out from a truncated response are read with the next command. Successfully
+     * read values are stored to the attribute cache of the endpoint.
+     *
+     * @param attributes the attributes to read
+     * @return the read status of each attribute, in the order of the attributes
+     * @throws ZigBeeClusterException if a command fails or the device does not return any of the attributes
+     */
+    public Map<Attribute, ReadAttributesStatus> readAttributes(Attribute... attributes) throws ZigBeeClusterException {
+        final Map<Attribute, ReadAttributesStatus> results = new HashMap<Attribute, ReadAttributesStatus>();
+        final LinkedList<Attribute> pending = new LinkedList<Attribute>(Arrays.asList(attributes));
+        final AttributeCache cache = zbDevice.getAttributeCache();
+        while (!pending.isEmpty()) {
+            final List<Attribute> batch = pollBatch(pending);
+            final Map<Integer, ReadAttributesStatus> statuses = doReadAttributes(batch);
+            if (statuses.isEmpty()) {
+                throw new ZigBeeClusterException("Read Attributes of cluster " + getName()
+                        + " returned none of the " + batch.size() + " requested attributes.");
+            }
+            final List<Attribute> truncated = new ArrayList<Attribute>();
+            for (final Attribute attribute : batch) {
+                final ReadAttributesStatus status = statuses.get(attribute.getId());
+                if (status == null) {
+                    truncated.add(attribute);
+                    continue;
+                }
+                if (cache != null && status.getStatus() == Status.SUCCESS.id) {
+                    cache.put(getId(), attribute.getId(), status.getAttributeData());
+                }
+                results.put(attribute, status);
+            }
+            pending.addAll(0, truncated);
+        }
+        final Map<Attribute, ReadAttributesStatus> ordered = new LinkedHashMap<Attribute, ReadAttributesStatus>();
+        for (final Attribute attribute : attributes) {
+            ordered.put(attribute, results.get(attribute));
+        }
+        return ordered;
+    }
+
+    /**
+     * Removes from the head of the pending attributes as many as fit to one Read Attributes command.
+     *
+     * @param pending the pending attributes
+     * @return the attributes of the command, at least one
+     */
+    private List<Attribute> pollBatch(final LinkedList<Attribute> pending) {
+        final List<Attribute> batch = new ArrayList<Attribute>();
+        int requestSize = ZCL_HEADER_SIZE;
+        int responseSize = ZCL_HEADER_SIZE;
+        while (!pending.isEmpty()) {
+            final Attribute attribute = pending.getFirst();
+            final int length = attribute.getZigBeeType().getLength();
+            final int recordSize = READ_RECORD_SIZE + (length > 0 ? length : VARIABLE_LENGTH_ESTIMATE);
+            if (!batch.isEmpty() && (requestSize + 2 > maxFrameSize || responseSize + recordSize > maxFrameSize)) {
+                break;
+            }
+            batch.add(pending.removeFirst());
+            requestSize += 2;
+            responseSize += recordSize;
+        }
+        return batch;
+    }
+
+    private Map<Integer, ReadAttributesStatus> doReadAttributes(final List<Attribute> batch) throws ZigBeeClusterException {
+        final int[] ids = new int[batch.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = batch.get(i).getId();
+        }
+        final Response response = invoke(new ReadAttributeCommand(ids), false);
+        switch (response.getZCLHeader().getCommandId()) {
+            case ReadAttributesResponse.ID:
+                final Map<Integer, ReadAttributesStatus> statuses = new HashMap<Integer, ReadAttributesStatus>();
+                for (final ReadAttributesStatus status : new ReadAttributesResponseImpl(response).getReadAttributeStatus()) {
+                    statuses.put(status.getAttributeId(), status);
+                }
+                return statuses;
+            case DefaultResponse.ID:
+                final Status state = new DefaultResponseImpl(response).getStatus();
+                throw new ZigBeeClusterException("Read Attributes of cluster " + getName() + " failed. Due to "
+                        + state + " that means " + state.description);
+            default:
+                throw new ZigBeeClusterException("Read Attributes of cluster " + getName()
+                        + " failed due to: Unsupported answer: " + ResponseImpl.toString(response));
+        }
+    }
+
+    /**
+     * Writes attributes with as few Write Attributes commands as possible. The records are packed
+     * to commands which fit to {@link #MAX_FRAME_SIZE_KEY maximum frame size}. The cached values of
+     * the written attributes are invalidated.
+     *
+     * @param values the values by attribute, written in iteration order
+     * @return the write status of each attribute, in iteration order of the values
+     * @throws ZigBeeClusterException if a command fails
+     */
+    public Map<Attribute, WriteAttributesStatus> writeAttributes(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return doWriteAttributes(values, false);
+    }
+
+    /**
+     * Writes attributes with a single Write Attributes Undivided command, so the device writes either
+     * all or none of the attributes. The cached values of the written attributes are invalidated.
+     *
+     * @param values the values by attribute
+     * @return the write status of each attribute, in iteration order of the values
+     * @throws ZigBeeClusterException if the records do not fit to a single frame or the command fails
+     */
+    public Map<Attribute, WriteAttributesStatus> writeAttributesUndivided(Map<Attribute, Object> values) throws ZigBeeClusterException {
+        return doWriteAttributes(values, true);
+    }
+
+    private Map<Attribute, WriteAttributesStatus> doWriteAttributes(final Map<Attribute, Object> values,
+                                                                     final boolean undivided) throws ZigBeeClusterException {
+        final Map<Attribute, WriteAttributesStatus> results = new LinkedHashMap<Attribute, WriteAttributesStatus>();
+        final List<Attribute> batch = new ArrayList<Attribute>();
+        final List<WriteAttributeRecord> records = new ArrayList<WriteAttributeRecord>();
+        int frameSize = ZCL_HEADER_SIZE;
+        for (final Map.Entry<Attribute, Object> entry : values.entrySet()) {
+            if (!entry.getKey().isWritable()) {
+                throw new ZigBeeClusterException("Trying to set the attribute " + entry.getKey().getName()
+                        + "(" + entry.getKey().getId() + ") that is Read Only");
+            }
+            final WriteAttributeRecord record = new WriteAttributeRecordImpl(entry.getKey(), entry.getValue());
+            final int recordSize = new WriteAttributeCommand(new WriteAttributeRecord[]{record}).getPayload().length;
+            if (!batch.isEmpty() && frameSize + recordSize > maxFrameSize) {
+                if (undivided) {
+                    throw new ZigBeeClusterException("Write Attributes Undivided of cluster " + getName()
+                            + " does not fit to a single frame of " + maxFrameSize + " bytes.");
+                }
+                sendWriteAttributes(batch, records, false, results);
+                batch.clear();
+                records.clear();
+                frameSize = ZCL_HEADER_SIZE;
+            }
+            batch.add(entry.getKey());
+            records.add(record);
+            frameSize += recordSize;
+        }
+        if (!batch.isEmpty()) {
+            sendWriteAttributes(batch, records, undivided, results);
+        }
+        return results;
+    }
+
+    private void sendWriteAttributes(final List<Attribute> batch, final List<WriteAttributeRecord> records,
+                                     final boolean undivided, final Map<Attribute, WriteAttributesStatus> results)
+            throws ZigBeeClusterException {
+        try {
+            final Response response = invoke(new WriteAttributeCommand(
+                    records.toArray(new WriteAttributeRecord[records.size()]), undivided), false);
+            switch (response.getZCLHeader().getCommandId()) {
+                case WriteAttributesResponse.ID:
+                    final Map<Integer, WriteAttributesStatus> failures = new HashMap<Integer, WriteAttributesStatus>();
+                    for (final WriteAttributesStatus status : new WriteAttributesResponseImpl(response).getWriteAttributesStatus()) {
+                        failures.put(status.getAttributeId(), status);
+                    }
+                    // An undivided write with any failure writes none of the attributes.
+                    final Status unlisted = undivided && !failures.isEmpty() ? Status.FAILURE : Status.SUCCESS;
+                    for (final Attribute attribute : batch) {
+                        final WriteAttributesStatus status = failures.get(attribute.getId());
+                        results.put(attribute, status != null ? status
+                                : new WriteAttributeStatusImpl(attribute.getId(), (byte) unlisted.id));
+                    }
+                    break;
+                case DefaultResponse.ID:
+                    final Status state = new DefaultResponseImpl(response).getStatus();
+                    throw new ZigBeeClusterException("Write Attributes of cluster " + getName() + " failed. Due to "
+                            + state + " that means " + state.description);
+                default:
+                    throw new ZigBeeClusterException("Write Attributes of cluster " + getName()
+                            + " failed due to: Unsupported answer: " + ResponseImpl.toString(response));
+            }
+        } finally {
+            // The device may have written the batch even if the response was lost.
+            final AttributeCache cache = zbDevice.getAttributeCache();
+            if (cache != null) {
+                for (final Attribute attribute : batch) {
+                    cache.invalidate(getId(), attribute.getId());
+                }
+            }
+        }
+    }
+
     public Reporter[] getAttributeReporters() {
         final ArrayList<Reporter> actives = new ArrayList<Reporter>();
         final Attribute[] attributes = getAvailableAttributes();
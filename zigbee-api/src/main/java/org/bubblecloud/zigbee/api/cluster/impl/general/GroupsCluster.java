@@ -22,9 +22,11 @@
 
 package org.bubblecloud.zigbee.api.cluster.impl.general;
 
+import org.bubblecloud.zigbee.network.GroupMembershipRegistry;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Attribute;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Response;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
 import org.bubblecloud.zigbee.api.cluster.impl.api.general.Groups;
 import org.bubblecloud.zigbee.api.cluster.impl.attribute.Attributes;
@@ -42,6 +44,9 @@ import org.bubblecloud.zigbee.api.cluster.impl.general.groups.ViewGroupCommand;
 import org.bubblecloud.zigbee.api.cluster.impl.general.groups.ViewGroupResponseImpl;
 import org.bubblecloud.zigbee.api.cluster.impl.global.DefaultResponseImpl;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
  * @author <a href="mailto:francesco.furfari@isti.cnr.it">Francesco Furfari</a>
@@ -85,7 +90,11 @@ public class GroupsCluster extends ZCLClusterBase implements Groups {
         enableDefaultResponse();
         AddGroupCommand addGroupCmd = new AddGroupCommand(groupId, name);
         Response response = invoke(addGroupCmd);
-        return new AddGroupResponseImpl(response);
+        final AddGroupResponseImpl addGroupResponse = new AddGroupResponseImpl(response);
+        if (addGroupResponse.getStatus() == Status.SUCCESS || addGroupResponse.getStatus() == Status.DUPLICATE_EXISTS) {
+            getGroupMembershipRegistry().addMembership(getZigBeeEndpoint(), groupId);
+        }
+        return addGroupResponse;
     }
 
     public Response addGroupIfIdentifying(int groupId, String name) throws ZigBeeClusterException {
@@ -103,19 +112,50 @@ public class GroupsCluster extends ZCLClusterBase implements Groups {
         enableDefaultResponse();
         GetGroupMembershipCommand getGroupMemCmd = new GetGroupMembershipCommand(groupList);
         Response response = invoke(getGroupMemCmd);
-        return new GetGroupMembershipResponseImpl(response);
+        final GetGroupMembershipResponseImpl membershipResponse = new GetGroupMembershipResponseImpl(response);
+        final GroupMembershipRegistry registry = getGroupMembershipRegistry();
+        if (groupList == null || groupList.length == 0) {
+            // Response lists all groups of the endpoint.
+            registry.setMemberships(getZigBeeEndpoint(), membershipResponse.getGroupList());
+        } else {
+            // Response lists the requested groups the endpoint belongs to.
+            final Set<Integer> memberGroups = new HashSet<Integer>();
+            for (final int groupId : membershipResponse.getGroupList()) {
+                memberGroups.add(groupId);
+            }
+            for (final int groupId : groupList) {
+                if (memberGroups.contains(groupId)) {
+                    registry.addMembership(getZigBeeEndpoint(), groupId);
+                } else {
+                    registry.removeMembership(getZigBeeEndpoint(), groupId);
+                }
+            }
+        }
+        return membershipResponse;
     }
 
     public Response removeAllGroup() throws ZigBeeClusterException {
         enableDefaultResponse();
         Response response = invoke(CMD_REMOVE_ALL_GROUP);
-        return new DefaultResponseImpl(response);
+        final DefaultResponseImpl defaultResponse = new DefaultResponseImpl(response);
+        if (defaultResponse.getStatus() == Status.SUCCESS) {
+            getGroupMembershipRegistry().removeAllMemberships(getZigBeeEndpoint());
+        }
+        return defaultResponse;
     }
 
     public Response removeGroup(int groupId) throws ZigBeeClusterException {
         RemoveGroupCommand removeGroupCmd = new RemoveGroupCommand(groupId);
         Response response = invoke(removeGroupCmd);
-        return new RemoveGroupResponseImpl(response);
+        final RemoveGroupResponseImpl removeGroupResponse = new RemoveGroupResponseImpl(response);
+        if (removeGroupResponse.getStatus() == Status.SUCCESS || removeGroupResponse.getStatus() == Status.NOT_FOUND) {
+            getGroupMembershipRegistry().removeMembership(getZigBeeEndpoint(), groupId);
+        }
+        return removeGroupResponse;
+    }
+
+    private GroupMembershipRegistry getGroupMembershipRegistry() {
+        return getZigBeeEndpoint().getGroupMembershipRegistry();
     }
 
     public Response viewGroup(int groupId) throws ZigBeeClusterException {
@@ -91,6 +91,7 @@ public class ScenesCluster extends ZCLClusterBase implements Scenes {
     }
 
     public Response addScene(AddScenePayload scenepayload) throws ZigBeeClusterException {
+        enableDefaultResponse();
         AddSceneCommand addSceneCmd = new AddSceneCommand(scenepayload);
         Response response = invoke(addSceneCmd);
         return new AddSceneResponseImpl(response);
@@ -121,6 +122,7 @@ public class ScenesCluster extends ZCLClusterBase implements Scenes {
     }
 
     public Response getSceneMembership(int groupId) throws ZigBeeClusterException {
+        enableDefaultResponse();
         GetSceneMembershipCommand getSceneMemCmd = new GetSceneMembershipCommand(groupId);
         Response response = invoke(getSceneMemCmd);
         return new GetSceneMembershipResponseImpl(response);
@@ -132,6 +134,7 @@ public class ScenesCluster extends ZCLClusterBase implements Scenes {
     }
 
     public Response removeAllScenes(int groupId) throws ZigBeeClusterException {
+        enableDefaultResponse();
         RemoveAllScenesCommand removeAllScenes = new RemoveAllScenesCommand(groupId);
         Response response = invoke(removeAllScenes);
         return new RemoveAllScenesResponseImpl(response);
@@ -139,18 +142,21 @@ public class ScenesCluster extends ZCLClusterBase implements Scenes {
     }
 
     public Response removeScene(int groupId, short sceneId) throws ZigBeeClusterException {
+        enableDefaultResponse();
         RemoveSceneCommand removeSceneCmd = new RemoveSceneCommand(groupId, sceneId);
         Response response = invoke(removeSceneCmd);
         return new RemoveSceneResponseImpl(response);
     }
 
     public Response storeScene(int groupId, short sceneId) throws ZigBeeClusterException {
+        enableDefaultResponse();
         StoreSceneCommand storeSceneCmd = new StoreSceneCommand(groupId, sceneId);
         Response response = invoke(storeSceneCmd);
         return new StoreSceneResponseImpl(response);
     }
 
     public Response viewScene(int groupId, short sceneId) throws ZigBeeClusterException {
+        enableDefaultResponse();
         ViewSceneCommand viewSceneCmd = new ViewSceneCommand(groupId, sceneId);
         Response response = invoke(viewSceneCmd);
         return new ViewSceneResponseImpl(response);
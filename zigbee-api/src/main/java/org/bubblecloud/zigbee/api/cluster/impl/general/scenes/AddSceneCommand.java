@@ -48,7 +48,8 @@ public class AddSceneCommand extends AbstractCommand {
     public byte[] getPayload() {
         if (payload == null) {
             int length;
-            length = 5 + scenePayload.getSceneName().length();
+            // group ID, scene ID, transition time and length prefixed scene name
+            length = 6 + scenePayload.getSceneName().getBytes().length;
 
             for (int i = 0; i < scenePayload.getExtensionFieldSet().length; i++) {
                 length = length + scenePayload.getExtensionFieldSet()[i].getLength();
@@ -58,8 +59,7 @@ public class AddSceneCommand extends AbstractCommand {
             serializer.append_short((short) scenePayload.getGroupId());
             serializer.append_byte((byte) scenePayload.getSceneId());
             serializer.append_short((short) scenePayload.getTransitionTime());
-            //TODO use the serializer.appendObject(Object, ZigBeeType)
-            serializer.appendObject(scenePayload.getSceneName());
+            serializer.appendString(scenePayload.getSceneName());
             ExtensionFieldSetAddScene[] extensionFielSet = scenePayload.getExtensionFieldSet();
 
             for (int i = 0; i < extensionFielSet.length; i++) {
@@ -31,6 +31,9 @@ import org.bubblecloud.zigbee.api.cluster.impl.attribute.AttributeDescriptor;
 import org.bubblecloud.zigbee.api.cluster.impl.core.DefaultDeserializer;
 import org.bubblecloud.zigbee.api.cluster.impl.core.ResponseImpl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
@@ -53,6 +56,24 @@ public class ReadAttributesResponseImpl extends ResponseImpl implements ReadAttr
         }
     }
 
+    /**
+     * Constructor which decodes all attribute records of the response. The records are identified
+     * by their attribute ID, so the response may contain fewer attributes than were requested.
+     *
+     * @param response the response
+     * @throws ZigBeeClusterException if the response is not a Read Attributes Response
+     */
+    public ReadAttributesResponseImpl(Response response) throws ZigBeeClusterException {
+        super(response);
+        ResponseImpl.checkGeneralCommandFrame(response, ReadAttributesResponse.ID);
+        final List<ReadAttributesStatus> records = new ArrayList<ReadAttributesStatus>();
+        ZBDeserializer deserializer = new DefaultDeserializer(getPayload(), 0);
+        while (!deserializer.endOfStream()) {
+            records.add(new ReadAttributeStatusImpl(null, deserializer));
+        }
+        attributes = records.toArray(new ReadAttributesStatus[records.size()]);
+    }
+
     public ReadAttributesStatus[] getReadAttributeStatus() {
         return attributes;
     }
@@ -35,6 +35,7 @@ import org.bubblecloud.zigbee.api.cluster.impl.core.ByteArrayOutputStreamSeriali
  */
 public class WriteAttributeCommand extends AbstractCommand {
     private static byte ID = 0x02;
+    private static byte UNDIVIDED_ID = 0x03;
 
     private WriteAttributeRecord[] attributeRecord;
 
@@ -43,6 +44,18 @@ public class WriteAttributeCommand extends AbstractCommand {
         this.attributeRecord = attributerecord;
     }
 
+    /**
+     * Constructor which selects between Write Attributes and Write Attributes Undivided commands.
+     * With the undivided command the device writes either all or none of the attributes.
+     *
+     * @param attributerecord the records to write
+     * @param undivided true to send Write Attributes Undivided command
+     */
+    public WriteAttributeCommand(WriteAttributeRecord[] attributerecord, boolean undivided) {
+        super(undivided ? UNDIVIDED_ID : ID, false);
+        this.attributeRecord = attributerecord;
+    }
+
     public byte[] getPayload() {
         if (payload == null) {
             ZBSerializer serializer = new ByteArrayOutputStreamSerializer();
@@ -32,6 +32,9 @@ import org.bubblecloud.zigbee.api.cluster.impl.attribute.AttributeDescriptor;
 import org.bubblecloud.zigbee.api.cluster.impl.core.DefaultDeserializer;
 import org.bubblecloud.zigbee.api.cluster.impl.core.ResponseImpl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
  * @author <a href="mailto:francesco.furfari@isti.cnr.it">Francesco Furfari</a>
@@ -58,6 +61,26 @@ public class WriteAttributesResponseImpl extends ResponseImpl implements
         }
     }
 
+    /**
+     * Constructor which decodes the status records of the response. The device only returns records
+     * for the attributes which were not written, so a response with a single success status has no records.
+     *
+     * @param response the response
+     * @throws ZigBeeClusterException if the response is not a Write Attributes Response
+     */
+    public WriteAttributesResponseImpl(Response response) throws ZigBeeClusterException {
+        super(response);
+        ResponseImpl.checkGeneralCommandFrame(response, WriteAttributesResponse.ID);
+        final List<WriteAttributesStatus> records = new ArrayList<WriteAttributesStatus>();
+        if (!(getPayload().length == 1 && getPayload()[0] == Status.SUCCESS.id)) {
+            ZBDeserializer deserializer = new DefaultDeserializer(getPayload(), 0);
+            while (!deserializer.endOfStream()) {
+                records.add(new WriteAttributeStatusImpl(null, deserializer));
+            }
+        }
+        attributes = records.toArray(new WriteAttributesStatus[records.size()]);
+    }
+
     public WriteAttributesStatus[] getWriteAttributesStatus() {
         return attributes;
     }
@@ -0,0 +1,184 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the attribute values of an endpoint. The values are fed by attribute reports and
+ * read attribute responses and are considered valid as long as they are younger than the max age
+ * given by the reader. The default max age of each attribute can be configured and is used by
+ * readers which do not give a max age.
+ * <p>
+ * The default max age is 0, which disables caching unless configured with the system property
+ * {@link #MAX_AGE_KEY} or per attribute.
+ */
+public class AttributeCache {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AttributeCache.class);
+    /**
+     * The default max age of cached attribute values in milliseconds.
+     */
+    public static final long MAX_AGE_DEFAULT = 0;
+    /**
+     * The system property to override the default max age of cached attribute values.
+     */
+    public static final String MAX_AGE_KEY = "zigbee.attribute.cache.max.age";
+    /**
+     * The default max age used for attributes without configured max age.
+     */
+    private static final long defaultMaxAge;
+
+    static {
+        long aux = MAX_AGE_DEFAULT;
+        try {
+            aux = Long.parseLong(System.getProperty(MAX_AGE_KEY));
+            logger.trace("Using MAX_AGE set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using MAX_AGE set as DEFAULT {}", aux);
+        }
+        defaultMaxAge = aux;
+    }
+
+    /**
+     * The cached values by cluster and attribute ID.
+     */
+    private final ConcurrentHashMap<Integer, CachedValue> values = new ConcurrentHashMap<Integer, CachedValue>();
+    /**
+     * The configured max ages by cluster and attribute ID.
+     */
+    private final ConcurrentHashMap<Integer, Long> maxAges = new ConcurrentHashMap<Integer, Long>();
+    /**
+     * The number of reads served from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * The number of reads not served from the cache.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Gets attribute value if it has been cached within the max age.
+     *
+     * @param clusterId the cluster ID
+     * @param attributeId the attribute ID
+     * @param maxAge the max age in milliseconds
+     * @return the value or null if there is no value younger than the max age
+     */
+    public Object get(final int clusterId, final int attributeId, final long maxAge) {
+        final CachedValue cachedValue = values.get(key(clusterId, attributeId));
+        if (cachedValue != null && System.currentTimeMillis() - cachedValue.timestamp <= maxAge) {
+            hits.incrementAndGet();
+            return cachedValue.value;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches attribute value received from the endpoint.
+     *
+     * @param clusterId the cluster ID
+     * @param attributeId the attribute ID
+     * @param value the value, null values are not cached
+     */
+    public void put(final int clusterId, final int attributeId, final Object value) {
+        if (value == null) {
+            invalidate(clusterId, attributeId);
+            return;
+        }
+        values.put(key(clusterId, attributeId), new CachedValue(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes attribute value from the cache.
+     *
+     * @param clusterId the cluster ID
+     * @param attributeId the attribute ID
+     */
+    public void invalidate(final int clusterId, final int attributeId) {
+        values.remove(key(clusterId, attributeId));
+    }
+
+    /**
+     * Removes all values from the cache.
+     */
+    public void clear() {
+        values.clear();
+    }
+
+    /**
+     * Gets the max age of the attribute.
+     *
+     * @param clusterId the cluster ID
+     * @param attributeId the attribute ID
+     * @return the max age in milliseconds
+     */
+    public long getMaxAge(final int clusterId, final int attributeId) {
+        final Long maxAge = maxAges.get(key(clusterId, attributeId));
+        return maxAge != null ? maxAge : defaultMaxAge;
+    }
+
+    /**
+     * Sets the max age of the attribute.
+     *
+     * @param clusterId the cluster ID
+     * @param attributeId the attribute ID
+     * @param maxAge the max age in milliseconds or 0 to always read the value from the endpoint
+     */
+    public void setMaxAge(final int clusterId, final int attributeId, final long maxAge) {
+        maxAges.put(key(clusterId, attributeId), maxAge);
+    }
+
+    /**
+     * Gets the number of reads served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of reads not served from the cache.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static Integer key(final int clusterId, final int attributeId) {
+        return ((clusterId & 0xFFFF) << 16) | (attributeId & 0xFFFF);
+    }
+
+    /**
+     * Cached value with its reception time.
+     */
+    private static class CachedValue {
+        private final Object value;
+        private final long timestamp;
+
+        private CachedValue(final Object value, final long timestamp) {
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+}
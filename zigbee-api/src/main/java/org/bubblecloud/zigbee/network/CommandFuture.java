@@ -0,0 +1,173 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future of a command response completed asynchronously by the network layer.
+ * <p>
+ * Following the conventions of the blocking API the future is completed with <code>null</code>
+ * when the command fails or times out, so {@link #join()} never throws.
+ *
+ * @param <T> the response type
+ */
+public class CommandFuture<T> implements Future<T> {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(CommandFuture.class);
+    /**
+     * The listeners waiting for completion or null if there are none.
+     */
+    private List<CommandFutureListener<T>> listeners = null;
+    /**
+     * The result.
+     */
+    private T result = null;
+    /**
+     * True if future has been completed.
+     */
+    private boolean done = false;
+    /**
+     * True if future has been cancelled.
+     */
+    private boolean cancelled = false;
+
+    /**
+     * Creates already completed future.
+     * @param result the result
+     * @param <T> the response type
+     * @return the completed future
+     */
+    public static <T> CommandFuture<T> completed(final T result) {
+        final CommandFuture<T> future = new CommandFuture<T>();
+        future.set(result);
+        return future;
+    }
+
+    /**
+     * Completes the future and notifies the listeners.
+     * @param result the result or null if command failed
+     * @return true if this call completed the future
+     */
+    public boolean set(final T result) {
+        final List<CommandFutureListener<T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.result = result;
+            done = true;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        if (toNotify != null) {
+            for (final CommandFutureListener<T> listener : toNotify) {
+                notifyListener(listener, result);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds listener to be notified when the future completes. If the future is already
+     * completed the listener is notified immediately in the calling thread.
+     * @param listener the listener
+     */
+    public void addListener(final CommandFutureListener<T> listener) {
+        final T completedResult;
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = new ArrayList<CommandFutureListener<T>>(1);
+                }
+                listeners.add(listener);
+                return;
+            }
+            completedResult = result;
+        }
+        notifyListener(listener, completedResult);
+    }
+
+    /**
+     * Waits for the future to complete ignoring interrupts.
+     * @return the result or null if command failed or timed out
+     */
+    public T join() {
+        synchronized (this) {
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            return result;
+        }
+    }
+
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+        }
+        return set(null);
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized T get() throws InterruptedException {
+        while (!done) {
+            wait();
+        }
+        return result;
+    }
+
+    public synchronized T get(final long timeout, final TimeUnit unit)
+            throws InterruptedException, TimeoutException {
+        final long wakeUpTime = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!done) {
+            final long waiting = wakeUpTime - System.currentTimeMillis();
+            if (waiting <= 0) {
+                throw new TimeoutException();
+            }
+            wait(waiting);
+        }
+        return result;
+    }
+
+    private void notifyListener(final CommandFutureListener<T> listener, final T result) {
+        try {
+            listener.commandCompleted(result);
+        } catch (Throwable t) {
+            logger.error("Error in command future listener.", t);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network;
+
+/**
+ * Listener notified when a {@link CommandFuture} completes.
+ *
+ * @param <T> the response type
+ */
+public interface CommandFutureListener<T> {
+
+    /**
+     * Callback invoked when the command has completed. The callback is usually invoked
+     * from the packet parser thread and should not block.
+     *
+     * @param response the response or null if the command failed or timed out
+     */
+    public void commandCompleted(T response);
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Local registry of the group memberships of the endpoints. The registry is kept in sync from
+ * the responses of the groups cluster so that group addressed messages can be sent without
+ * querying the endpoints. Memberships of removed endpoints are dropped.
+ */
+public class GroupMembershipRegistry implements EndpointListener {
+    /**
+     * The member endpoints by group ID and endpoint ID.
+     */
+    private final Map<Integer, Map<String, ZigBeeEndpoint>> members =
+            new HashMap<Integer, Map<String, ZigBeeEndpoint>>();
+    /**
+     * The group IDs by endpoint ID.
+     */
+    private final Map<String, Set<Integer>> groups = new HashMap<String, Set<Integer>>();
+
+    /**
+     * Adds endpoint to group.
+     *
+     * @param endpoint the endpoint
+     * @param groupId the group ID
+     */
+    public synchronized void addMembership(final ZigBeeEndpoint endpoint, final int groupId) {
+        Map<String, ZigBeeEndpoint> groupMembers = members.get(groupId);
+        if (groupMembers == null) {
+            groupMembers = new LinkedHashMap<String, ZigBeeEndpoint>();
+            members.put(groupId, groupMembers);
+        }
+        groupMembers.put(endpoint.getEndpointId(), endpoint);
+
+        Set<Integer> endpointGroups = groups.get(endpoint.getEndpointId());
+        if (endpointGroups == null) {
+            endpointGroups = new TreeSet<Integer>();
+            groups.put(endpoint.getEndpointId(), endpointGroups);
+        }
+        endpointGroups.add(groupId);
+    }
+
+    /**
+     * Removes endpoint from group.
+     *
+     * @param endpoint the endpoint
+     * @param groupId the group ID
+     */
+    public synchronized void removeMembership(final ZigBeeEndpoint endpoint, final int groupId) {
+        final Map<String, ZigBeeEndpoint> groupMembers = members.get(groupId);
+        if (groupMembers != null) {
+            groupMembers.remove(endpoint.getEndpointId());
+            if (groupMembers.isEmpty()) {
+                members.remove(groupId);
+            }
+        }
+
+        final Set<Integer> endpointGroups = groups.get(endpoint.getEndpointId());
+        if (endpointGroups != null) {
+            endpointGroups.remove(groupId);
+            if (endpointGroups.isEmpty()) {
+                groups.remove(endpoint.getEndpointId());
+            }
+        }
+    }
+
+    /**
+     * Removes endpoint from all groups.
+     *
+     * @param endpoint the endpoint
+     */
+    public synchronized void removeAllMemberships(final ZigBeeEndpoint endpoint) {
+        final Set<Integer> endpointGroups = groups.get(endpoint.getEndpointId());
+        if (endpointGroups == null) {
+            return;
+        }
+        for (final Integer groupId : new ArrayList<Integer>(endpointGroups)) {
+            removeMembership(endpoint, groupId);
+        }
+    }
+
+    /**
+     * Replaces the group memberships of the endpoint.
+     *
+     * @param endpoint the endpoint
+     * @param groupIds the IDs of all the groups the endpoint belongs to
+     */
+    public synchronized void setMemberships(final ZigBeeEndpoint endpoint, final int[] groupIds) {
+        removeAllMemberships(endpoint);
+        for (final int groupId : groupIds) {
+            addMembership(endpoint, groupId);
+        }
+    }
+
+    /**
+     * Gets the member endpoints of the group.
+     *
+     * @param groupId the group ID
+     * @return the list of member endpoints
+     */
+    public synchronized List<ZigBeeEndpoint> getMembers(final int groupId) {
+        final Map<String, ZigBeeEndpoint> groupMembers = members.get(groupId);
+        if (groupMembers == null) {
+            return new ArrayList<ZigBeeEndpoint>();
+        }
+        return new ArrayList<ZigBeeEndpoint>(groupMembers.values());
+    }
+
+    /**
+     * Gets the groups of the endpoint.
+     *
+     * @param endpoint the endpoint
+     * @return the sorted group IDs
+     */
+    public synchronized int[] getGroups(final ZigBeeEndpoint endpoint) {
+        final Set<Integer> endpointGroups = groups.get(endpoint.getEndpointId());
+        if (endpointGroups == null) {
+            return new int[0];
+        }
+        final int[] groupIds = new int[endpointGroups.size()];
+        int i = 0;
+        for (final Integer groupId : endpointGroups) {
+            groupIds[i++] = groupId;
+        }
+        return groupIds;
+    }
+
+    /**
+     * Gets the IDs of the groups which have at least one member.
+     *
+     * @return the sorted group IDs
+     */
+    public synchronized int[] getGroupIds() {
+        final int[] groupIds = new int[members.size()];
+        int i = 0;
+        for (final Integer groupId : members.keySet()) {
+            groupIds[i++] = groupId;
+        }
+        Arrays.sort(groupIds);
+        return groupIds;
+    }
+
+    /**
+     * Checks whether the endpoint is member of the group.
+     *
+     * @param endpoint the endpoint
+     * @param groupId the group ID
+     * @return true if the endpoint is member of the group
+     */
+    public synchronized boolean isMember(final ZigBeeEndpoint endpoint, final int groupId) {
+        final Set<Integer> endpointGroups = groups.get(endpoint.getEndpointId());
+        return endpointGroups != null && endpointGroups.contains(groupId);
+    }
+
+    @Override
+    public void endpointAdded(final ZigBeeEndpoint endpoint) {
+    }
+
+    @Override
+    public void endpointUpdated(final ZigBeeEndpoint endpoint) {
+    }
+
+    @Override
+    public void endpointRemoved(final ZigBeeEndpoint endpoint) {
+        removeAllMemberships(endpoint);
+    }
+}
@@ -24,6 +24,8 @@ package org.bubblecloud.zigbee.network;
 
 import org.bubblecloud.zigbee.network.packet.ZToolPacket;
 
+import java.io.IOException;
+
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
  * @version $LastChangedRevision: 799 $ ($LastChangedDate: 2013-08-06 19:00:05 +0300 (Tue, 06 Aug 2013) $)
@@ -33,4 +35,13 @@ public interface SynchronousCommandListener {
 
     public void receivedCommandResponse(ZToolPacket packet);
 
+    /**
+     * Invoked if the request could not be written to the port after it was queued for sending.
+     * No response will be received for the request.
+     *
+     * @param request the request
+     * @param exception the cause
+     */
+    public void sendFailed(ZToolPacket request, IOException exception);
+
 }
@@ -196,5 +196,14 @@ public interface ZigBeeEndpoint {
      */
     public boolean removeClusterListener(ClusterListener listener);
 
-}
+    /**
+     * @return the {@link AttributeCache} of the attribute values of this EndPoint
+     */
+    public AttributeCache getAttributeCache();
 
+    /**
+     * @return the {@link GroupMembershipRegistry} of the network of this EndPoint
+     */
+    public GroupMembershipRegistry getGroupMembershipRegistry();
+
+}
@@ -26,6 +26,7 @@ import org.bubblecloud.zigbee.network.model.DriverStatus;
 import org.bubblecloud.zigbee.network.model.NetworkMode;
 import org.bubblecloud.zigbee.network.packet.af.AF_DATA_CONFIRM;
 import org.bubblecloud.zigbee.network.packet.af.AF_DATA_REQUEST;
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_REQUEST_EXT;
 import org.bubblecloud.zigbee.network.packet.af.AF_REGISTER;
 import org.bubblecloud.zigbee.network.packet.af.AF_REGISTER_SRSP;
 import org.bubblecloud.zigbee.network.packet.zdo.*;
@@ -71,14 +72,116 @@ public interface ZigBeeNetworkManager {
 
     public abstract AF_DATA_CONFIRM sendAFDataRequest(AF_DATA_REQUEST request);
 
+    /**
+     * Sends data request with extended addressing, for example to all members of a group
+     * with a single transmission.
+     *
+     * @param request the request
+     * @return the confirmation or null in case of an error or timeout
+     */
+    public abstract AF_DATA_CONFIRM sendAFDataRequestExt(AF_DATA_REQUEST_EXT request);
+
     public abstract ZDO_BIND_RSP sendZDOBind(ZDO_BIND_REQ request);
 
     public abstract ZDO_UNBIND_RSP sendZDOUnbind(ZDO_UNBIND_REQ request);
 
+    /**
+     * Asynchronous version of {@link #sendZDOIEEEAddressRequest(ZDO_IEEE_ADDR_REQ)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<ZDO_IEEE_ADDR_RSP> sendZDOIEEEAddressRequestAsync(ZDO_IEEE_ADDR_REQ request);
+
+    /**
+     * Asynchronous version of {@link #sendZDONodeDescriptionRequest(ZDO_NODE_DESC_REQ)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<ZDO_NODE_DESC_RSP> sendZDONodeDescriptionRequestAsync(ZDO_NODE_DESC_REQ request);
+
+    /**
+     * Asynchronous version of {@link #sendZDOPowerDescriptionRequest(ZDO_POWER_DESC_REQ)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<ZDO_POWER_DESC_RSP> sendZDOPowerDescriptionRequestAsync(ZDO_POWER_DESC_REQ request);
+
+    /**
+     * Asynchronous version of {@link #sendZDOActiveEndPointRequest(ZDO_ACTIVE_EP_REQ)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<ZDO_ACTIVE_EP_RSP> sendZDOActiveEndPointRequestAsync(ZDO_ACTIVE_EP_REQ request);
+
+    /**
+     * Asynchronous version of {@link #sendZDOSimpleDescriptionRequest(ZDO_SIMPLE_DESC_REQ)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<ZDO_SIMPLE_DESC_RSP> sendZDOSimpleDescriptionRequestAsync(ZDO_SIMPLE_DESC_REQ request);
+
+    /**
+     * Asynchronous version of {@link #sendAFRegister(AF_REGISTER)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<AF_REGISTER_SRSP> sendAFRegisterAsync(AF_REGISTER request);
+
+    /**
+     * Asynchronous version of {@link #sendAFDataRequest(AF_DATA_REQUEST)}.
+     *
+     * @return the future completed with the confirmation or null in case of an error or timeout
+     */
+    public abstract CommandFuture<AF_DATA_CONFIRM> sendAFDataRequestAsync(AF_DATA_REQUEST request);
+
+    /**
+     * Asynchronous version of {@link #sendAFDataRequestExt(AF_DATA_REQUEST_EXT)}.
+     *
+     * @return the future completed with the confirmation or null in case of an error or timeout
+     */
+    public abstract CommandFuture<AF_DATA_CONFIRM> sendAFDataRequestExtAsync(AF_DATA_REQUEST_EXT request);
+
+    /**
+     * Asynchronous version of {@link #sendZDOBind(ZDO_BIND_REQ)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<ZDO_BIND_RSP> sendZDOBindAsync(ZDO_BIND_REQ request);
+
+    /**
+     * Asynchronous version of {@link #sendZDOUnbind(ZDO_UNBIND_REQ)}.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     */
+    public abstract CommandFuture<ZDO_UNBIND_RSP> sendZDOUnbindAsync(ZDO_UNBIND_REQ request);
+
     public abstract boolean removeAFMessageListener(ApplicationFrameworkMessageListener listner);
 
     public abstract boolean addAFMessageListner(ApplicationFrameworkMessageListener listner);
 
+    /**
+     * Adds an Application Framework message listener which is notified only of the messages
+     * sent from the given endpoint of the given node. The listeners are looked up from an index,
+     * so the cost of dispatching a message does not grow with the number of endpoints.
+     *
+     * @param networkAddress the network address of the source node
+     * @param endpoint the source endpoint
+     * @param listener the listener
+     * @return true if the listener was added
+     */
+    public abstract boolean addAFMessageListener(int networkAddress, short endpoint, ApplicationFrameworkMessageListener listener);
+
+    /**
+     * Removes an Application Framework message listener added with
+     * {@link #addAFMessageListener(int, short, ApplicationFrameworkMessageListener)}.
+     *
+     * @param networkAddress the network address of the source node
+     * @param endpoint the source endpoint
+     * @param listener the listener
+     * @return true if the listener was removed
+     */
+    public abstract boolean removeAFMessageListener(int networkAddress, short endpoint, ApplicationFrameworkMessageListener listener);
+
     /**
      * Send LQI request cluster and wait for its response
      * <p>
@@ -89,6 +192,17 @@ public interface ZigBeeNetworkManager {
      */
     public abstract ZDO_MGMT_LQI_RSP sendLQIRequest(ZDO_MGMT_LQI_REQ request);
 
+    /**
+     * Asynchronous version of {@link #sendLQIRequest(ZDO_MGMT_LQI_REQ)}.
+     * <p>
+     * The returned future is completed from the packet parser thread, so the caller does not
+     * need a thread per request in flight.
+     *
+     * @return the future completed with the response or null in case of an error or timeout
+     * @since 2.0.3
+     */
+    public abstract CommandFuture<ZDO_MGMT_LQI_RSP> sendLQIRequestAsync(ZDO_MGMT_LQI_REQ request);
+
     /**
      * This method is used for the creation of an virtual device on the dongle
      * <p>
@@ -1,5 +1,8 @@
 package org.bubblecloud.zigbee.network;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
@@ -203,4 +206,65 @@ public class ZigBeeNodeDescriptor {
 	public List<SERVER_MASK> getServerMask() {
 		return serverMask;
 	}
+
+	/**
+	 * Writes the descriptor in the compact binary network state format.
+	 *
+	 * @param out the output
+	 * @throws IOException if exception occurs in writing
+	 */
+	public void write(final DataOutput out) throws IOException {
+		out.writeByte(logicalType == null ? 0xFF : logicalType.ordinal());
+		out.writeShort(manufacturerCode);
+		out.writeShort(maximumBufferSize);
+		out.writeShort(maximumTransferSize);
+		out.writeByte(toMask(macCapabilities));
+		out.writeByte(toMask(serverMask));
+	}
+
+	/**
+	 * Reads descriptor written by {@link #write(DataOutput)}.
+	 *
+	 * @param in the input
+	 * @return the descriptor
+	 * @throws IOException if exception occurs in reading
+	 */
+	public static ZigBeeNodeDescriptor read(final DataInput in) throws IOException {
+		final ZigBeeNodeDescriptor descriptor = new ZigBeeNodeDescriptor();
+		final int type = in.readUnsignedByte();
+		descriptor.logicalType = type < LOGICAL_TYPE.values().length ? LOGICAL_TYPE.values()[type] : null;
+		descriptor.manufacturerCode = in.readUnsignedShort();
+		descriptor.maximumBufferSize = in.readUnsignedShort();
+		descriptor.maximumTransferSize = in.readUnsignedShort();
+		descriptor.macCapabilities = fromMask(in.readUnsignedByte(), MAC_CAPABILITY.values());
+		descriptor.serverMask = fromMask(in.readUnsignedByte(), SERVER_MASK.values());
+		return descriptor;
+	}
+
+	/**
+	 * Converts enum list to bit mask of ordinals. Null list is marked with the highest bit.
+	 */
+	private static int toMask(final List<? extends Enum<?>> values) {
+		if (values == null) {
+			return 0x80;
+		}
+		int mask = 0;
+		for (final Enum<?> value : values) {
+			mask |= 1 << value.ordinal();
+		}
+		return mask;
+	}
+
+	private static <E extends Enum<E>> List<E> fromMask(final int mask, final E[] values) {
+		if ((mask & 0x80) != 0) {
+			return null;
+		}
+		final List<E> list = new ArrayList<E>();
+		for (final E value : values) {
+			if ((mask & (1 << value.ordinal())) != 0) {
+				list.add(value);
+			}
+		}
+		return list;
+	}
 }
@@ -1,5 +1,8 @@
 package org.bubblecloud.zigbee.network;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
@@ -151,4 +154,51 @@ public class ZigBeeNodePowerDescriptor {
 	public POWER_LEVEL getPowerLevel() {
 		return powerLevel;
 	}
+
+	/**
+	 * Writes the descriptor in the compact binary network state format.
+	 *
+	 * @param out the output
+	 * @throws IOException if exception occurs in writing
+	 */
+	public void write(final DataOutput out) throws IOException {
+		out.writeByte(powerMode == null ? 0xFF : powerMode.ordinal());
+		out.writeByte(powerSource == null ? 0xFF : powerSource.ordinal());
+		out.writeByte(powerLevel == null ? 0xFF : powerLevel.ordinal());
+		int mask = 0x80;
+		if (powerSourcesAvailable != null) {
+			mask = 0;
+			for (final POWER_SOURCE source : powerSourcesAvailable) {
+				mask |= 1 << source.ordinal();
+			}
+		}
+		out.writeByte(mask);
+	}
+
+	/**
+	 * Reads descriptor written by {@link #write(DataOutput)}.
+	 *
+	 * @param in the input
+	 * @return the descriptor
+	 * @throws IOException if exception occurs in reading
+	 */
+	public static ZigBeeNodePowerDescriptor read(final DataInput in) throws IOException {
+		final ZigBeeNodePowerDescriptor descriptor = new ZigBeeNodePowerDescriptor();
+		final int mode = in.readUnsignedByte();
+		descriptor.powerMode = mode < POWER_MODE.values().length ? POWER_MODE.values()[mode] : null;
+		final int source = in.readUnsignedByte();
+		descriptor.powerSource = source < POWER_SOURCE.values().length ? POWER_SOURCE.values()[source] : null;
+		final int level = in.readUnsignedByte();
+		descriptor.powerLevel = level < POWER_LEVEL.values().length ? POWER_LEVEL.values()[level] : null;
+		final int mask = in.readUnsignedByte();
+		if ((mask & 0x80) == 0) {
+			descriptor.powerSourcesAvailable = new ArrayList<POWER_SOURCE>();
+			for (final POWER_SOURCE available : POWER_SOURCE.values()) {
+				if ((mask & (1 << available.ordinal())) != 0) {
+					descriptor.powerSourcesAvailable.add(available);
+				}
+			}
+		}
+		return descriptor;
+	}
 }
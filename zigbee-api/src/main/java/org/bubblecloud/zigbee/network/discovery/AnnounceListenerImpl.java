@@ -70,7 +70,7 @@ public class AnnounceListenerImpl implements AnnounceListener {
 
         logger.info("Device announcement received - Network Address: #{}, IEEE Address: {}", senderAddress.get16BitValue(),
                 IEEEAddress.toColonNotation(ieeeAddress.getLong()));
-        queue.push(senderAddress, ieeeAddress);
+        queue.push(senderAddress, ieeeAddress, -1, ImportingQueue.Priority.ANNOUNCE);
         final Thread notifyThread = new Thread(new Runnable() {
             @Override
             public void run() {
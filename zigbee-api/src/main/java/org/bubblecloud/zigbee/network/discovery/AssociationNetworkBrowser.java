@@ -22,11 +22,13 @@
 
 package org.bubblecloud.zigbee.network.discovery;
 
+import org.bubblecloud.zigbee.network.CommandFutureListener;
 import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
 import org.bubblecloud.zigbee.network.impl.ApplicationFrameworkLayer;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetwork;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNodeImpl;
 import org.bubblecloud.zigbee.network.packet.ZToolAddress16;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_REQ;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_RSP;
 import org.bubblecloud.zigbee.util.Integers;
@@ -36,11 +38,28 @@ import org.bubblecloud.zigbee.network.ZigBeeNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 
 /**
+ * Walks the association tree of the network from the coordinator with extended
+ * ZDO_IEEE_ADDR_REQ requests and queues the found nodes for importing.
+ * <p>
+ * Several nodes are queried in parallel up to the configured concurrency and association
+ * lists larger than a single response are paged without blocking the walk. The association
+ * state of every node is kept between the walks: routers are queried again on every walk,
+ * but their association list is fetched again only if the association count changed, and
+ * nodes without associations are queried again only if the association list of their parent
+ * changed or their state is older than the configured time to live.
+ *
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
  * @author <a href="mailto:francesco.furfari@isti.cnr.it">Francesco Furfari</a>
  * @version $LastChangedRevision: 799 $ ($LastChangedDate: 2013-08-06 19:00:05 +0300 (Tue, 06 Aug 2013) $)
@@ -50,89 +69,200 @@ public class AssociationNetworkBrowser extends RunnableThread {
 
     private static final Logger logger = LoggerFactory.getLogger(AssociationNetworkBrowser.class);
 
-    private static final short COORDINATOR_NWK_ADDRESS = 0;
+    /**
+     * The default maximum number of association requests in flight.
+     */
+    public static final int CONCURRENCY_DEFAULT = 4;
+    /**
+     * The system property to override the maximum number of association requests in flight.
+     */
+    public static final String CONCURRENCY_KEY = "zigbee.association.concurrency";
+    /**
+     * The default time to live of the association state of a node in milliseconds.
+     */
+    public static final long ASSOCIATION_TTL_DEFAULT = 60 * 60 * 1000;
+    /**
+     * The system property to override the time to live of the association state of a node in milliseconds.
+     */
+    public static final String ASSOCIATION_TTL_KEY = "zigbee.association.ttl";
+
+    private static final int COORDINATOR_NWK_ADDRESS = 0;
+    private static final int NWK_ADDRESS_COUNT = 0x10000;
+    private static final long BROWSING_PERIOD = 15 * 60 * 1000;
 
     private final ImportingQueue queue;
     final ZigBeeNetworkManager driver;
+    private final int concurrency;
+    private final long associationTtl;
+    private volatile long initialDelay = 0;
+    private volatile boolean initialNetworkBrowsingComplete = false;
+
+    /**
+     * The association state of the nodes found during the previous walks keyed by network address.
+     */
+    private final Map<Integer, Association> associations = new HashMap<Integer, Association>();
+    /**
+     * The received responses waiting to be processed by the browsing thread.
+     */
+    private final BlockingQueue<AssociationPage> completedPages = new LinkedBlockingQueue<AssociationPage>();
+    /**
+     * The sequence number of the current walk, used to discard late responses of an aborted walk.
+     */
+    private int walk = 0;
+
+    /**
+     * Association state of a node.
+     */
+    private static class Association {
+        /**
+         * The IEEE address of the node.
+         */
+        final ZToolAddress64 ieeeAddress;
+        /**
+         * The number of associated nodes reported by the node.
+         */
+        final int count;
+        /**
+         * The complete list of associated nodes or null if the list could not be fetched completely.
+         */
+        final int[] children;
+        /**
+         * The time the association list was fetched from the node in milliseconds.
+         */
+        final long timestamp;
+
+        Association(final ZToolAddress64 ieeeAddress, final int count, final int[] children, final long timestamp) {
+            this.ieeeAddress = ieeeAddress;
+            this.count = count;
+            this.children = children;
+            this.timestamp = timestamp;
+        }
+    }
 
-    final ArrayList<NetworkAddressNodeItem> toInspect = new ArrayList<NetworkAddressNodeItem>();
-    final HashMap<Integer, NetworkAddressNodeItem> alreadyInspected = new HashMap<Integer, NetworkAddressNodeItem>();
-    private boolean initialNetworkBrowsingComplete = false;
-
-
-    private class NetworkAddressNodeItem {
-        final NetworkAddressNodeItem parent;
+    /**
+     * Node of the association tree being inspected during a walk.
+     */
+    private static class AssociationRequest {
+        final int walk;
         final int address;
-        ZigBeeNodeImpl node = null;
-
-        NetworkAddressNodeItem(NetworkAddressNodeItem parent, int address) {
-            this.parent = parent;
+        final int parent;
+        /**
+         * True if the association list of the parent changed during this walk.
+         */
+        final boolean parentChanged;
+        ZToolAddress64 ieeeAddress;
+        int count;
+        int[] children = new int[0];
+
+        AssociationRequest(final int walk, final int address, final int parent, final boolean parentChanged) {
+            this.walk = walk;
             this.address = address;
+            this.parent = parent;
+            this.parentChanged = parentChanged;
+        }
+
+        void addChildren(final int[] page) {
+            final int[] merged = new int[children.length + page.length];
+            System.arraycopy(children, 0, merged, 0, children.length);
+            System.arraycopy(page, 0, merged, children.length, page.length);
+            children = merged;
         }
 
         public String toString() {
-            if (parent != null) {
-                return "<" + parent.address + " / " + parent.node + "," + address + " / " + node + ">";
-            } else {
-                return "< NULL ," + address + " / " + node + ">";
-            }
+            return "<" + parent + "," + address + " / " + ieeeAddress + ">";
         }
     }
 
+    /**
+     * Response to an association request.
+     */
+    private static class AssociationPage {
+        final AssociationRequest request;
+        final ZDO_IEEE_ADDR_RSP response;
+
+        AssociationPage(final AssociationRequest request, final ZDO_IEEE_ADDR_RSP response) {
+            this.request = request;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Constructor which sets the concurrency and time to live from system properties or defaults.
+     *
+     * @param queue the importing queue
+     * @param driver the network manager
+     */
     public AssociationNetworkBrowser(ImportingQueue queue, ZigBeeNetworkManager driver) {
+        this(queue, driver, getConcurrency(), getAssociationTtl());
+    }
+
+    /**
+     * @param queue the importing queue
+     * @param driver the network manager
+     * @param concurrency the maximum number of association requests in flight
+     * @param associationTtl the time to live of the association state of a node in milliseconds
+     */
+    public AssociationNetworkBrowser(ImportingQueue queue, ZigBeeNetworkManager driver,
+                                     int concurrency, long associationTtl) {
         this.queue = queue;
         this.driver = driver;
+        this.concurrency = Math.max(1, concurrency);
+        this.associationTtl = associationTtl;
+    }
+
+    private static int getConcurrency() {
+        int aux = CONCURRENCY_DEFAULT;
+        try {
+            aux = Integer.parseInt(System.getProperty(CONCURRENCY_KEY));
+            logger.trace("Using CONCURRENCY set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using CONCURRENCY set as DEFAULT {}", aux);
+        }
+        return aux;
+    }
+
+    private static long getAssociationTtl() {
+        long aux = ASSOCIATION_TTL_DEFAULT;
+        try {
+            aux = Long.parseLong(System.getProperty(ASSOCIATION_TTL_KEY));
+            logger.trace("Using ASSOCIATION_TTL set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using ASSOCIATION_TTL set as DEFAULT {}", aux);
+        }
+        return aux;
     }
 
     public boolean isInitialNetworkBrowsingComplete() {
         return initialNetworkBrowsingComplete;
     }
 
+    /**
+     * Sets the delay before the first network browsing.
+     *
+     * @param initialDelay the delay in milliseconds
+     */
+    public void setInitialDelay(final long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
     public void task() {
         final String threadName = Thread.currentThread().getName();
 
         logger.trace("{} STARTED Succesfully", threadName);
 
+        if (initialDelay > 0) {
+            logger.debug("Delaying network browsing for {} ms.", initialDelay);
+            ThreadUtils.waitingUntil(System.currentTimeMillis() + initialDelay);
+        }
+
         while (!isDone()) {
-            long wakeUpTime = System.currentTimeMillis() + 15 * 60 * 1000;
-            cleanUpWalkingTree();
+            long wakeUpTime = System.currentTimeMillis() + BROWSING_PERIOD;
 
             logger.debug("Inspecting ZigBee network for new nodes.");
-            toInspect.add(new NetworkAddressNodeItem(null, COORDINATOR_NWK_ADDRESS));
             try {
-                while (toInspect.size() != 0) {
-                    final NetworkAddressNodeItem inspecting = toInspect.remove(toInspect.size() - 1);
-
-                    alreadyInspected.put((int) inspecting.address, inspecting);
-                    logger.trace("Inspecting node #{}.", inspecting.address);
-                    ZDO_IEEE_ADDR_RSP result = driver.sendZDOIEEEAddressRequest(
-                            new ZDO_IEEE_ADDR_REQ((short) inspecting.address, ZDO_IEEE_ADDR_REQ.REQ_TYPE.EXTENDED, (byte) 0)
-                    );
-
-                    if (result == null) {
-                        logger.debug("No answer from #{}.", inspecting.address);
-                        continue;
-                    } else if (result.Status == 0) {
-                        logger.trace(
-                                "Inspection result from #{} with {} associated nodes.",
-                                inspecting.address, result.getAssociatedNodeCount()
-                        );
-                        inspecting.node = new ZigBeeNodeImpl(inspecting.address, result.getIeeeAddress(),
-                                (short) driver.getCurrentPanId());
-
-                        ZToolAddress16 nwk = new ZToolAddress16(
-                                Integers.getByteAsInteger(inspecting.address, 1),
-                                Integers.getByteAsInteger(inspecting.address, 0)
-                        );
-                        queue.push(nwk, result.getIeeeAddress());
-
-                        notifyBrowsedNode(inspecting);
-                    }
-                    toInspect.addAll(addChildrenNodesToInspectingQueue(inspecting, result));
-                }
-
+                browse();
             } catch (Exception e) {
-                e.printStackTrace();
+                logger.error("Network browsing failed.", e);
             }
             logger.debug("Network browsing completed, waiting until {}", wakeUpTime);
             initialNetworkBrowsingComplete = true;
@@ -141,57 +271,210 @@ public class AssociationNetworkBrowser extends RunnableThread {
         logger.debug("{} TERMINATED Succesfully", threadName);
     }
 
+    /**
+     * Sends an extended IEEE address request for one page of the association list of a node.
+     * The response is queued for the browsing thread.
+     *
+     * @param request the association request
+     * @param index the index of the first associated node requested
+     */
+    private void requestPage(final AssociationRequest request, final int index) {
+        logger.trace("Inspecting node #{} from index {}.", request.address, index);
+        driver.sendZDOIEEEAddressRequestAsync(
+                new ZDO_IEEE_ADDR_REQ((short) request.address, ZDO_IEEE_ADDR_REQ.REQ_TYPE.EXTENDED, (byte) index)
+        ).addListener(new CommandFutureListener<ZDO_IEEE_ADDR_RSP>() {
+            public void commandCompleted(final ZDO_IEEE_ADDR_RSP response) {
+                completedPages.add(new AssociationPage(request, response));
+            }
+        });
+    }
+
+    /**
+     * Walks the association tree from the coordinator.
+     */
+    void browse() {
+        walk++;
+        completedPages.clear();
+
+        final long now = System.currentTimeMillis();
+        final BitSet queued = new BitSet(NWK_ADDRESS_COUNT);
+        final Deque<AssociationRequest> pending = new ArrayDeque<AssociationRequest>();
+        queued.set(COORDINATOR_NWK_ADDRESS);
+        pending.add(new AssociationRequest(walk, COORDINATOR_NWK_ADDRESS, -1, true));
+
+        int inFlight = 0;
+        int requested = 0;
+        while (!pending.isEmpty() || inFlight > 0) {
+            if (isDone()) {
+                return;
+            }
+
+            while (inFlight < concurrency && !pending.isEmpty()) {
+                final AssociationRequest request = pending.poll();
+                final Association known = associations.get(request.address);
+                if (known != null && known.count == 0 && !request.parentChanged
+                        && now - known.timestamp < associationTtl) {
+                    logger.trace("Node #{} has no associations and its parent did not change, request skipped",
+                            request.address);
+                    continue;
+                }
+                requestPage(request, 0);
+                inFlight++;
+                requested++;
+            }
+            if (inFlight == 0) {
+                continue;
+            }
+
+            final AssociationPage page;
+            try {
+                page = completedPages.take();
+            } catch (InterruptedException e) {
+                logger.debug("Network browsing interrupted.");
+                return;
+            }
+            final AssociationRequest request = page.request;
+            if (request.walk != walk) {
+                continue;
+            }
+
+            ZDO_IEEE_ADDR_RSP response = page.response;
+            if (response != null && response.Status == 0 && !isFrom(response, request)) {
+                logger.warn("Discarded association list of #{} ({}) received for #{} ({})", new Object[]{
+                        response.nwkAddr.get16BitValue(), response.getIeeeAddress(),
+                        request.address, request.ieeeAddress});
+                response = null;
+            }
+            Association known = associations.get(request.address);
+            if (known != null && response != null && response.Status == 0
+                    && !known.ieeeAddress.equals(response.getIeeeAddress())) {
+                // The network address was taken by another node, its previous association state is stale.
+                known = null;
+            }
+            if (response == null || response.Status != 0) {
+                inFlight--;
+                if (request.ieeeAddress == null) {
+                    logger.debug("No answer from #{}.", request.address);
+                    continue;
+                }
+                // Part of the association list was received, the node is walked with what is known.
+                logger.error("Faild to further inspect connected endpoint to node #{}", request.address);
+                finish(request, null, false, queued, pending);
+                continue;
+            }
 
-    private void cleanUpWalkingTree() {
-        alreadyInspected.clear();
-        toInspect.clear();
-    }
-
-    private ArrayList<NetworkAddressNodeItem> addChildrenNodesToInspectingQueue(NetworkAddressNodeItem inspecting, ZDO_IEEE_ADDR_RSP result) {
-        int start = 0;
-        final ArrayList<NetworkAddressNodeItem> adding = new ArrayList<NetworkAddressNodeItem>();
-        do {
-            int[] toAdd = result.getAssociatedNodesList();
-            for (int i = 0; i < toAdd.length; i++) {
-                logger.trace("Found node #{} associated to node #{}.", toAdd[i], inspecting.address);
-                final NetworkAddressNodeItem next = new NetworkAddressNodeItem(inspecting, toAdd[i]);
-                final NetworkAddressNodeItem found = alreadyInspected.get((int) toAdd[i]);
-                if (found != null) {
-                    //NOTE Logging this wrong behavior but doing nothing
-                    logger.error(
-                            "BROKEN ZIGBEE UNDERSTANDING (while walking address-tree): " +
-                                    "found twice the same node with network address {} ", toAdd[i]
-                    );
-                    logger.debug("Previus node data was {} while current has parent {}", found, inspecting);
-                } else {
-                    adding.add(next);
+            if (request.ieeeAddress == null) {
+                logger.trace(
+                        "Inspection result from #{} with {} associated nodes.",
+                        request.address, response.getAssociatedNodeCount()
+                );
+                request.ieeeAddress = response.getIeeeAddress();
+                request.count = response.getAssociatedNodeCount();
+                if (known != null && known.children != null && known.count == request.count
+                        && now - known.timestamp < associationTtl) {
+                    inFlight--;
+                    request.children = known.children;
+                    finish(request, known, false, queued, pending);
+                    continue;
                 }
             }
-            if (toAdd.length + result.getStartIndex() >= result.getAssociatedNodeCount()) {
-                //NOTE No more node connected to inspecting
-                return adding;
+
+            final int[] children = response.getAssociatedNodesList();
+            request.addChildren(children);
+            final int nextIndex = response.getStartIndex() + children.length;
+            if (children.length > 0 && nextIndex < response.getAssociatedNodeCount()) {
+                logger.info(
+                        "Node #{} as too many endpoints connected to it received only {} out of {}, " +
+                                "we need to inspect it once more", new Object[]{
+                        request.address, nextIndex, response.getAssociatedNodeCount()
+                });
+                requestPage(request, nextIndex);
+                continue;
             }
-            start += toAdd.length;
-
-            logger.info(
-                    "Node #{} as too many endpoints connected to it received only {} out of {}, " +
-                            "we need to inspect it once more", new Object[]{
-                    inspecting.address, toAdd.length, result.getAssociatedNodeCount()
-            });
-            result = driver.sendZDOIEEEAddressRequest(
-                    new ZDO_IEEE_ADDR_REQ((short) inspecting.address, ZDO_IEEE_ADDR_REQ.REQ_TYPE.EXTENDED, (byte) start)
-            );
-            if (result == null) {
-                logger.error("Faild to further inspect connected endpoint to node #{}", inspecting.address);
+            inFlight--;
+
+            final Association listed = new Association(request.ieeeAddress, request.count, request.children,
+                    System.currentTimeMillis());
+            finish(request, listed, known == null || known.children == null
+                    || !Arrays.equals(known.children, request.children), queued, pending);
+        }
+
+        // Nodes which are no longer in the association tree are forgotten.
+        final Iterator<Integer> iterator = associations.keySet().iterator();
+        while (iterator.hasNext()) {
+            final int address = iterator.next();
+            if (!queued.get(address)) {
+                logger.debug("Node #{} not associated anymore.", address);
+                iterator.remove();
             }
-        } while (result != null);
+        }
+        logger.debug("Network browsing requested {} of {} nodes.", requested, queued.cardinality());
+    }
 
-        return adding;
+    /**
+     * Queues the inspected node for importing and its associated nodes for inspection.
+     *
+     * @param request the association request
+     * @param association the new association state or null if the association list is incomplete
+     * @param changed true if the association list changed since the previous walk
+     * @param queued the network addresses already queued during this walk
+     * @param pending the nodes waiting to be inspected
+     */
+    private void finish(final AssociationRequest request, final Association association, final boolean changed,
+                        final BitSet queued, final Deque<AssociationRequest> pending) {
+        if (association != null) {
+            associations.put(request.address, association);
+        } else {
+            associations.put(request.address,
+                    new Association(request.ieeeAddress, request.count, null, System.currentTimeMillis()));
+        }
+        if (changed) {
+            logger.debug("Association list of #{} changed, walking its subtree.", request.address);
+        }
+
+        queue.push(toAddress16(request.address), request.ieeeAddress, request.parent);
+        notifyBrowsedNode(new ZigBeeNodeImpl(request.address, request.ieeeAddress, (short) driver.getCurrentPanId()));
+
+        final boolean subtreeChanged = changed || association == null;
+        for (final int child : request.children) {
+            logger.trace("Found node #{} associated to node #{}.", child, request.address);
+            if (queued.get(child)) {
+                //NOTE Logging this wrong behavior but doing nothing
+                logger.error(
+                        "BROKEN ZIGBEE UNDERSTANDING (while walking address-tree): " +
+                                "found twice the same node with network address {} ", child
+                );
+                logger.debug("Current node has parent {}", request);
+                continue;
+            }
+            queued.set(child);
+            pending.add(new AssociationRequest(walk, child, request.address, subtreeChanged));
+        }
     }
 
-    private void notifyBrowsedNode(NetworkAddressNodeItem item) {
-        final ZigBeeNode node = item.node;
+    /**
+     * Checks whether the response was sent by the node of the request. The later pages of the
+     * association list must come from the same IEEE address as the first page.
+     *
+     * @param response the response
+     * @param request the association request
+     * @return true if the response belongs to the request
+     */
+    private static boolean isFrom(final ZDO_IEEE_ADDR_RSP response, final AssociationRequest request) {
+        if (response.nwkAddr == null || response.nwkAddr.get16BitValue() != request.address) {
+            return false;
+        }
+        return request.ieeeAddress == null || request.ieeeAddress.equals(response.getIeeeAddress());
+    }
+
+    private static ZToolAddress16 toAddress16(int nwkAddress) {
+        return new ZToolAddress16(
+                Integers.getByteAsInteger(nwkAddress, 1),
+                Integers.getByteAsInteger(nwkAddress, 0)
+        );
+    }
 
+    private void notifyBrowsedNode(ZigBeeNode node) {
         final ZigBeeNetwork network = ApplicationFrameworkLayer.getAFLayer(driver).getZigBeeNetwork();
         network.notifyNodeBrowsed(node);
     }
@@ -36,14 +36,17 @@ import org.bubblecloud.zigbee.network.packet.zdo.ZDO_NODE_DESC_REQ;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_NODE_DESC_RSP;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_POWER_DESC_REQ;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_POWER_DESC_RSP;
+import org.bubblecloud.zigbee.util.DaemonThreadFactory;
 import org.bubblecloud.zigbee.util.Stoppable;
-import org.bubblecloud.zigbee.util.ThreadUtils;
 import org.bubblecloud.zigbee.network.model.IEEEAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class implements the {@link Thread} that completes the discovery of the node
@@ -60,6 +63,15 @@ import java.util.Map.Entry;
  * leads to the creation of {@link ZigBeeEndpoint}.
  * <p>
  * If no endpoints are found on the device, the {@link ZigBeeNode} is removed from the nodes list.
+ * <p>
+ * Inspections are executed by a pool of worker threads. Nodes are taken from the {@link ImportingQueue}
+ * only when a worker is free, so the queue keeps coalescing repeated discoveries of waiting nodes,
+ * and a node stays in flight in the queue until its inspection succeeds or is given up. Inspections
+ * are ordered by the {@link ImportingQueue.Priority} of the node, then new inspections by arrival take
+ * precedence over retries, which are ordered by the number of failed attempts. The number of
+ * inspections in progress behind a single router (the parent router when known, otherwise the node
+ * itself) is capped to avoid flooding one branch of the network. Failed inspections are rescheduled
+ * on a timer with exponential backoff.
  *
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
  * @author <a href="mailto:francesco.furfari@isti.cnr.it">Francesco Furfari</a>
@@ -71,57 +83,178 @@ public class EndpointBuilder implements Stoppable {
 
     private static final Logger logger = LoggerFactory.getLogger(EndpointBuilder.class);
 
-    private final ImportingQueue queue;
-    private final List<ZigBeeEndpointReference> failedEndpoints = new ArrayList<ZigBeeEndpointReference>();
+    public static final int INSPECTION_CONCURRENCY_DEFAULT = 4;
+    public static final String INSPECTION_CONCURRENCY_KEY = "zigbee.discovery.inspection.concurrency";
+
+    public static final int ROUTER_CONCURRENCY_DEFAULT = 2;
+    public static final String ROUTER_CONCURRENCY_KEY = "zigbee.discovery.inspection.router.concurrency";
+
+    public static final int MAX_ATTEMPTS_DEFAULT = 5;
+    public static final String MAX_ATTEMPTS_KEY = "zigbee.discovery.inspection.attempts";
 
-    private Map<ZigBeeEndpointReference, Integer> failedAttempts = new HashMap<ZigBeeEndpointReference, Integer>();
-    private final int maxRetriesFailedEndpoints = 3;
+    public static final int RETRY_BACKOFF_DEFAULT = 1000;
+    public static final String RETRY_BACKOFF_KEY = "zigbee.discovery.inspection.backoff";
 
-    private Map<ZigBeeEndpointReference, Long> delayedReattempts = new HashMap<ZigBeeEndpointReference, Long>();
-    private final long delay = 60000;
+    private static final long MAX_RETRY_BACKOFF = 60000;
 
+    private final ImportingQueue queue;
     private final ZigBeeNetworkManager driver;
     private boolean end;
 
-    private long nextInspectionSlot = 0;
-//    private ImportingQueue.ZigBeeNodeAddress dev;
+    private final int concurrency;
+    private final int routerConcurrency;
+    private final int maxAttempts;
+    private final long retryBackoff;
+
+    private final TreeSet<Inspection> newInspections = new TreeSet<Inspection>();
+    private final TreeSet<Inspection> retryInspections = new TreeSet<Inspection>();
+    private final Map<Integer, Integer> routerInspections = new HashMap<Integer, Integer>();
+    private int activeInspections = 0;
+    private int activeNewInspections = 0;
+    private int scheduledRetries = 0;
+    private long sequence = 0;
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryTimer;
+    private volatile LinkQualityHistory linkQualityHistory;
+
+    /**
+     * Unit of inspection work executed by the worker threads.
+     */
+    private abstract class Inspection implements Runnable, Comparable<Inspection> {
+        final int router;
+        int attempts = 0;
+        int priority = ImportingQueue.Priority.REDISCOVERY.ordinal();
+        long order;
+
+        Inspection(int router) {
+            this.router = router;
+        }
+
+        abstract boolean inspect();
+
+        /**
+         * Invoked when the inspection succeeded or was given up.
+         */
+        void finished() {
+        }
+
+        public void run() {
+            boolean success = false;
+            try {
+                success = inspect();
+            } catch (Exception e) {
+                logger.error("Error in {}", this, e);
+            } finally {
+                completed(this, success);
+            }
+        }
+
+        public int compareTo(Inspection o) {
+            if (priority != o.priority) {
+                return priority < o.priority ? -1 : 1;
+            }
+            if (attempts != o.attempts) {
+                return attempts < o.attempts ? -1 : 1;
+            }
+            return order < o.order ? -1 : (order == o.order ? 0 : 1);
+        }
+    }
+
+    private class NodeInspection extends Inspection {
+        final ImportingQueue.ZigBeeNodeAddress address;
+
+        NodeInspection(ImportingQueue.ZigBeeNodeAddress address) {
+            super(address.getParentNetworkAddress() != -1 ? address.getParentNetworkAddress()
+                    : address.getNetworkAddress().get16BitValue());
+            this.address = address;
+            this.priority = address.getPriority().ordinal();
+        }
+
+        boolean inspect() {
+            logger.debug("Inspecting device {}.", IEEEAddress.toString(address.getIeeeAddress().getLong()));
+            return inspectNode(address.getNetworkAddress(), address.getIeeeAddress());
+        }
+
+        void finished() {
+            queue.done(address);
+        }
+
+        public String toString() {
+            return "inspection of node " + IEEEAddress.toString(address.getIeeeAddress().getLong());
+        }
+    }
 
-    private class ZigBeeEndpointReference {
-        ZigBeeNode node;
-        short endPoint;
+    private class EndpointInspection extends Inspection {
+        final ZigBeeNode node;
+        final short endPoint;
 
-        ZigBeeEndpointReference(ZigBeeNode node, short ep) {
-            super();
+        EndpointInspection(ZigBeeNode node, short endPoint) {
+            super(node.getNetworkAddress());
             this.node = node;
-            this.endPoint = ep;
+            this.endPoint = endPoint;
+        }
+
+        boolean inspect() {
+            return doCreateZigBeeEndpoint(node, endPoint);
+        }
+
+        public String toString() {
+            return "inspection of endpoint " + endPoint + " on node " + node;
         }
     }
 
     public EndpointBuilder(ImportingQueue queue, ZigBeeNetworkManager driver) {
+        this(queue, driver,
+                getProperty(INSPECTION_CONCURRENCY_KEY, INSPECTION_CONCURRENCY_DEFAULT),
+                getProperty(ROUTER_CONCURRENCY_KEY, ROUTER_CONCURRENCY_DEFAULT),
+                getProperty(MAX_ATTEMPTS_KEY, MAX_ATTEMPTS_DEFAULT),
+                getProperty(RETRY_BACKOFF_KEY, RETRY_BACKOFF_DEFAULT));
+    }
+
+    /**
+     * @param queue the queue of nodes to inspect
+     * @param driver the network manager
+     * @param concurrency the maximum number of inspections in progress
+     * @param routerConcurrency the maximum number of inspections in progress behind a single router
+     * @param maxAttempts the maximum number of attempts of an inspection
+     * @param retryBackoff the delay in milliseconds before the first retry, doubled on each retry
+     */
+    public EndpointBuilder(ImportingQueue queue, ZigBeeNetworkManager driver, int concurrency,
+                           int routerConcurrency, int maxAttempts, long retryBackoff) {
         this.queue = queue;
         this.driver = driver;
+        this.concurrency = Math.max(1, concurrency);
+        this.routerConcurrency = Math.max(1, routerConcurrency);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoff = retryBackoff;
+        workers = Executors.newFixedThreadPool(this.concurrency, new DaemonThreadFactory("EndpointBuilder"));
+        retryTimer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("EndpointBuilderRetry"));
     }
 
-    private boolean inspectEndpointOfNode(final int nwkAddress, final ZigBeeNode node) {
-        int i = 0;
-        ZDO_ACTIVE_EP_RSP result = null;
-
-        while (i <= 1) {
-            result = driver.sendZDOActiveEndPointRequest(new ZDO_ACTIVE_EP_REQ(nwkAddress));
+    /**
+     * Sets the link quality history whose entry of the previous network address is removed when
+     * a node is found with a new network address.
+     *
+     * @param linkQualityHistory the link quality history
+     */
+    public void setLinkQualityHistory(final LinkQualityHistory linkQualityHistory) {
+        this.linkQualityHistory = linkQualityHistory;
+    }
 
-            if (result == null) {
-                final long waiting = 1000;
-                logger.trace(
-                        "Inspecting device on node {} failed during the {}-nth attempt. " +
-                                "Waiting for {}ms before retrying",
-                        new Object[]{node, i, waiting}
-                );
-                ThreadUtils.waitNonPreemptive(waiting);
-                i++;
-            } else {
-                break;
-            }
+    private static int getProperty(String key, int defaultValue) {
+        int aux = defaultValue;
+        try {
+            aux = Integer.parseInt(System.getProperty(key));
+            logger.trace("Using {} set from enviroment {}", key, aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using {} set as DEFAULT {}", key, aux);
         }
+        return aux;
+    }
+
+    private boolean inspectEndpointOfNode(final int nwkAddress, final ZigBeeNode node) {
+        final ZDO_ACTIVE_EP_RSP result = driver.sendZDOActiveEndPointRequest(new ZDO_ACTIVE_EP_REQ(nwkAddress));
 
         if (result == null) {
             logger.warn("ZDO_ACTIVE_EP_REQ FAILED on {}", node);
@@ -130,21 +263,23 @@ public class EndpointBuilder implements Stoppable {
 
         short[] endPoints = result.getActiveEndPointList();
         logger.trace("Found {} end points on #{}.", endPoints.length, nwkAddress);
-        for (i = 0; i < endPoints.length; i++) {
-            doCreateZigBeeEndpoint(node, endPoints[i]);
+        for (int i = 0; i < endPoints.length; i++) {
+            if (!doCreateZigBeeEndpoint(node, endPoints[i])) {
+                retry(new EndpointInspection(node, endPoints[i]));
+            }
         }
 
         return true;
     }
 
-    private void doCreateZigBeeEndpoint(ZigBeeNode node, short ep) {
+    private boolean doCreateZigBeeEndpoint(ZigBeeNode node, short ep) {
         final ZigBeeNetwork network = ApplicationFrameworkLayer.getAFLayer(driver).getZigBeeNetwork();
         synchronized (network) {
             if (network.containsEndpoint(node.getIeeeAddress(), ep)) {
                 logger.info(
                         "Skipping device creation for endpoint {} on node {} as it is created.", ep, node
                 );
-                return;
+                return true;
             } else {
                 logger.trace(
                         "Inspecting node {} / endpoint {}.",
@@ -164,23 +299,14 @@ public class EndpointBuilder implements Stoppable {
                     && !network.addEndpoint(endpoint)) {
                 logger.error("Failed to add endpoint {} to the network map for node {}", ep, node);
             }
+            return true;
         } catch (ZigBeeNetworkManagerException e) {
             logger.error("Error building the device: {}", node, e);
-
-            ZigBeeEndpointReference last = new ZigBeeEndpointReference(node, ep);
-            if (!failedAttempts.containsKey(last))
-                failedAttempts.put(last, 0);
-            else if (failedAttempts.get(last) + 1 < maxRetriesFailedEndpoints)
-                failedAttempts.put(last, failedAttempts.get(last) + 1);
-            else {
-                logger.debug("Too many attempts failed, device {}:{} adding delayed of {} ms", new Object[]{node, ep, delay});
-                failedEndpoints.remove(last);
-                delayedReattempts.put(last, delay);
-            }
+            return false;
         }
     }
 
-    private void inspectNode(ZToolAddress16 nwkAddress, ZToolAddress64 ieeeAddress) {
+    private boolean inspectNode(ZToolAddress16 nwkAddress, ZToolAddress64 ieeeAddress) {
         int nwk = nwkAddress.get16BitValue();
         final String ieee = IEEEAddress.toString(ieeeAddress.getLong());
         ZigBeeNodeImpl node = null;
@@ -233,12 +359,13 @@ public class EndpointBuilder implements Stoppable {
             // Get a list of supported endpoints
             correctlyInspected = inspectEndpointOfNode(nwk, node);
             if (correctlyInspected) {
-                return;
+                return true;
             } else {
                 // if you don't remove node with devices not yet inspected from network, you won't be able to re-inspect them later
                 // maybe device is sleeping and you have to wait for a non-sleeping period
                 logger.warn("Node {} removed from network because no endpoints have been discovered", node);
                 network.removeNode(node);
+                return false;
             }
         } else {
             if (node.getNetworkAddress() != nwk) { //TODO We have to verify this step by means of JUnit
@@ -247,110 +374,196 @@ public class EndpointBuilder implements Stoppable {
                         node, nwkAddress.get16BitValue()
                 );
 
-                node.setNetworkAddress(nwk);
+                final ZigBeeNodeImpl previousNode = network.getNodeByNetworkAddress(nwk);
+                if (previousNode != null && previousNode != node) {
+                    logger.warn("Network address #{} of {} has been taken by {}", new Object[]{nwk, previousNode, node});
+                }
+                final int previousNwk = node.getNetworkAddress();
+                network.updateNetworkAddress(node, nwk);
+                final LinkQualityHistory history = linkQualityHistory;
+                if (history != null) {
+                    history.removeNode(previousNwk);
+                }
 
                 // Notify listeners that the device has been updated
                 for (final ZigBeeEndpoint endpoint : network.getEndPoints(node)) {
+                    if (endpoint instanceof ZigBeeEndpointImpl) {
+                        ((ZigBeeEndpointImpl) endpoint).updateNetworkAddress();
+                    }
                     network.notifyEndpointUpdated(endpoint);
                 }
             }
+            return true;
         }
     }
 
-    boolean inspectingNewEndpoint = false;
-    private void inspectNewEndpoint() {
-        nextInspectionSlot = 10 + System.currentTimeMillis();
-        final ImportingQueue.ZigBeeNodeAddress dev = queue.pop();
-        if (dev == null)  {
+    /**
+     * Queues inspection and starts the queued inspections which fit to the concurrency limits.
+     *
+     * @param inspection the inspection
+     * @param isRetry true if inspection is retry of a failed inspection
+     */
+    private synchronized void enqueue(final Inspection inspection, final boolean isRetry) {
+        if (end) {
             return;
         }
-        inspectingNewEndpoint = true;
-        final ZToolAddress16 nwk = dev.getNetworkAddress();
-        final ZToolAddress64 ieee = dev.getIeeeAddress();
-        logger.debug("Inspecting device {}.", IEEEAddress.toString(ieee.getLong()));
-        inspectNode(nwk, ieee);
-        logger.debug("Endpoint inspection completed, next inspection slot in {}",
-                Math.max(nextInspectionSlot - System.currentTimeMillis(), 0)
-        );
-        inspectingNewEndpoint = false;
+        inspection.order = sequence++;
+        if (isRetry) {
+            retryInspections.add(inspection);
+        } else {
+            newInspections.add(inspection);
+        }
+        dispatch();
     }
 
-    private void inspectFailedEndpoint() {
-        //TODO We should add a statistical history for removing a device when we tried it too many times
-        logger.info("Trying to register a node extracted from FailedQueue");
-        final ZigBeeEndpointReference failed = failedEndpoints.get(0);
-        nextInspectionSlot = 10 + System.currentTimeMillis();
-        doCreateZigBeeEndpoint(failed.node, failed.endPoint);
+    private void dispatch() {
+        while (!end && activeInspections < concurrency) {
+            final Inspection newInspection = peekDispatchable(newInspections);
+            final Inspection retryInspection = peekDispatchable(retryInspections);
+            final Inspection next;
+            if (newInspection != null
+                    && (retryInspection == null || newInspection.priority <= retryInspection.priority)) {
+                next = newInspection;
+                newInspections.remove(next);
+            } else if (retryInspection != null) {
+                next = retryInspection;
+                retryInspections.remove(next);
+            } else {
+                return;
+            }
+            activeInspections++;
+            if (next.attempts == 0) {
+                activeNewInspections++;
+            }
+            routerInspections.put(next.router, getRouterInspections(next.router) + 1);
+            workers.execute(next);
+        }
+    }
+
+    private Inspection peekDispatchable(final TreeSet<Inspection> inspections) {
+        for (final Inspection inspection : inspections) {
+            if (getRouterInspections(inspection.router) < routerConcurrency) {
+                return inspection;
+            }
+        }
+        return null;
+    }
+
+    private int getRouterInspections(final int router) {
+        final Integer count = routerInspections.get(router);
+        return count == null ? 0 : count;
+    }
+
+    private synchronized void completed(final Inspection inspection, final boolean success) {
+        activeInspections--;
+        if (inspection.attempts == 0) {
+            activeNewInspections--;
+        }
+        final int count = getRouterInspections(inspection.router) - 1;
+        if (count > 0) {
+            routerInspections.put(inspection.router, count);
+        } else {
+            routerInspections.remove(inspection.router);
+        }
+        if (success) {
+            inspection.finished();
+        } else {
+            retry(inspection);
+        }
+        dispatch();
+        notifyAll();
+    }
+
+    /**
+     * Schedules retry of failed inspection after exponential backoff or drops the inspection
+     * if it has failed too many times.
+     *
+     * @param inspection the failed inspection
+     */
+    private synchronized void retry(final Inspection inspection) {
+        if (end) {
+            return;
+        }
+        inspection.attempts++;
+        if (inspection.attempts >= maxAttempts) {
+            logger.warn("Giving up {} after {} failed attempts", inspection, inspection.attempts);
+            inspection.finished();
+            return;
+        }
+        final long backoff = Math.min(retryBackoff << Math.min(inspection.attempts - 1, 16), MAX_RETRY_BACKOFF);
+        logger.debug("Retrying {} in {} ms", inspection, backoff);
+        scheduledRetries++;
+        retryTimer.schedule(new Runnable() {
+            public void run() {
+                synchronized (EndpointBuilder.this) {
+                    scheduledRetries--;
+                }
+                enqueue(inspection, true);
+            }
+        }, backoff, TimeUnit.MILLISECONDS);
     }
 
     /**
      * @return the number of Node waiting for inspection
      * @since 0.6.0 - Revision 71
      */
-    public int getPendingNodes() {
-        return queue.size();
+    public synchronized int getPendingNodes() {
+        return queue.size() + newInspections.size();
     }
 
     /**
-     * @return the number of Node waiting for inspection
+     * @return the number of inspections waiting for retry
      * @since 0.6.0 - Revision 71
      */
-    public int getPendingEndpoints() {
-        return failedEndpoints.size();
+    public synchronized int getPendingEndpoints() {
+        return retryInspections.size() + scheduledRetries;
     }
 
     public void run() {
         logger.trace("{} STARTED Successfully", Thread.currentThread().getName());
 
         while (!isEnd()) {
-            try {
-                if (!delayedReattempts.isEmpty()) {
-                    Iterator<Entry<ZigBeeEndpointReference, Long>> iterator = delayedReattempts.entrySet().iterator();
-                    while (iterator.hasNext()) {
-                        Entry<ZigBeeEndpointReference, Long> endpointReferenceEntry = iterator.next();
-                        if ((endpointReferenceEntry.getValue() + delay) >= System.currentTimeMillis()) {
-                            failedEndpoints.add(endpointReferenceEntry.getKey());
-                            logger.debug("EP {} of node {} has been readded to queue for inspection after {} ms",
-                                    new Object[]{endpointReferenceEntry.getKey().endPoint,
-                                            endpointReferenceEntry.getKey().node,
-                                            System.currentTimeMillis() - endpointReferenceEntry.getValue()});
-                        }
-                    }
-                }
-                ThreadUtils.waitingUntil(nextInspectionSlot);
-
-                if (queue.size() > 0 && failedEndpoints.size() > 0) {
-                    double sel = Math.random();
-                    if (sel > 0.6) {
-                        inspectFailedEndpoint();
-                    } else {
-                        inspectNewEndpoint();
-                    }
-                } else if (queue.size() == 0 && failedEndpoints.size() > 0) {
-                    inspectFailedEndpoint();
-                } else if (queue.size() > 0 && failedEndpoints.size() == 0) {
-                    inspectNewEndpoint();
-                } else if (queue.size() == 0 && failedEndpoints.size() == 0) {
-                    inspectNewEndpoint();
-                }
-
-            } catch (Exception e) {
-                e.printStackTrace();
+            if (!waitForCapacity()) {
+                break;
+            }
+            final ImportingQueue.ZigBeeNodeAddress dev = queue.pop();
+            if (dev == null) {
+                continue;
             }
+            enqueue(new NodeInspection(dev), false);
         }
 
+        workers.shutdownNow();
+        retryTimer.shutdownNow();
         logger.trace("{} TERMINATED Successfully", Thread.currentThread().getName());
     }
 
+    /**
+     * Waits until a worker is free for a new node inspection.
+     *
+     * @return false if the builder was ended while waiting
+     */
+    private synchronized boolean waitForCapacity() {
+        while (!end && activeInspections + newInspections.size() >= concurrency) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return !end;
+    }
+
     public synchronized boolean isEnd() {
         return end;
     }
 
     public synchronized void end() {
         end = true;
+        notifyAll();
     }
 
-    public boolean isReady() {
-        return queue.isEmpty() && !inspectingNewEndpoint;
+    public synchronized boolean isReady() {
+        return queue.isEmpty() && newInspections.isEmpty() && activeNewInspections == 0;
     }
 }
@@ -27,9 +27,26 @@ import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Queue of the nodes waiting to be interrogated. The same node is reported over and over by
+ * the announce listener, the network browsers and the incoming application messages, so the
+ * queue keeps at most one entry per node: a push for a node which is already queued, either
+ * by IEEE address or by network address, is coalesced into the queued entry. Entries are
+ * popped in {@link Priority} order and in push order within the same priority. A popped node
+ * stays in flight until its interrogation is reported {@link #done(ZigBeeNodeAddress)}, pushes
+ * for the node in flight are coalesced as well. If the network address of the node in flight
+ * changes, the node is held for re-interrogation and queued when the interrogation in flight is
+ * done, so the same node is never interrogated concurrently. A node interrogated recently is
+ * not queued again by periodic rediscovery unless its network address changed.
+ *
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
  * @author <a href="mailto:francesco.furfari@isti.cnr.it">Francesco Furfari</a>
  * @version $LastChangedRevision: 799 $ ($LastChangedDate: 2013-08-06 19:00:05 +0300 (Tue, 06 Aug 2013) $)
@@ -38,17 +55,59 @@ import java.util.ArrayList;
 public class ImportingQueue {
 
     private static final Logger logger = LoggerFactory.getLogger(ImportingQueue.class);
-    private int waitingThread = 0;
-    private boolean closing = false;
+
+    /**
+     * The default time in milliseconds during which an interrogated node is not queued again by rediscovery.
+     */
+    public static final long REDISCOVERY_HOLDOFF_DEFAULT = 60 * 1000;
+    /**
+     * The system property to override the time in milliseconds during which an interrogated node is not
+     * queued again by rediscovery.
+     */
+    public static final String REDISCOVERY_HOLDOFF_KEY = "zigbee.importing.holdoff";
+
+    /**
+     * The reason a node is queued, in the order the nodes are popped.
+     */
+    public enum Priority {
+        /**
+         * The node announced itself after joining or rejoining the network.
+         */
+        ANNOUNCE,
+        /**
+         * The node sent an application message but is not known.
+         */
+        UNKNOWN_SENDER,
+        /**
+         * The node was found by periodic network browsing.
+         */
+        REDISCOVERY
+    }
 
     public class ZigBeeNodeAddress {
 
         private final ZToolAddress16 networkAddress;
         private final ZToolAddress64 ieeeAddress;
+        private final int parentNetworkAddress;
+        private final Priority priority;
+        private final long queuedTime;
 
         public ZigBeeNodeAddress(final ZToolAddress16 networkAddress, final ZToolAddress64 ieeeAddress) {
+            this(networkAddress, ieeeAddress, -1);
+        }
+
+        public ZigBeeNodeAddress(final ZToolAddress16 networkAddress, final ZToolAddress64 ieeeAddress,
+                                 final int parentNetworkAddress) {
+            this(networkAddress, ieeeAddress, parentNetworkAddress, Priority.REDISCOVERY, System.currentTimeMillis());
+        }
+
+        public ZigBeeNodeAddress(final ZToolAddress16 networkAddress, final ZToolAddress64 ieeeAddress,
+                                 final int parentNetworkAddress, final Priority priority, final long queuedTime) {
             this.networkAddress = networkAddress;
             this.ieeeAddress = ieeeAddress;
+            this.parentNetworkAddress = parentNetworkAddress;
+            this.priority = priority;
+            this.queuedTime = queuedTime;
         }
 
         public final ZToolAddress16 getNetworkAddress() {
@@ -58,54 +117,329 @@ public class ImportingQueue {
         public final ZToolAddress64 getIeeeAddress() {
             return ieeeAddress;
         }
+
+        /**
+         * @return the network address of the parent router or -1 if the parent is not known
+         */
+        public final int getParentNetworkAddress() {
+            return parentNetworkAddress;
+        }
+
+        /**
+         * @return the highest priority the node was pushed with while queued
+         */
+        public final Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return the time the node was first pushed in milliseconds
+         */
+        public final long getQueuedTime() {
+            return queuedTime;
+        }
+    }
+
+    /**
+     * Queued node. Repeated pushes of the node update the entry in place.
+     */
+    private static class Entry implements Comparable<Entry> {
+        final long sequence;
+        final long queuedTime;
+        long ieeeAddress;
+        ZToolAddress64 ieee;
+        ZToolAddress16 networkAddress;
+        int parentNetworkAddress;
+        Priority priority;
+
+        Entry(final long sequence, final long queuedTime) {
+            this.sequence = sequence;
+            this.queuedTime = queuedTime;
+        }
+
+        public int compareTo(final Entry o) {
+            if (priority != o.priority) {
+                return priority.compareTo(o.priority);
+            }
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+
+    private final long rediscoveryHoldoff;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    /**
+     * The queued entries in pop order.
+     */
+    private final TreeSet<Entry> entries = new TreeSet<Entry>();
+    /**
+     * The queued entries keyed by IEEE address.
+     */
+    private final Map<Long, Entry> byIeeeAddress = new HashMap<Long, Entry>();
+    /**
+     * The queued entries keyed by network address.
+     */
+    private final Map<Integer, Entry> byNetworkAddress = new HashMap<Integer, Entry>();
+    /**
+     * The popped entries being interrogated keyed by IEEE address.
+     */
+    private final Map<Long, Entry> inFlight = new HashMap<Long, Entry>();
+    /**
+     * The entries of the nodes in flight pushed with another network address keyed by IEEE address.
+     * The entry is queued when the interrogation in flight is done.
+     */
+    private final Map<Long, Entry> pendingReinterrogation = new HashMap<Long, Entry>();
+    /**
+     * The network address and completion time of the recently interrogated nodes keyed by IEEE address,
+     * oldest first.
+     */
+    private final LinkedHashMap<Long, long[]> recentlyDone = new LinkedHashMap<Long, long[]>();
+    /**
+     * The number of entries queued per priority.
+     */
+    private final int[] depths = new int[Priority.values().length];
+    private long sequence = 0;
+    private long coalescedPushes = 0;
+    private boolean closing = false;
+
+    /**
+     * Constructor which sets the rediscovery holdoff from system property or default.
+     */
+    public ImportingQueue() {
+        this(getRediscoveryHoldoff());
     }
 
-    private final ArrayList<ZigBeeNodeAddress> addresses = new ArrayList<ZigBeeNodeAddress>();
+    /**
+     * @param rediscoveryHoldoff the time in milliseconds during which an interrogated node is not queued
+     *                           again by rediscovery
+     */
+    public ImportingQueue(final long rediscoveryHoldoff) {
+        this.rediscoveryHoldoff = rediscoveryHoldoff;
+    }
+
+    private static long getRediscoveryHoldoff() {
+        long aux = REDISCOVERY_HOLDOFF_DEFAULT;
+        try {
+            aux = Long.parseLong(System.getProperty(REDISCOVERY_HOLDOFF_KEY));
+            logger.trace("Using REDISCOVERY_HOLDOFF set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using REDISCOVERY_HOLDOFF set as DEFAULT {}", aux);
+        }
+        return aux;
+    }
 
     public void clear() {
-        synchronized (addresses) {
+        lock.lock();
+        try {
             if (closing) return;
-            addresses.clear();
+            entries.clear();
+            byIeeeAddress.clear();
+            byNetworkAddress.clear();
+            inFlight.clear();
+            pendingReinterrogation.clear();
+            recentlyDone.clear();
+            for (int i = 0; i < depths.length; i++) {
+                depths[i] = 0;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     public boolean isEmpty() {
-        synchronized (addresses) {
-            return addresses.size() == 0;
-        }
+        return size() == 0;
     }
 
     public int size() {
-        synchronized (addresses) {
-            return addresses.size();
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of nodes queued with the priority.
+     *
+     * @param priority the priority
+     * @return the number of queued nodes
+     */
+    public int getDepth(final Priority priority) {
+        lock.lock();
+        try {
+            return depths[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of popped nodes whose interrogation is not done yet.
+     *
+     * @return the number of nodes in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the time the oldest queued node has been waiting.
+     *
+     * @return the age in milliseconds or 0 if the queue is empty
+     */
+    public long getOldestAge() {
+        lock.lock();
+        try {
+            long oldest = Long.MAX_VALUE;
+            for (final Entry entry : entries) {
+                oldest = Math.min(oldest, entry.queuedTime);
+            }
+            return entries.isEmpty() ? 0 : System.currentTimeMillis() - oldest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of pushes which were coalesced into an already queued or in flight node
+     * or dropped because the node was interrogated recently.
+     *
+     * @return the number of coalesced pushes
+     */
+    public long getCoalescedPushes() {
+        lock.lock();
+        try {
+            return coalescedPushes;
+        } finally {
+            lock.unlock();
         }
     }
 
     public void push(ZToolAddress16 nwkAddress, ZToolAddress64 ieeeAddress) {
-        ZigBeeNodeAddress inserting = new ZigBeeNodeAddress(nwkAddress, ieeeAddress);
+        push(nwkAddress, ieeeAddress, -1);
+    }
+
+    public void push(ZToolAddress16 nwkAddress, ZToolAddress64 ieeeAddress, int parentNwkAddress) {
+        push(nwkAddress, ieeeAddress, parentNwkAddress, Priority.REDISCOVERY);
+    }
+
+    /**
+     * Queues the node or coalesces the push into the queued entry of the node. The queued entry
+     * takes the network address, the known parent and the highest priority of the pushes.
+     *
+     * @param nwkAddress the network address
+     * @param ieeeAddress the IEEE address
+     * @param parentNwkAddress the network address of the parent router or -1 if not known
+     * @param priority the reason the node is queued
+     */
+    public void push(ZToolAddress16 nwkAddress, ZToolAddress64 ieeeAddress, int parentNwkAddress,
+                     Priority priority) {
         logger.trace("Adding {} ({})", nwkAddress, ieeeAddress);
-        synchronized (addresses) {
+        final long ieee = ieeeAddress.getLong();
+        final int nwk = nwkAddress.get16BitValue();
+        final long now = System.currentTimeMillis();
+        lock.lock();
+        try {
             if (closing) return;
-            addresses.add(inserting);
-            addresses.notify();
+
+            final Entry interrogated = inFlight.get(ieee);
+            if (interrogated != null) {
+                Entry pending = pendingReinterrogation.get(ieee);
+                if (pending == null && interrogated.networkAddress.get16BitValue() == nwk) {
+                    coalescedPushes++;
+                    logger.trace("Dropped {} ({}), interrogation in progress", nwkAddress, ieeeAddress);
+                    return;
+                }
+                if (pending == null) {
+                    pending = new Entry(sequence++, now);
+                    pending.ieeeAddress = ieee;
+                    pending.parentNetworkAddress = parentNwkAddress;
+                    pending.priority = priority;
+                    pendingReinterrogation.put(ieee, pending);
+                } else {
+                    coalescedPushes++;
+                    if (priority.compareTo(pending.priority) < 0) {
+                        pending.priority = priority;
+                    }
+                    if (parentNwkAddress != -1) {
+                        pending.parentNetworkAddress = parentNwkAddress;
+                    }
+                }
+                pending.ieee = ieeeAddress;
+                pending.networkAddress = nwkAddress;
+                logger.trace("Held {} ({}) until interrogation in progress is done", nwkAddress, ieeeAddress);
+                return;
+            }
+            expireDone(now);
+            final long[] done = recentlyDone.get(ieee);
+            if (priority == Priority.REDISCOVERY && done != null && done[0] == nwk
+                    && !byIeeeAddress.containsKey(ieee)) {
+                coalescedPushes++;
+                logger.trace("Dropped {} ({}), interrogated {} ms ago", new Object[]{nwkAddress, ieeeAddress, now - done[1]});
+                return;
+            }
+
+            Entry entry = byIeeeAddress.get(ieee);
+            final Entry sameNetworkAddress = byNetworkAddress.get(nwk);
+            if (sameNetworkAddress != null && sameNetworkAddress != entry) {
+                // The network address was reused by another node, the older entry is stale.
+                remove(sameNetworkAddress);
+            }
+            if (entry != null) {
+                coalescedPushes++;
+                remove(entry);
+                if (priority.compareTo(entry.priority) < 0) {
+                    entry.priority = priority;
+                }
+                if (parentNwkAddress != -1) {
+                    entry.parentNetworkAddress = parentNwkAddress;
+                }
+            } else {
+                entry = new Entry(sequence++, now);
+                entry.ieeeAddress = ieee;
+                entry.parentNetworkAddress = parentNwkAddress;
+                entry.priority = priority;
+            }
+            entry.ieee = ieeeAddress;
+            entry.networkAddress = nwkAddress;
+            add(entry);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
         }
         logger.trace("Added {} ({})", nwkAddress, ieeeAddress);
     }
 
+    /**
+     * Waits until a node is queued and removes it from the queue. The node is in flight until
+     * {@link #done(ZigBeeNodeAddress)} is invoked.
+     *
+     * @return the node or null if the queue is closing down
+     */
     public ZigBeeNodeAddress pop() {
         ZigBeeNodeAddress result = null;
         logger.trace("Removing element");
-        synchronized (addresses) {
-            if (closing) return null;
-            waitingThread++;
-            while (addresses.isEmpty()) {
-                try {
-                    addresses.wait();
-                } catch (InterruptedException ignored) {
-                }
+        lock.lock();
+        try {
+            while (!closing && entries.isEmpty()) {
+                notEmpty.awaitUninterruptibly();
             }
-            waitingThread--;
-            result = addresses.remove(addresses.size() - 1);
+            if (!closing) {
+                final Entry entry = entries.first();
+                remove(entry);
+                inFlight.put(entry.ieeeAddress, entry);
+                result = new ZigBeeNodeAddress(entry.networkAddress, entry.ieee, entry.parentNetworkAddress,
+                        entry.priority, entry.queuedTime);
+            }
+        } finally {
+            lock.unlock();
         }
         if (result != null) {
             logger.trace("Removed {} {}", result.networkAddress, result.ieeeAddress);
@@ -115,15 +449,70 @@ public class ImportingQueue {
         return result;
     }
 
-    public void close() {
-        do {
-            synchronized (addresses) {
-                if (waitingThread <= 0) return;
-                closing = true;
-                addresses.add(null);
-                addresses.notify();
+    /**
+     * Marks the interrogation of the popped node done, either completed or given up. If the node
+     * was pushed with another network address during the interrogation, it is queued again.
+     *
+     * @param address the popped node
+     */
+    public void done(final ZigBeeNodeAddress address) {
+        final long ieee = address.getIeeeAddress().getLong();
+        final long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (inFlight.remove(ieee) == null) {
+                return;
             }
-            Thread.yield();
-        } while (true);
+            recentlyDone.remove(ieee);
+            recentlyDone.put(ieee, new long[]{address.getNetworkAddress().get16BitValue(), now});
+            expireDone(now);
+            final Entry pending = pendingReinterrogation.remove(ieee);
+            if (pending != null && !closing) {
+                final Entry sameNetworkAddress = byNetworkAddress.get(pending.networkAddress.get16BitValue());
+                if (sameNetworkAddress != null) {
+                    // The network address was reused by another node, the older entry is stale.
+                    remove(sameNetworkAddress);
+                }
+                add(pending);
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue. Threads waiting in {@link #pop()} are released with null and further
+     * pushes are ignored.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(final Entry entry) {
+        entries.add(entry);
+        byIeeeAddress.put(entry.ieeeAddress, entry);
+        byNetworkAddress.put(entry.networkAddress.get16BitValue(), entry);
+        depths[entry.priority.ordinal()]++;
+    }
+
+    private void remove(final Entry entry) {
+        entries.remove(entry);
+        byIeeeAddress.remove(entry.ieeeAddress);
+        byNetworkAddress.remove(entry.networkAddress.get16BitValue());
+        depths[entry.priority.ordinal()]--;
+    }
+
+    private void expireDone(final long now) {
+        final Iterator<long[]> iterator = recentlyDone.values().iterator();
+        while (iterator.hasNext() && now - iterator.next()[1] >= rediscoveryHoldoff) {
+            iterator.remove();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,293 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.bubblecloud.zigbee.util.TimeSeriesInt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * History of link quality over time for debugging mesh problems. Each node, keyed by network
+ * address, has a time series of the LQI of the frames received from it, which is the quality
+ * of the last hop to the coordinator, and time series of the LQI its neighbour table reports
+ * for its links. The series are {@link TimeSeriesInt} downsampling older samples to minute and
+ * quarter hour means, and the number of link series per node is capped, evicting the least
+ * recently updated link, so the memory used per node is fixed. The number of nodes is capped
+ * as well, evicting the least recently updated node, as a node leaves its history behind each
+ * time it rejoins with a new network address.
+ */
+public class LinkQualityHistory {
+    /**
+     * The default number of samples kept at full resolution per series.
+     */
+    public static final int SAMPLES_DEFAULT = 32;
+    /**
+     * The default number of one minute buckets kept per series.
+     */
+    public static final int MINUTE_BUCKETS_DEFAULT = 60;
+    /**
+     * The default number of quarter hour buckets kept per series.
+     */
+    public static final int QUARTER_HOUR_BUCKETS_DEFAULT = 96;
+    /**
+     * The default maximum number of link series per node.
+     */
+    public static final int LINKS_PER_NODE_DEFAULT = 8;
+    /**
+     * The default maximum number of nodes with history.
+     */
+    public static final int NODES_DEFAULT = 256;
+
+    private static final int[] RESOLUTIONS = new int[]{60, 15 * 60};
+
+    private final int samples;
+    private final int[] buckets;
+    private final int linksPerNode;
+    private final int maxNodes;
+    /**
+     * The history of nodes by network address in access order.
+     */
+    private final Map<Integer, NodeHistory> nodes = new LinkedHashMap<Integer, NodeHistory>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, NodeHistory> eldest) {
+            return size() > maxNodes;
+        }
+    };
+
+    /**
+     * The link quality series of a node.
+     */
+    private class NodeHistory {
+        /**
+         * The LQI of frames received from the node.
+         */
+        final TimeSeriesInt frames = createSeries();
+        /**
+         * The LQI of the links reported by the node by neighbour network address in access order.
+         */
+        final Map<Integer, TimeSeriesInt> links = new LinkedHashMap<Integer, TimeSeriesInt>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, TimeSeriesInt> eldest) {
+                return size() > linksPerNode;
+            }
+        };
+    }
+
+    /**
+     * Constructor which uses the default capacities.
+     */
+    public LinkQualityHistory() {
+        this(SAMPLES_DEFAULT, MINUTE_BUCKETS_DEFAULT, QUARTER_HOUR_BUCKETS_DEFAULT, LINKS_PER_NODE_DEFAULT);
+    }
+
+    /**
+     * Constructor which uses the default maximum number of nodes.
+     *
+     * @param samples the number of samples kept at full resolution per series
+     * @param minuteBuckets the number of one minute buckets kept per series
+     * @param quarterHourBuckets the number of quarter hour buckets kept per series
+     * @param linksPerNode the maximum number of link series per node
+     */
+    public LinkQualityHistory(final int samples, final int minuteBuckets, final int quarterHourBuckets,
+                              final int linksPerNode) {
+        this(samples, minuteBuckets, quarterHourBuckets, linksPerNode, NODES_DEFAULT);
+    }
+
+    /**
+     * @param samples the number of samples kept at full resolution per series
+     * @param minuteBuckets the number of one minute buckets kept per series
+     * @param quarterHourBuckets the number of quarter hour buckets kept per series
+     * @param linksPerNode the maximum number of link series per node
+     * @param maxNodes the maximum number of nodes with history
+     */
+    public LinkQualityHistory(final int samples, final int minuteBuckets, final int quarterHourBuckets,
+                              final int linksPerNode, final int maxNodes) {
+        this.samples = samples;
+        this.buckets = new int[]{minuteBuckets, quarterHourBuckets};
+        this.linksPerNode = linksPerNode;
+        this.maxNodes = maxNodes;
+    }
+
+    private TimeSeriesInt createSeries() {
+        return new TimeSeriesInt(samples, RESOLUTIONS, buckets);
+    }
+
+    /**
+     * Gets the maximum number of ints allocated for a single node.
+     *
+     * @return the number of ints
+     */
+    public int getCapacityPerNode() {
+        return createSeries().getCapacity() * (1 + linksPerNode);
+    }
+
+    /**
+     * Gets the maximum number of ints allocated for all nodes.
+     *
+     * @return the number of ints
+     */
+    public long getCapacity() {
+        return (long) getCapacityPerNode() * maxNodes;
+    }
+
+    /**
+     * Records the LQI of frame received from node.
+     *
+     * @param networkAddress the network address of the node
+     * @param lqi the link quality
+     * @param time the time of reception in milliseconds
+     */
+    public void addFrameSample(final int networkAddress, final int lqi, final long time) {
+        final TimeSeriesInt series;
+        synchronized (nodes) {
+            series = getNodeHistory(networkAddress).frames;
+        }
+        series.add(time, lqi);
+    }
+
+    /**
+     * Records the LQI a router reported for its neighbour.
+     *
+     * @param networkAddress the network address of the router
+     * @param neighbour the network address of the neighbour
+     * @param lqi the link quality
+     * @param time the time of the neighbour table in milliseconds
+     */
+    public void addLinkSample(final int networkAddress, final int neighbour, final int lqi, final long time) {
+        TimeSeriesInt series;
+        synchronized (nodes) {
+            final NodeHistory history = getNodeHistory(networkAddress);
+            series = history.links.get(neighbour);
+            if (series == null) {
+                series = createSeries();
+                history.links.put(neighbour, series);
+            }
+        }
+        series.add(time, lqi);
+    }
+
+    /**
+     * Gets the series of LQI of frames received from node.
+     *
+     * @param networkAddress the network address of the node
+     * @return the series or null if nothing has been received from the node
+     */
+    public TimeSeriesInt getFrameSeries(final int networkAddress) {
+        synchronized (nodes) {
+            final NodeHistory history = nodes.get(networkAddress);
+            return history != null ? history.frames : null;
+        }
+    }
+
+    /**
+     * Gets the series of LQI reported by router for its neighbour.
+     *
+     * @param networkAddress the network address of the router
+     * @param neighbour the network address of the neighbour
+     * @return the series or null if the link has not been reported
+     */
+    public TimeSeriesInt getLinkSeries(final int networkAddress, final int neighbour) {
+        synchronized (nodes) {
+            final NodeHistory history = nodes.get(networkAddress);
+            return history != null ? history.links.get(neighbour) : null;
+        }
+    }
+
+    /**
+     * Gets percentile of the LQI of frames received from node in time window.
+     *
+     * @param networkAddress the network address of the node
+     * @param from the start of the window in milliseconds
+     * @param to the end of the window in milliseconds
+     * @param percentile the percentile between 0 and 100
+     * @return the LQI or -1 if no samples are in the window
+     */
+    public int getFramePercentile(final int networkAddress, final long from, final long to, final double percentile) {
+        final TimeSeriesInt series = getFrameSeries(networkAddress);
+        return series != null ? series.getPercentile(from, to, percentile) : -1;
+    }
+
+    /**
+     * Gets percentile of the LQI reported by router for its neighbour in time window.
+     *
+     * @param networkAddress the network address of the router
+     * @param neighbour the network address of the neighbour
+     * @param from the start of the window in milliseconds
+     * @param to the end of the window in milliseconds
+     * @param percentile the percentile between 0 and 100
+     * @return the LQI or -1 if no samples are in the window
+     */
+    public int getLinkPercentile(final int networkAddress, final int neighbour, final long from, final long to,
+                                 final double percentile) {
+        final TimeSeriesInt series = getLinkSeries(networkAddress, neighbour);
+        return series != null ? series.getPercentile(from, to, percentile) : -1;
+    }
+
+    /**
+     * Gets the network addresses of the nodes with history.
+     *
+     * @return the sorted list of network addresses
+     */
+    public List<Integer> getNodes() {
+        final List<Integer> networkAddresses;
+        synchronized (nodes) {
+            networkAddresses = new ArrayList<Integer>(nodes.keySet());
+        }
+        Collections.sort(networkAddresses);
+        return networkAddresses;
+    }
+
+    /**
+     * Gets the network addresses of the neighbours with link history of router.
+     *
+     * @param networkAddress the network address of the router
+     * @return the sorted list of network addresses
+     */
+    public List<Integer> getNeighbours(final int networkAddress) {
+        final List<Integer> networkAddresses;
+        synchronized (nodes) {
+            final NodeHistory history = nodes.get(networkAddress);
+            if (history == null) {
+                return new ArrayList<Integer>();
+            }
+            networkAddresses = new ArrayList<Integer>(history.links.keySet());
+        }
+        Collections.sort(networkAddresses);
+        return networkAddresses;
+    }
+
+    /**
+     * Removes the history of node.
+     *
+     * @param networkAddress the network address of the node
+     */
+    public void removeNode(final int networkAddress) {
+        synchronized (nodes) {
+            nodes.remove(networkAddress);
+        }
+    }
+
+    private NodeHistory getNodeHistory(final int networkAddress) {
+        NodeHistory history = nodes.get(networkAddress);
+        if (history == null) {
+            history = new NodeHistory();
+            nodes.put(networkAddress, history);
+        }
+        return history;
+    }
+}
@@ -22,9 +22,12 @@
 
 package org.bubblecloud.zigbee.network.discovery;
 
+import org.bubblecloud.zigbee.network.CommandFutureListener;
 import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetwork;
 import org.bubblecloud.zigbee.network.packet.ZToolAddress16;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_REQ;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_RSP;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_MGMT_LQI_REQ;
@@ -39,17 +42,27 @@ import org.bubblecloud.zigbee.network.impl.ZigBeeNodeImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 
 /**
  * Performs a scan of the network getting the Link Quality Information for the different
  * links. If a new device is found, then it's added to the network.
  * <p>
+ * The routers are queried in parallel up to the configured concurrency and neighbour tables
+ * larger than a single response are paged without restarting the walk. The tables are kept
+ * in a {@link NeighbourGraph} and routers whose table is younger than the configured time to
+ * live are not queried again, their known neighbours are walked instead.
+ * <p>
  * Also keeps statistics of the LQI information to allow this to be provided to the user
  * to establish and monitor network quality.
  * 
@@ -63,15 +76,48 @@ public class LinkQualityIndicatorNetworkBrowser extends RunnableThread {
 
     private static final Logger logger = LoggerFactory.getLogger(LinkQualityIndicatorNetworkBrowser.class);
 
-    private static final short COORDINATOR_NWK_ADDRESS = 0;
-    private static final short LQI_START_INDEX = 0;
+    /**
+     * The default maximum number of neighbour table requests in flight.
+     */
+    public static final int CONCURRENCY_DEFAULT = 4;
+    /**
+     * The system property to override the maximum number of neighbour table requests in flight.
+     */
+    public static final String CONCURRENCY_KEY = "zigbee.lqi.concurrency";
+    /**
+     * The default time to live of neighbour tables in milliseconds.
+     */
+    public static final long TABLE_TTL_DEFAULT = 15 * 60 * 1000;
+    /**
+     * The system property to override the time to live of neighbour tables in milliseconds.
+     */
+    public static final String TABLE_TTL_KEY = "zigbee.lqi.ttl";
+
+    private static final int COORDINATOR_NWK_ADDRESS = 0;
+    private static final int LQI_START_INDEX = 0;
+    private static final int NWK_ADDRESS_COUNT = 0x10000;
+    private static final long BROWSING_PERIOD = 5 * 60 * 1000;
 
     private final ImportingQueue queue;
     final ZigBeeNetworkManager driver;
+    private final int concurrency;
+    private final long tableTtl;
+    private volatile long initialDelay = 0;
 
-    final ArrayList<NetworkAddressNodeItem> toInspect = new ArrayList<NetworkAddressNodeItem>();
-    final HashMap<Integer, NetworkAddressNodeItem> alreadyInspected = new HashMap<Integer, NetworkAddressNodeItem>();
+    /**
+     * The neighbour tables of the routers.
+     */
+    private final NeighbourGraph neighbourGraph;
+    /**
+     * The received neighbour table pages waiting to be processed by the browsing thread.
+     */
+    private final BlockingQueue<LqiPage> completedPages = new LinkedBlockingQueue<LqiPage>();
+    /**
+     * The sequence number of the current walk, used to discard late responses of an aborted walk.
+     */
+    private int walk = 0;
     private NetworkNeighbourLinks connectedNodeLinks = new NetworkNeighbourLinks();
+    private volatile LinkQualityHistory linkQualityHistory;
 
     /**
      * This class maintains the link quality information for all nodes and links on the network.
@@ -176,194 +222,339 @@ public class LinkQualityIndicatorNetworkBrowser extends RunnableThread {
         	return dstMap.getAvg();        	
         }
     }
-
-    private class NetworkAddressNodeItem {
-        final NetworkAddressNodeItem parent;
-        final short address;
-        int lqi = -1;
-        ZigBeeNodeImpl node = null;
-
-        NetworkAddressNodeItem(NetworkAddressNodeItem addressTreeParent, short networkAddress) {
-            parent = addressTreeParent;
-            address = networkAddress;
+    /**
+     * Neighbour table of a router being collected page by page.
+     */
+    private static class TableRequest {
+        final int walk;
+        final int address;
+        final List<NeighborLqiListItemClass> entries = new ArrayList<NeighborLqiListItemClass>();
+
+        TableRequest(final int walk, final int address) {
+            this.walk = walk;
+            this.address = address;
         }
 
-        NetworkAddressNodeItem(NetworkAddressNodeItem addressTreeParent, short networkAddress, int quality) {
-            parent = addressTreeParent;
-            address = networkAddress;
-            lqi = quality;
+        NeighbourTable toTable(final long timestamp) {
+            final int size = entries.size();
+            final int[] addresses = new int[size];
+            final long[] ieeeAddresses = new long[size];
+            final int[] lqis = new int[size];
+            final int[] flags = new int[size];
+            final int[] depths = new int[size];
+            for (int i = 0; i < size; i++) {
+                final NeighborLqiListItemClass entry = entries.get(i);
+                addresses[i] = entry.NetworkAddress.get16BitValue();
+                ieeeAddresses[i] = entry.ExtendedAddress.getLong();
+                lqis[i] = entry.RxLQI;
+                flags[i] = entry.Reserved_Relationship_RxOnWhenIdle_DeviceType;
+                depths[i] = entry.Depth;
+            }
+            return new NeighbourTable(address, timestamp, addresses, ieeeAddresses, lqis, flags, depths);
         }
+    }
 
-        public int getParent() {
-        	return parent.address;
-        }
-        
-        public int getAddress() {
-        	return address;
-        }
+    /**
+     * Response to a neighbour table request.
+     */
+    private static class LqiPage {
+        final TableRequest request;
+        final ZDO_MGMT_LQI_RSP response;
 
-        public int getLqi() {
-        	return lqi;
-        }
-        
-        public String toString() {
-            if (parent != null) {
-                return "<" + parent.address + " / " + parent.node + "," + address + " / " + node + ">";
-            } else {
-                return "< NULL ," + address + " / " + node + ">";
-            }
+        LqiPage(final TableRequest request, final ZDO_MGMT_LQI_RSP response) {
+            this.request = request;
+            this.response = response;
         }
     }
 
+    /**
+     * Constructor which sets the concurrency and time to live from system properties or defaults.
+     *
+     * @param queue the importing queue
+     * @param driver the network manager
+     */
     public LinkQualityIndicatorNetworkBrowser(ImportingQueue queue, ZigBeeNetworkManager driver) {
+        this(queue, driver, getConcurrency(), getTableTtl());
+    }
+
+    /**
+     * @param queue the importing queue
+     * @param driver the network manager
+     * @param concurrency the maximum number of neighbour table requests in flight
+     * @param tableTtl the time to live of neighbour tables in milliseconds
+     */
+    public LinkQualityIndicatorNetworkBrowser(ImportingQueue queue, ZigBeeNetworkManager driver,
+                                              int concurrency, long tableTtl) {
+        this(queue, driver, concurrency, tableTtl, new NeighbourGraph());
+    }
+
+    /**
+     * @param queue the importing queue
+     * @param driver the network manager
+     * @param neighbourGraph the neighbour graph to update, which may contain restored tables
+     */
+    public LinkQualityIndicatorNetworkBrowser(ImportingQueue queue, ZigBeeNetworkManager driver,
+                                              NeighbourGraph neighbourGraph) {
+        this(queue, driver, getConcurrency(), getTableTtl(), neighbourGraph);
+    }
+
+    /**
+     * @param queue the importing queue
+     * @param driver the network manager
+     * @param concurrency the maximum number of neighbour table requests in flight
+     * @param tableTtl the time to live of neighbour tables in milliseconds
+     * @param neighbourGraph the neighbour graph to update, which may contain restored tables
+     */
+    public LinkQualityIndicatorNetworkBrowser(ImportingQueue queue, ZigBeeNetworkManager driver,
+                                              int concurrency, long tableTtl, NeighbourGraph neighbourGraph) {
+        this.neighbourGraph = neighbourGraph;
         this.queue = queue;
         this.driver = driver;
+        this.concurrency = Math.max(1, concurrency);
+        this.tableTtl = tableTtl;
+    }
+
+    private static int getConcurrency() {
+        int aux = CONCURRENCY_DEFAULT;
+        try {
+            aux = Integer.parseInt(System.getProperty(CONCURRENCY_KEY));
+            logger.trace("Using CONCURRENCY set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using CONCURRENCY set as DEFAULT {}", aux);
+        }
+        return aux;
     }
 
-    private NetworkAddressNodeItem getIeeeAddress(short nwkAddress) {
+    private static long getTableTtl() {
+        long aux = TABLE_TTL_DEFAULT;
+        try {
+            aux = Long.parseLong(System.getProperty(TABLE_TTL_KEY));
+            logger.trace("Using TABLE_TTL set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using TABLE_TTL set as DEFAULT {}", aux);
+        }
+        return aux;
+    }
 
-        NetworkAddressNodeItem node = new NetworkAddressNodeItem(null, nwkAddress);
+    /**
+     * Requests the IEEE address of node and announces the node.
+     *
+     * @param nwkAddress the network address
+     * @return true if the node answered
+     */
+    private boolean inspectIeeeAddress(int nwkAddress) {
 
         ZDO_IEEE_ADDR_RSP ieee_addr_resp = driver.sendZDOIEEEAddressRequest(
-                new ZDO_IEEE_ADDR_REQ(nwkAddress, ZDO_IEEE_ADDR_REQ.REQ_TYPE.SINGLE_DEVICE_RESPONSE, (byte) 0)
+                new ZDO_IEEE_ADDR_REQ((short) nwkAddress, ZDO_IEEE_ADDR_REQ.REQ_TYPE.SINGLE_DEVICE_RESPONSE, (byte) 0)
         );
 
         if (ieee_addr_resp == null) {
             logger.debug("No ZDO_IEEE_ADDR_RSP from #{}", nwkAddress);
-            return null;
+            return false;
         } else {
             logger.debug(
                     "ZDO_IEEE_ADDR_RSP from {} with {} associated",
                     ieee_addr_resp.getIeeeAddress(), ieee_addr_resp.getAssociatedNodeCount()
             );
-
-            node.node = new ZigBeeNodeImpl(node.address, ieee_addr_resp.getIeeeAddress(),
-                    (short) driver.getCurrentPanId());
-
-            ZToolAddress16 nwk = new ZToolAddress16(
-                    Integers.getByteAsInteger(node.address, 1),
-                    Integers.getByteAsInteger(node.address, 0)
-            );
-
-            if (!alreadyInspected.containsKey((int) node.address)) {
-                queue.push(nwk, ieee_addr_resp.getIeeeAddress());
-            }
-            announceNode(node);
-
-            return node;
+            announceNode(nwkAddress, ieee_addr_resp.getIeeeAddress());
+            return true;
         }
     }
 
-    private void announceNodes(List<NetworkAddressNodeItem> nodes) {
+    /**
+     * Queues the node for inspection and notifies the discovery monitors.
+     *
+     * @param nwkAddress the network address
+     * @param ieeeAddress the IEEE address
+     */
+    private void announceNode(int nwkAddress, ZToolAddress64 ieeeAddress) {
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(nwkAddress, ieeeAddress, (short) driver.getCurrentPanId());
+        queue.push(toAddress16(nwkAddress), ieeeAddress);
+        notifyBrowsedNode(node);
+    }
 
-        if (nodes != null) {
-            for (int i = 0; i < nodes.size(); i++) {
-                announceNode(nodes.get(i));
-            }
+    /**
+     * Announces the neighbour. The IEEE address reported in the neighbour table is used when
+     * it is valid, otherwise it is requested from the neighbour.
+     *
+     * @param neighbor the neighbour table entry
+     */
+    private void announceNeighbor(NeighborLqiListItemClass neighbor) {
+        final int nwkAddress = neighbor.NetworkAddress.get16BitValue();
+        final long ieeeAddress = neighbor.ExtendedAddress.getLong();
+        if (ieeeAddress == 0 || ieeeAddress == -1) {
+            inspectIeeeAddress(nwkAddress);
+        } else {
+            announceNode(nwkAddress, neighbor.ExtendedAddress);
         }
     }
 
-    private void announceNode(NetworkAddressNodeItem node) {
+    /**
+     * Sends a Link Quality Indicator request for one page of the neighbour table of a router.
+     * The response is queued for the browsing thread.
+     *
+     * @param request the neighbour table request
+     * @param index the index of the first neighbour table entry requested
+     */
+    private void requestPage(final TableRequest request, final int index) {
+        logger.debug("ZDO_MGMT_LQI_REQ to {} from index {}", request.address, index);
+        driver.sendLQIRequestAsync(new ZDO_MGMT_LQI_REQ(toAddress16(request.address), index)).addListener(
+                new CommandFutureListener<ZDO_MGMT_LQI_RSP>() {
+                    public void commandCompleted(final ZDO_MGMT_LQI_RSP response) {
+                        completedPages.add(new LqiPage(request, response));
+                    }
+                });
+    }
 
-        if (node != null) {
-            notifyBrowsedNode(node);
+    /**
+     * Queues the neighbours of the router which can have neighbour tables of their own.
+     *
+     * @param table the neighbour table of the router
+     * @param queued the network addresses already queued during this walk
+     * @param pending the routers waiting to be inspected
+     */
+    private void queueRouters(NeighbourTable table, BitSet queued, Deque<Integer> pending) {
+        for (int i = 0; i < table.size(); i++) {
+            final int address = table.getAddress(i);
+            if (table.getDeviceType(i) != NeighbourGraph.DEVICE_TYPE_END_DEVICE && !queued.get(address)) {
+                queued.set(address);
+                pending.add(address);
+            }
         }
     }
 
     /**
-     * Send a Link Quality Indicator request to a neighbor of the node
-     * @param node The node to poll
-     * @param index the neighbor index (??)
-     * @return list of nodes found
+     * Walks the network from the coordinator collecting the neighbour tables of the routers.
      */
-    private List<NetworkAddressNodeItem> lqiRequestToNode(NetworkAddressNodeItem node, int index) {
+    void browse() {
+        walk++;
+        completedPages.clear();
 
-        if (alreadyInspected.get((int) node.address) == null) {
-            alreadyInspected.put((int) node.address, node);
+        if (!inspectIeeeAddress(COORDINATOR_NWK_ADDRESS)) {
+            return;
+        }
 
-            // Create a list to hold the nodes we find
-            List<NetworkAddressNodeItem> nodesFound = new ArrayList<NetworkAddressNodeItem>();
+        final long now = System.currentTimeMillis();
+        final BitSet queued = new BitSet(NWK_ADDRESS_COUNT);
+        final BitSet announced = new BitSet(NWK_ADDRESS_COUNT);
+        final Deque<Integer> pending = new ArrayDeque<Integer>();
+        queued.set(COORDINATOR_NWK_ADDRESS);
+        announced.set(COORDINATOR_NWK_ADDRESS);
+        pending.add(COORDINATOR_NWK_ADDRESS);
+
+        int inFlight = 0;
+        int requested = 0;
+        while (!pending.isEmpty() || inFlight > 0) {
+            if (isDone()) {
+                return;
+            }
 
-            ZToolAddress16 nwk16 = new ZToolAddress16(
-                    Integers.getByteAsInteger(node.address, 1),
-                    Integers.getByteAsInteger(node.address, 0)
-            );
+            while (inFlight < concurrency && !pending.isEmpty()) {
+                final int address = pending.poll();
+                final NeighbourTable table = neighbourGraph.getTable(address);
+                if (table != null && now - table.getTimestamp() < tableTtl) {
+                    logger.trace("Neighbour table of #{} is up to date, request skipped", address);
+                    queueRouters(table, queued, pending);
+                    continue;
+                }
+                requestPage(new TableRequest(walk, address), LQI_START_INDEX);
+                inFlight++;
+                requested++;
+            }
+            if (inFlight == 0) {
+                continue;
+            }
 
-            logger.debug("ZDO_MGMT_LQI_REQ to {} from index {}", nwk16.get16BitValue(), index);
-            ZDO_MGMT_LQI_RSP lqi_resp = driver.sendLQIRequest(new ZDO_MGMT_LQI_REQ(nwk16, index));
-
-            if (lqi_resp == null) {
-                logger.debug("No LQI answer from #{}", nwk16.get16BitValue());
-                return null;
-            } else {
-                logger.debug(
-                        "Found {} neighbors on node #{}",
-                        lqi_resp.getNeighborLQICount(), nwk16.get16BitValue());
-
-                NeighborLqiListItemClass[] neighbors = (NeighborLqiListItemClass[]) lqi_resp.getNeighborLqiList();
-                if (neighbors != null) {
-                    for (int i = 0; i < neighbors.length; i++) {
-                        NeighborLqiListItemClass neighbor = (NeighborLqiListItemClass) neighbors[i];
-
-                        logger.debug("Node #{} visible from node #{} with LQI value {}", new Object[]{neighbor.NetworkAddress.get16BitValue(), nwk16.get16BitValue(), neighbor.RxLQI});
-
-                        NetworkAddressNodeItem result = getIeeeAddress((short) neighbor.NetworkAddress.get16BitValue());
-                        NetworkAddressNodeItem newNode;
-                        if (result != null) {
-                            logger.debug("Node #{} is {}", new Object[]{neighbor.NetworkAddress.get16BitValue(), result.node.getIeeeAddress()});
-                            newNode = new NetworkAddressNodeItem(node, result.address, neighbor.RxLQI);
-                        } else {
-                            logger.debug("No response to ZDO_IEEE_ADDR_REQ from node {}", neighbor.NetworkAddress.get16BitValue());
-                            newNode = new NetworkAddressNodeItem(node, (short) neighbor.NetworkAddress.get16BitValue(), neighbor.RxLQI);
-                        }
-                        nodesFound.add(newNode);
-                    }
+            final LqiPage page;
+            try {
+                page = completedPages.take();
+            } catch (InterruptedException e) {
+                logger.debug("Network browsing interrupted.");
+                return;
+            }
+            final TableRequest request = page.request;
+            if (request.walk != walk) {
+                continue;
+            }
+
+            ZDO_MGMT_LQI_RSP response = page.response;
+            if (response != null && response.SrcAddress.get16BitValue() != request.address) {
+                logger.warn("Discarded neighbour table of #{} received for #{}",
+                        response.SrcAddress.get16BitValue(), request.address);
+                response = null;
+            }
+            if (response == null || response.Status != 0) {
+                logger.debug("No LQI answer from #{}", request.address);
+                inFlight--;
+                final NeighbourTable previous = neighbourGraph.getTable(request.address);
+                if (previous != null) {
+                    queueRouters(previous, queued, pending);
                 }
+                continue;
+            }
 
-                // NeighborLQICount: neighbors IN THIS RESPONSE
-                // NeighborLQIEntries: all available neighbors
-                if (lqi_resp.getNeighborLQIEntries() > (lqi_resp.getNeighborLQICount() + index + 1)) {
-                    logger.debug("ZDO_MGMT_LQI_REQ new request to {} because of too many entries for a single request," +
-                            " restarting from index {}", node.address, lqi_resp.getNeighborLQICount() + index + 1);
-                    // Poll any further neighbors, adding them to our list
-                    List<NetworkAddressNodeItem> neighborsFound = lqiRequestToNode(node, lqi_resp.getNeighborLQICount() + index + 1);
-                    if(neighborsFound != null) {
-                    	nodesFound.addAll(neighborsFound);
-                    }
+            final NeighborLqiListItemClass[] neighbors = response.getNeighborLqiList();
+            if (neighbors != null) {
+                request.entries.addAll(Arrays.asList(neighbors));
+            }
+            // NeighborLQICount: neighbors IN THIS RESPONSE
+            // NeighborLQIEntries: all available neighbors
+            final int nextIndex = response.getStartIndex() + response.getNeighborLQICount();
+            if (response.getNeighborLQICount() > 0 && nextIndex < response.getNeighborLQIEntries()) {
+                requestPage(request, nextIndex);
+                continue;
+            }
+            inFlight--;
+
+            logger.debug("Found {} neighbors on node #{}", request.entries.size(), request.address);
+            final long timestamp = System.currentTimeMillis();
+            final NeighbourTable table = request.toTable(timestamp);
+            if (neighbourGraph.update(table)) {
+                logger.debug("Neighbour table of #{} changed", request.address);
+            }
+            for (final NeighborLqiListItemClass neighbor : request.entries) {
+                final int address = neighbor.NetworkAddress.get16BitValue();
+                logger.debug("Node #{} visible from node #{} with LQI value {}",
+                        new Object[]{address, request.address, neighbor.RxLQI});
+                // Keep a consolidated list of nodes and their neighbors
+                connectedNodeLinks.updateLQI(request.address, address, neighbor.RxLQI);
+                if (linkQualityHistory != null) {
+                    linkQualityHistory.addLinkSample(request.address, address, neighbor.RxLQI, timestamp);
+                }
+                if (!announced.get(address)) {
+                    announced.set(address);
+                    announceNeighbor(neighbor);
                 }
+            }
+            queueRouters(table, queued, pending);
+        }
 
-                return nodesFound;
+        // Routers which are no longer reachable from the coordinator are dropped from the graph.
+        for (final int source : neighbourGraph.getSources()) {
+            if (!queued.get(source)) {
+                logger.debug("Router #{} not reachable anymore, neighbour table removed", source);
+                neighbourGraph.remove(source);
             }
-        } else {
-            logger.debug("Node {} inspected few seconds ago, request delayed", node.address);
-            return null;
         }
+        logger.debug("Network browsing requested {} of {} neighbour tables.", requested, queued.cardinality());
     }
 
     /**
-     * Poll all nodes in the inspection queue and announce any nodes we find to the system. 
-     * @param toInspectTemp list of nodes to poll
+     * Sets the delay before the first network browsing.
+     *
+     * @param initialDelay the delay in milliseconds
      */
-    private void inspectQueue(ArrayList<NetworkAddressNodeItem> toInspectTemp) {
-
-        for (int i = 0; i < toInspect.size(); i++) {
-            List<NetworkAddressNodeItem> children;
-            NetworkAddressNodeItem node = toInspect.get(i);
-            if (node != null) {
-            	// Request all the neighbors for this node
-                children = lqiRequestToNode(node, LQI_START_INDEX);
-                if (children != null) {
-                	// We have neighbors - let the system know 
-                    toInspectTemp.addAll(children);
-                    announceNodes(children);
-                    
-                    // Keep a consolidated list of nodes and their neighbors
-                    for(NetworkAddressNodeItem nodeItem : children) {
-                    	connectedNodeLinks.updateLQI(nodeItem.getParent(), nodeItem.getAddress(), nodeItem.getLqi());
-                    }
-                }
-            }
-        }
+    public void setInitialDelay(final long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * Sets the history to record the link qualities of the neighbour tables into.
+     *
+     * @param linkQualityHistory the link quality history
+     */
+    public void setLinkQualityHistory(final LinkQualityHistory linkQualityHistory) {
+        this.linkQualityHistory = linkQualityHistory;
     }
 
     public void task() {
@@ -372,71 +563,52 @@ public class LinkQualityIndicatorNetworkBrowser extends RunnableThread {
 
         logger.trace("{} STARTED Succesfully", threadName);
 
-        while (!isDone()) {
-            cleanUpWalkingTree();
+        if (initialDelay > 0) {
+            logger.debug("Delaying network browsing for {} ms.", initialDelay);
+            ThreadUtils.waitingUntil(System.currentTimeMillis() + initialDelay);
+        }
 
+        while (!isDone()) {
             logger.debug("Inspecting ZigBee network for new nodes.");
 
             try {
-                NetworkAddressNodeItem coordinator = getIeeeAddress(COORDINATOR_NWK_ADDRESS);
-                if (coordinator != null) {
-
-                    //gt = new GraphThread();
-
-                	// Detect all the children of the coordinator
-                    List<NetworkAddressNodeItem> coordinatorChildren = lqiRequestToNode(coordinator, LQI_START_INDEX);
-                    if (coordinatorChildren != null) {
-                    	// Add all children to the inspection queue
-                        toInspect.addAll(coordinatorChildren);
-                        
-                        // Keep a consolidated list of nodes and their neighbors
-                        for(NetworkAddressNodeItem nodeItem : coordinatorChildren) {
-                        	connectedNodeLinks.updateLQI(nodeItem.getParent(), nodeItem.getAddress(), nodeItem.getLqi());
-                        }
-                    }
+                browse();
 
-                    ArrayList<NetworkAddressNodeItem> toInspectTemp = new ArrayList<NetworkAddressNodeItem>();
-                    while (!toInspect.isEmpty()) {
-                        inspectQueue(toInspectTemp);
-
-                        toInspect.clear();
-                        if (!toInspectTemp.isEmpty()) {
-                            for (int i = 0; i < toInspectTemp.size(); i++) {
-                                toInspect.add(toInspectTemp.get(i));
-                            }
-                        }
-                        toInspectTemp.clear();
-                    }
-                    toInspect.clear();
-                }
-
-                long wakeUpTime = System.currentTimeMillis() + 5 * 60 * 1000;
+                long wakeUpTime = System.currentTimeMillis() + BROWSING_PERIOD;
                 if (!isDone()) {
                 	ThreadUtils.waitingUntil(wakeUpTime);
                 }
                 logger.debug("Network browsing completed, waiting until {}", wakeUpTime);
-                //gt.run();
             } catch (Exception e) {
-                e.printStackTrace();
+                logger.error("Network browsing failed.", e);
             }
         }
 
-        //gt.end();
         logger.trace("{} TERMINATED Succesfully", threadName);
     }
 
-    private void cleanUpWalkingTree() {
-        alreadyInspected.clear();
-        toInspect.clear();
+    private static ZToolAddress16 toAddress16(int nwkAddress) {
+        return new ZToolAddress16(
+                Integers.getByteAsInteger(nwkAddress, 1),
+                Integers.getByteAsInteger(nwkAddress, 0)
+        );
     }
 
-    private void notifyBrowsedNode(NetworkAddressNodeItem item) {
-        final ZigBeeNode child = item.node;
+    private void notifyBrowsedNode(ZigBeeNode node) {
         final ZigBeeNetwork network = ApplicationFrameworkLayer.getAFLayer(driver).getZigBeeNetwork();
-        network.notifyNodeBrowsed(child);
+        network.notifyNodeBrowsed(node);
     }
 
     public NetworkNeighbourLinks getConnectedNodes() {
     	return connectedNodeLinks;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the neighbour graph collected by the browser.
+     *
+     * @return the neighbour graph
+     */
+    public NeighbourGraph getNeighbourGraph() {
+        return neighbourGraph;
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Adjacency graph of the network built from the neighbour tables reported by the routers
+ * with ZDO_MGMT_LQI_RSP. Nodes are keyed by their 16-bit network address. Each router owns
+ * one immutable {@link NeighbourTable} which is replaced as a whole when the router is queried
+ * again, so readers never lock and never see a partially updated table.
+ */
+public class NeighbourGraph {
+    /**
+     * Neighbour device type coordinator.
+     */
+    public static final int DEVICE_TYPE_COORDINATOR = 0;
+    /**
+     * Neighbour device type router.
+     */
+    public static final int DEVICE_TYPE_ROUTER = 1;
+    /**
+     * Neighbour device type end device.
+     */
+    public static final int DEVICE_TYPE_END_DEVICE = 2;
+    /**
+     * Neighbour device type unknown.
+     */
+    public static final int DEVICE_TYPE_UNKNOWN = 3;
+    /**
+     * Neighbour is the parent of the router.
+     */
+    public static final int RELATIONSHIP_PARENT = 0;
+    /**
+     * Neighbour is a child of the router.
+     */
+    public static final int RELATIONSHIP_CHILD = 1;
+    /**
+     * Neighbour is a sibling of the router.
+     */
+    public static final int RELATIONSHIP_SIBLING = 2;
+    /**
+     * Neighbour has no relationship with the router.
+     */
+    public static final int RELATIONSHIP_NONE = 3;
+
+    /**
+     * The neighbour tables sorted by source network address.
+     */
+    private volatile NeighbourTable[] tables = new NeighbourTable[0];
+    /**
+     * The listeners notified of changed links.
+     */
+    private final List<NeighbourGraphListener> listeners = new ArrayList<NeighbourGraphListener>();
+
+    /**
+     * Neighbour table of a single router. Entries are sorted by network address and the
+     * per-entry attributes are packed into a single int to keep the table compact.
+     */
+    public static final class NeighbourTable {
+        /**
+         * The network address of the router.
+         */
+        private final int source;
+        /**
+         * The time the table was received in milliseconds.
+         */
+        private final long timestamp;
+        /**
+         * The sorted network addresses of the neighbours.
+         */
+        private final int[] addresses;
+        /**
+         * The IEEE addresses of the neighbours.
+         */
+        private final long[] ieeeAddresses;
+        /**
+         * The LQI, flags and depth of the neighbours packed as <code>lqi | flags << 8 | depth << 16</code>.
+         */
+        private final int[] attributes;
+
+        /**
+         * Constructor which sorts the entries by network address. If the same neighbour is
+         * listed several times the last entry is kept.
+         *
+         * @param source the network address of the router
+         * @param timestamp the time the table was received in milliseconds
+         * @param addresses the network addresses of the neighbours
+         * @param ieeeAddresses the IEEE addresses of the neighbours
+         * @param lqis the LQI of the neighbours
+         * @param flags the device type, receiver on when idle and relationship of the neighbours as in ZDO_MGMT_LQI_RSP
+         * @param depths the depth of the neighbours
+         */
+        public NeighbourTable(final int source, final long timestamp, final int[] addresses,
+                              final long[] ieeeAddresses, final int[] lqis, final int[] flags, final int[] depths) {
+            this.source = source;
+            this.timestamp = timestamp;
+
+            final long[] entries = new long[addresses.length];
+            for (int i = 0; i < addresses.length; i++) {
+                entries[i] = ((long) (addresses[i] & 0xFFFF) << 32) | i;
+            }
+            Arrays.sort(entries);
+            int count = 0;
+            for (int i = 0; i < entries.length; i++) {
+                if (i + 1 < entries.length && entries[i + 1] >>> 32 == entries[i] >>> 32) {
+                    continue;
+                }
+                entries[count++] = entries[i];
+            }
+            this.addresses = new int[count];
+            this.ieeeAddresses = new long[count];
+            this.attributes = new int[count];
+            for (int i = 0; i < count; i++) {
+                final int index = (int) entries[i];
+                this.addresses[i] = (int) (entries[i] >>> 32);
+                this.ieeeAddresses[i] = ieeeAddresses[index];
+                this.attributes[i] = (lqis[index] & 0xFF) | (flags[index] & 0xFF) << 8 | (depths[index] & 0xFF) << 16;
+            }
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Gets the number of neighbours.
+         *
+         * @return the number of neighbours
+         */
+        public int size() {
+            return addresses.length;
+        }
+
+        /**
+         * Gets the index of neighbour.
+         *
+         * @param address the network address of the neighbour
+         * @return the index or negative value if the neighbour is not in the table
+         */
+        public int indexOf(final int address) {
+            return Arrays.binarySearch(addresses, address);
+        }
+
+        public int getAddress(final int index) {
+            return addresses[index];
+        }
+
+        public long getIeeeAddress(final int index) {
+            return ieeeAddresses[index];
+        }
+
+        public int getLqi(final int index) {
+            return attributes[index] & 0xFF;
+        }
+
+        public int getDeviceType(final int index) {
+            return (attributes[index] >> 8) & 0x03;
+        }
+
+        public int getRxOnWhenIdle(final int index) {
+            return (attributes[index] >> 10) & 0x03;
+        }
+
+        /**
+         * Gets the device type, receiver on when idle and relationship packed as in ZDO_MGMT_LQI_RSP.
+         *
+         * @param index the index of the neighbour
+         * @return the flags
+         */
+        public int getFlags(final int index) {
+            return (attributes[index] >> 8) & 0xFF;
+        }
+
+        public int getRelationship(final int index) {
+            return (attributes[index] >> 12) & 0x07;
+        }
+
+        public int getDepth(final int index) {
+            return (attributes[index] >> 16) & 0xFF;
+        }
+
+        /**
+         * Checks whether this table has the same neighbours with the same link attributes as the other table.
+         *
+         * @param other the other table
+         * @return true if the links are the same
+         */
+        public boolean hasSameLinks(final NeighbourTable other) {
+            return other != null && Arrays.equals(addresses, other.addresses)
+                    && Arrays.equals(attributes, other.attributes);
+        }
+    }
+
+    /**
+     * Replaces the neighbour table of the router.
+     *
+     * @param table the new neighbour table
+     * @return true if the links of the router changed
+     */
+    public synchronized boolean update(final NeighbourTable table) {
+        final NeighbourTable[] current = tables;
+        final int index = find(current, table.getSource());
+        final NeighbourTable[] updated;
+        if (index >= 0) {
+            updated = current.clone();
+            updated[index] = table;
+        } else {
+            final int insertIndex = -(index + 1);
+            updated = new NeighbourTable[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertIndex);
+            updated[insertIndex] = table;
+            System.arraycopy(current, insertIndex, updated, insertIndex + 1, current.length - insertIndex);
+        }
+        tables = updated;
+        final NeighbourTable previous = index >= 0 ? current[index] : null;
+        if (table.hasSameLinks(previous)) {
+            return false;
+        }
+        for (final NeighbourGraphListener listener : listeners) {
+            listener.neighbourTableChanged(previous, table);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the neighbour table of the router.
+     *
+     * @param source the network address of the router
+     * @return the removed table or null if the router had no table
+     */
+    public synchronized NeighbourTable remove(final int source) {
+        final NeighbourTable[] current = tables;
+        final int index = find(current, source);
+        if (index < 0) {
+            return null;
+        }
+        final NeighbourTable[] updated = new NeighbourTable[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        tables = updated;
+        for (final NeighbourGraphListener listener : listeners) {
+            listener.neighbourTableChanged(current[index], null);
+        }
+        return current[index];
+    }
+
+    /**
+     * Adds listener. The tables already in the graph are notified to the listener as added.
+     *
+     * @param listener the listener
+     */
+    public synchronized void addListener(final NeighbourGraphListener listener) {
+        listeners.add(listener);
+        for (final NeighbourTable table : tables) {
+            listener.neighbourTableChanged(null, table);
+        }
+    }
+
+    /**
+     * Removes listener.
+     *
+     * @param listener the listener
+     */
+    public synchronized void removeListener(final NeighbourGraphListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the neighbour table of the router.
+     *
+     * @param source the network address of the router
+     * @return the neighbour table or null if the router has not reported its neighbours
+     */
+    public NeighbourTable getTable(final int source) {
+        final NeighbourTable[] current = tables;
+        final int index = find(current, source);
+        return index >= 0 ? current[index] : null;
+    }
+
+    /**
+     * Gets the neighbour tables ordered by router network address.
+     *
+     * @return the list of neighbour tables
+     */
+    public List<NeighbourTable> getTables() {
+        return new ArrayList<NeighbourTable>(Arrays.asList(tables));
+    }
+
+    /**
+     * Gets the network addresses of the routers which have reported their neighbours.
+     *
+     * @return the sorted network addresses
+     */
+    public int[] getSources() {
+        final NeighbourTable[] current = tables;
+        final int[] sources = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            sources[i] = current[i].getSource();
+        }
+        return sources;
+    }
+
+    /**
+     * Gets the LQI the router reported for the neighbour.
+     *
+     * @param source the network address of the router
+     * @param neighbour the network address of the neighbour
+     * @return the LQI or -1 if the link is not known
+     */
+    public int getLqi(final int source, final int neighbour) {
+        final NeighbourTable table = getTable(source);
+        if (table == null) {
+            return -1;
+        }
+        final int index = table.indexOf(neighbour);
+        return index >= 0 ? table.getLqi(index) : -1;
+    }
+
+    /**
+     * Gets the number of routers which have reported their neighbours.
+     *
+     * @return the number of neighbour tables
+     */
+    public int size() {
+        return tables.length;
+    }
+
+    private static int find(final NeighbourTable[] tables, final int source) {
+        int low = 0;
+        int high = tables.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int middleSource = tables[middle].getSource();
+            if (middleSource < source) {
+                low = middle + 1;
+            } else if (middleSource > source) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
+
+/**
+ * Listener notified when the links of a router in {@link NeighbourGraph} change.
+ */
+public interface NeighbourGraphListener {
+
+    /**
+     * Callback invoked when the neighbour table of a router is added, changed or removed.
+     * The callback is invoked while the graph is locked, so changes are notified in order.
+     *
+     * @param previous the previous table or null if the router had no table
+     * @param current the new table or null if the table was removed
+     */
+    public void neighbourTableChanged(NeighbourTable previous, NeighbourTable current);
+
+}
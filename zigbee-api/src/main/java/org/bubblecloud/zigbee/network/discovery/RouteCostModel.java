@@ -0,0 +1,529 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Route cost model over the {@link NeighbourGraph}. Each link gets the ZigBee link cost derived
+ * from the reported LQI, using the worse of the two directions when both ends report the link,
+ * and the least cost paths to the coordinator are maintained with Dijkstra's algorithm. Only
+ * coordinator and routers forward traffic, end devices are leaves.
+ * <p>
+ * The paths are updated incrementally when a neighbour table changes. Links which became cheaper
+ * are relaxed from their end points. When a link on a least cost path became more expensive or
+ * disappeared, only the subtree below it is reset and recomputed from its surroundings.
+ * <p>
+ * The number of dependents of a router is the number of nodes whose least cost path to the
+ * coordinator goes through it. Routers with many dependents are bottlenecks.
+ */
+public class RouteCostModel implements NeighbourGraphListener {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RouteCostModel.class);
+    /**
+     * The network address of the coordinator.
+     */
+    public static final int COORDINATOR_NWK_ADDRESS = 0;
+    /**
+     * The maximum link cost.
+     */
+    public static final int MAX_LINK_COST = 7;
+    /**
+     * The default minimum number of dependents of a bottleneck router.
+     */
+    public static final int BOTTLENECK_DEPENDENTS_DEFAULT = 8;
+    /**
+     * The system property to override the minimum number of dependents of a bottleneck router.
+     */
+    public static final String BOTTLENECK_DEPENDENTS_KEY = "zigbee.route.bottleneck.dependents";
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * The nodes by network address.
+     */
+    private final Map<Integer, Node> nodes = new HashMap<Integer, Node>();
+    /**
+     * The minimum number of dependents of a bottleneck router.
+     */
+    private final int bottleneckDependents;
+    /**
+     * True if the dependents have been counted after the last change.
+     */
+    private boolean dependentsValid = false;
+
+    /**
+     * Node of the model.
+     */
+    private static class Node {
+        final int address;
+        /**
+         * The LQI this node reported for its neighbours by neighbour network address.
+         */
+        Map<Integer, Integer> reported = new HashMap<Integer, Integer>();
+        /**
+         * The link costs to the neighbours by neighbour network address.
+         */
+        final Map<Integer, Integer> links = new HashMap<Integer, Integer>();
+        boolean endDevice = false;
+        int cost = UNREACHABLE;
+        int hops = -1;
+        int parent = -1;
+        int dependents = 0;
+
+        Node(final int address) {
+            this.address = address;
+        }
+    }
+
+    /**
+     * Least cost path of a node to the coordinator.
+     */
+    public static final class Route {
+        private final int address;
+        private final int cost;
+        private final int hops;
+        private final int nextHop;
+        private final int dependents;
+
+        private Route(final Node node) {
+            address = node.address;
+            cost = node.cost;
+            hops = node.hops;
+            nextHop = node.parent;
+            dependents = node.dependents;
+        }
+
+        public int getAddress() {
+            return address;
+        }
+
+        /**
+         * @return the sum of the link costs to the coordinator
+         */
+        public int getCost() {
+            return cost;
+        }
+
+        /**
+         * @return the number of hops to the coordinator
+         */
+        public int getHops() {
+            return hops;
+        }
+
+        /**
+         * @return the network address of the next hop towards the coordinator or -1 for coordinator
+         */
+        public int getNextHop() {
+            return nextHop;
+        }
+
+        /**
+         * @return the number of nodes routing to the coordinator through this node
+         */
+        public int getDependents() {
+            return dependents;
+        }
+
+        public String toString() {
+            return "#" + address + " cost " + cost + " hops " + hops + " via #" + nextHop
+                    + " dependents " + dependents;
+        }
+    }
+
+    /**
+     * Constructor which registers the model to the neighbour graph and sets the bottleneck
+     * threshold from system property or default.
+     *
+     * @param neighbourGraph the neighbour graph
+     */
+    public RouteCostModel(final NeighbourGraph neighbourGraph) {
+        this(neighbourGraph, getBottleneckDependents());
+    }
+
+    /**
+     * @param neighbourGraph the neighbour graph
+     * @param bottleneckDependents the minimum number of dependents of a bottleneck router
+     */
+    public RouteCostModel(final NeighbourGraph neighbourGraph, final int bottleneckDependents) {
+        this.bottleneckDependents = bottleneckDependents;
+        final Node coordinator = new Node(COORDINATOR_NWK_ADDRESS);
+        coordinator.cost = 0;
+        coordinator.hops = 0;
+        nodes.put(COORDINATOR_NWK_ADDRESS, coordinator);
+        neighbourGraph.addListener(this);
+    }
+
+    private static int getBottleneckDependents() {
+        int aux = BOTTLENECK_DEPENDENTS_DEFAULT;
+        try {
+            aux = Integer.parseInt(System.getProperty(BOTTLENECK_DEPENDENTS_KEY));
+            logger.trace("Using BOTTLENECK_DEPENDENTS set from enviroment {}", aux);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using BOTTLENECK_DEPENDENTS set as DEFAULT {}", aux);
+        }
+        return aux;
+    }
+
+    /**
+     * Gets the link cost of LQI as <code>min(7, round(1 / p^4))</code> where p is the LQI scaled to
+     * the probability of successful delivery.
+     *
+     * @param lqi the LQI between 0 and 255
+     * @return the link cost between 1 and 7
+     */
+    public static int getLinkCost(final int lqi) {
+        if (lqi <= 0) {
+            return MAX_LINK_COST;
+        }
+        final double probability = Math.min(255, lqi) / 255.0;
+        return (int) Math.max(1, Math.min(MAX_LINK_COST, Math.round(1 / Math.pow(probability, 4))));
+    }
+
+    @Override
+    public synchronized void neighbourTableChanged(final NeighbourTable previous, final NeighbourTable current) {
+        final int source = current != null ? current.getSource() : previous.getSource();
+        final Node node = getNode(source);
+
+        boolean rolesChanged = false;
+        final Map<Integer, Integer> reported = new HashMap<Integer, Integer>();
+        if (current != null) {
+            if (node.endDevice) {
+                node.endDevice = false;
+                rolesChanged = true;
+            }
+            for (int i = 0; i < current.size(); i++) {
+                final int address = current.getAddress(i);
+                reported.put(address, current.getLqi(i));
+                final Node neighbour = getNode(address);
+                final boolean endDevice = current.getDeviceType(i) == NeighbourGraph.DEVICE_TYPE_END_DEVICE
+                        && address != COORDINATOR_NWK_ADDRESS;
+                if (neighbour.endDevice != endDevice) {
+                    neighbour.endDevice = endDevice;
+                    rolesChanged = true;
+                }
+            }
+        }
+
+        final Set<Integer> neighbours = new HashSet<Integer>(node.reported.keySet());
+        neighbours.addAll(reported.keySet());
+        node.reported = reported;
+
+        final List<int[]> increased = new ArrayList<int[]>();
+        final List<int[]> decreased = new ArrayList<int[]>();
+        for (final int address : neighbours) {
+            final Node neighbour = getNode(address);
+            final Integer previousCost = node.links.get(address);
+            final int oldCost = previousCost != null ? previousCost : UNREACHABLE;
+            final int newCost = getCost(node, neighbour);
+            if (newCost == oldCost) {
+                continue;
+            }
+            if (newCost == UNREACHABLE) {
+                node.links.remove(address);
+                neighbour.links.remove(source);
+            } else {
+                node.links.put(address, newCost);
+                neighbour.links.put(source, newCost);
+            }
+            (newCost > oldCost ? increased : decreased).add(new int[]{source, address});
+        }
+
+        if (rolesChanged) {
+            recomputeAll();
+        } else if (!increased.isEmpty() || !decreased.isEmpty()) {
+            recompute(increased, decreased);
+        }
+
+        neighbours.add(source);
+        for (final int address : neighbours) {
+            final Node neighbour = nodes.get(address);
+            if (address != COORDINATOR_NWK_ADDRESS && neighbour.links.isEmpty() && neighbour.reported.isEmpty()) {
+                nodes.remove(address);
+            }
+        }
+        dependentsValid = false;
+    }
+
+    /**
+     * Gets the least cost path of node to the coordinator.
+     *
+     * @param address the network address of the node
+     * @return the route or null if the node is not reachable
+     */
+    public synchronized Route getRoute(final int address) {
+        final Node node = nodes.get(address);
+        if (node == null || node.cost == UNREACHABLE) {
+            return null;
+        }
+        countDependents();
+        return new Route(node);
+    }
+
+    /**
+     * Gets the least cost paths of all reachable nodes ordered by network address.
+     *
+     * @return the list of routes
+     */
+    public synchronized List<Route> getRoutes() {
+        countDependents();
+        final List<Route> routes = new ArrayList<Route>();
+        for (final Node node : nodes.values()) {
+            if (node.cost != UNREACHABLE) {
+                routes.add(new Route(node));
+            }
+        }
+        Collections.sort(routes, new Comparator<Route>() {
+            public int compare(final Route o1, final Route o2) {
+                return o1.getAddress() < o2.getAddress() ? -1 : (o1.getAddress() == o2.getAddress() ? 0 : 1);
+            }
+        });
+        return routes;
+    }
+
+    /**
+     * Gets the network addresses of nodes which are known but not reachable from the coordinator.
+     *
+     * @return the sorted list of network addresses
+     */
+    public synchronized List<Integer> getUnreachable() {
+        final List<Integer> addresses = new ArrayList<Integer>();
+        for (final Node node : nodes.values()) {
+            if (node.cost == UNREACHABLE) {
+                addresses.add(node.address);
+            }
+        }
+        Collections.sort(addresses);
+        return addresses;
+    }
+
+    /**
+     * Gets the routers with at least the configured number of dependents.
+     *
+     * @return the routes of the bottleneck routers, most dependents first
+     */
+    public List<Route> getBottlenecks() {
+        return getBottlenecks(bottleneckDependents);
+    }
+
+    /**
+     * Gets the routers with at least the given number of dependents.
+     *
+     * @param minimumDependents the minimum number of dependents
+     * @return the routes of the bottleneck routers, most dependents first
+     */
+    public synchronized List<Route> getBottlenecks(final int minimumDependents) {
+        countDependents();
+        final List<Route> routes = new ArrayList<Route>();
+        for (final Node node : nodes.values()) {
+            if (node.address != COORDINATOR_NWK_ADDRESS && node.cost != UNREACHABLE
+                    && node.dependents >= Math.max(1, minimumDependents)) {
+                routes.add(new Route(node));
+            }
+        }
+        Collections.sort(routes, new Comparator<Route>() {
+            public int compare(final Route o1, final Route o2) {
+                return o2.getDependents() - o1.getDependents();
+            }
+        });
+        return routes;
+    }
+
+    private Node getNode(final int address) {
+        Node node = nodes.get(address);
+        if (node == null) {
+            node = new Node(address);
+            nodes.put(address, node);
+        }
+        return node;
+    }
+
+    private static int getCost(final Node node, final Node neighbour) {
+        final Integer lqi = node.reported.get(neighbour.address);
+        final Integer neighbourLqi = neighbour.reported.get(node.address);
+        if (lqi == null && neighbourLqi == null) {
+            return UNREACHABLE;
+        }
+        return Math.max(lqi != null ? getLinkCost(lqi) : 0, neighbourLqi != null ? getLinkCost(neighbourLqi) : 0);
+    }
+
+    private static boolean isForwarding(final Node node) {
+        return node.cost != UNREACHABLE && !node.endDevice;
+    }
+
+    private static long entry(final Node node) {
+        return ((long) node.cost << 32) | node.address;
+    }
+
+    /**
+     * Updates the paths after link costs changed.
+     *
+     * @param increased the links whose cost increased
+     * @param decreased the links whose cost decreased
+     */
+    private void recompute(final List<int[]> increased, final List<int[]> decreased) {
+        final PriorityQueue<Long> queue = new PriorityQueue<Long>();
+
+        final Set<Node> affected = new HashSet<Node>();
+        Map<Integer, List<Node>> children = null;
+        for (final int[] link : increased) {
+            final Node a = nodes.get(link[0]);
+            final Node b = nodes.get(link[1]);
+            final Node child = b.parent == a.address ? b : (a.parent == b.address ? a : null);
+            if (child == null || affected.contains(child)) {
+                continue;
+            }
+            if (children == null) {
+                children = getChildren();
+            }
+            collectSubtree(child, children, affected);
+        }
+        for (final Node node : affected) {
+            node.cost = UNREACHABLE;
+            node.hops = -1;
+            node.parent = -1;
+        }
+        for (final Node node : affected) {
+            for (final Map.Entry<Integer, Integer> link : node.links.entrySet()) {
+                final Node neighbour = nodes.get(link.getKey());
+                if (!affected.contains(neighbour)) {
+                    relax(neighbour, node, link.getValue(), null);
+                }
+            }
+            if (node.cost != UNREACHABLE) {
+                queue.add(entry(node));
+            }
+        }
+        for (final int[] link : decreased) {
+            final Node a = nodes.get(link[0]);
+            final Node b = nodes.get(link[1]);
+            relax(a, b, a.links.get(b.address), queue);
+            relax(b, a, b.links.get(a.address), queue);
+        }
+        logger.trace("Recomputing routes of {} affected nodes.", affected.size());
+        run(queue);
+    }
+
+    /**
+     * Recomputes all paths from the coordinator.
+     */
+    private void recomputeAll() {
+        for (final Node node : nodes.values()) {
+            if (node.address != COORDINATOR_NWK_ADDRESS) {
+                node.cost = UNREACHABLE;
+                node.hops = -1;
+                node.parent = -1;
+            }
+        }
+        final PriorityQueue<Long> queue = new PriorityQueue<Long>();
+        queue.add(entry(nodes.get(COORDINATOR_NWK_ADDRESS)));
+        run(queue);
+    }
+
+    private void run(final PriorityQueue<Long> queue) {
+        while (!queue.isEmpty()) {
+            final long entry = queue.poll();
+            final Node node = nodes.get((int) entry);
+            if (node == null || node.cost != (int) (entry >>> 32)) {
+                continue;
+            }
+            for (final Map.Entry<Integer, Integer> link : node.links.entrySet()) {
+                relax(node, nodes.get(link.getKey()), link.getValue(), queue);
+            }
+        }
+    }
+
+    private void relax(final Node from, final Node to, final int cost, final PriorityQueue<Long> queue) {
+        if (!isForwarding(from) || to.address == COORDINATOR_NWK_ADDRESS) {
+            return;
+        }
+        if (from.cost + cost < to.cost) {
+            to.cost = from.cost + cost;
+            to.hops = from.hops + 1;
+            to.parent = from.address;
+            if (queue != null) {
+                queue.add(entry(to));
+            }
+        }
+    }
+
+    private Map<Integer, List<Node>> getChildren() {
+        final Map<Integer, List<Node>> children = new HashMap<Integer, List<Node>>();
+        for (final Node node : nodes.values()) {
+            if (node.parent != -1) {
+                List<Node> siblings = children.get(node.parent);
+                if (siblings == null) {
+                    siblings = new ArrayList<Node>();
+                    children.put(node.parent, siblings);
+                }
+                siblings.add(node);
+            }
+        }
+        return children;
+    }
+
+    private static void collectSubtree(final Node root, final Map<Integer, List<Node>> children, final Set<Node> subtree) {
+        final List<Node> stack = new ArrayList<Node>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            if (subtree.add(node)) {
+                final List<Node> nodeChildren = children.get(node.address);
+                if (nodeChildren != null) {
+                    stack.addAll(nodeChildren);
+                }
+            }
+        }
+    }
+
+    private void countDependents() {
+        if (dependentsValid) {
+            return;
+        }
+        final List<Node> reachable = new ArrayList<Node>();
+        for (final Node node : nodes.values()) {
+            node.dependents = 0;
+            if (node.cost != UNREACHABLE) {
+                reachable.add(node);
+            }
+        }
+        // Link costs are positive so children always cost more than their parents.
+        Collections.sort(reachable, new Comparator<Node>() {
+            public int compare(final Node o1, final Node o2) {
+                return o2.cost < o1.cost ? -1 : (o2.cost == o1.cost ? 0 : 1);
+            }
+        });
+        for (final Node node : reachable) {
+            if (node.parent != -1) {
+                nodes.get(node.parent).dependents += node.dependents + 1;
+            }
+        }
+        dependentsValid = true;
+    }
+}
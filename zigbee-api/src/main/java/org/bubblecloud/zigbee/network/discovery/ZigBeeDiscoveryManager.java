@@ -24,22 +24,31 @@ package org.bubblecloud.zigbee.network.discovery;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
 import org.bubblecloud.zigbee.network.ApplicationFrameworkMessageListener;
 import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.ZigBeeNode;
 import org.bubblecloud.zigbee.network.discovery.LinkQualityIndicatorNetworkBrowser.NetworkNeighbourLinks;
 import org.bubblecloud.zigbee.network.impl.ApplicationFrameworkLayer;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetwork;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNodeImpl;
 import org.bubblecloud.zigbee.network.model.DiscoveryMode;
+import org.bubblecloud.zigbee.network.model.IEEEAddress;
 import org.bubblecloud.zigbee.network.packet.ZToolAddress16;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
 import org.bubblecloud.zigbee.network.packet.af.AF_INCOMING_MSG;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_REQ;
 import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_RSP;
+import org.bubblecloud.zigbee.util.DaemonThreadFactory;
 import org.bubblecloud.zigbee.util.Integers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is tracks the {@link org.bubblecloud.zigbee.network.ZigBeeNetworkManager} service available
@@ -54,14 +63,26 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
 
     private final static Logger logger = LoggerFactory.getLogger(ZigBeeDiscoveryManager.class);
 
+    public static final int REVALIDATION_DELAY_DEFAULT = 300000;
+    public static final String REVALIDATION_DELAY_KEY = "zigbee.discovery.warmstart.revalidation.delay";
+
     private ZigBeeNetworkManager networkManager;
 
     private AnnounceListenerImpl announceListener;
     private AssociationNetworkBrowser associationNetworkBrowser = null;
     private LinkQualityIndicatorNetworkBrowser linkQualityIndicatorNetworkBrowser = null;
+    private RouteCostModel routeCostModel = null;
 
     private EndpointBuilder endpointBuilder;
     private final ImportingQueue importingQueue;
+    /**
+     * The link quality history fed from received frames and neighbour tables.
+     */
+    private final LinkQualityHistory linkQualityHistory = new LinkQualityHistory();
+    /**
+     * The neighbour tables collected by the link quality browsing or restored from the network state.
+     */
+    private final NeighbourGraph neighbourGraph = new NeighbourGraph();
 
     private EnumSet<DiscoveryMode> enabledDiscoveries;
 
@@ -70,16 +91,67 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
      */
     private Set<Integer> inspectedNetworkAddresses = new HashSet<Integer>();
 
+    /**
+     * Flag enabling warm start from the restored network state.
+     */
+    private boolean warmStart = false;
+    /**
+     * True if discovery was started with restored nodes in warm start mode.
+     */
+    private boolean warmStarted = false;
+    /**
+     * Timer revalidating the restored nodes which have not been heard of after warm start.
+     */
+    private ScheduledExecutorService revalidationTimer;
+
     public ZigBeeDiscoveryManager(ZigBeeNetworkManager networkManager, final EnumSet<DiscoveryMode> enabledDiscoveries) {
         importingQueue = new ImportingQueue();
         this.networkManager = networkManager;
         this.enabledDiscoveries = enabledDiscoveries;
     }
 
+    /**
+     * Enables or disables warm start. In warm start the nodes, endpoints and descriptors restored
+     * from the persisted network state are trusted and the initial network browsing is considered
+     * complete on startup. Each restored node is revalidated in the background when the first
+     * message from it arrives, or after the revalidation delay if nothing has been received.
+     * <p>
+     * Has to be set before {@link #startup()} and has no effect if no nodes have been restored.
+     *
+     * @param warmStart true to enable warm start
+     */
+    public void setWarmStart(final boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
     public void startup() {
         logger.trace("Setting up all the importer data and threads");
         importingQueue.clear();
-        ApplicationFrameworkLayer.getAFLayer(networkManager);
+        final ZigBeeNetwork network = ApplicationFrameworkLayer.getAFLayer(networkManager).getZigBeeNetwork();
+
+        warmStarted = warmStart && network.getNodeCount() != 0;
+        int browsingDelay = 0;
+        if (warmStarted) {
+            int revalidationDelay = REVALIDATION_DELAY_DEFAULT;
+            try {
+                revalidationDelay = Integer.parseInt(System.getProperty(REVALIDATION_DELAY_KEY));
+                logger.trace("Using REVALIDATION_DELAY set from enviroment {}", revalidationDelay);
+            } catch (NumberFormatException ex) {
+                logger.trace("Using REVALIDATION_DELAY set as DEFAULT {}", revalidationDelay);
+            }
+            logger.info("Warm start with {} restored nodes, revalidating silent nodes in {} ms.",
+                    network.getNodeCount(), revalidationDelay);
+            revalidationTimer = Executors.newSingleThreadScheduledExecutor(
+                    new DaemonThreadFactory("ZigBeeDiscoveryRevalidation"));
+            revalidationTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    revalidateRestoredNodes();
+                }
+            }, revalidationDelay, TimeUnit.MILLISECONDS);
+            // Restored topology is trusted, so the network is browsed only after the revalidation delay.
+            browsingDelay = revalidationDelay;
+        }
 
         if (enabledDiscoveries.contains(DiscoveryMode.Announce)) {
             announceListener = new AnnounceListenerImpl(importingQueue, networkManager);
@@ -90,6 +162,7 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
 
         if (enabledDiscoveries.contains(DiscoveryMode.Addressing)) {
             associationNetworkBrowser = new AssociationNetworkBrowser(importingQueue, networkManager);
+            associationNetworkBrowser.setInitialDelay(browsingDelay);
             new Thread(associationNetworkBrowser, "NetworkBrowser[" + networkManager + "]").start();
         } else {
             logger.trace("{} discovery disabled.",
@@ -97,7 +170,11 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
         }
 
         if (enabledDiscoveries.contains(DiscoveryMode.LinkQuality)) {
-            linkQualityIndicatorNetworkBrowser = new LinkQualityIndicatorNetworkBrowser(importingQueue, networkManager);
+            linkQualityIndicatorNetworkBrowser = new LinkQualityIndicatorNetworkBrowser(importingQueue, networkManager,
+                    neighbourGraph);
+            linkQualityIndicatorNetworkBrowser.setInitialDelay(browsingDelay);
+            linkQualityIndicatorNetworkBrowser.setLinkQualityHistory(linkQualityHistory);
+            routeCostModel = new RouteCostModel(neighbourGraph);
             new Thread(linkQualityIndicatorNetworkBrowser, "LinkQualityIndicatorNetworkBrowser[" + networkManager + "]").start();
         } else {
             logger.trace("{} discovery disabled.",
@@ -105,6 +182,7 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
         }
 
         endpointBuilder = new EndpointBuilder(importingQueue, networkManager);
+        endpointBuilder.setLinkQualityHistory(linkQualityHistory);
         new Thread(endpointBuilder, "EndpointBuilder[" + networkManager + "]").start();
 
         networkManager.addAFMessageListner(this);
@@ -126,17 +204,68 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
         if (endpointBuilder != null) {
             endpointBuilder.end();
         }
+        if (revalidationTimer != null) {
+            revalidationTimer.shutdownNow();
+            revalidationTimer = null;
+        }
         importingQueue.close();
     }
 
     public boolean isInitialNetworkBrowsingComplete() {
+        if (warmStarted) {
+            return true;
+        }
         return (associationNetworkBrowser == null || associationNetworkBrowser.isInitialNetworkBrowsingComplete())
                 && endpointBuilder.isReady();
     }
 
+    /**
+     * Queues nodes for inspection which were discovered earlier but whose endpoints are not known,
+     * for example the journaled nodes which had not been inspected before shutdown.
+     * <p>
+     * Has to be called after {@link #startup()}.
+     *
+     * @param nodes the nodes with network and IEEE address
+     */
+    public void rediscoverNodes(final List<ZigBeeNode> nodes) {
+        for (final ZigBeeNode node : nodes) {
+            final int networkAddress = node.getNetworkAddress();
+            final ZToolAddress16 nwk = new ZToolAddress16(
+                    Integers.getByteAsInteger(networkAddress, 1),
+                    Integers.getByteAsInteger(networkAddress, 0)
+            );
+            importingQueue.push(nwk, new ZToolAddress64(IEEEAddress.fromColonNotation(node.getIeeeAddress())), -1,
+                    ImportingQueue.Priority.REDISCOVERY);
+        }
+        logger.debug("Queued {} discovered nodes without endpoints for inspection.", nodes.size());
+    }
+
+    /**
+     * Revalidates the network addresses of the restored nodes which have not been inspected since startup.
+     */
+    private void revalidateRestoredNodes() {
+        final ZigBeeNetwork network = ApplicationFrameworkLayer.getAFLayer(networkManager).getZigBeeNetwork();
+        final List<Integer> networkAddresses = new ArrayList<Integer>();
+        synchronized (inspectedNetworkAddresses) {
+            for (final ZigBeeNodeImpl node : network.getNodeList()) {
+                if (inspectedNetworkAddresses.add(node.getNetworkAddress())) {
+                    networkAddresses.add(node.getNetworkAddress());
+                }
+            }
+        }
+        logger.debug("Revalidating {} restored nodes which have not been heard of.", networkAddresses.size());
+        for (final int networkAddress : networkAddresses) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            inspectNetworkAddress(networkAddress);
+        }
+    }
+
     @Override
     public void notify(AF_INCOMING_MSG msg) {
         final int sourceNetworkAddress = msg.getSrcAddr();
+        linkQualityHistory.addFrameSample(sourceNetworkAddress, msg.LinkQuality, System.currentTimeMillis());
 
         synchronized (inspectedNetworkAddresses) {
         	// If this is an unknown device, then inspect it
@@ -170,6 +299,15 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
             logger.debug("Node did not respond to ZDO_IEEE_ADDR_REQ #{}", sourceNetworkAddress);
         } else if (result.Status == 0) {
             logger.debug("Node network address #{} resolved to IEEE address {}.", sourceNetworkAddress, result.getIeeeAddress());
+            final ZigBeeNetwork network = ApplicationFrameworkLayer.getAFLayer(networkManager).getZigBeeNetwork();
+            final ZigBeeNodeImpl knownNode = network.getNodeByNetworkAddress(sourceNetworkAddress);
+            if (knownNode != null
+                    && IEEEAddress.fromColonNotation(knownNode.getIeeeAddress()) == result.getIeeeAddress().getLong()) {
+                // The node known with this network address responded, so it is revalidated without interrogation.
+                logger.debug("Node {} revalidated at network address #{}.", knownNode.getIeeeAddress(),
+                        sourceNetworkAddress);
+                return;
+            }
             final ZigBeeNodeImpl node = new ZigBeeNodeImpl(sourceNetworkAddress, result.getIeeeAddress(),
                     (short) networkManager.getCurrentPanId());
 
@@ -177,9 +315,8 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
                     Integers.getByteAsInteger(sourceNetworkAddress, 1),
                     Integers.getByteAsInteger(sourceNetworkAddress, 0)
             );
-            importingQueue.push(nwk, result.getIeeeAddress());
+            importingQueue.push(nwk, result.getIeeeAddress(), -1, ImportingQueue.Priority.UNKNOWN_SENDER);
 
-            final ZigBeeNetwork network = ApplicationFrameworkLayer.getAFLayer(networkManager).getZigBeeNetwork();
             network.notifyNodeBrowsed(node);
         } else {
             logger.warn("Node #{} ZDO_IEEE_ADDR_REQ failed with status {} ", sourceNetworkAddress,
@@ -194,4 +331,32 @@ public class ZigBeeDiscoveryManager implements ApplicationFrameworkMessageListen
     public NetworkNeighbourLinks getLinkQualityInfo() {
     	return linkQualityIndicatorNetworkBrowser.getConnectedNodes();
     }
+
+    /**
+     * Returns the neighbour graph collected by the link quality browsing. The graph is available
+     * before {@link #startup()} so that neighbour tables can be restored to it.
+     *
+     * @return the neighbour graph or null if link quality discovery is disabled
+     */
+    public NeighbourGraph getNeighbourGraph() {
+        return enabledDiscoveries.contains(DiscoveryMode.LinkQuality) ? neighbourGraph : null;
+    }
+
+    /**
+     * Returns the route cost model computed over the neighbour graph.
+     *
+     * @return the route cost model or null if link quality discovery is disabled
+     */
+    public RouteCostModel getRouteCostModel() {
+        return routeCostModel;
+    }
+
+    /**
+     * Returns the link quality history of the nodes and links.
+     *
+     * @return the link quality history
+     */
+    public LinkQualityHistory getLinkQualityHistory() {
+        return linkQualityHistory;
+    }
 }
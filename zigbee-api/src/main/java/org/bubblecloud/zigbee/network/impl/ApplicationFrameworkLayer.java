@@ -25,10 +25,14 @@ package org.bubblecloud.zigbee.network.impl;
 import org.bubblecloud.zigbee.api.ZigBeeApiConstants;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
 import org.bubblecloud.zigbee.network.ClusterMessage;
+import org.bubblecloud.zigbee.network.GroupMembershipRegistry;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
 import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_CONFIRM;
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_REQUEST_EXT;
 import org.bubblecloud.zigbee.network.packet.af.AF_REGISTER;
 import org.bubblecloud.zigbee.network.packet.af.AF_REGISTER_SRSP;
+import org.bubblecloud.zigbee.util.StripedExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +55,15 @@ public class ApplicationFrameworkLayer {
     private final static Object LOCK = new Object();
     private final static Logger logger = LoggerFactory.getLogger(ApplicationFrameworkLayer.class);
 
+    public static final int EVENT_STRIPES_DEFAULT = 4;
+    public static final String EVENT_STRIPES_KEY = "zigbee.driver.event.stripes";
+
+    public static final int EVENT_QUEUE_CAPACITY_DEFAULT = 256;
+    public static final String EVENT_QUEUE_CAPACITY_KEY = "zigbee.driver.event.queue.capacity";
+
+    public static final StripedExecutor.OverflowPolicy EVENT_OVERFLOW_POLICY_DEFAULT = StripedExecutor.OverflowPolicy.DISCARD;
+    public static final String EVENT_OVERFLOW_POLICY_KEY = "zigbee.driver.event.overflow.policy";
+
     class SenderIdentifier {
         int profileId;
         int clusterId;
@@ -83,6 +96,9 @@ public class ApplicationFrameworkLayer {
 
     private final ZigBeeNetworkManager driver;
     private final ZigBeeNetwork network;
+    private final PendingClusterResponses pendingClusterResponses = new PendingClusterResponses();
+    private final GroupMembershipRegistry groupMembershipRegistry = new GroupMembershipRegistry();
+    private final StripedExecutor eventExecutor;
 
     private byte firstFreeEndPoint;
 
@@ -91,6 +107,33 @@ public class ApplicationFrameworkLayer {
         this.driver = driver;
         firstFreeEndPoint = 1;
         network = new ZigBeeNetwork();
+        network.addEndpointListenerListener(groupMembershipRegistry);
+
+        int stripes = EVENT_STRIPES_DEFAULT;
+        try {
+            stripes = Integer.parseInt(System.getProperty(EVENT_STRIPES_KEY));
+            logger.trace("Using EVENT_STRIPES set from enviroment {}", stripes);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using EVENT_STRIPES set as DEFAULT {}", stripes);
+        }
+
+        int queueCapacity = EVENT_QUEUE_CAPACITY_DEFAULT;
+        try {
+            queueCapacity = Integer.parseInt(System.getProperty(EVENT_QUEUE_CAPACITY_KEY));
+            logger.trace("Using EVENT_QUEUE_CAPACITY set from enviroment {}", queueCapacity);
+        } catch (NumberFormatException ex) {
+            logger.trace("Using EVENT_QUEUE_CAPACITY set as DEFAULT {}", queueCapacity);
+        }
+
+        StripedExecutor.OverflowPolicy overflowPolicy = EVENT_OVERFLOW_POLICY_DEFAULT;
+        try {
+            overflowPolicy = StripedExecutor.OverflowPolicy.valueOf(System.getProperty(EVENT_OVERFLOW_POLICY_KEY));
+            logger.trace("Using EVENT_OVERFLOW_POLICY set from enviroment {}", overflowPolicy);
+        } catch (RuntimeException ex) {
+            logger.trace("Using EVENT_OVERFLOW_POLICY set as DEFAULT {}", overflowPolicy);
+        }
+
+        eventExecutor = new StripedExecutor("ZigBeeEventDispatcher", stripes, queueCapacity, overflowPolicy);
     }
 
     public static ApplicationFrameworkLayer getAFLayer(ZigBeeNetworkManager driver) {
@@ -102,6 +145,7 @@ public class ApplicationFrameworkLayer {
 				 * It means that the service implementing the driver has been changed 
 				 * so we have to create a new ApplicationFrameworkLayer
 				 */
+                singelton.eventExecutor.shutdown();
                 singelton = new ApplicationFrameworkLayer(driver);
             }
             return singelton;
@@ -110,6 +154,10 @@ public class ApplicationFrameworkLayer {
 
 
     public short getSendingEndpoint(ZigBeeEndpoint endpoint, int clusterId) {
+        return getSendingEndpoint(endpoint.getProfileId(), clusterId);
+    }
+
+    public short getSendingEndpoint(int receiverProfileId, int clusterId) {
         SenderIdentifier si = new SenderIdentifier(
                 ZigBeeApiConstants.PROFILE_ID_HOME_AUTOMATION, (short) clusterId
         );
@@ -120,7 +168,7 @@ public class ApplicationFrameworkLayer {
                 return sender2EndPoint.get(si);
             } else {
                 logger.info("No endpoint registered for <profileId,clusterId>=<{},{}>", si.profileId, si.clusterId);
-                final byte ep = createEndPoint(si, endpoint.getProfileId());
+                final byte ep = createEndPoint(si, receiverProfileId);
                 return ep;
             }
         }
@@ -130,6 +178,34 @@ public class ApplicationFrameworkLayer {
         return getSendingEndpoint(endpoint, input.getId());
     }
 
+    /**
+     * Sends cluster message to all members of the group with a single group addressed transmission.
+     * No responses are collected as each member may respond separately.
+     *
+     * @param groupId the group ID
+     * @param profileId the profile ID of the group members
+     * @param input the cluster message
+     * @throws ZigBeeNetworkManagerException if the message could not be sent
+     */
+    public void sendGroupMessage(int groupId, int profileId, ClusterMessage input) throws ZigBeeNetworkManagerException {
+        final short sender = getSendingEndpoint(profileId, input.getId());
+        final byte transaction = getNextTransactionId(sender);
+
+        //TODO Create radius and options according to the current configuration
+        final AF_DATA_CONFIRM response = driver.sendAFDataRequestExt(new AF_DATA_REQUEST_EXT(
+                groupId, sender, input.getId(), transaction, (byte) 0 /*options*/, (byte) 0 /*radius*/,
+                input.getClusterMsg()
+        ));
+
+        if (response == null) {
+            throw new ZigBeeNetworkManagerException("Unable to send cluster to group " + groupId
+                    + " on the ZigBee network due to general error");
+        } else if (response.getStatus() != 0) {
+            throw new ZigBeeNetworkManagerException("Unable to send cluster to group " + groupId
+                    + " on the ZigBee network:" + response.getErrorMsg());
+        }
+    }
+
     /**
      * Creates default sending end point.
      */
@@ -341,6 +417,46 @@ public class ApplicationFrameworkLayer {
         return network;
     }
 
+    /**
+     * Returns the {@link GroupMembershipRegistry} of the endpoints.
+     * @return {@link GroupMembershipRegistry}
+     */
+    public GroupMembershipRegistry getGroupMembershipRegistry() {
+        return groupMembershipRegistry;
+    }
+
+    /**
+     * Returns the {@link PendingClusterResponses} of the cluster invocations waiting for response.
+     * @return {@link PendingClusterResponses}
+     */
+    public PendingClusterResponses getPendingClusterResponses() {
+        return pendingClusterResponses;
+    }
+
+    /**
+     * Gets the executor which dispatches inbound events to listeners outside the packet parser thread.
+     * Events of the same device are dispatched in order when keyed by the device IEEE address.
+     *
+     * @return the event executor
+     */
+    public StripedExecutor getEventExecutor() {
+        return eventExecutor;
+    }
+
+    /**
+     * Shuts down the event executor after the already queued events have been dispatched.
+     * The layer of the driver is released so {@link #getAFLayer(ZigBeeNetworkManager)} creates
+     * a new one if the driver is used again.
+     */
+    public void shutdown() {
+        synchronized (LOCK) {
+            if (singelton == this) {
+                singelton = null;
+            }
+        }
+        eventExecutor.shutdown();
+    }
+
     /**
      * Returns the next transaction ID for the specified endpoint.
      * <p>
@@ -350,18 +466,20 @@ public class ApplicationFrameworkLayer {
      * @return byte transaction ID
      */
     public byte getNextTransactionId(short endPoint) {
-        if (!endPoint2Transaction.containsKey(endPoint)) {
-            endPoint2Transaction.put(endPoint, (byte) 1);
-        }
-        byte value = endPoint2Transaction.get(endPoint);
-        switch (value) {
-            case 127: {
-                endPoint2Transaction.put(endPoint, (byte) -128);
-                return 127;
+        synchronized (endPoint2Transaction) {
+            if (!endPoint2Transaction.containsKey(endPoint)) {
+                endPoint2Transaction.put(endPoint, (byte) 1);
             }
-            default: {
-                endPoint2Transaction.put(endPoint, (byte) (value + 1));
-                return value;
+            byte value = endPoint2Transaction.get(endPoint);
+            switch (value) {
+                case 127: {
+                    endPoint2Transaction.put(endPoint, (byte) -128);
+                    return 127;
+                }
+                default: {
+                    endPoint2Transaction.put(endPoint, (byte) (value + 1));
+                    return value;
+                }
             }
         }
     }
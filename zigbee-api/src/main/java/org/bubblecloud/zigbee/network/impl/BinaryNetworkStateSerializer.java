@@ -0,0 +1,394 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.ZigBeeNode;
+import org.bubblecloud.zigbee.network.ZigBeeNodeDescriptor;
+import org.bubblecloud.zigbee.network.ZigBeeNodePowerDescriptor;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
+import org.bubblecloud.zigbee.network.model.IEEEAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary network state format.
+ * <p>
+ * The stream starts with the {@link #MAGIC} bytes and the format version followed by length
+ * prefixed records and an end record. Readers skip records of unknown type, so new record types
+ * can be added without changing the version. Nodes are referenced by endpoint records with their
+ * index in the stream and cluster lists are interned: each distinct list is written once, on its
+ * first use, and later referenced by index. Restored endpoints with equal cluster lists share the array.
+ * The neighbour tables of the {@link NeighbourGraph} are written after the endpoints, if given.
+ * <p>
+ * Records are written and read one at a time, so the whole state is never held in memory in
+ * serialized form.
+ */
+public class BinaryNetworkStateSerializer {
+    /**
+     * The magic bytes which start the binary network state.
+     */
+    public static final byte[] MAGIC = {'Z', 'B', 'N', 'S'};
+    /**
+     * The format version.
+     */
+    public static final int VERSION = 1;
+
+    private static final int RECORD_END = 0;
+    private static final int RECORD_NODE = 1;
+    private static final int RECORD_ENDPOINT = 2;
+    private static final int RECORD_NEIGHBOUR_TABLE = 3;
+
+    private static final int NODE_DESCRIPTOR = 0x01;
+    private static final int POWER_DESCRIPTOR = 0x02;
+
+    /**
+     * Writes the network state to the output stream.
+     *
+     * @param zigBeeNetwork the {@link ZigBeeNetwork}
+     * @param outputStream the output stream
+     * @throws IOException if exception occurs in writing
+     */
+    public void write(final ZigBeeNetwork zigBeeNetwork, final OutputStream outputStream) throws IOException {
+        write(zigBeeNetwork, null, outputStream);
+    }
+
+    /**
+     * Writes the network state and the neighbour tables to the output stream.
+     *
+     * @param zigBeeNetwork the {@link ZigBeeNetwork}
+     * @param neighbourGraph the {@link NeighbourGraph} or null if neighbour tables are not written
+     * @param outputStream the output stream
+     * @throws IOException if exception occurs in writing
+     */
+    public void write(final ZigBeeNetwork zigBeeNetwork, final NeighbourGraph neighbourGraph,
+                      final OutputStream outputStream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(outputStream);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+
+        final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        final DataOutputStream record = new DataOutputStream(recordBytes);
+
+        final Map<ZigBeeNode, Integer> nodeIndexes = new HashMap<ZigBeeNode, Integer>();
+        final List<ZigBeeNodeImpl> nodes = zigBeeNetwork.getNodeList();
+        for (final ZigBeeNodeImpl node : nodes) {
+            nodeIndexes.put(node, nodeIndexes.size());
+            writeNode(node, record);
+            writeRecord(out, RECORD_NODE, recordBytes);
+        }
+
+        final ClusterListTable clusterLists = new ClusterListTable();
+        for (final ZigBeeNodeImpl node : nodes) {
+            final List<ZigBeeEndpoint> endpoints = zigBeeNetwork.getEndPoints(node);
+            for (final ZigBeeEndpoint endpoint : endpoints) {
+                writeVarInt(record, nodeIndexes.get(node));
+                record.writeByte(endpoint.getEndPointAddress());
+                record.writeShort(endpoint.getProfileId());
+                record.writeShort(endpoint.getDeviceTypeId());
+                record.writeByte(endpoint.getDeviceVersion());
+                clusterLists.write(record, endpoint.getInputClusters());
+                clusterLists.write(record, endpoint.getOutputClusters());
+                writeRecord(out, RECORD_ENDPOINT, recordBytes);
+            }
+        }
+
+        if (neighbourGraph != null) {
+            for (final NeighbourTable table : neighbourGraph.getTables()) {
+                writeNeighbourTable(table, record);
+                writeRecord(out, RECORD_NEIGHBOUR_TABLE, recordBytes);
+            }
+        }
+
+        out.writeByte(RECORD_END);
+        out.flush();
+    }
+
+    /**
+     * Reads the network state from the input stream and adds the nodes and endpoints to the network.
+     *
+     * @param zigBeeNetworkManager the {@link ZigBeeNetworkManager ZigBee network manager}
+     * @param zigBeeNetwork the {@link ZigBeeNetwork ZigBee network}
+     * @param inputStream the input stream
+     * @throws IOException if exception occurs in reading or the stream is not in binary network state format
+     */
+    public void read(final ZigBeeNetworkManager zigBeeNetworkManager, final ZigBeeNetwork zigBeeNetwork,
+                     final InputStream inputStream) throws IOException {
+        read(zigBeeNetworkManager, zigBeeNetwork, null, inputStream);
+    }
+
+    /**
+     * Reads the network state from the input stream, adds the nodes and endpoints to the network
+     * and updates the neighbour tables to the neighbour graph.
+     *
+     * @param zigBeeNetworkManager the {@link ZigBeeNetworkManager ZigBee network manager}
+     * @param zigBeeNetwork the {@link ZigBeeNetwork ZigBee network}
+     * @param neighbourGraph the {@link NeighbourGraph} or null if neighbour tables are skipped
+     * @param inputStream the input stream
+     * @throws IOException if exception occurs in reading or the stream is not in binary network state format
+     */
+    public void read(final ZigBeeNetworkManager zigBeeNetworkManager, final ZigBeeNetwork zigBeeNetwork,
+                     final NeighbourGraph neighbourGraph, final InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(inputStream);
+        final byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a binary network state.");
+        }
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary network state version: " + version);
+        }
+
+        final List<ZigBeeNodeImpl> nodes = new ArrayList<ZigBeeNodeImpl>();
+        final List<int[]> clusterLists = new ArrayList<int[]>();
+        byte[] buffer = new byte[64];
+        while (true) {
+            final int type = in.readUnsignedByte();
+            if (type == RECORD_END) {
+                return;
+            }
+            final int length = readVarInt(in);
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            in.readFully(buffer, 0, length);
+            final DataInputStream record = new DataInputStream(new ByteArrayInputStream(buffer, 0, length));
+            switch (type) {
+                case RECORD_NODE:
+                    final ZigBeeNodeImpl restoredNode = readNode(record);
+                    final ZigBeeNodeImpl existingNode = zigBeeNetwork.getNode(restoredNode.getIeeeAddress());
+                    if (existingNode != null) {
+                        nodes.add(existingNode);
+                    } else {
+                        zigBeeNetwork.addNode(restoredNode);
+                        nodes.add(restoredNode);
+                    }
+                    break;
+                case RECORD_ENDPOINT:
+                    final ZigBeeNodeImpl node = nodes.get(readVarInt(record));
+                    final short endpointAddress = (short) record.readUnsignedByte();
+                    final int profileId = record.readUnsignedShort();
+                    final int deviceTypeId = record.readUnsignedShort();
+                    final byte deviceVersion = record.readByte();
+                    final int[] inputClusters = readClusterList(record, clusterLists);
+                    final int[] outputClusters = readClusterList(record, clusterLists);
+                    final ZigBeeEndpointImpl endpoint = new ZigBeeEndpointImpl(node, profileId, deviceTypeId,
+                            deviceVersion, endpointAddress, inputClusters, outputClusters);
+                    endpoint.setNetworkManager(zigBeeNetworkManager);
+                    zigBeeNetwork.addEndpoint(endpoint);
+                    break;
+                case RECORD_NEIGHBOUR_TABLE:
+                    if (neighbourGraph != null) {
+                        neighbourGraph.update(readNeighbourTable(record));
+                    }
+                    break;
+                default:
+                    // Record type added by a later writer, skipped.
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes node with its descriptors.
+     *
+     * @param node the node
+     * @param out the output
+     * @throws IOException if exception occurs in writing
+     */
+    static void writeNode(final ZigBeeNode node, final DataOutput out) throws IOException {
+        out.writeLong(IEEEAddress.fromColonNotation(node.getIeeeAddress()));
+        out.writeShort(node.getNetworkAddress());
+        out.writeShort(node instanceof ZigBeeNodeImpl ? ((ZigBeeNodeImpl) node).getPan() : 0);
+        final ZigBeeNodeDescriptor nodeDescriptor = node.getNodeDescriptor();
+        final ZigBeeNodePowerDescriptor powerDescriptor = node.getPowerDescriptor();
+        out.writeByte((nodeDescriptor != null ? NODE_DESCRIPTOR : 0) | (powerDescriptor != null ? POWER_DESCRIPTOR : 0));
+        if (nodeDescriptor != null) {
+            nodeDescriptor.write(out);
+        }
+        if (powerDescriptor != null) {
+            powerDescriptor.write(out);
+        }
+    }
+
+    /**
+     * Reads node written by {@link #writeNode(ZigBeeNode, DataOutput)}.
+     *
+     * @param in the input
+     * @return the node which has not been added to any network
+     * @throws IOException if exception occurs in reading
+     */
+    static ZigBeeNodeImpl readNode(final DataInput in) throws IOException {
+        final String ieeeAddress = IEEEAddress.toString(in.readLong());
+        final int networkAddress = in.readUnsignedShort();
+        final short pan = in.readShort();
+        final int flags = in.readUnsignedByte();
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(networkAddress, ieeeAddress, pan);
+        if ((flags & NODE_DESCRIPTOR) != 0) {
+            node.setNodeDescriptor(ZigBeeNodeDescriptor.read(in));
+        }
+        if ((flags & POWER_DESCRIPTOR) != 0) {
+            node.setPowerDescriptor(ZigBeeNodePowerDescriptor.read(in));
+        }
+        return node;
+    }
+
+    /**
+     * Writes neighbour table with the time it was received.
+     *
+     * @param table the neighbour table
+     * @param out the output
+     * @throws IOException if exception occurs in writing
+     */
+    static void writeNeighbourTable(final NeighbourTable table, final DataOutput out) throws IOException {
+        out.writeShort(table.getSource());
+        out.writeLong(table.getTimestamp());
+        writeVarInt(out, table.size());
+        for (int i = 0; i < table.size(); i++) {
+            out.writeShort(table.getAddress(i));
+            out.writeLong(table.getIeeeAddress(i));
+            out.writeByte(table.getLqi(i));
+            out.writeByte(table.getFlags(i));
+            out.writeByte(table.getDepth(i));
+        }
+    }
+
+    /**
+     * Reads neighbour table written by {@link #writeNeighbourTable(NeighbourTable, DataOutput)}.
+     *
+     * @param in the input
+     * @return the neighbour table
+     * @throws IOException if exception occurs in reading
+     */
+    static NeighbourTable readNeighbourTable(final DataInput in) throws IOException {
+        final int source = in.readUnsignedShort();
+        final long timestamp = in.readLong();
+        final int size = readVarInt(in);
+        final int[] addresses = new int[size];
+        final long[] ieeeAddresses = new long[size];
+        final int[] lqis = new int[size];
+        final int[] flags = new int[size];
+        final int[] depths = new int[size];
+        for (int i = 0; i < size; i++) {
+            addresses[i] = in.readUnsignedShort();
+            ieeeAddresses[i] = in.readLong();
+            lqis[i] = in.readUnsignedByte();
+            flags[i] = in.readUnsignedByte();
+            depths[i] = in.readUnsignedByte();
+        }
+        return new NeighbourTable(source, timestamp, addresses, ieeeAddresses, lqis, flags, depths);
+    }
+
+    private int[] readClusterList(final DataInput in, final List<int[]> clusterLists) throws IOException {
+        final int reference = readVarInt(in);
+        if (reference != 0) {
+            return clusterLists.get(reference - 1);
+        }
+        final int[] clusters = new int[readVarInt(in)];
+        for (int i = 0; i < clusters.length; i++) {
+            clusters[i] = in.readUnsignedShort();
+        }
+        clusterLists.add(clusters);
+        return clusters;
+    }
+
+    static void writeRecord(final DataOutputStream out, final int type,
+                                    final ByteArrayOutputStream record) throws IOException {
+        out.writeByte(type);
+        writeVarInt(out, record.size());
+        record.writeTo(out);
+        record.reset();
+    }
+
+    static void writeVarInt(final DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(final DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    /**
+     * Table of cluster lists written so far. A list is written in full on first use as reference 0
+     * followed by the list, and later as its one based index.
+     */
+    private static class ClusterListTable {
+        private final Map<ClusterList, Integer> indexes = new HashMap<ClusterList, Integer>();
+
+        void write(final DataOutput out, final int[] clusters) throws IOException {
+            final int[] list = clusters == null ? new int[0] : clusters;
+            final ClusterList key = new ClusterList(list);
+            final Integer index = indexes.get(key);
+            if (index != null) {
+                writeVarInt(out, index);
+                return;
+            }
+            indexes.put(key, indexes.size() + 1);
+            writeVarInt(out, 0);
+            writeVarInt(out, list.length);
+            for (final int cluster : list) {
+                out.writeShort(cluster);
+            }
+        }
+    }
+
+    /**
+     * Cluster list with value equality.
+     */
+    private static class ClusterList {
+        private final int[] clusters;
+
+        ClusterList(final int[] clusters) {
+            this.clusters = clusters;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(clusters);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof ClusterList && Arrays.equals(clusters, ((ClusterList) obj).clusters);
+        }
+    }
+}
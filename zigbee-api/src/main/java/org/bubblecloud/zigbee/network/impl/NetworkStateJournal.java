@@ -0,0 +1,614 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.bubblecloud.zigbee.network.EndpointListener;
+import org.bubblecloud.zigbee.network.ZigBeeDiscoveryMonitor;
+import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.ZigBeeNode;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraphListener;
+import org.bubblecloud.zigbee.network.model.IEEEAddress;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
+import org.bubblecloud.zigbee.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the network topology incrementally. Endpoint added, updated and removed events are
+ * appended as compact records to a journal file, so persistence cost is proportional to the changes.
+ * When the journal grows over the compaction threshold, a {@link BinaryNetworkStateSerializer}
+ * snapshot is written in the background and the journal is truncated. On {@link #open()} the
+ * snapshot and the journal are replayed to the network.
+ * <p>
+ * Records are encoded in the notifying thread and written by a single journal thread, which also
+ * performs the compaction. Journal records are idempotent upserts and removals, so a journal
+ * replayed over a snapshot which already contains some of its changes yields the same state.
+ * <p>
+ * Nodes browsed or announced before their endpoints are known are journaled as well. They are not
+ * added to the network on restore, as the endpoint builder would consider them inspected, but are
+ * available from {@link #getDiscoveredNodes()} to be queued for inspection again.
+ * <p>
+ * If a {@link NeighbourGraph} is given, changed neighbour tables are journaled and the tables are
+ * included in the snapshot, so the link quality information survives restarts.
+ * <p>
+ * Compaction writes the snapshot to a temporary file which is renamed over the previous snapshot.
+ * If the snapshot is missing on {@link #open()} the temporary file is restored instead. The journal
+ * is truncated only after the snapshot containing its records has been written.
+ */
+public class NetworkStateJournal implements EndpointListener, ZigBeeDiscoveryMonitor, NeighbourGraphListener {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(NetworkStateJournal.class);
+    /**
+     * The snapshot file name.
+     */
+    public static final String SNAPSHOT_FILE_NAME = "network-state.bin";
+    /**
+     * The journal file name.
+     */
+    public static final String JOURNAL_FILE_NAME = "network-state.journal";
+    /**
+     * The default number of journal records which triggers compaction.
+     */
+    public static final int COMPACTION_THRESHOLD_DEFAULT = 1000;
+    /**
+     * The magic bytes which start the journal.
+     */
+    public static final byte[] MAGIC = {'Z', 'B', 'N', 'J'};
+    /**
+     * The journal format version.
+     */
+    public static final int VERSION = 1;
+
+    private static final int RECORD_ENDPOINT_UPDATED = 1;
+    private static final int RECORD_ENDPOINT_REMOVED = 2;
+    private static final int RECORD_NODE_DISCOVERED = 3;
+    private static final int RECORD_NEIGHBOUR_TABLE_UPDATED = 4;
+    private static final int RECORD_NEIGHBOUR_TABLE_REMOVED = 5;
+
+    private final ZigBeeNetworkManager networkManager;
+    private final ZigBeeNetwork network;
+    /**
+     * The neighbour graph or null if neighbour tables are not persisted.
+     */
+    private final NeighbourGraph neighbourGraph;
+    private final File snapshotFile;
+    private final File temporarySnapshotFile;
+    private final File journalFile;
+    private final int compactionThreshold;
+    /**
+     * The journal thread.
+     */
+    private final ExecutorService writer;
+    /**
+     * The journal output, accessed only by the journal thread after open.
+     */
+    private DataOutputStream journal;
+    /**
+     * The number of records in the journal, accessed only by the journal thread after open.
+     */
+    private int journalRecords = 0;
+    /**
+     * The network addresses of the discovered nodes without endpoints keyed by IEEE address.
+     */
+    private final Map<Long, Integer> discoveredNodes = new ConcurrentHashMap<Long, Integer>();
+    /**
+     * Flag reflecting that the journal is open.
+     */
+    private volatile boolean open = false;
+
+    /**
+     * Constructor which sets the journal directory.
+     *
+     * @param networkManager the {@link ZigBeeNetworkManager ZigBee network manager}
+     * @param network the {@link ZigBeeNetwork ZigBee network}
+     * @param directory the directory of the snapshot and journal files
+     */
+    public NetworkStateJournal(final ZigBeeNetworkManager networkManager, final ZigBeeNetwork network,
+                               final File directory) {
+        this(networkManager, network, directory, COMPACTION_THRESHOLD_DEFAULT);
+    }
+
+    /**
+     * Constructor which sets the journal directory and compaction threshold.
+     *
+     * @param networkManager the {@link ZigBeeNetworkManager ZigBee network manager}
+     * @param network the {@link ZigBeeNetwork ZigBee network}
+     * @param directory the directory of the snapshot and journal files
+     * @param compactionThreshold the number of journal records which triggers compaction
+     */
+    public NetworkStateJournal(final ZigBeeNetworkManager networkManager, final ZigBeeNetwork network,
+                               final File directory, final int compactionThreshold) {
+        this(networkManager, network, null, directory, compactionThreshold);
+    }
+
+    /**
+     * Constructor which sets the neighbour graph, journal directory and compaction threshold.
+     *
+     * @param networkManager the {@link ZigBeeNetworkManager ZigBee network manager}
+     * @param network the {@link ZigBeeNetwork ZigBee network}
+     * @param neighbourGraph the {@link NeighbourGraph} or null if neighbour tables are not persisted
+     * @param directory the directory of the snapshot and journal files
+     * @param compactionThreshold the number of journal records which triggers compaction
+     */
+    public NetworkStateJournal(final ZigBeeNetworkManager networkManager, final ZigBeeNetwork network,
+                               final NeighbourGraph neighbourGraph, final File directory,
+                               final int compactionThreshold) {
+        this.networkManager = networkManager;
+        this.network = network;
+        this.neighbourGraph = neighbourGraph;
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+        this.temporarySnapshotFile = new File(directory, SNAPSHOT_FILE_NAME + ".tmp");
+        this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+        this.compactionThreshold = compactionThreshold;
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("NetworkStateJournal"));
+    }
+
+    /**
+     * Replays the snapshot and the journal to the network and starts journaling the network changes.
+     *
+     * @throws IOException if exception occurs in reading the snapshot or opening the journal
+     */
+    public void open() throws IOException {
+        final ZigBeeNetwork restored = new ZigBeeNetwork();
+        if (!snapshotFile.exists() && temporarySnapshotFile.exists()) {
+            // Compaction was interrupted after the previous snapshot was removed, the new snapshot is complete.
+            logger.warn("Network state snapshot missing, restoring it from {}", temporarySnapshotFile);
+            if (!temporarySnapshotFile.renameTo(snapshotFile)) {
+                throw new IOException("Unable to restore network state snapshot from " + temporarySnapshotFile);
+            }
+        }
+        if (snapshotFile.exists()) {
+            final InputStream inputStream = new BufferedInputStream(new FileInputStream(snapshotFile));
+            try {
+                new BinaryNetworkStateSerializer().read(networkManager, restored, neighbourGraph, inputStream);
+            } finally {
+                inputStream.close();
+            }
+        }
+        final boolean journalValid = replayJournal(restored);
+        for (final ZigBeeNodeImpl node : restored.getNodeList()) {
+            discoveredNodes.remove(IEEEAddress.fromColonNotation(node.getIeeeAddress()));
+        }
+        transfer(restored);
+        logger.info("Restored {} nodes from network state snapshot and {} journal records.",
+                restored.getNodeCount(), journalRecords);
+
+        if (journalValid) {
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+        } else {
+            // The replayed records are written to snapshot before the journal is truncated.
+            doCompact();
+        }
+        network.addEndpointListenerListener(this);
+        network.addDiscoveryMonitor(this);
+        if (neighbourGraph != null) {
+            // The restored tables notified on registration are not journaled as the journal is not open yet.
+            neighbourGraph.addListener(this);
+        }
+        open = true;
+        if (journalRecords >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Stops journaling, writes the pending records and closes the journal.
+     */
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        network.removeEndpointListener(this);
+        network.removeDiscoveryMonitor(this);
+        if (neighbourGraph != null) {
+            neighbourGraph.removeListener(this);
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    journal.close();
+                } catch (final IOException e) {
+                    logger.warn("Error closing network state journal.", e);
+                }
+            }
+        });
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Network state journal did not close in time.");
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while closing network state journal.");
+        }
+    }
+
+    /**
+     * Schedules compaction of the journal into a snapshot.
+     */
+    public void compact() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    doCompact();
+                } catch (final IOException e) {
+                    logger.error("Error compacting network state journal.", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the nodes which were discovered but had no endpoints in the network when the journal was restored.
+     *
+     * @return the list of nodes with network and IEEE address
+     */
+    public List<ZigBeeNode> getDiscoveredNodes() {
+        final List<ZigBeeNode> nodes = new ArrayList<ZigBeeNode>();
+        for (final Map.Entry<Long, Integer> entry : discoveredNodes.entrySet()) {
+            nodes.add(new ZigBeeNodeImpl(entry.getValue(), new ZToolAddress64(entry.getKey()), (short) -1));
+        }
+        return nodes;
+    }
+
+    @Override
+    public void browsedNode(final ZigBeeNode node) {
+        nodeDiscovered(node);
+    }
+
+    @Override
+    public void announcedNode(final ZigBeeNode node) {
+        nodeDiscovered(node);
+    }
+
+    /**
+     * Journals the discovered node unless it is already in the network or journaled with the same network address.
+     *
+     * @param node the discovered node
+     */
+    private void nodeDiscovered(final ZigBeeNode node) {
+        final long ieeeAddress = IEEEAddress.fromColonNotation(node.getIeeeAddress());
+        if (network.getNode(ieeeAddress) != null) {
+            return;
+        }
+        final Integer previous = discoveredNodes.put(ieeeAddress, node.getNetworkAddress());
+        if (previous == null || previous != node.getNetworkAddress()) {
+            append(RECORD_NODE_DISCOVERED, encodeNode(ieeeAddress, node.getNetworkAddress()));
+        }
+    }
+
+    @Override
+    public void endpointAdded(final ZigBeeEndpoint endpoint) {
+        discoveredNodes.remove(IEEEAddress.fromColonNotation(endpoint.getNode().getIeeeAddress()));
+        append(RECORD_ENDPOINT_UPDATED, encodeEndpoint(endpoint));
+    }
+
+    @Override
+    public void endpointUpdated(final ZigBeeEndpoint endpoint) {
+        append(RECORD_ENDPOINT_UPDATED, encodeEndpoint(endpoint));
+    }
+
+    @Override
+    public void endpointRemoved(final ZigBeeEndpoint endpoint) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(IEEEAddress.fromColonNotation(endpoint.getNode().getIeeeAddress()));
+            out.writeByte(endpoint.getEndPointAddress());
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(RECORD_ENDPOINT_REMOVED, bytes.toByteArray());
+    }
+
+    @Override
+    public void neighbourTableChanged(final NeighbourTable previous, final NeighbourTable current) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            if (current != null) {
+                BinaryNetworkStateSerializer.writeNeighbourTable(current, out);
+            } else {
+                out.writeShort(previous.getSource());
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(current != null ? RECORD_NEIGHBOUR_TABLE_UPDATED : RECORD_NEIGHBOUR_TABLE_REMOVED,
+                bytes.toByteArray());
+    }
+
+    private static byte[] encodeNode(final long ieeeAddress, final int networkAddress) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(10);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(ieeeAddress);
+            out.writeShort(networkAddress);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] encodeEndpoint(final ZigBeeEndpoint endpoint) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            BinaryNetworkStateSerializer.writeNode(endpoint.getNode(), out);
+            out.writeByte(endpoint.getEndPointAddress());
+            out.writeShort(endpoint.getProfileId());
+            out.writeShort(endpoint.getDeviceTypeId());
+            out.writeByte(endpoint.getDeviceVersion());
+            writeClusters(out, endpoint.getInputClusters());
+            writeClusters(out, endpoint.getOutputClusters());
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void append(final int type, final byte[] record) {
+        if (!open) {
+            return;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeRecord(type, record);
+                    journal.flush();
+                    if (journalRecords >= compactionThreshold) {
+                        doCompact();
+                    }
+                } catch (final IOException e) {
+                    logger.error("Error appending to network state journal.", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes record to the journal. Executed by the journal thread.
+     *
+     * @param type the record type
+     * @param record the record
+     * @throws IOException if exception occurs in writing
+     */
+    private void writeRecord(final int type, final byte[] record) throws IOException {
+        journal.writeByte(type);
+        BinaryNetworkStateSerializer.writeVarInt(journal, record.length);
+        journal.write(record);
+        journalRecords++;
+    }
+
+    private void execute(final Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (final RejectedExecutionException e) {
+            logger.debug("Network state journal closed, change not persisted.");
+        }
+    }
+
+    /**
+     * Writes snapshot of the network and truncates the journal. The discovered nodes without
+     * endpoints are not in the snapshot, so they are written to the new journal. Executed by
+     * the journal thread, or by {@link #open()} before the journal is opened.
+     *
+     * @throws IOException if exception occurs in writing
+     */
+    private void doCompact() throws IOException {
+        final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(temporarySnapshotFile));
+        try {
+            new BinaryNetworkStateSerializer().write(network, neighbourGraph, outputStream);
+        } finally {
+            outputStream.close();
+        }
+        // If the process stops between delete and rename, open() restores the temporary snapshot.
+        if (snapshotFile.exists() && !snapshotFile.delete() || !temporarySnapshotFile.renameTo(snapshotFile)) {
+            throw new IOException("Unable to replace network state snapshot " + snapshotFile);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        journal = createJournal();
+        logger.debug("Compacted {} network state journal records to snapshot.", journalRecords);
+        journalRecords = 0;
+        for (final Map.Entry<Long, Integer> entry : discoveredNodes.entrySet()) {
+            writeRecord(RECORD_NODE_DISCOVERED, encodeNode(entry.getKey(), entry.getValue()));
+        }
+        journal.flush();
+    }
+
+    private DataOutputStream createJournal() throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile)));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.flush();
+        return out;
+    }
+
+    /**
+     * Replays the journal records to the network.
+     *
+     * @param restored the network
+     * @return false if journal was corrupted or ended with a partial record and has to be rewritten
+     * @throws IOException if exception occurs in reading
+     */
+    private boolean replayJournal(final ZigBeeNetwork restored) throws IOException {
+        if (!journalFile.exists()) {
+            return false;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        try {
+            final byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic) || in.readUnsignedByte() != VERSION) {
+                logger.warn("Ignoring network state journal of unknown format.");
+                return false;
+            }
+            while (true) {
+                final int type = in.read();
+                if (type == -1) {
+                    return true;
+                }
+                final byte[] record = new byte[BinaryNetworkStateSerializer.readVarInt(in)];
+                in.readFully(record);
+                final DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                switch (type) {
+                    case RECORD_ENDPOINT_UPDATED:
+                        replayEndpointUpdated(restored, recordIn);
+                        break;
+                    case RECORD_ENDPOINT_REMOVED:
+                        replayEndpointRemoved(restored, recordIn);
+                        break;
+                    case RECORD_NODE_DISCOVERED:
+                        discoveredNodes.put(recordIn.readLong(), recordIn.readUnsignedShort());
+                        break;
+                    case RECORD_NEIGHBOUR_TABLE_UPDATED:
+                        if (neighbourGraph != null) {
+                            neighbourGraph.update(BinaryNetworkStateSerializer.readNeighbourTable(recordIn));
+                        }
+                        break;
+                    case RECORD_NEIGHBOUR_TABLE_REMOVED:
+                        if (neighbourGraph != null) {
+                            neighbourGraph.remove(recordIn.readUnsignedShort());
+                        }
+                        break;
+                    default:
+                        logger.debug("Skipping network state journal record of unknown type {}", type);
+                        break;
+                }
+                journalRecords++;
+            }
+        } catch (final EOFException e) {
+            logger.warn("Network state journal ends with partial record, discarding it.");
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void replayEndpointUpdated(final ZigBeeNetwork restored, final DataInputStream in) throws IOException {
+        final ZigBeeNodeImpl recordNode = BinaryNetworkStateSerializer.readNode(in);
+        final short endpointAddress = (short) in.readUnsignedByte();
+        final int profileId = in.readUnsignedShort();
+        final int deviceTypeId = in.readUnsignedShort();
+        final byte deviceVersion = in.readByte();
+        final int[] inputClusters = readClusters(in);
+        final int[] outputClusters = readClusters(in);
+
+        ZigBeeNodeImpl node = restored.getNode(recordNode.getIeeeAddress());
+        if (node == null) {
+            node = recordNode;
+            restored.addNode(node);
+        } else {
+            restored.updateNetworkAddress(node, recordNode.getNetworkAddress());
+            if (recordNode.getNodeDescriptor() != null) {
+                node.setNodeDescriptor(recordNode.getNodeDescriptor());
+            }
+            if (recordNode.getPowerDescriptor() != null) {
+                node.setPowerDescriptor(recordNode.getPowerDescriptor());
+            }
+            final ZigBeeEndpoint previous = restored.getEndpoint(node, endpointAddress);
+            if (previous != null) {
+                restored.removeEndpoint(previous);
+            }
+        }
+        final ZigBeeEndpointImpl endpoint = new ZigBeeEndpointImpl(node, profileId, deviceTypeId, deviceVersion,
+                endpointAddress, inputClusters, outputClusters);
+        endpoint.setNetworkManager(networkManager);
+        restored.addEndpoint(endpoint);
+    }
+
+    private void replayEndpointRemoved(final ZigBeeNetwork restored, final DataInputStream in) throws IOException {
+        final ZigBeeNodeImpl node = restored.getNode(IEEEAddress.toString(in.readLong()));
+        final int endpointAddress = in.readUnsignedByte();
+        if (node != null) {
+            final ZigBeeEndpoint endpoint = restored.getEndpoint(node, endpointAddress);
+            if (endpoint != null) {
+                restored.removeEndpoint(endpoint);
+            }
+        }
+    }
+
+    /**
+     * Adds the restored nodes and endpoints to the network.
+     *
+     * @param restored the restored network
+     */
+    private void transfer(final ZigBeeNetwork restored) {
+        for (final ZigBeeNodeImpl node : restored.getNodeList()) {
+            final List<ZigBeeEndpoint> endpoints = restored.getEndPoints(node);
+            ZigBeeNodeImpl existingNode = network.getNode(node.getIeeeAddress());
+            if (existingNode == null) {
+                network.addNode(node);
+                existingNode = node;
+            }
+            for (final ZigBeeEndpoint endpoint : endpoints) {
+                if (existingNode != node) {
+                    ((ZigBeeEndpointImpl) endpoint).setNode(existingNode);
+                }
+                network.addEndpoint(endpoint);
+            }
+        }
+    }
+
+    private static void writeClusters(final DataOutputStream out, final int[] clusters) throws IOException {
+        final int length = clusters == null ? 0 : clusters.length;
+        BinaryNetworkStateSerializer.writeVarInt(out, length);
+        for (int i = 0; i < length; i++) {
+            out.writeShort(clusters[i]);
+        }
+    }
+
+    private static int[] readClusters(final DataInputStream in) throws IOException {
+        final int[] clusters = new int[BinaryNetworkStateSerializer.readVarInt(in)];
+        for (int i = 0; i < clusters.length; i++) {
+            clusters[i] = in.readUnsignedShort();
+        }
+        return clusters;
+    }
+}
@@ -18,8 +18,12 @@ package org.bubblecloud.zigbee.network.impl;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
 import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
 import org.bubblecloud.zigbee.network.ZigBeeNode;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph;
+import org.apache.commons.codec.binary.Base64;
 import org.codehaus.jackson.map.ObjectMapper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,6 +35,25 @@ import java.util.List;
  */
 public class NetworkStateSerializer {
 
+    /**
+     * The network state formats.
+     */
+    public enum Format {
+        /**
+         * Jackson JSON of the endpoints.
+         */
+        JSON,
+        /**
+         * Compact binary format of {@link BinaryNetworkStateSerializer} encoded as base 64.
+         */
+        BINARY
+    }
+
+    /**
+     * The header identifying network state {@link String} in {@link Format#BINARY} format.
+     */
+    public static final String BINARY_HEADER = "zbns:";
+
     /**
      * Serializes the network state.
      * <p>
@@ -40,6 +63,42 @@ public class NetworkStateSerializer {
      * @return the serialized network state as json {@link String}.
      */
     public String serialize(final ZigBeeNetwork zigBeeNetwork) {
+        return serialize(zigBeeNetwork, Format.JSON);
+    }
+
+    /**
+     * Serializes the network state in the given format.
+     *
+     * @param zigBeeNetwork the {@link ZigBeeNetwork}
+     * @param format the {@link Format}
+     * @return the serialized network state
+     */
+    public String serialize(final ZigBeeNetwork zigBeeNetwork, final Format format) {
+        return serialize(zigBeeNetwork, null, format);
+    }
+
+    /**
+     * Serializes the network state in the given format. The neighbour tables are included in
+     * {@link Format#BINARY} format only.
+     *
+     * @param zigBeeNetwork the {@link ZigBeeNetwork}
+     * @param neighbourGraph the {@link NeighbourGraph} or null
+     * @param format the {@link Format}
+     * @return the serialized network state
+     */
+    public String serialize(final ZigBeeNetwork zigBeeNetwork, final NeighbourGraph neighbourGraph,
+                            final Format format) {
+        if (format == Format.BINARY) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try {
+                new BinaryNetworkStateSerializer().write(zigBeeNetwork, neighbourGraph, outputStream);
+                // Byte array variants of Base64 are used as the String variants are missing
+                // from the older commons-codec bundled with Android.
+                return BINARY_HEADER + new String(Base64.encodeBase64(outputStream.toByteArray()), "US-ASCII");
+            } catch (final IOException e) {
+                throw new RuntimeException("Error serializing network state.", e);
+            }
+        }
         final ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.enableDefaultTyping();
         objectMapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
@@ -60,13 +119,49 @@ public class NetworkStateSerializer {
     }
 
     /**
-     * Deserializes the network state.
+     * Detects the format of serialized network state.
+     *
+     * @param networkStateString the network state as {@link String}
+     * @return the {@link Format}
+     */
+    public static Format getFormat(final String networkStateString) {
+        return networkStateString.startsWith(BINARY_HEADER) ? Format.BINARY : Format.JSON;
+    }
+
+    /**
+     * Deserializes the network state. The format is detected from the network state, so state
+     * stored in JSON can be migrated to binary by deserializing it and serializing in {@link Format#BINARY}.
      * 
      * @param zigBeeNetworkManager the {@link ZigBeeNetworkManager ZigBee network manager}
      * @param zigBeeNetwork the {@link ZigBeeNetwork ZigBee network}
      * @param networkStateString the network state as {@link String}
      */
     public void deserialize(final ZigBeeNetworkManager zigBeeNetworkManager, final ZigBeeNetwork zigBeeNetwork, final String networkStateString) {
+        deserialize(zigBeeNetworkManager, zigBeeNetwork, null, networkStateString);
+    }
+
+    /**
+     * Deserializes the network state. Neighbour tables found in {@link Format#BINARY} state are
+     * restored to the neighbour graph.
+     *
+     * @param zigBeeNetworkManager the {@link ZigBeeNetworkManager ZigBee network manager}
+     * @param zigBeeNetwork the {@link ZigBeeNetwork ZigBee network}
+     * @param neighbourGraph the {@link NeighbourGraph} or null
+     * @param networkStateString the network state as {@link String}
+     */
+    public void deserialize(final ZigBeeNetworkManager zigBeeNetworkManager, final ZigBeeNetwork zigBeeNetwork,
+                            final NeighbourGraph neighbourGraph, final String networkStateString) {
+        if (getFormat(networkStateString) == Format.BINARY) {
+            try {
+                final byte[] bytes = Base64.decodeBase64(
+                        networkStateString.substring(BINARY_HEADER.length()).getBytes("US-ASCII"));
+                new BinaryNetworkStateSerializer().read(zigBeeNetworkManager, zigBeeNetwork, neighbourGraph,
+                        new ByteArrayInputStream(bytes));
+            } catch (final IOException e) {
+                throw new RuntimeException("Error deserializing network state.", e);
+            }
+            return;
+        }
         final ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.enableDefaultTyping();
         objectMapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
@@ -0,0 +1,518 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.network.model.IEEEAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the nodes and endpoints of the network indexed by IEEE address, network
+ * address, profile and (profile, input cluster). The indexes are sorted primitive key arrays searched
+ * with binary search, so lookups neither lock nor box the keys. Changes build a new snapshot which is
+ * published as a whole, so readers never see a partially applied change. A change copies only the
+ * index entries of the affected node and shares the rest with the previous snapshot.
+ */
+final class NetworkTopology {
+    /**
+     * The snapshot of network without nodes.
+     */
+    static final NetworkTopology EMPTY = new NetworkTopology(
+            new ZigBeeNodeImpl[0], new long[0], new ZigBeeEndpoint[0][], new int[0], new ZigBeeNodeImpl[0],
+            EndpointIndex.EMPTY, EndpointIndex.EMPTY);
+
+    /**
+     * The nodes sorted by IEEE address.
+     */
+    private final ZigBeeNodeImpl[] nodes;
+    /**
+     * The IEEE addresses of the nodes.
+     */
+    private final long[] ieeeAddresses;
+    /**
+     * The endpoints of the nodes sorted by endpoint address.
+     */
+    private final ZigBeeEndpoint[][] nodeEndpoints;
+    /**
+     * The sorted network addresses.
+     */
+    private final int[] networkAddresses;
+    /**
+     * The nodes by network address.
+     */
+    private final ZigBeeNodeImpl[] networkAddressNodes;
+    /**
+     * The endpoints by profile ID.
+     */
+    private final EndpointIndex profileIndex;
+    /**
+     * The endpoints by (profile ID, input cluster ID) key.
+     */
+    private final EndpointIndex clusterIndex;
+
+    private NetworkTopology(final ZigBeeNodeImpl[] nodes, final long[] ieeeAddresses,
+                            final ZigBeeEndpoint[][] nodeEndpoints, final int[] networkAddresses,
+                            final ZigBeeNodeImpl[] networkAddressNodes, final EndpointIndex profileIndex,
+                            final EndpointIndex clusterIndex) {
+        this.nodes = nodes;
+        this.ieeeAddresses = ieeeAddresses;
+        this.nodeEndpoints = nodeEndpoints;
+        this.networkAddresses = networkAddresses;
+        this.networkAddressNodes = networkAddressNodes;
+        this.profileIndex = profileIndex;
+        this.clusterIndex = clusterIndex;
+    }
+
+    private static int clusterKey(final int profileId, final int clusterId) {
+        return ((profileId & 0xFFFF) << 16) | (clusterId & 0xFFFF);
+    }
+
+    /**
+     * Gets the number of nodes.
+     *
+     * @return the node count
+     */
+    int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Gets the nodes ordered by IEEE address.
+     *
+     * @return the list of nodes
+     */
+    List<ZigBeeNodeImpl> getNodes() {
+        return new ArrayList<ZigBeeNodeImpl>(Arrays.asList(nodes));
+    }
+
+    /**
+     * Gets node by IEEE address.
+     *
+     * @param ieeeAddress the IEEE address
+     * @return the node or null if node does not exist
+     */
+    ZigBeeNodeImpl getNode(final long ieeeAddress) {
+        final int index = Arrays.binarySearch(ieeeAddresses, ieeeAddress);
+        return index >= 0 ? nodes[index] : null;
+    }
+
+    /**
+     * Gets node by network address. If several nodes claim the same network address, any of
+     * them may be returned until the stale node is updated.
+     *
+     * @param networkAddress the network address
+     * @return the node or null if node does not exist
+     */
+    ZigBeeNodeImpl getNodeByNetworkAddress(final int networkAddress) {
+        final int index = Arrays.binarySearch(networkAddresses, networkAddress);
+        return index >= 0 ? networkAddressNodes[index] : null;
+    }
+
+    /**
+     * Gets the endpoints of node ordered by endpoint address.
+     *
+     * @param ieeeAddress the IEEE address of the node
+     * @return the list of endpoints, empty if the node does not exist
+     */
+    List<ZigBeeEndpoint> getEndpoints(final long ieeeAddress) {
+        final int index = Arrays.binarySearch(ieeeAddresses, ieeeAddress);
+        if (index < 0) {
+            return new ArrayList<ZigBeeEndpoint>();
+        }
+        return new ArrayList<ZigBeeEndpoint>(Arrays.asList(nodeEndpoints[index]));
+    }
+
+    /**
+     * Gets endpoint of node.
+     *
+     * @param ieeeAddress the IEEE address of the node
+     * @param endpointAddress the endpoint address
+     * @return the endpoint or null if the endpoint does not exist
+     */
+    ZigBeeEndpoint getEndpoint(final long ieeeAddress, final int endpointAddress) {
+        final int index = Arrays.binarySearch(ieeeAddresses, ieeeAddress);
+        if (index < 0) {
+            return null;
+        }
+        final int endpointIndex = findEndpoint(nodeEndpoints[index], endpointAddress);
+        return endpointIndex >= 0 ? nodeEndpoints[index][endpointIndex] : null;
+    }
+
+    /**
+     * Gets the endpoints implementing the profile.
+     *
+     * @param profileId the profile ID
+     * @return the list of endpoints
+     */
+    List<ZigBeeEndpoint> getEndpoints(final int profileId) {
+        return profileIndex.get(profileId);
+    }
+
+    /**
+     * Gets the endpoints implementing the profile and having the cluster as input cluster.
+     *
+     * @param profileId the profile ID
+     * @param clusterId the cluster ID
+     * @return the list of endpoints
+     */
+    List<ZigBeeEndpoint> getEndpoints(final int profileId, final int clusterId) {
+        return clusterIndex.get(clusterKey(profileId, clusterId));
+    }
+
+    /**
+     * Creates snapshot with the node added. The node must not exist in this snapshot.
+     *
+     * @param node the node
+     * @return the new snapshot
+     */
+    NetworkTopology withNode(final ZigBeeNodeImpl node) {
+        final long ieeeAddress = IEEEAddress.fromColonNotation(node.getIeeeAddress());
+        final int index = -(Arrays.binarySearch(ieeeAddresses, ieeeAddress) + 1);
+        final ZigBeeNodeImpl[] newNodes = new ZigBeeNodeImpl[nodes.length + 1];
+        final long[] newIeeeAddresses = new long[nodes.length + 1];
+        final ZigBeeEndpoint[][] newNodeEndpoints = new ZigBeeEndpoint[nodes.length + 1][];
+        System.arraycopy(nodes, 0, newNodes, 0, index);
+        System.arraycopy(ieeeAddresses, 0, newIeeeAddresses, 0, index);
+        System.arraycopy(nodeEndpoints, 0, newNodeEndpoints, 0, index);
+        newNodes[index] = node;
+        newIeeeAddresses[index] = ieeeAddress;
+        newNodeEndpoints[index] = new ZigBeeEndpoint[0];
+        System.arraycopy(nodes, index, newNodes, index + 1, nodes.length - index);
+        System.arraycopy(ieeeAddresses, index, newIeeeAddresses, index + 1, nodes.length - index);
+        System.arraycopy(nodeEndpoints, index, newNodeEndpoints, index + 1, nodes.length - index);
+
+        final int addressIndex = insertionPoint(networkAddresses, node.getNetworkAddress());
+        return new NetworkTopology(newNodes, newIeeeAddresses, newNodeEndpoints,
+                insert(networkAddresses, addressIndex, node.getNetworkAddress()),
+                insert(networkAddressNodes, new ZigBeeNodeImpl[networkAddressNodes.length + 1], addressIndex, node),
+                profileIndex, clusterIndex);
+    }
+
+    /**
+     * Creates snapshot with the node and its endpoints removed.
+     *
+     * @param ieeeAddress the IEEE address of the node
+     * @return the new snapshot
+     */
+    NetworkTopology withoutNode(final long ieeeAddress) {
+        final int index = Arrays.binarySearch(ieeeAddresses, ieeeAddress);
+        if (index < 0) {
+            return this;
+        }
+        final ZigBeeNodeImpl[] newNodes = new ZigBeeNodeImpl[nodes.length - 1];
+        final long[] newIeeeAddresses = new long[nodes.length - 1];
+        final ZigBeeEndpoint[][] newNodeEndpoints = new ZigBeeEndpoint[nodes.length - 1][];
+        System.arraycopy(nodes, 0, newNodes, 0, index);
+        System.arraycopy(ieeeAddresses, 0, newIeeeAddresses, 0, index);
+        System.arraycopy(nodeEndpoints, 0, newNodeEndpoints, 0, index);
+        System.arraycopy(nodes, index + 1, newNodes, index, nodes.length - index - 1);
+        System.arraycopy(ieeeAddresses, index + 1, newIeeeAddresses, index, nodes.length - index - 1);
+        System.arraycopy(nodeEndpoints, index + 1, newNodeEndpoints, index, nodes.length - index - 1);
+
+        EndpointIndex newProfileIndex = profileIndex;
+        EndpointIndex newClusterIndex = clusterIndex;
+        for (final ZigBeeEndpoint endpoint : nodeEndpoints[index]) {
+            newProfileIndex = withoutProfileEntries(newProfileIndex, endpoint);
+            newClusterIndex = withoutClusterEntries(newClusterIndex, endpoint);
+        }
+        final int addressIndex = indexOf(networkAddressNodes, nodes[index]);
+        return new NetworkTopology(newNodes, newIeeeAddresses, newNodeEndpoints,
+                remove(networkAddresses, addressIndex),
+                remove(networkAddressNodes, new ZigBeeNodeImpl[networkAddressNodes.length - 1], addressIndex),
+                newProfileIndex, newClusterIndex);
+    }
+
+    /**
+     * Creates snapshot with the endpoint added to its node, replacing endpoint with the same address.
+     * The node of the endpoint must exist in this snapshot.
+     *
+     * @param endpoint the endpoint
+     * @return the new snapshot
+     */
+    NetworkTopology withEndpoint(final ZigBeeEndpoint endpoint) {
+        final int index = Arrays.binarySearch(ieeeAddresses,
+                IEEEAddress.fromColonNotation(endpoint.getNode().getIeeeAddress()));
+        final ZigBeeEndpoint[] endpoints = nodeEndpoints[index];
+        final int endpointIndex = findEndpoint(endpoints, endpoint.getEndPointAddress());
+        final ZigBeeEndpoint[] newEndpoints;
+        EndpointIndex newProfileIndex = profileIndex;
+        EndpointIndex newClusterIndex = clusterIndex;
+        if (endpointIndex >= 0) {
+            newEndpoints = endpoints.clone();
+            newEndpoints[endpointIndex] = endpoint;
+            newProfileIndex = withoutProfileEntries(newProfileIndex, endpoints[endpointIndex]);
+            newClusterIndex = withoutClusterEntries(newClusterIndex, endpoints[endpointIndex]);
+        } else {
+            final int insertIndex = -(endpointIndex + 1);
+            newEndpoints = new ZigBeeEndpoint[endpoints.length + 1];
+            System.arraycopy(endpoints, 0, newEndpoints, 0, insertIndex);
+            newEndpoints[insertIndex] = endpoint;
+            System.arraycopy(endpoints, insertIndex, newEndpoints, insertIndex + 1, endpoints.length - insertIndex);
+        }
+        final long ieeeAddress = ieeeAddresses[index];
+        newProfileIndex = newProfileIndex.with(endpoint.getProfileId(), ieeeAddress, endpoint);
+        for (final int clusterId : endpoint.getInputClusters()) {
+            newClusterIndex = newClusterIndex.with(clusterKey(endpoint.getProfileId(), clusterId), ieeeAddress, endpoint);
+        }
+        return withNodeEndpoints(index, newEndpoints, newProfileIndex, newClusterIndex);
+    }
+
+    /**
+     * Creates snapshot with the endpoint removed from its node.
+     *
+     * @param endpoint the endpoint
+     * @return the new snapshot
+     */
+    NetworkTopology withoutEndpoint(final ZigBeeEndpoint endpoint) {
+        final int index = Arrays.binarySearch(ieeeAddresses,
+                IEEEAddress.fromColonNotation(endpoint.getNode().getIeeeAddress()));
+        if (index < 0) {
+            return this;
+        }
+        final ZigBeeEndpoint[] endpoints = nodeEndpoints[index];
+        final int endpointIndex = findEndpoint(endpoints, endpoint.getEndPointAddress());
+        if (endpointIndex < 0) {
+            return this;
+        }
+        final ZigBeeEndpoint removed = endpoints[endpointIndex];
+        final ZigBeeEndpoint[] newEndpoints = new ZigBeeEndpoint[endpoints.length - 1];
+        System.arraycopy(endpoints, 0, newEndpoints, 0, endpointIndex);
+        System.arraycopy(endpoints, endpointIndex + 1, newEndpoints, endpointIndex, endpoints.length - endpointIndex - 1);
+        return withNodeEndpoints(index, newEndpoints, withoutProfileEntries(profileIndex, removed),
+                withoutClusterEntries(clusterIndex, removed));
+    }
+
+    /**
+     * Creates snapshot with the node indexed by the new network address instead of its current one.
+     * The node itself is not changed, so the snapshot can be published before the node is updated.
+     * The node must exist in this snapshot.
+     *
+     * @param node the node
+     * @param networkAddress the new network address
+     * @return the new snapshot
+     */
+    NetworkTopology withNetworkAddress(final ZigBeeNodeImpl node, final int networkAddress) {
+        final int addressIndex = indexOf(networkAddressNodes, node);
+        final int[] removedAddresses = remove(networkAddresses, addressIndex);
+        final ZigBeeNodeImpl[] removedNodes = remove(networkAddressNodes,
+                new ZigBeeNodeImpl[networkAddressNodes.length - 1], addressIndex);
+        final int insertIndex = insertionPoint(removedAddresses, networkAddress);
+        return new NetworkTopology(nodes, ieeeAddresses, nodeEndpoints,
+                insert(removedAddresses, insertIndex, networkAddress),
+                insert(removedNodes, new ZigBeeNodeImpl[networkAddressNodes.length], insertIndex, node),
+                profileIndex, clusterIndex);
+    }
+
+    private NetworkTopology withNodeEndpoints(final int index, final ZigBeeEndpoint[] endpoints,
+                                              final EndpointIndex newProfileIndex,
+                                              final EndpointIndex newClusterIndex) {
+        final ZigBeeEndpoint[][] newNodeEndpoints = nodeEndpoints.clone();
+        newNodeEndpoints[index] = endpoints;
+        return new NetworkTopology(nodes, ieeeAddresses, newNodeEndpoints, networkAddresses, networkAddressNodes,
+                newProfileIndex, newClusterIndex);
+    }
+
+    private static EndpointIndex withoutProfileEntries(final EndpointIndex index, final ZigBeeEndpoint endpoint) {
+        return index.without(endpoint.getProfileId(), endpoint);
+    }
+
+    private static EndpointIndex withoutClusterEntries(EndpointIndex index, final ZigBeeEndpoint endpoint) {
+        for (final int clusterId : endpoint.getInputClusters()) {
+            index = index.without(clusterKey(endpoint.getProfileId(), clusterId), endpoint);
+        }
+        return index;
+    }
+
+    private static int findEndpoint(final ZigBeeEndpoint[] endpoints, final int endpointAddress) {
+        int low = 0;
+        int high = endpoints.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int middleAddress = endpoints[middle].getEndPointAddress();
+            if (middleAddress < endpointAddress) {
+                low = middle + 1;
+            } else if (middleAddress > endpointAddress) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int insertionPoint(final int[] keys, final int key) {
+        final int index = Arrays.binarySearch(keys, key);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    private static int indexOf(final Object[] values, final Object value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Value not found in the index.");
+    }
+
+    private static int[] insert(final int[] keys, final int index, final int key) {
+        final int[] result = new int[keys.length + 1];
+        System.arraycopy(keys, 0, result, 0, index);
+        result[index] = key;
+        System.arraycopy(keys, index, result, index + 1, keys.length - index);
+        return result;
+    }
+
+    private static int[] remove(final int[] keys, final int index) {
+        final int[] result = new int[keys.length - 1];
+        System.arraycopy(keys, 0, result, 0, index);
+        System.arraycopy(keys, index + 1, result, index, keys.length - index - 1);
+        return result;
+    }
+
+    private static <T> T[] insert(final T[] values, final T[] result, final int index, final T value) {
+        System.arraycopy(values, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(values, index, result, index + 1, values.length - index);
+        return result;
+    }
+
+    private static <T> T[] remove(final T[] values, final T[] result, final int index) {
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+        return result;
+    }
+
+    /**
+     * Immutable index of endpoints by integer key. The endpoints of a key are ordered by the IEEE
+     * address of their node and endpoint address. Changes copy the key arrays and the endpoints of
+     * the changed key only.
+     */
+    private static final class EndpointIndex {
+        /**
+         * The index without entries.
+         */
+        static final EndpointIndex EMPTY = new EndpointIndex(new int[0], new ZigBeeEndpoint[0][], new long[0][]);
+
+        /**
+         * The sorted keys.
+         */
+        private final int[] keys;
+        /**
+         * The endpoints by key.
+         */
+        private final ZigBeeEndpoint[][] endpoints;
+        /**
+         * The IEEE addresses of the endpoint nodes by key.
+         */
+        private final long[][] ieeeAddresses;
+
+        private EndpointIndex(final int[] keys, final ZigBeeEndpoint[][] endpoints, final long[][] ieeeAddresses) {
+            this.keys = keys;
+            this.endpoints = endpoints;
+            this.ieeeAddresses = ieeeAddresses;
+        }
+
+        List<ZigBeeEndpoint> get(final int key) {
+            final int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                return new ArrayList<ZigBeeEndpoint>();
+            }
+            return new ArrayList<ZigBeeEndpoint>(Arrays.asList(endpoints[index]));
+        }
+
+        /**
+         * Creates index with the endpoint added under the key unless it already is.
+         *
+         * @param key the key
+         * @param ieeeAddress the IEEE address of the endpoint node
+         * @param endpoint the endpoint
+         * @return the new index
+         */
+        EndpointIndex with(final int key, final long ieeeAddress, final ZigBeeEndpoint endpoint) {
+            final int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                final int insertIndex = -(index + 1);
+                return new EndpointIndex(insert(keys, insertIndex, key),
+                        insert(endpoints, new ZigBeeEndpoint[endpoints.length + 1][], insertIndex,
+                                new ZigBeeEndpoint[]{endpoint}),
+                        insert(ieeeAddresses, new long[ieeeAddresses.length + 1][], insertIndex,
+                                new long[]{ieeeAddress}));
+            }
+            final ZigBeeEndpoint[] keyEndpoints = endpoints[index];
+            final long[] keyIeeeAddresses = ieeeAddresses[index];
+            int position = 0;
+            while (position < keyEndpoints.length && (keyIeeeAddresses[position] < ieeeAddress
+                    || keyIeeeAddresses[position] == ieeeAddress
+                    && keyEndpoints[position].getEndPointAddress() < endpoint.getEndPointAddress())) {
+                position++;
+            }
+            if (position < keyEndpoints.length && keyEndpoints[position] == endpoint) {
+                return this;
+            }
+            final long[] newKeyIeeeAddresses = new long[keyIeeeAddresses.length + 1];
+            System.arraycopy(keyIeeeAddresses, 0, newKeyIeeeAddresses, 0, position);
+            newKeyIeeeAddresses[position] = ieeeAddress;
+            System.arraycopy(keyIeeeAddresses, position, newKeyIeeeAddresses, position + 1,
+                    keyIeeeAddresses.length - position);
+            final ZigBeeEndpoint[][] newEndpoints = endpoints.clone();
+            newEndpoints[index] = insert(keyEndpoints, new ZigBeeEndpoint[keyEndpoints.length + 1], position, endpoint);
+            final long[][] newIeeeAddresses = ieeeAddresses.clone();
+            newIeeeAddresses[index] = newKeyIeeeAddresses;
+            return new EndpointIndex(keys, newEndpoints, newIeeeAddresses);
+        }
+
+        /**
+         * Creates index with the endpoint removed from the key.
+         *
+         * @param key the key
+         * @param endpoint the endpoint
+         * @return the new index
+         */
+        EndpointIndex without(final int key, final ZigBeeEndpoint endpoint) {
+            final int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                return this;
+            }
+            final ZigBeeEndpoint[] keyEndpoints = endpoints[index];
+            int position = -1;
+            for (int i = 0; i < keyEndpoints.length; i++) {
+                if (keyEndpoints[i] == endpoint) {
+                    position = i;
+                    break;
+                }
+            }
+            if (position < 0) {
+                return this;
+            }
+            if (keyEndpoints.length == 1) {
+                return new EndpointIndex(remove(keys, index),
+                        remove(endpoints, new ZigBeeEndpoint[endpoints.length - 1][], index),
+                        remove(ieeeAddresses, new long[ieeeAddresses.length - 1][], index));
+            }
+            final long[] keyIeeeAddresses = ieeeAddresses[index];
+            final long[] newKeyIeeeAddresses = new long[keyIeeeAddresses.length - 1];
+            System.arraycopy(keyIeeeAddresses, 0, newKeyIeeeAddresses, 0, position);
+            System.arraycopy(keyIeeeAddresses, position + 1, newKeyIeeeAddresses, position,
+                    keyIeeeAddresses.length - position - 1);
+            final ZigBeeEndpoint[][] newEndpoints = endpoints.clone();
+            newEndpoints[index] = remove(keyEndpoints, new ZigBeeEndpoint[keyEndpoints.length - 1], position);
+            final long[][] newIeeeAddresses = ieeeAddresses.clone();
+            newIeeeAddresses[index] = newKeyIeeeAddresses;
+            return new EndpointIndex(keys, newEndpoints, newIeeeAddresses);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.bubblecloud.zigbee.network.packet.af.AF_INCOMING_MSG;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of the {@link WaitForClusterResponse} waiters keyed by source address, source endpoint,
+ * cluster and ZCL transaction sequence number of the expected response.
+ */
+public class PendingClusterResponses {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(PendingClusterResponses.class);
+    /**
+     * The waiters.
+     */
+    private final ConcurrentHashMap<Long, WaitForClusterResponse> waiters =
+            new ConcurrentHashMap<Long, WaitForClusterResponse>();
+
+    /**
+     * Builds the response key.
+     * @param networkAddress the network address of the responding node
+     * @param endpoint the responding endpoint
+     * @param clusterId the cluster ID
+     * @param transactionSequence the ZCL transaction sequence number
+     * @return the key
+     */
+    public static long getKey(final int networkAddress, final int endpoint, final int clusterId,
+                              final int transactionSequence) {
+        return ((long) (networkAddress & 0xFFFF) << 32) | ((long) (endpoint & 0xFF) << 24)
+                | ((clusterId & 0xFFFF) << 8) | (transactionSequence & 0xFF);
+    }
+
+    /**
+     * Gets the ZCL transaction sequence number from the ZCL frame.
+     * @param zclFrame the ZCL frame
+     * @return the transaction sequence number or -1 if frame is too short
+     */
+    public static int getTransactionSequence(final byte[] zclFrame) {
+        if (zclFrame == null || zclFrame.length < 3) {
+            return -1;
+        }
+        // Manufacturer specific frames carry two byte manufacturer code before the sequence number.
+        if ((zclFrame[0] & 0x04) != 0) {
+            return zclFrame.length < 5 ? -1 : zclFrame[3] & 0xFF;
+        }
+        return zclFrame[1] & 0xFF;
+    }
+
+    /**
+     * Adds waiter to the table.
+     * @param waiter the waiter
+     */
+    void add(final WaitForClusterResponse waiter) {
+        final WaitForClusterResponse previous = waiters.put(waiter.getKey(), waiter);
+        if (previous != null && previous != waiter) {
+            logger.warn("Replaced pending cluster response waiter with the same transaction: {}",
+                    Long.toHexString(waiter.getKey()));
+        }
+    }
+
+    /**
+     * Removes waiter from the table.
+     * @param waiter the waiter
+     */
+    void remove(final WaitForClusterResponse waiter) {
+        waiters.remove(waiter.getKey(), waiter);
+    }
+
+    /**
+     * Passes the message to the waiter expecting it.
+     * @param msg the message
+     * @return true if message was consumed by a waiter
+     */
+    public boolean consume(final AF_INCOMING_MSG msg) {
+        if (waiters.isEmpty()) {
+            return false;
+        }
+        final int transactionSequence = getTransactionSequence(msg.getData());
+        if (transactionSequence == -1) {
+            return false;
+        }
+        final WaitForClusterResponse waiter = waiters.get(
+                getKey(msg.getSrcAddr(), msg.getSrcEndpoint(), msg.getClusterId(), transactionSequence));
+        return waiter != null && waiter.consume(msg);
+    }
+
+    /**
+     * Gets the number of pending responses.
+     * @return the number of pending responses
+     */
+    public int size() {
+        return waiters.size();
+    }
+}
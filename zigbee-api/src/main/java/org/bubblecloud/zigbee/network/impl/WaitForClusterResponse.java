@@ -32,6 +32,10 @@ import org.slf4j.LoggerFactory;
  * This class register itself as {@link org.bubblecloud.zigbee.network.ApplicationFrameworkMessageConsumer} to the given {@link org.bubblecloud.zigbee.network.ApplicationFrameworkMessageProducer}<br>
  * and it wait for a matching {@link org.bubblecloud.zigbee.network.packet.af.AF_INCOMING_MSG}. As soon as the matching {@link org.bubblecloud.zigbee.network.packet.af.AF_INCOMING_MSG}<br>
  * is received or the timeout expires the the object unregister itself from {@link org.bubblecloud.zigbee.network.ApplicationFrameworkMessageProducer}<br>
+ * <p>
+ * When created with a {@link PendingClusterResponses} table the waiter is registered to the table instead and
+ * matches only the response with the same source address, source endpoint, cluster and ZCL transaction
+ * sequence number, so that concurrent invocations do not steal each others responses.
  *
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
  * @author <a href="mailto:francesco.furfari@isti.cnr.it">Francesco Furfari</a>
@@ -47,6 +51,8 @@ public class WaitForClusterResponse implements ApplicationFrameworkMessageConsum
     private long timeout = -1;
     private AF_INCOMING_MSG response = null;
     private ApplicationFrameworkMessageProducer producer;
+    private PendingClusterResponses pendingResponses;
+    private long key;
 
     private final Thread waiter;
 
@@ -79,7 +85,55 @@ public class WaitForClusterResponse implements ApplicationFrameworkMessageConsum
         this(producer, transaction, id, timeout, Thread.currentThread());
     }
 
+    /**
+     * Constructor which registers the waiter to the pending responses table.
+     *
+     * @param pendingResponses the pending responses table
+     * @param networkAddress the network address of the node expected to respond
+     * @param endpoint the endpoint expected to respond
+     * @param id the cluster ID
+     * @param transactionSequence the ZCL transaction sequence number of the request
+     * @param timeout the maximum number of milliseconds to wait for. The value -1 means unlimited waiting time.
+     */
+    public WaitForClusterResponse(final PendingClusterResponses pendingResponses, final int networkAddress,
+                                  final short endpoint, final short id, final int transactionSequence,
+                                  final long timeout) {
+
+        synchronized (this) {
+            this.pendingResponses = pendingResponses;
+            this.timeout = timeout;
+            this.waiter = Thread.currentThread();
+            response = null;
+            transId = (byte) transactionSequence;
+            clusterId = id;
+            key = PendingClusterResponses.getKey(networkAddress, endpoint, id, transactionSequence);
+        }
+        pendingResponses.add(this);
+    }
+
+    /**
+     * Gets the pending responses table key of this waiter.
+     * @return the key
+     */
+    long getKey() {
+        return key;
+    }
+
     public boolean consume(AF_INCOMING_MSG msg) {
+        if (pendingResponses != null) {
+            // The table has already matched address, endpoint, cluster and transaction.
+            logger.trace("Consuming message with ClusterId: {} ZCL transaction: {} for thread {}",
+                    new Object[]{msg.getClusterId(), transId & 0xFF, waiter.getName()});
+            synchronized (this) {
+                if (response != null) {
+                    return false;
+                }
+                response = msg;
+                notify();
+            }
+            pendingResponses.remove(this);
+            return true;
+        }
         //THINK  Is the following matching algorithm correct?!?!?
         if (msg.getClusterId() != clusterId) {
             logger.trace("Unable to consume AF_INCOMING_MSG, because cluster {} != {}", msg.getClusterId(), clusterId);
@@ -124,9 +178,20 @@ public class WaitForClusterResponse implements ApplicationFrameworkMessageConsum
             }
             msg = response;
             response = null;
-            producer.removeAFMessageConsumer(this);
+            cancel();
         }
         return msg;
     }
 
+    /**
+     * Stops waiting for the response, for example when the request could not be sent.
+     */
+    public void cancel() {
+        if (pendingResponses != null) {
+            pendingResponses.remove(this);
+        } else {
+            producer.removeAFMessageConsumer(this);
+        }
+    }
+
 }
@@ -22,6 +22,10 @@
 
 package org.bubblecloud.zigbee.network.impl;
 
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.AttributeReport;
+import org.bubblecloud.zigbee.api.cluster.impl.core.ResponseImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.global.reporting.ReportAttributesCommand;
 import org.bubblecloud.zigbee.network.*;
 import org.bubblecloud.zigbee.network.packet.ResponseStatus;
 import org.bubblecloud.zigbee.network.packet.af.AF_DATA_CONFIRM;
@@ -36,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano "Kismet" Lenzi</a>
@@ -105,13 +110,37 @@ public class ZigBeeEndpointImpl implements ZigBeeEndpoint, ApplicationFrameworkM
      * The clusters.
      */
     @JsonIgnore
-    private final HashSet<ClusterListener> listeners = new HashSet<ClusterListener>();
+    private final CopyOnWriteArraySet<ClusterListener> listeners = new CopyOnWriteArraySet<ClusterListener>();
 
     /**
      * The application framework message consumers.
      */
     @JsonIgnore
-    private final HashSet<ApplicationFrameworkMessageConsumer> consumers = new HashSet<ApplicationFrameworkMessageConsumer>();
+    private final CopyOnWriteArraySet<ApplicationFrameworkMessageConsumer> consumers = new CopyOnWriteArraySet<ApplicationFrameworkMessageConsumer>();
+
+    /**
+     * The lock protecting the application framework message listener registration.
+     */
+    @JsonIgnore
+    private final Object afListenerLock = new Object();
+
+    /**
+     * The number of cluster listeners and pending invocations requiring application framework messages.
+     */
+    @JsonIgnore
+    private int afListenerReferences = 0;
+
+    /**
+     * The network address the application framework message listener has been registered with.
+     */
+    @JsonIgnore
+    private int afListenerNetworkAddress = -1;
+
+    /**
+     * The attribute value cache.
+     */
+    @JsonIgnore
+    private final AttributeCache attributeCache = new AttributeCache();
 
     /**
      * Constructor which sets Endpoint base information.
@@ -304,83 +333,87 @@ public class ZigBeeEndpointImpl implements ZigBeeEndpoint, ApplicationFrameworkM
     }
 
     public void send(ClusterMessage input) throws ZigBeeNetworkManagerException {
-        synchronized (networkManager) {
-            final ApplicationFrameworkLayer af = ApplicationFrameworkLayer.getAFLayer(networkManager);
-            final short sender = af.getSendingEndpoint(this, input);
-            final byte transaction = af.getNextTransactionId(sender);
-            final byte[] msg = input.getClusterMsg();
-
-            //TODO Create radius and options according to the current configuration
-            AF_DATA_CONFIRM response = networkManager.sendAFDataRequest(new AF_DATA_REQUEST(
-                    (short) node.getNetworkAddress(), (byte) endPointAddress, sender, input.getId(),
-                    transaction, (byte) 0 /*options*/, (byte) 0 /*radius*/, msg
-            ));
-
-            if (response == null) {
-                throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network due to general error");
-            } else if (response.getStatus() != 0) {
-                throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network:" + response.getErrorMsg());
-            }
+        final ApplicationFrameworkLayer af = ApplicationFrameworkLayer.getAFLayer(networkManager);
+        final short sender = af.getSendingEndpoint(this, input);
+        final byte transaction = af.getNextTransactionId(sender);
+        final byte[] msg = input.getClusterMsg();
+
+        //TODO Create radius and options according to the current configuration
+        AF_DATA_CONFIRM response = networkManager.sendAFDataRequest(new AF_DATA_REQUEST(
+                (short) node.getNetworkAddress(), (byte) endPointAddress, sender, input.getId(),
+                transaction, (byte) 0 /*options*/, (byte) 0 /*radius*/, msg
+        ));
+
+        if (response == null) {
+            throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network due to general error");
+        } else if (response.getStatus() != 0) {
+            throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network:" + response.getErrorMsg());
         }
     }
 
     public ClusterMessage invoke(ClusterMessage input) throws ZigBeeNetworkManagerException {
-        synchronized (networkManager) {
-            final ApplicationFrameworkLayer af = ApplicationFrameworkLayer.getAFLayer(networkManager);
-            final short sender = af.getSendingEndpoint(this, input);
-            /*
-            //FIX Removed because transaction is always 0 for the response due to a bug of CC2480
-            final byte transaction = af.getNextTransactionId(sender);
-            the next line is a workaround for the problem
-            */
-            final byte transaction = af.getNextTransactionId(sender);
-            final byte[] msg = input.getClusterMsg();
+        final ApplicationFrameworkLayer af = ApplicationFrameworkLayer.getAFLayer(networkManager);
+        final short sender = af.getSendingEndpoint(this, input);
+        /*
+        //FIX Removed because transaction is always 0 for the response due to a bug of CC2480
+        final byte transaction = af.getNextTransactionId(sender);
+        the next line is a workaround for the problem
+        */
+        final byte transaction = af.getNextTransactionId(sender);
+        final byte[] msg = input.getClusterMsg();
 
-            m_addAFMessageListener();
+        m_addAFMessageListener();
 
-            //Registering the waiter before sending the message, so that they will be captured
-            WaitForClusterResponse waiter = new WaitForClusterResponse(
+        //Registering the waiter before sending the message, so that they will be captured
+        final int transactionSequence = PendingClusterResponses.getTransactionSequence(msg);
+        final WaitForClusterResponse waiter;
+        if (transactionSequence != -1) {
+            waiter = new WaitForClusterResponse(af.getPendingClusterResponses(), node.getNetworkAddress(),
+                    endPointAddress, input.getId(), transactionSequence, CLUSTER_MESSAGE_RESPONSE_TIME_MILLIS);
+        } else {
+            waiter = new WaitForClusterResponse(
                     this, transaction, input.getId(), CLUSTER_MESSAGE_RESPONSE_TIME_MILLIS
             );
+        }
 
-            logger.trace("---> SENDING transaction: " + transaction + " TO: " + node.getNetworkAddress() + " with"
-                    + " byte 0 " + Integers.getByteAsInteger(node.getNetworkAddress(), 0)
-                    + " byte 1 " + Integers.getByteAsInteger(node.getNetworkAddress(), 1)
-                    + " byte 2 " + Integers.getByteAsInteger(node.getNetworkAddress(), 2)
-                    + " byte 3 " + Integers.getByteAsInteger(node.getNetworkAddress(), 3)
-                    + " from end point: " + sender
-                    + " to end point: " + endPointAddress
-            );
-            //TODO Create radius and options according to the current configuration
-            AF_DATA_CONFIRM response = networkManager.sendAFDataRequest(new AF_DATA_REQUEST(
-                    node.getNetworkAddress(), endPointAddress, sender, input.getId(),
-                    transaction, (byte) (0) /*options*/, (byte) 0 /*radius*/, msg
-            ));
-
-            if (response == null) {
-                m_removeAFMessageListener();
-                throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network due to general error - is the device sleeping?");
-            } else if (response.getStatus() != 0) {
-                m_removeAFMessageListener();
-                final ResponseStatus responseStatus = ResponseStatus.getStatus(Integers.getByteAsInteger(response.getStatus(), 0));
-
-                /*if (responseStatus == ResponseStatus.Z_MAC_NO_ACK)  {
-                    logger.info("Removing unresponsive device: " + getIeeeAddress());
-                    ApplicationFrameworkLayer.getAFLayer(networkManager).getZigBeeNetwork().removeNode(this.getNode());
-                }*/
-
-                throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network due to: "
-                        + responseStatus + " (" + response.getErrorMsg() + ")");
-            } else {
-                //FIX Can't be singleton because the invoke method can be invoked by multiple-thread
-                AF_INCOMING_MSG incoming = waiter.getResponse();
-                m_removeAFMessageListener();
-                if (incoming == null) {
-                    throw new ZigBeeBasedriverTimeOutException();
-                }
-                ClusterMessage result = new ClusterMessageImpl(incoming.getData(), incoming.getClusterId());
-                return result;
+        logger.trace("---> SENDING transaction: " + transaction + " TO: " + node.getNetworkAddress() + " with"
+                + " byte 0 " + Integers.getByteAsInteger(node.getNetworkAddress(), 0)
+                + " byte 1 " + Integers.getByteAsInteger(node.getNetworkAddress(), 1)
+                + " byte 2 " + Integers.getByteAsInteger(node.getNetworkAddress(), 2)
+                + " byte 3 " + Integers.getByteAsInteger(node.getNetworkAddress(), 3)
+                + " from end point: " + sender
+                + " to end point: " + endPointAddress
+        );
+        //TODO Create radius and options according to the current configuration
+        AF_DATA_CONFIRM response = networkManager.sendAFDataRequest(new AF_DATA_REQUEST(
+                node.getNetworkAddress(), endPointAddress, sender, input.getId(),
+                transaction, (byte) (0) /*options*/, (byte) 0 /*radius*/, msg
+        ));
+
+        if (response == null) {
+            waiter.cancel();
+            m_removeAFMessageListener();
+            throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network due to general error - is the device sleeping?");
+        } else if (response.getStatus() != 0) {
+            waiter.cancel();
+            m_removeAFMessageListener();
+            final ResponseStatus responseStatus = ResponseStatus.getStatus(Integers.getByteAsInteger(response.getStatus(), 0));
+
+            /*if (responseStatus == ResponseStatus.Z_MAC_NO_ACK)  {
+                logger.info("Removing unresponsive device: " + getIeeeAddress());
+                ApplicationFrameworkLayer.getAFLayer(networkManager).getZigBeeNetwork().removeNode(this.getNode());
+            }*/
+
+            throw new ZigBeeNetworkManagerException("Unable to send cluster on the ZigBee network due to: "
+                    + responseStatus + " (" + response.getErrorMsg() + ")");
+        } else {
+            AF_INCOMING_MSG incoming = waiter.getResponse();
+            m_removeAFMessageListener();
+            if (incoming == null) {
+                throw new ZigBeeBasedriverTimeOutException();
             }
+            ClusterMessage result = new ClusterMessageImpl(incoming.getData(), incoming.getClusterId());
+            return result;
         }
     }
 
@@ -490,52 +523,78 @@ public class ZigBeeEndpointImpl implements ZigBeeEndpoint, ApplicationFrameworkM
     }
 
     private void m_addAFMessageListener() {
-        if (listeners.isEmpty() && consumers.size() == 0) {
-            logger.debug("Registered {} as {}", this, ApplicationFrameworkMessageListener.class.getName());
-            networkManager.addAFMessageListner(this);
-        } else {
-            logger.debug("Skipped to registered {} as {}", this, ApplicationFrameworkMessageListener.class.getName());
-            logger.trace(
-                    "Skipped registration due to: listeners.isEmpty() = {}  or consumers.size() = {}",
-                    listeners.isEmpty(), consumers.size()
-            );
+        synchronized (afListenerLock) {
+            if (afListenerReferences++ == 0) {
+                logger.debug("Registered {} as {}", this, ApplicationFrameworkMessageListener.class.getName());
+                afListenerNetworkAddress = node.getNetworkAddress();
+                networkManager.addAFMessageListener(afListenerNetworkAddress, endPointAddress, this);
+            } else {
+                logger.trace("Skipped registration of {} due to {} existing references", this, afListenerReferences - 1);
+            }
         }
     }
 
     private void m_removeAFMessageListener() {
-        if (listeners.isEmpty() && consumers.size() == 0) {
-            logger.debug("Unregistered {} as {}", this, ApplicationFrameworkMessageListener.class.getName());
-            networkManager.removeAFMessageListener(this);
-        } else {
-            logger.debug("Skipped unregistration of {} as {}", this, ApplicationFrameworkMessageListener.class.getName());
-            logger.trace(
-                    "Skipped unregistration due to: listeners.isEmpty() = {}  or consumers.size() = {}",
-                    listeners.isEmpty(), consumers.size()
-            );
+        synchronized (afListenerLock) {
+            if (afListenerReferences == 0) {
+                return;
+            }
+            if (--afListenerReferences == 0) {
+                logger.debug("Unregistered {} as {}", this, ApplicationFrameworkMessageListener.class.getName());
+                networkManager.removeAFMessageListener(afListenerNetworkAddress, endPointAddress, this);
+                afListenerNetworkAddress = -1;
+            } else {
+                logger.trace("Skipped unregistration of {} due to {} remaining references", this, afListenerReferences);
+            }
         }
     }
 
-    public boolean addClusterListener(ClusterListener listener) {
-        m_addAFMessageListener();
+    /**
+     * Moves the application framework message listener registration to the current network
+     * address of the node. Invoked when the node has rejoined with a new network address.
+     */
+    public void updateNetworkAddress() {
+        synchronized (afListenerLock) {
+            if (afListenerReferences == 0 || afListenerNetworkAddress == node.getNetworkAddress()) {
+                return;
+            }
+            networkManager.removeAFMessageListener(afListenerNetworkAddress, endPointAddress, this);
+            afListenerNetworkAddress = node.getNetworkAddress();
+            networkManager.addAFMessageListener(afListenerNetworkAddress, endPointAddress, this);
+        }
+    }
 
-        return listeners.add(listener);
+    @JsonIgnore
+    public AttributeCache getAttributeCache() {
+        return attributeCache;
+    }
+
+    @JsonIgnore
+    public GroupMembershipRegistry getGroupMembershipRegistry() {
+        return ApplicationFrameworkLayer.getAFLayer(networkManager).getGroupMembershipRegistry();
+    }
+
+    public boolean addClusterListener(ClusterListener listener) {
+        final boolean result = listeners.add(listener);
+        if (result) {
+            m_addAFMessageListener();
+        }
+        return result;
     }
 
     public boolean removeClusterListener(ClusterListener listener) {
-        boolean result = listeners.remove(listener);
-        m_removeAFMessageListener();
+        final boolean result = listeners.remove(listener);
+        if (result) {
+            m_removeAFMessageListener();
+        }
         return result;
     }
 
     private void notifyClusterListener(ClusterMessage c) {
-        ArrayList<ClusterListener> localCopy;
-        synchronized (listeners) {
-            localCopy = new ArrayList<ClusterListener>(listeners);
-        }
-        if (localCopy.size() > 0) {
-            logger.debug("Notifying {} ClusterListener of {}", localCopy.size(), c.toString());
+        if (!listeners.isEmpty()) {
+            logger.debug("Notifying {} ClusterListener of {}", listeners.size(), c);
 
-            for (ClusterListener listner : localCopy) {
+            for (ClusterListener listner : listeners) {
                 try {
                     final ClusterFilter filter = listner.getClusterFilter();
                     if (filter == null) {
@@ -552,40 +611,76 @@ public class ZigBeeEndpointImpl implements ZigBeeEndpoint, ApplicationFrameworkM
     }
 
     public void notify(AF_INCOMING_MSG msg) {
-        //THINK Do the notification in a separated Thread?
-        //THINK Should consume messages only if they were sent from this device?!?!
         if (msg.isError()) return;
         logger.debug("AF_INCOMING_MSG arrived for {} message is {}", endpointId, msg);
-        ArrayList<ApplicationFrameworkMessageConsumer> localConsumers = null;
-        synchronized (consumers) {
-            localConsumers = new ArrayList<ApplicationFrameworkMessageConsumer>(consumers);
+        if (msg.getSrcAddr() == node.getNetworkAddress() && msg.getSrcEndpoint() == endPointAddress) {
+            cacheAttributeReports(msg);
         }
-        logger.trace("Notifying {} ApplicationFrameworkMessageConsumer", localConsumers.size());
-        for (ApplicationFrameworkMessageConsumer consumer : localConsumers) {
-            if (consumer.consume(msg)) {
-                logger.trace("AF_INCOMING_MSG Consumed by {}", consumer.getClass().getName());
-                return;
-            } else {
-                logger.trace("AF_INCOMING_MSG Ignored by {}", consumer.getClass().getName());
+        // Messages are routed to the endpoint by source address and endpoint, but the check is kept
+        // for the messages dispatched before a network address change has been applied.
+        if (msg.getSrcAddr() == node.getNetworkAddress() && msg.getSrcEndpoint() == endPointAddress
+                && ApplicationFrameworkLayer.getAFLayer(networkManager).getPendingClusterResponses().consume(msg)) {
+            logger.trace("AF_INCOMING_MSG Consumed by pending cluster response of {}", endpointId);
+            return;
+        }
+        if (!consumers.isEmpty()) {
+            logger.trace("Notifying {} ApplicationFrameworkMessageConsumer", consumers.size());
+            for (ApplicationFrameworkMessageConsumer consumer : consumers) {
+                if (consumer.consume(msg)) {
+                    logger.trace("AF_INCOMING_MSG Consumed by {}", consumer.getClass().getName());
+                    return;
+                } else {
+                    logger.trace("AF_INCOMING_MSG Ignored by {}", consumer.getClass().getName());
+                }
             }
         }
 
         if (msg.getSrcAddr() != node.getNetworkAddress()) return;
         if (msg.getSrcEndpoint() != endPointAddress) return;
+        if (listeners.isEmpty()) return;
         logger.debug("Notifying cluster listener for received by {}", endpointId);
-        notifyClusterListener(new ClusterMessageImpl(msg.getData(), msg.getClusterId()));
+        // Listener callbacks are dispatched outside the packet parser thread, in order per device.
+        final ClusterMessage message = new ClusterMessageImpl(msg.getData(), msg.getClusterId());
+        ApplicationFrameworkLayer.getAFLayer(networkManager).getEventExecutor().execute(node.getIeeeAddress(),
+                new Runnable() {
+                    public void run() {
+                        notifyClusterListener(message);
+                    }
+                });
     }
 
-    public boolean addAFMessageConsumer(ApplicationFrameworkMessageConsumer consumer) {
-        synchronized (consumers) {
-            return consumers.add(consumer);
+    /**
+     * Stores the attribute values of Report Attributes command to the attribute cache, whether or not
+     * a report listener is registered for the cluster. Manufacturer specific reports are not cached
+     * as the cache is not keyed by manufacturer.
+     *
+     * @param msg the incoming message
+     */
+    private void cacheAttributeReports(final AF_INCOMING_MSG msg) {
+        final byte[] data = msg.getData();
+        // General command frame without manufacturer code: frame control, sequence number and command ID.
+        if (data.length < 3 || (data[0] & 0x07) != 0 || data[2] != ReportAttributesCommand.ID) {
+            return;
+        }
+        try {
+            final ResponseImpl response = new ResponseImpl(new ClusterMessageImpl(data, msg.getClusterId()),
+                    msg.getClusterId());
+            for (final AttributeReport report : new ReportAttributesCommand(response).getAttributeReports()) {
+                attributeCache.put(msg.getClusterId() & 0xFFFF, report.getAttributeId(), report.getAttributeData());
+            }
+        } catch (final ZigBeeClusterException e) {
+            logger.debug("Unable to cache attribute report of {}: {}", endpointId, e.getMessage());
+        } catch (final RuntimeException e) {
+            logger.debug("Unable to decode attribute report of {}", endpointId, e);
         }
     }
 
+    public boolean addAFMessageConsumer(ApplicationFrameworkMessageConsumer consumer) {
+        return consumers.add(consumer);
+    }
+
     public boolean removeAFMessageConsumer(ApplicationFrameworkMessageConsumer consumer) {
-        synchronized (consumers) {
-            return consumers.remove(consumer);
-        }
+        return consumers.remove(consumer);
     }
 
     /**
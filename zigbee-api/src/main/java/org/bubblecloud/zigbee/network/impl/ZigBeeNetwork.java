@@ -26,6 +26,7 @@ import org.bubblecloud.zigbee.network.EndpointListener;
 import org.bubblecloud.zigbee.network.ZigBeeDiscoveryMonitor;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
 import org.bubblecloud.zigbee.network.ZigBeeNode;
+import org.bubblecloud.zigbee.network.model.IEEEAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,32 +41,66 @@ public class ZigBeeNetwork {
 
     private static final Logger logger = LoggerFactory.getLogger(ZigBeeNetwork.class);
 
-    private final Hashtable<String, ZigBeeNodeImpl> nodes = new Hashtable<String, ZigBeeNodeImpl>();
-    private final Hashtable<ZigBeeNode, HashMap<Integer, ZigBeeEndpoint>> devices =
-            new Hashtable<ZigBeeNode, HashMap<Integer, ZigBeeEndpoint>>();
-
-    private final HashMap<Integer, ArrayList<ZigBeeEndpoint>> profiles =
-            new HashMap<Integer, ArrayList<ZigBeeEndpoint>>();
+    /**
+     * The current topology snapshot. Readers use the snapshot without locking, writers replace it
+     * while holding the lock of this network.
+     */
+    private volatile NetworkTopology topology = NetworkTopology.EMPTY;
 
     private final List<ZigBeeDiscoveryMonitor> discoveryMonitors = new ArrayList<ZigBeeDiscoveryMonitor>();
 
     private final List<EndpointListener> endpointListeners = new ArrayList<EndpointListener>();
 
     /**
-     * Gets Node, EndPoint map.
+     * Gets Node, EndPoint map. The map is a copy of the current topology and is not updated
+     * when the network changes.
      * 
      * @return {@link HashTable} of devices and their endpoints
      */
     public Hashtable<ZigBeeNode, HashMap<Integer, ZigBeeEndpoint>> getDevices() {
+        final NetworkTopology snapshot = topology;
+        final Hashtable<ZigBeeNode, HashMap<Integer, ZigBeeEndpoint>> devices =
+                new Hashtable<ZigBeeNode, HashMap<Integer, ZigBeeEndpoint>>();
+        for (final ZigBeeNodeImpl node : snapshot.getNodes()) {
+            final HashMap<Integer, ZigBeeEndpoint> endPoints = new HashMap<Integer, ZigBeeEndpoint>();
+            for (final ZigBeeEndpoint endpoint : snapshot.getEndpoints(IEEEAddress.fromColonNotation(node.getIeeeAddress()))) {
+                endPoints.put((int) endpoint.getEndPointAddress(), endpoint);
+            }
+            devices.put(node, endPoints);
+        }
         return devices;
     }
     
     /**
-     * Gets the list of devices
+     * Gets the list of devices. The map is a copy of the current topology and is not updated
+     * when the network changes.
+     *
      * @return {@link HashTable} of nodes on the network
      */
     public Hashtable<String, ZigBeeNodeImpl> getNodes() {
-    	return nodes;
+        final Hashtable<String, ZigBeeNodeImpl> nodes = new Hashtable<String, ZigBeeNodeImpl>();
+        for (final ZigBeeNodeImpl node : topology.getNodes()) {
+            nodes.put(node.getIeeeAddress(), node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the nodes of the network ordered by IEEE address.
+     *
+     * @return the list of nodes
+     */
+    public List<ZigBeeNodeImpl> getNodeList() {
+        return topology.getNodes();
+    }
+
+    /**
+     * Gets the number of nodes in the network.
+     *
+     * @return the node count
+     */
+    public int getNodeCount() {
+        return topology.getNodeCount();
     }
 
     /**
@@ -81,149 +116,155 @@ public class ZigBeeNetwork {
      * @return true if the node was removed
      */
     public synchronized boolean removeNode(ZigBeeNode node) {
-        final String ieee = node.getIeeeAddress();
+        final long ieee = IEEEAddress.fromColonNotation(node.getIeeeAddress());
 
-        if (!nodes.containsKey(ieee)) {
+        final NetworkTopology previous = topology;
+        if (previous.getNode(ieee) == null) {
             return false;
         }
-        HashMap<Integer, ZigBeeEndpoint> toRemove = devices.get(node);
-        if (toRemove != null) {
-            Iterator<ZigBeeEndpoint> it = toRemove.values().iterator();
-            while (it.hasNext()) {
-                final ZigBeeEndpoint device = it.next();
-                if (device != null) {
-                    notifyEndpointRemoved(device);
-                    it.remove();
-                    removeEndpointFromProfiles(device);
-                }
-            }
+        // The topology is published before notifying so listeners and readers see the removal.
+        topology = previous.withoutNode(ieee);
+        for (final ZigBeeEndpoint device : previous.getEndpoints(ieee)) {
+            notifyEndpointRemoved(device);
         }
-        nodes.remove(ieee);
         return true;
     }
 
     public synchronized boolean addNode(ZigBeeNodeImpl node) {
-        final String ieee = node.getIeeeAddress();
+        final long ieee = IEEEAddress.fromColonNotation(node.getIeeeAddress());
 
-        if (nodes.containsKey(ieee)) {
+        if (topology.getNode(ieee) != null) {
             logger.debug("Node {} already present on the network", node);
             return false;
         }
 
         logger.debug("Adding node {} to the network", node);
-        nodes.put(ieee, node);
-        devices.put(node, new HashMap<Integer, ZigBeeEndpoint>());
+        topology = topology.withNode(node);
         return true;
     }
 
-    public synchronized boolean removeEndpoint(ZigBeeEndpoint endpoint) {
+    /**
+     * Changes the network address of node. The snapshot indexing the node by the new address is
+     * published before the node is updated, so a lookup by the new address never misses the node.
+     * Until the node is updated it still reports the old address, and a lookup by the old address
+     * returns null.
+     *
+     * @param node the node
+     * @param networkAddress the new network address
+     */
+    public synchronized void updateNetworkAddress(final ZigBeeNodeImpl node, final int networkAddress) {
+        if (node.getNetworkAddress() == networkAddress) {
+            return;
+        }
+        logger.debug("Node {} changed network address to {}", node, networkAddress);
+        if (topology.getNode(IEEEAddress.fromColonNotation(node.getIeeeAddress())) == node) {
+            topology = topology.withNetworkAddress(node, networkAddress);
+        }
+        node.setNetworkAddress(networkAddress);
+    }
 
-        notifyEndpointRemoved(endpoint);
+    public synchronized boolean removeEndpoint(ZigBeeEndpoint endpoint) {
 
-        final String ieee = endpoint.getNode().getIeeeAddress();
+        final long ieee = IEEEAddress.fromColonNotation(endpoint.getNode().getIeeeAddress());
 
-        ZigBeeNode node = null;
-        node = nodes.get(ieee);
-        if (node == null) {
-            logger.error("Trying to remove a device but containing node {} does not exists", node);
+        if (topology.getNode(ieee) == null) {
+            notifyEndpointRemoved(endpoint);
+            logger.error("Trying to remove a device but containing node {} does not exists", endpoint.getNode());
             return false;
         }
 
-        final HashMap<Integer, ZigBeeEndpoint> endPoints = devices.get(node);
-        endPoints.remove(endpoint.getEndPointAddress());
-        removeEndpointFromProfiles(endpoint);
-
+        topology = topology.withoutEndpoint(endpoint);
+        notifyEndpointRemoved(endpoint);
         return true;
     }
 
     public synchronized boolean addEndpoint(ZigBeeEndpoint endpoint) {
         final ZigBeeNode deviceNode = endpoint.getNode();
-        final String ieee = deviceNode.getIeeeAddress();
+        final long ieee = IEEEAddress.fromColonNotation(deviceNode.getIeeeAddress());
         final short endPoint = endpoint.getEndPointAddress();
         logger.trace("Adding device {} on node {} / end point {}.", endpoint.getDeviceTypeId(),
                 endpoint.getNode(), endPoint);
-        final ZigBeeNode node = nodes.get(ieee);
+        final ZigBeeNode node = topology.getNode(ieee);
         if (node == null) {
-            logger.debug("No node {} found");
+            logger.debug("No node {} found", deviceNode);
             return false;
         } else if (node.getNetworkAddress() != deviceNode.getNetworkAddress()) {
             logger.debug("Node ieee collision, stored is {} and new one is {}", node, deviceNode);
             return false;
         }
 
-        HashMap<Integer, ZigBeeEndpoint> endPoints = devices.get(node);
-        if (endPoints.containsKey(endPoint)) {
+        if (topology.getEndpoint(ieee, endPoint) != null) {
             logger.debug("Endpoint {} on node {} already registered", endPoint, node);
             return false;
         }
-        endPoints.put((int) endPoint, endpoint);
-
-        final int profileId = endpoint.getProfileId();
-        ArrayList<ZigBeeEndpoint> list;
-        list = profiles.get(profileId);
-        if (list == null) {
-            list = new ArrayList<ZigBeeEndpoint>();
-            profiles.put(profileId, list);
-        }
-        list.add(endpoint);
+        topology = topology.withEndpoint(endpoint);
 
         notifyEndpointAdded(endpoint);
         return true;
     }
 
-    private synchronized boolean removeEndpointFromProfiles(final ZigBeeEndpoint device) {
-
-        final int profileId = device.getProfileId();
-        ArrayList<ZigBeeEndpoint> list = profiles.get(profileId);
-        if (list == null) {
-            logger.error("Trying to remove a device from a given profile but the profile doesn't exist");
-            //XXX It should never happen, we should throw an IllegalStateException
-            return true;
-        }
-        //XXX It following method must always return true, otherwise we should throw an IllegalStateException
-        if (list.remove(device) == false) {
-            logger.error("Device to remove not found in the given profile");
-        }
-
-        return true;
-
-    }
-
-
-    public synchronized Collection<ZigBeeEndpoint> getEndpoints(int profileId) {
-        final ArrayList<ZigBeeEndpoint> result = new ArrayList<ZigBeeEndpoint>();
-        final ArrayList<ZigBeeEndpoint> values = profiles.get(profileId);
-        if (values == null) {
+    public Collection<ZigBeeEndpoint> getEndpoints(int profileId) {
+        final List<ZigBeeEndpoint> result = topology.getEndpoints(profileId);
+        if (result.isEmpty()) {
             logger.warn("No endpoints found implementing the profile={}", profileId);
         } else {
-            logger.trace("We found {} implementing the profile={}", values.size(), profileId);
-            result.addAll(values);
+            logger.trace("We found {} implementing the profile={}", result.size(), profileId);
         }
         return result;
     }
 
+    /**
+     * Gets the endpoints implementing the profile and having the cluster as input cluster.
+     *
+     * @param profileId the profile ID
+     * @param clusterId the cluster ID
+     * @return the list of endpoints
+     */
+    public List<ZigBeeEndpoint> getEndpoints(final int profileId, final int clusterId) {
+        return topology.getEndpoints(profileId, clusterId);
+    }
+
     public boolean containsEndpoint(String ieee, short endPoint) {
-        final ZigBeeNode node = nodes.get(ieee);
-        if (node == null) {
-            return false;
-        }
-        /*
-		 * If node is not null it means that we found the same network node because
-		 * IEEE address must be unique for each network node
-		 */
-        final HashMap<Integer, ZigBeeEndpoint> endPoints = devices.get(node);
-        if (endPoints == null) {
-            return false;
-        }
-        return endPoints.containsKey(endPoint);
+        return topology.getEndpoint(IEEEAddress.fromColonNotation(ieee), endPoint) != null;
     }
 
     public ZigBeeNodeImpl getNode(String ieeeAddress) {
-        return nodes.get(ieeeAddress);
+        return topology.getNode(IEEEAddress.fromColonNotation(ieeeAddress));
+    }
+
+    /**
+     * Gets node by IEEE address.
+     *
+     * @param ieeeAddress the IEEE address
+     * @return the node or null if node does not exist
+     */
+    public ZigBeeNodeImpl getNode(final long ieeeAddress) {
+        return topology.getNode(ieeeAddress);
+    }
+
+    /**
+     * Gets node by network address.
+     *
+     * @param networkAddress the network address
+     * @return the node or null if node does not exist
+     */
+    public ZigBeeNodeImpl getNodeByNetworkAddress(final int networkAddress) {
+        return topology.getNodeByNetworkAddress(networkAddress);
+    }
+
+    /**
+     * Gets endpoint of node.
+     *
+     * @param node the node
+     * @param endPoint the endpoint address
+     * @return the endpoint or null if endpoint does not exist
+     */
+    public ZigBeeEndpoint getEndpoint(final ZigBeeNode node, final int endPoint) {
+        return topology.getEndpoint(IEEEAddress.fromColonNotation(node.getIeeeAddress()), endPoint);
     }
 
     public List<ZigBeeEndpoint> getEndPoints(final ZigBeeNode node) {
-        return new ArrayList(devices.get(node).values());
+        return topology.getEndpoints(IEEEAddress.fromColonNotation(node.getIeeeAddress()));
     }
 
     /**
@@ -37,6 +37,12 @@ public class ZToolCMD {
     /// <name>TI.ZPI2.MESSAGE_ID.AF_DATA_SRSP</name>
     /// <summary>Response for AF_DATA_REQUEST</summary>
     public static final int AF_DATA_SRSP = 0x6401;
+    /// <name>TI.ZPI2.MESSAGE_ID.AF_DATA_REQUEST_EXT</name>
+    /// <summary>This command is used to send a data request message with extended addressing, e.g. to a group</summary>
+    public static final int AF_DATA_REQUEST_EXT = 0x2402;
+    /// <name>TI.ZPI2.MESSAGE_ID.AF_DATA_SRSP_EXT</name>
+    /// <summary>Response for AF_DATA_REQUEST_EXT</summary>
+    public static final int AF_DATA_SRSP_EXT = 0x6402;
     /// <name>TI.ZPI2.MESSAGE_ID.AF_INCOMING_MSG</name>
     /// <summary>Incoming AF data.</summary>
     public static final int AF_INCOMING_MSG = 0x4481;
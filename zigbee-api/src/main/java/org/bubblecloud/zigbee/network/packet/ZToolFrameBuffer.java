@@ -0,0 +1,239 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reusable ring buffer which receives the raw bytes from the port and locates the ZNP frames
+ * (start byte, length, command, payload and FCS) in place without copying.
+ * <p>
+ * After {@link #nextFrame()} has returned true the buffer acts as a flyweight view of the frame
+ * until the next call to {@link #nextFrame()} or {@link #releaseFrame()}. The buffer is not thread safe
+ * and is meant to be owned by the packet parser thread.
+ */
+public class ZToolFrameBuffer {
+    /**
+     * The default capacity which fits several maximum length frames.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * The frame overhead: start byte, length, two command bytes and FCS.
+     */
+    private static final int FRAME_OVERHEAD = 5;
+    /**
+     * The maximum frame length.
+     */
+    private static final int MAX_FRAME_LENGTH = 0xFF + FRAME_OVERHEAD;
+    /**
+     * The buffer.
+     */
+    private final byte[] buffer;
+    /**
+     * The index mask.
+     */
+    private final int mask;
+    /**
+     * The read position. Positions are running counters which are masked on access.
+     */
+    private int head = 0;
+    /**
+     * The write position.
+     */
+    private int tail = 0;
+    /**
+     * The payload length of the current frame or -1 if there is no current frame.
+     */
+    private int frameLength = -1;
+    /**
+     * The number of bytes discarded while looking for a valid frame.
+     */
+    private int discardedBytes = 0;
+
+    /**
+     * Constructor which creates buffer of default capacity.
+     */
+    public ZToolFrameBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor which sets the buffer capacity.
+     * @param capacity the capacity, has to be power of two and fit at least one maximum length frame
+     */
+    public ZToolFrameBuffer(final int capacity) {
+        if (capacity < MAX_FRAME_LENGTH || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be power of two and at least "
+                    + MAX_FRAME_LENGTH + ": " + capacity);
+        }
+        buffer = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Reads available bytes from the input stream to the buffer. Blocks until at least one byte is
+     * available, but does not block for more than what the stream reports available.
+     * @param inputStream the input stream
+     * @return the number of bytes read or -1 on end of stream
+     * @throws IOException if exception occurs in reading
+     */
+    public int fill(final InputStream inputStream) throws IOException {
+        final int offset = tail & mask;
+        final int contiguous = Math.min(buffer.length - size(), buffer.length - offset);
+        if (contiguous == 0) {
+            return 0;
+        }
+        final int length = Math.min(contiguous, Math.max(1, inputStream.available()));
+        final int read = inputStream.read(buffer, offset, length);
+        if (read > 0) {
+            tail += read;
+        }
+        return read;
+    }
+
+    /**
+     * Writes bytes to the buffer.
+     * @param data the data
+     * @param offset the offset in data
+     * @param length the number of bytes to write
+     * @return the number of bytes written which is less than length if buffer became full
+     */
+    public int write(final byte[] data, final int offset, final int length) {
+        final int count = Math.min(length, buffer.length - size());
+        for (int i = 0; i < count; i++) {
+            buffer[(tail + i) & mask] = data[offset + i];
+        }
+        tail += count;
+        return count;
+    }
+
+    /**
+     * Gets the number of buffered bytes including the current frame.
+     * @return the number of buffered bytes
+     */
+    public int size() {
+        return tail - head;
+    }
+
+    /**
+     * Releases the current frame and locates the next complete frame with valid FCS. Bytes which
+     * do not belong to a valid frame are discarded.
+     * @return true if a frame is available
+     */
+    public boolean nextFrame() {
+        releaseFrame();
+        while (true) {
+            while (head != tail && (buffer[head & mask] & 0xFF) != ZToolPacket.START_BYTE) {
+                head++;
+                discardedBytes++;
+            }
+            final int available = tail - head;
+            if (available < 2) {
+                return false;
+            }
+            final int length = buffer[(head + 1) & mask] & 0xFF;
+            if (available < length + FRAME_OVERHEAD) {
+                return false;
+            }
+            // FCS is XOR of length, command and payload bytes.
+            int fcs = 0;
+            for (int i = 1; i < length + FRAME_OVERHEAD - 1; i++) {
+                fcs ^= buffer[(head + i) & mask];
+            }
+            if ((fcs & 0xFF) == (buffer[(head + length + FRAME_OVERHEAD - 1) & mask] & 0xFF)) {
+                frameLength = length;
+                return true;
+            }
+            // Not a valid frame, resynchronize from the next start byte.
+            head++;
+            discardedBytes++;
+        }
+    }
+
+    /**
+     * Releases the current frame if any.
+     */
+    public void releaseFrame() {
+        if (frameLength != -1) {
+            head += frameLength + FRAME_OVERHEAD;
+            frameLength = -1;
+        }
+    }
+
+    /**
+     * Gets the payload length of the current frame.
+     * @return the payload length or -1 if there is no current frame
+     */
+    public int getPayloadLength() {
+        return frameLength;
+    }
+
+    /**
+     * Gets the command MSB (Cmd0) of the current frame.
+     * @return the command MSB
+     */
+    public int getCommandMsb() {
+        return buffer[(head + 2) & mask] & 0xFF;
+    }
+
+    /**
+     * Gets the command LSB (Cmd1) of the current frame.
+     * @return the command LSB
+     */
+    public int getCommandLsb() {
+        return buffer[(head + 3) & mask] & 0xFF;
+    }
+
+    /**
+     * Gets the 16 bit command ID of the current frame.
+     * @return the command ID
+     */
+    public int getCommandId() {
+        return (getCommandMsb() << 8) | getCommandLsb();
+    }
+
+    /**
+     * Gets payload byte of the current frame.
+     * @param index the payload index
+     * @return the unsigned byte value
+     */
+    public int getPayload(final int index) {
+        if (index < 0 || index >= frameLength) {
+            throw new IndexOutOfBoundsException("Payload index " + index + " out of frame length " + frameLength);
+        }
+        return buffer[(head + ZToolPacket.PAYLOAD_START_INDEX + index) & mask] & 0xFF;
+    }
+
+    /**
+     * Copies the payload of the current frame as unsigned values.
+     * @param destination the destination array which has to fit the payload
+     */
+    public void copyPayload(final int[] destination) {
+        final int start = head + ZToolPacket.PAYLOAD_START_INDEX;
+        for (int i = 0; i < frameLength; i++) {
+            destination[i] = buffer[(start + i) & mask] & 0xFF;
+        }
+    }
+
+    /**
+     * Gets and resets the number of bytes discarded while looking for valid frames.
+     * @return the number of discarded bytes since last call
+     */
+    public int takeDiscardedBytes() {
+        final int discarded = discardedBytes;
+        discardedBytes = 0;
+        return discarded;
+    }
+}
@@ -83,17 +83,17 @@ public class ZToolPacket {
 
         // note: if checksum is not correct, XBee won't send out packet or return error.  ask me how I know.
         // checksum is always computed on pre-escaped packet
-        Checksum checksum = new Checksum();
+        int checksum = 0;
         // Packet length does not include escape bytes 
         this.LEN = frameData.length;
         packet[1] = this.LEN;
-        checksum.addByte(packet[1]);
+        checksum ^= packet[1];
         // msb Cmd0 -> Type & Subsystem
         packet[2] = ApiId.getMsb();
-        checksum.addByte(packet[2]);
+        checksum ^= packet[2];
         // lsb Cmd1 -> PROFILE_ID_HOME_AUTOMATION
         packet[3] = ApiId.getLsb();
-        checksum.addByte(packet[3]);
+        checksum ^= packet[3];
         this.CMD = ApiId;
         //data
         for (int i = 0; i < frameData.length; i++) {
@@ -101,11 +101,10 @@ public class ZToolPacket {
                 throw new RuntimeException("Value is greater than one byte: " + frameData[i] + " (" + Integer.toHexString(frameData[i]) + ")");
             }
             packet[PAYLOAD_START_INDEX + i] = frameData[i];
-            checksum.addByte(packet[PAYLOAD_START_INDEX + i]);
+            checksum ^= packet[PAYLOAD_START_INDEX + i];
         }
         // set last byte as checksum
-        checksum.compute();
-        this.FCS = checksum.getChecksum();
+        this.FCS = checksum;
         packet[packet.length - 1] = this.FCS;
 
     }
@@ -0,0 +1,544 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet;
+
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_CONFIRM;
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_SRSP;
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_SRSP_EXT;
+import org.bubblecloud.zigbee.network.packet.af.AF_INCOMING_MSG;
+import org.bubblecloud.zigbee.network.packet.af.AF_REGISTER_SRSP;
+import org.bubblecloud.zigbee.network.packet.simple.*;
+import org.bubblecloud.zigbee.network.packet.system.*;
+import org.bubblecloud.zigbee.network.packet.util.UTIL_GET_DEVICE_INFO_RESPONSE;
+import org.bubblecloud.zigbee.network.packet.util.UTIL_SET_CHANNELS_RESPONSE;
+import org.bubblecloud.zigbee.network.packet.util.UTIL_SET_PANID_RESPONSE;
+import org.bubblecloud.zigbee.network.packet.zdo.*;
+import org.bubblecloud.zigbee.util.DoubleByte;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the packet decoders indexed by the 16 bit command ID. The registry is a dense two level
+ * table indexed by the type and subsystem (Cmd0) and the command (Cmd1), so that locating the decoder
+ * of a frame costs two array lookups. Commands without a registered decoder are decoded as
+ * generic {@link ZToolPacket}. Commands can also be ignored in which case the frames are dropped before
+ * the payload is copied out of the receive buffer. The ignored commands can be configured with
+ * comma separated command IDs in the system property {@value #IGNORED_COMMANDS_KEY}.
+ */
+public class ZToolPacketFactory {
+    /**
+     * The logger.
+     */
+    private final static Logger logger = LoggerFactory.getLogger(ZToolPacketFactory.class);
+    /**
+     * The system property listing the 16 bit command IDs to be ignored, for example "0x4581,0x45C0".
+     */
+    public static final String IGNORED_COMMANDS_KEY = "zigbee.packet.ignored";
+    /**
+     * The default factory.
+     */
+    private static final ZToolPacketFactory DEFAULT = new ZToolPacketFactory();
+    /**
+     * Marker for ignored commands.
+     */
+    private static final PacketDecoder IGNORED = new PacketDecoder() {
+        public ZToolPacket decode(final int commandId, final int[] payload) {
+            return null;
+        }
+    };
+    /**
+     * The decoders indexed by Cmd0 type and subsystem bits and Cmd1.
+     */
+    private final PacketDecoder[][] decoders = new PacketDecoder[0x80][];
+
+    /**
+     * Gets the default factory.
+     * @return the default factory
+     */
+    public static ZToolPacketFactory getInstance() {
+        return DEFAULT;
+    }
+
+    /**
+     * Constructor which registers the decoders of the known packets and ignores the configured commands.
+     */
+    public ZToolPacketFactory() {
+        register(ZToolCMD.SYS_ADC_READ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_ADC_READ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.SYS_RESET_RESPONSE, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_RESET_RESPONSE(payload);
+            }
+        });
+        register(ZToolCMD.SYS_VERSION_RESPONSE, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_VERSION_RESPONSE(payload);
+            }
+        });
+        register(ZToolCMD.SYS_PING_RESPONSE, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_PING_RESPONSE(payload);
+            }
+        });
+        register(ZToolCMD.SYS_OSAL_NV_READ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_OSAL_NV_READ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.SYS_OSAL_NV_WRITE_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_OSAL_NV_WRITE_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.SYS_OSAL_START_TIMER_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_OSAL_START_TIMER_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.SYS_OSAL_STOP_TIMER_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_OSAL_STOP_TIMER_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.SYS_OSAL_TIMER_EXPIRED_IND, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_OSAL_TIMER_EXPIRED_IND(payload);
+            }
+        });
+        register(ZToolCMD.SYS_RANDOM_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_RANDOM_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.SYS_RPC_ERROR, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_RPC_ERROR(payload);
+            }
+        });
+        register(ZToolCMD.SYS_GPIO_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_GPIO_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.SYS_TEST_LOOPBACK_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new SYS_TEST_LOOPBACK_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.AF_DATA_CONFIRM, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new AF_DATA_CONFIRM(payload);
+            }
+        });
+        register(ZToolCMD.AF_DATA_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new AF_DATA_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.AF_DATA_SRSP_EXT, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new AF_DATA_SRSP_EXT(payload);
+            }
+        });
+        register(ZToolCMD.AF_INCOMING_MSG, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new AF_INCOMING_MSG(payload);
+            }
+        });
+        register(ZToolCMD.AF_REGISTER_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new AF_REGISTER_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_ALLOW_BIND_CONFIRM, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_ALLOW_BIND_CONFIRM(payload);
+            }
+        });
+        register(ZToolCMD.ZB_ALLOW_BIND_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_ALLOW_BIND_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_APP_REGISTER_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_APP_REGISTER_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_BIND_CONFIRM, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_BIND_CONFIRM(payload);
+            }
+        });
+        register(ZToolCMD.ZB_BIND_DEVICE_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_BIND_DEVICE_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_FIND_DEVICE_CONFIRM, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_FIND_DEVICE_CONFIRM(payload);
+            }
+        });
+        register(ZToolCMD.ZB_FIND_DEVICE_REQUEST_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_FIND_DEVICE_REQUEST_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_GET_DEVICE_INFO_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_GET_DEVICE_INFO_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_PERMIT_JOINING_REQUEST_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_PERMIT_JOINING_REQUEST_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_READ_CONFIGURATION_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_READ_CONFIGURATION_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_RECEIVE_DATA_INDICATION, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_RECEIVE_DATA_INDICATION(payload);
+            }
+        });
+        register(ZToolCMD.ZB_SEND_DATA_CONFIRM, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_SEND_DATA_CONFIRM(payload);
+            }
+        });
+        register(ZToolCMD.ZB_SEND_DATA_REQUEST_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_SEND_DATA_REQUEST_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_START_CONFIRM, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_START_CONFIRM(payload);
+            }
+        });
+        register(ZToolCMD.ZB_START_REQUEST_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_START_REQUEST_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZB_WRITE_CONFIGURATION_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZB_WRITE_CONFIGURATION_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_ACTIVE_EP_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_ACTIVE_EP_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_ACTIVE_EP_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_ACTIVE_EP_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_BIND_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_BIND_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_BIND_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_BIND_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_END_DEVICE_ANNCE_IND, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_END_DEVICE_ANNCE_IND(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_END_DEVICE_ANNCE_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_END_DEVICE_ANNCE_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_END_DEVICE_BIND_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_END_DEVICE_BIND_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_END_DEVICE_BIND_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_END_DEVICE_BIND_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_IEEE_ADDR_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_IEEE_ADDR_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_IEEE_ADDR_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_IEEE_ADDR_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MATCH_DESC_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MATCH_DESC_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MATCH_DESC_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MATCH_DESC_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MGMT_LEAVE_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MGMT_LEAVE_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MGMT_LEAVE_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MGMT_LEAVE_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MGMT_LQI_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MGMT_LQI_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MGMT_LQI_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MGMT_LQI_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MGMT_NWK_UPDATE_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MGMT_NWK_UPDATE_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MGMT_PERMIT_JOIN_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MGMT_PERMIT_JOIN_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MGMT_PERMIT_JOIN_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MGMT_PERMIT_JOIN_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_MSG_CB_REGISTER_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MSG_CB_REGISTER_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_NODE_DESC_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_NODE_DESC_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_NODE_DESC_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_NODE_DESC_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_POWER_DESC_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_POWER_DESC_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_POWER_DESC_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_POWER_DESC_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_NWK_ADDR_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_NWK_ADDR_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_NWK_ADDR_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_NWK_ADDR_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_SIMPLE_DESC_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_SIMPLE_DESC_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_SIMPLE_DESC_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_SIMPLE_DESC_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_STATE_CHANGE_IND, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_STATE_CHANGE_IND(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_TC_DEVICE_IND, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_TC_DEVICE_IND(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_UNBIND_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_UNBIND_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_UNBIND_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_UNBIND_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_USER_DESC_REQ_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_USER_DESC_REQ_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_USER_DESC_RSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_USER_DESC_RSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_USER_DESC_CONF, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_USER_DESC_CONF(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_USER_DESC_SET_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_USER_DESC_SET_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.ZDO_STARTUP_FROM_APP_SRSP, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_STARTUP_FROM_APP_SRSP(payload);
+            }
+        });
+        register(ZToolCMD.UTIL_SET_PANID_RESPONSE, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new UTIL_SET_PANID_RESPONSE(payload);
+            }
+        });
+        register(ZToolCMD.UTIL_SET_CHANNELS_RESPONSE, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new UTIL_SET_CHANNELS_RESPONSE(payload);
+            }
+        });
+        register(ZToolCMD.UTIL_GET_DEVICE_INFO_RESPONSE, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new UTIL_GET_DEVICE_INFO_RESPONSE(payload);
+            }
+        });
+        // The ZDO callbacks are translated to the corresponding ZDO response packets.
+        register(ZToolCMD.ZDO_MSG_CB_INCOMING, new PacketDecoder() {
+            public ZToolPacket decode(final int commandId, final int[] payload) {
+                return new ZDO_MSG_CB_INCOMING(payload).translate();
+            }
+        });
+
+        final String ignoredCommands = System.getProperty(IGNORED_COMMANDS_KEY);
+        if (ignoredCommands != null) {
+            for (final String commandId : ignoredCommands.split(",")) {
+                if (commandId.trim().length() == 0) {
+                    continue;
+                }
+                try {
+                    ignore(Integer.decode(commandId.trim()));
+                    logger.trace("Ignoring command {} set from enviroment", commandId.trim());
+                } catch (NumberFormatException ex) {
+                    logger.warn("Invalid command ID {} in {}", commandId, IGNORED_COMMANDS_KEY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers decoder for the command.
+     * @param commandId the 16 bit command ID
+     * @param decoder the decoder
+     */
+    public synchronized void register(final int commandId, final PacketDecoder decoder) {
+        final int cmd0 = (commandId >> 8) & 0x7F;
+        PacketDecoder[] commands = decoders[cmd0];
+        if (commands == null) {
+            commands = new PacketDecoder[0x100];
+            decoders[cmd0] = commands;
+        }
+        commands[commandId & 0xFF] = decoder;
+    }
+
+    /**
+     * Sets the frames of the command to be dropped without decoding.
+     * @param commandId the 16 bit command ID
+     */
+    public void ignore(final int commandId) {
+        register(commandId, IGNORED);
+    }
+
+    /**
+     * Checks whether frames of the command are dropped without decoding.
+     * @param commandId the 16 bit command ID
+     * @return true if the command is ignored
+     */
+    public boolean isIgnored(final int commandId) {
+        return getDecoder(commandId) == IGNORED;
+    }
+
+    /**
+     * Creates packet from the payload.
+     * @param cmdId the command ID
+     * @param payload the payload
+     * @return the packet or null if the command is ignored
+     */
+    public ZToolPacket create(final DoubleByte cmdId, final int[] payload) {
+        return create(cmdId.get16BitValue(), payload);
+    }
+
+    /**
+     * Creates packet from the payload. The packets do not keep reference to the payload array
+     * so the caller can reuse it after the call.
+     * @param commandId the 16 bit command ID
+     * @param payload the payload
+     * @return the packet or null if the command is ignored
+     */
+    public ZToolPacket create(final int commandId, final int[] payload) {
+        final PacketDecoder decoder = getDecoder(commandId);
+        if (decoder == null) {
+            return new ZToolPacket(new DoubleByte(commandId), payload);
+        }
+        return decoder.decode(commandId, payload);
+    }
+
+    private PacketDecoder getDecoder(final int commandId) {
+        final PacketDecoder[] commands = decoders[(commandId >> 8) & 0x7F];
+        return commands == null ? null : commands[commandId & 0xFF];
+    }
+
+    /**
+     * Decoder which creates packet from the payload.
+     */
+    public interface PacketDecoder {
+        /**
+         * Creates packet from the payload. The payload array must not be referenced by the packet.
+         * @param commandId the 16 bit command ID
+         * @param payload the payload
+         * @return the packet or null if the frame is dropped
+         */
+        ZToolPacket decode(final int commandId, final int[] payload);
+    }
+}
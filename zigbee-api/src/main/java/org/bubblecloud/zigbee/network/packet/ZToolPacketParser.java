@@ -63,6 +63,15 @@ public class ZToolPacketParser implements Runnable {
      * The parser parserThread.
      */
     private Thread parserThread = null;
+    /**
+     * The frame buffer or null if the packets are parsed directly from the stream.
+     */
+    private final ZToolFrameBuffer frameBuffer;
+    /**
+     * The reusable payload arrays indexed by payload length. Packets copy the payload so the
+     * arrays can be reused for the following frames.
+     */
+    private final int[][] payloads = new int[0x100][];
     /**
      * Flag reflecting that parser has been closed and parser parserThread should exit.
      */
@@ -70,20 +79,40 @@ public class ZToolPacketParser implements Runnable {
 
     /**
      * Construct which sets input stream where the packet is read from the and handler
-     * which further processes the received packet.
+     * which further processes the received packet. The packets are located from
+     * a {@link ZToolFrameBuffer}.
      *
      * @param inputStream   the input stream
      * @param packetHandler the packet handler
      */
     public ZToolPacketParser(final InputStream inputStream, final ZToolPacketHandler packetHandler) {
+        this(inputStream, packetHandler, true);
+    }
+
+    /**
+     * Construct which sets input stream where the packet is read from the and handler
+     * which further processes the received packet.
+     *
+     * @param inputStream   the input stream
+     * @param packetHandler the packet handler
+     * @param useFrameBuffer true to locate packets from a {@link ZToolFrameBuffer} or false
+     *                       to parse them byte by byte from the stream
+     */
+    public ZToolPacketParser(final InputStream inputStream, final ZToolPacketHandler packetHandler,
+                             final boolean useFrameBuffer) {
         logger.trace("Creating ZToolPacketParser");
-        if (inputStream.markSupported()) {
+        if (useFrameBuffer) {
+            this.inputStream = inputStream;
+            this.frameBuffer = new ZToolFrameBuffer();
+        } else if (inputStream.markSupported()) {
+            this.frameBuffer = null;
             this.inputStream = inputStream;
         } else {
             logger.trace(
                     "Provided InputStream {} doesn't provide the mark()/reset() feature, " +
                             "wrapping it up as BufferedInputStream", inputStream.getClass()
             );
+            this.frameBuffer = null;
             this.inputStream = new MarkableInputStream(inputStream);
         }
         this.packetHandler = packetHandler;
@@ -97,6 +126,11 @@ public class ZToolPacketParser implements Runnable {
      */
     public void run() {
         logger.trace("ZToolPacketParser parserThread started");
+        if (frameBuffer != null) {
+            runFrameBuffer();
+            logger.debug("ZToolPacketParser parserThread exited.");
+            return;
+        }
         while (!close) {
             try {
                 int val = inputStream.read();
@@ -128,6 +162,63 @@ public class ZToolPacketParser implements Runnable {
         logger.debug("ZToolPacketParser parserThread exited.");
     }
 
+    /**
+     * Parser loop which drains the input stream to the frame buffer and builds packets
+     * from the frames located in place.
+     */
+    private void runFrameBuffer() {
+        while (!close) {
+            try {
+                if (frameBuffer.fill(inputStream) <= 0) {
+                    continue;
+                }
+                while (frameBuffer.nextFrame()) {
+                    final ZToolPacket packet = buildPacket();
+                    if (packet != null) {
+                        packetHandler.handlePacket(packet);
+                    }
+                }
+                final int discarded = frameBuffer.takeDiscardedBytes();
+                if (discarded > 0) {
+                    logger.warn("Discarded {} bytes not belonging to a valid frame.", discarded);
+                }
+            } catch (final IOException e) {
+                if (!close) {
+                    logger.error("Exception inputStream reader parserThread", e);
+                    packetHandler.error(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds packet from the current frame of the frame buffer.
+     * @return the packet or null if the command is ignored or the payload could not be parsed
+     */
+    private ZToolPacket buildPacket() {
+        final ZToolPacketFactory packetFactory = ZToolPacketFactory.getInstance();
+        final int commandId = frameBuffer.getCommandId();
+        if (packetFactory.isIgnored(commandId)) {
+            return null;
+        }
+        final int payloadLength = frameBuffer.getPayloadLength();
+        int[] payload = payloads[payloadLength];
+        if (payload == null) {
+            payload = new int[payloadLength];
+            payloads[payloadLength] = payload;
+        }
+        frameBuffer.copyPayload(payload);
+        try {
+            final ZToolPacket packet = packetFactory.create(commandId, payload);
+            logger.trace("Response is {} -> {}", packet.getClass(), packet);
+            return packet;
+        } catch (final RuntimeException e) {
+            logger.error("Received a BAD PACKET " + Integer.toHexString(commandId) + " "
+                    + ByteUtils.toBase16(payload), e);
+            return null;
+        }
+    }
+
     /**
      * Set the close flag to true.
      */
@@ -25,16 +25,6 @@
 
 package org.bubblecloud.zigbee.network.packet;
 
-import org.bubblecloud.zigbee.network.packet.af.AF_DATA_CONFIRM;
-import org.bubblecloud.zigbee.network.packet.af.AF_DATA_SRSP;
-import org.bubblecloud.zigbee.network.packet.af.AF_INCOMING_MSG;
-import org.bubblecloud.zigbee.network.packet.af.AF_REGISTER_SRSP;
-import org.bubblecloud.zigbee.network.packet.simple.*;
-import org.bubblecloud.zigbee.network.packet.system.*;
-import org.bubblecloud.zigbee.network.packet.util.UTIL_GET_DEVICE_INFO_RESPONSE;
-import org.bubblecloud.zigbee.network.packet.util.UTIL_SET_CHANNELS_RESPONSE;
-import org.bubblecloud.zigbee.network.packet.util.UTIL_SET_PANID_RESPONSE;
-import org.bubblecloud.zigbee.network.packet.zdo.*;
 import org.bubblecloud.zigbee.util.ByteUtils;
 import org.bubblecloud.zigbee.util.DoubleByte;
 import org.bubblecloud.zigbee.util.IIntArrayInputStream;
@@ -199,160 +189,9 @@ public class ZToolPacketStream
         return exceptionResponse;
     }
 
-    private static ZToolPacket parsePayload(final DoubleByte cmdId, final int[] payload) {
-        switch (cmdId.get16BitValue()) {
-            case ZToolCMD.SYS_ADC_READ_SRSP:
-                return new SYS_ADC_READ_SRSP(payload);
-            case ZToolCMD.SYS_RESET_RESPONSE:
-                return new SYS_RESET_RESPONSE(payload);
-            case ZToolCMD.SYS_VERSION_RESPONSE:
-                return new SYS_VERSION_RESPONSE(payload);
-            case ZToolCMD.SYS_PING_RESPONSE:
-                return new SYS_PING_RESPONSE(payload);
-            case ZToolCMD.SYS_OSAL_NV_READ_SRSP:
-                return new SYS_OSAL_NV_READ_SRSP(payload);
-            case ZToolCMD.SYS_OSAL_NV_WRITE_SRSP:
-                return new SYS_OSAL_NV_WRITE_SRSP(payload);
-            case ZToolCMD.SYS_OSAL_START_TIMER_SRSP:
-                return new SYS_OSAL_START_TIMER_SRSP(payload);
-            case ZToolCMD.SYS_OSAL_STOP_TIMER_SRSP:
-                return new SYS_OSAL_STOP_TIMER_SRSP(payload);
-            case ZToolCMD.SYS_OSAL_TIMER_EXPIRED_IND:
-                return new SYS_OSAL_TIMER_EXPIRED_IND(payload);
-            case ZToolCMD.SYS_RANDOM_SRSP:
-                return new SYS_RANDOM_SRSP(payload);
-            case ZToolCMD.SYS_RPC_ERROR:
-                return new SYS_RPC_ERROR(payload);
-            case ZToolCMD.SYS_GPIO_SRSP:
-                return new SYS_GPIO_SRSP(payload);
-            case ZToolCMD.SYS_TEST_LOOPBACK_SRSP:
-                return new SYS_TEST_LOOPBACK_SRSP(payload);
-            case ZToolCMD.AF_DATA_CONFIRM:
-                return new AF_DATA_CONFIRM(payload);
-            case ZToolCMD.AF_DATA_SRSP:
-                return new AF_DATA_SRSP(payload);
-            case ZToolCMD.AF_INCOMING_MSG:
-                return new AF_INCOMING_MSG(payload);
-            case ZToolCMD.AF_REGISTER_SRSP:
-                return new AF_REGISTER_SRSP(payload);
-            case ZToolCMD.ZB_ALLOW_BIND_CONFIRM:
-                return new ZB_ALLOW_BIND_CONFIRM();
-            case ZToolCMD.ZB_ALLOW_BIND_RSP:
-                return new ZB_ALLOW_BIND_RSP(payload);
-            case ZToolCMD.ZB_APP_REGISTER_RSP:
-                return new ZB_APP_REGISTER_RSP(payload);
-            case ZToolCMD.ZB_BIND_CONFIRM:
-                return new ZB_BIND_CONFIRM(payload);
-            case ZToolCMD.ZB_BIND_DEVICE_RSP:
-                return new ZB_BIND_DEVICE_RSP(payload);
-            case ZToolCMD.ZB_FIND_DEVICE_CONFIRM:
-                return new ZB_FIND_DEVICE_CONFIRM(payload);
-            case ZToolCMD.ZB_FIND_DEVICE_REQUEST_RSP:
-                return new ZB_FIND_DEVICE_REQUEST_RSP();
-            case ZToolCMD.ZB_GET_DEVICE_INFO_RSP:
-                return new ZB_GET_DEVICE_INFO_RSP(payload);
-            case ZToolCMD.ZB_PERMIT_JOINING_REQUEST_RSP:
-                return new ZB_PERMIT_JOINING_REQUEST_RSP(payload);
-            case ZToolCMD.ZB_READ_CONFIGURATION_RSP:
-                return new ZB_READ_CONFIGURATION_RSP(payload);
-            case ZToolCMD.ZB_RECEIVE_DATA_INDICATION:
-                return new ZB_RECEIVE_DATA_INDICATION(payload);
-            case ZToolCMD.ZB_SEND_DATA_CONFIRM:
-                return new ZB_SEND_DATA_CONFIRM(payload);
-            case ZToolCMD.ZB_SEND_DATA_REQUEST_RSP:
-                return new ZB_SEND_DATA_REQUEST_RSP(payload);
-            case ZToolCMD.ZB_START_CONFIRM:
-                return new ZB_START_CONFIRM(payload);
-            case ZToolCMD.ZB_START_REQUEST_RSP:
-                return new ZB_START_REQUEST_RSP(payload);
-            case ZToolCMD.ZB_WRITE_CONFIGURATION_RSP:
-                return new ZB_WRITE_CONFIGURATION_RSP(payload);
-            case ZToolCMD.ZDO_ACTIVE_EP_REQ_SRSP:
-                return new ZDO_ACTIVE_EP_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_ACTIVE_EP_RSP:
-                return new ZDO_ACTIVE_EP_RSP(payload);
-            case ZToolCMD.ZDO_BIND_REQ_SRSP:
-                return new ZDO_BIND_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_BIND_RSP:
-                return new ZDO_BIND_RSP(payload);
-            case ZToolCMD.ZDO_END_DEVICE_ANNCE_IND:
-                return new ZDO_END_DEVICE_ANNCE_IND(payload);
-            case ZToolCMD.ZDO_END_DEVICE_ANNCE_SRSP:
-                return new ZDO_END_DEVICE_ANNCE_SRSP(payload);
-            case ZToolCMD.ZDO_END_DEVICE_BIND_REQ_SRSP:
-                return new ZDO_END_DEVICE_BIND_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_END_DEVICE_BIND_RSP:
-                return new ZDO_END_DEVICE_BIND_RSP(payload);
-            case ZToolCMD.ZDO_IEEE_ADDR_REQ_SRSP:
-                return new ZDO_IEEE_ADDR_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_IEEE_ADDR_RSP:
-                return new ZDO_IEEE_ADDR_RSP(payload);
-            case ZToolCMD.ZDO_MATCH_DESC_REQ_SRSP:
-                return new ZDO_MATCH_DESC_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_MATCH_DESC_RSP:
-                return new ZDO_MATCH_DESC_RSP(payload);
-            case ZToolCMD.ZDO_MGMT_LEAVE_REQ_SRSP:
-                return new ZDO_MGMT_LEAVE_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_MGMT_LEAVE_RSP:
-                return new ZDO_MGMT_LEAVE_RSP(payload);
-            case ZToolCMD.ZDO_MGMT_LQI_REQ_SRSP:
-                return new ZDO_MGMT_LQI_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_MGMT_LQI_RSP:
-                return new ZDO_MGMT_LQI_RSP(payload);
-            case ZToolCMD.ZDO_MGMT_NWK_UPDATE_REQ_SRSP:
-                return new ZDO_MGMT_NWK_UPDATE_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_MGMT_PERMIT_JOIN_REQ_SRSP:
-                return new ZDO_MGMT_PERMIT_JOIN_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_MGMT_PERMIT_JOIN_RSP:
-                return new ZDO_MGMT_PERMIT_JOIN_RSP(payload);
-            case ZToolCMD.ZDO_MSG_CB_REGISTER_SRSP:
-                return new ZDO_MSG_CB_REGISTER_SRSP(payload);
-            case ZToolCMD.ZDO_MSG_CB_INCOMING:
-                ZDO_MSG_CB_INCOMING incoming = new ZDO_MSG_CB_INCOMING(payload);
-                return incoming.translate();
-            case ZToolCMD.ZDO_NODE_DESC_REQ_SRSP:
-                return new ZDO_NODE_DESC_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_NODE_DESC_RSP:
-                return new ZDO_NODE_DESC_RSP(payload);
-            case ZToolCMD.ZDO_POWER_DESC_REQ_SRSP:
-                return new ZDO_POWER_DESC_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_POWER_DESC_RSP:
-                return new ZDO_POWER_DESC_RSP(payload);
-            case ZToolCMD.ZDO_NWK_ADDR_REQ_SRSP:
-                return new ZDO_NWK_ADDR_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_NWK_ADDR_RSP:
-                return new ZDO_NWK_ADDR_RSP(payload);
-            case ZToolCMD.ZDO_SIMPLE_DESC_REQ_SRSP:
-                return new ZDO_SIMPLE_DESC_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_SIMPLE_DESC_RSP:
-                return new ZDO_SIMPLE_DESC_RSP(payload);
-            case ZToolCMD.ZDO_STATE_CHANGE_IND:
-                return new ZDO_STATE_CHANGE_IND(payload);
-            case ZToolCMD.ZDO_TC_DEVICE_IND:
-                return new ZDO_TC_DEVICE_IND(payload);
-            case ZToolCMD.ZDO_UNBIND_REQ_SRSP:
-                return new ZDO_UNBIND_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_UNBIND_RSP:
-                return new ZDO_UNBIND_RSP(payload);
-            case ZToolCMD.ZDO_USER_DESC_REQ_SRSP:
-                return new ZDO_USER_DESC_REQ_SRSP(payload);
-            case ZToolCMD.ZDO_USER_DESC_RSP:
-                return new ZDO_USER_DESC_RSP(payload);
-            case ZToolCMD.ZDO_USER_DESC_CONF:
-                return new ZDO_USER_DESC_CONF(payload);
-            case ZToolCMD.ZDO_USER_DESC_SET_SRSP:
-                return new ZDO_USER_DESC_SET_SRSP(payload);
-            case ZToolCMD.ZDO_STARTUP_FROM_APP_SRSP:
-                return new ZDO_STARTUP_FROM_APP_SRSP(payload);
-            case ZToolCMD.UTIL_SET_PANID_RESPONSE:
-                return new UTIL_SET_PANID_RESPONSE(payload);
-            case ZToolCMD.UTIL_SET_CHANNELS_RESPONSE:
-                return new UTIL_SET_CHANNELS_RESPONSE(payload);
-            case ZToolCMD.UTIL_GET_DEVICE_INFO_RESPONSE:
-                return new UTIL_GET_DEVICE_INFO_RESPONSE(payload);
-            default:
-                return new ZToolPacket(cmdId, payload);
-        }
+    static ZToolPacket parsePayload(final DoubleByte cmdId, final int[] payload) {
+        final ZToolPacket packet = ZToolPacketFactory.getInstance().create(cmdId, payload);
+        return packet != null ? packet : new ZToolPacket(cmdId, payload);
     }
 
     public int read(final String context)
@@ -0,0 +1,31 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet;
+
+import java.io.IOException;
+
+/**
+ * Listener notified by {@link ZToolPacketWriter} of packets which could not be written.
+ */
+public interface ZToolPacketWriteListener {
+
+    /**
+     * Invoked from the writer thread for each packet of a batch which failed to be written or
+     * for each queued packet discarded when the writer was closed.
+     *
+     * @param packet the packet which was not written
+     * @param exception the cause
+     */
+    public void packetWriteFailed(ZToolPacket packet, IOException exception);
+}
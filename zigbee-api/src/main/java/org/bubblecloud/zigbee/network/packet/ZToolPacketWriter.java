@@ -0,0 +1,297 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound stage which queues packets to a bounded queue drained by a single writer thread.
+ * The writer thread encodes the queued packets to a reusable buffer and writes back-to-back
+ * packets to the output stream with a single write and flush. If the write fails, each packet of
+ * the batch is reported to the {@link ZToolPacketWriteListener}.
+ */
+public class ZToolPacketWriter implements Runnable {
+    /**
+     * The logger.
+     */
+    private final static Logger logger = LoggerFactory.getLogger(ZToolPacketWriter.class);
+    /**
+     * The default queue capacity.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /**
+     * The write buffer size which fits several maximum length packets.
+     */
+    private static final int BUFFER_SIZE = 1024;
+    /**
+     * The length of a packet without payload.
+     */
+    private static final int MINIMUM_PACKET_LENGTH = 5;
+    /**
+     * The marker packet which stops the writer thread.
+     */
+    private static final ZToolPacket CLOSE = new ZToolPacket();
+    /**
+     * The output stream.
+     */
+    private final OutputStream outputStream;
+    /**
+     * The packet queue.
+     */
+    private final BlockingQueue<ZToolPacket> queue;
+    /**
+     * The reusable write buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * The packets encoded to the write buffer.
+     */
+    private final ZToolPacket[] batch = new ZToolPacket[BUFFER_SIZE / MINIMUM_PACKET_LENGTH];
+    /**
+     * The listener notified of packets which failed to be written or null.
+     */
+    private final ZToolPacketWriteListener listener;
+    /**
+     * The writer thread.
+     */
+    private final Thread writerThread;
+    /**
+     * Flag reflecting that writer has been closed.
+     */
+    private volatile boolean close = false;
+    /**
+     * The maximum observed queue depth.
+     */
+    private volatile int maxQueueDepth = 0;
+    /**
+     * The number of packets written.
+     */
+    private volatile long packetsWritten = 0;
+    /**
+     * The number of bytes written.
+     */
+    private volatile long bytesWritten = 0;
+    /**
+     * The number of flushes.
+     */
+    private volatile long flushes = 0;
+
+    /**
+     * Constructor which sets the output stream and starts the writer thread.
+     * @param outputStream the output stream
+     * @param queueCapacity the maximum number of packets waiting to be written
+     */
+    public ZToolPacketWriter(final OutputStream outputStream, final int queueCapacity) {
+        this(outputStream, queueCapacity, null);
+    }
+
+    /**
+     * Constructor which sets the output stream and starts the writer thread.
+     * @param outputStream the output stream
+     * @param queueCapacity the maximum number of packets waiting to be written
+     * @param listener the listener notified of packets which failed to be written or null
+     */
+    public ZToolPacketWriter(final OutputStream outputStream, final int queueCapacity,
+                             final ZToolPacketWriteListener listener) {
+        this.outputStream = outputStream;
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<ZToolPacket>(queueCapacity);
+        writerThread = new Thread(this, "ZToolPacketWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues packet for writing. Blocks if the queue is full.
+     * @param packet the packet
+     * @throws IOException if writer has been closed
+     */
+    public void write(final ZToolPacket packet) throws IOException {
+        if (packet.getPacket().length > buffer.length) {
+            throw new IllegalArgumentException("Packet does not fit to write buffer: " + packet.getPacket().length);
+        }
+        if (close) {
+            throw new IOException("Packet writer has been closed.");
+        }
+        try {
+            queue.put(packet);
+        } catch (final InterruptedException e) {
+            throw new IOException("Interrupted while queuing packet.");
+        }
+        final int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * Run method executed by the writer thread.
+     */
+    public void run() {
+        logger.trace("ZToolPacketWriter thread started");
+        boolean running = true;
+        while (running) {
+            final ZToolPacket first;
+            try {
+                first = queue.take();
+            } catch (final InterruptedException e) {
+                continue;
+            }
+            if (first == CLOSE) {
+                break;
+            }
+            int length = encode(first, 0);
+            batch[0] = first;
+            int packets = 1;
+            ZToolPacket next;
+            while ((next = queue.peek()) != null && next != CLOSE
+                    && length + next.getPacket().length <= buffer.length) {
+                queue.poll();
+                length = encode(next, length);
+                batch[packets++] = next;
+            }
+            if (next == CLOSE) {
+                running = false;
+            }
+            try {
+                outputStream.write(buffer, 0, length);
+                outputStream.flush();
+                packetsWritten += packets;
+                bytesWritten += length;
+                flushes++;
+            } catch (final IOException e) {
+                if (!close) {
+                    logger.error("Exception in writing packets to output stream.", e);
+                }
+                for (int i = 0; i < packets; i++) {
+                    notifyWriteFailed(batch[i], e);
+                }
+            }
+            for (int i = 0; i < packets; i++) {
+                batch[i] = null;
+            }
+        }
+        logger.debug("ZToolPacketWriter thread exited.");
+    }
+
+    /**
+     * Notifies listener that packet was not written.
+     * @param packet the packet
+     * @param exception the cause
+     */
+    private void notifyWriteFailed(final ZToolPacket packet, final IOException exception) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.packetWriteFailed(packet, exception);
+        } catch (final Throwable t) {
+            logger.error("Error in packet write failure processing.", t);
+        }
+    }
+
+    /**
+     * Encodes packet to the write buffer.
+     * @param packet the packet
+     * @param offset the offset in buffer
+     * @return the new offset in buffer
+     */
+    private int encode(final ZToolPacket packet, final int offset) {
+        final int[] pck = packet.getPacket();
+        for (int i = 0; i < pck.length; i++) {
+            buffer[offset + i] = (byte) pck[i];
+        }
+        return offset + pck.length;
+    }
+
+    /**
+     * Stops accepting packets, writes the already queued packets and stops the writer thread.
+     */
+    public void close() {
+        close = true;
+        try {
+            if (!queue.offer(CLOSE, 1, TimeUnit.SECONDS)) {
+                logger.warn("Packet writer queue did not drain, discarding {} packets.", queue.size());
+                final List<ZToolPacket> discarded = new ArrayList<ZToolPacket>();
+                queue.drainTo(discarded);
+                queue.offer(CLOSE);
+                final IOException exception = new IOException("Packet writer has been closed.");
+                for (final ZToolPacket packet : discarded) {
+                    notifyWriteFailed(packet, exception);
+                }
+            }
+            writerThread.join(1000);
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted in packet writer thread shutdown join.");
+        }
+    }
+
+    /**
+     * Gets the number of packets waiting to be written.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the maximum observed number of packets waiting to be written.
+     * @return the maximum queue depth
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Gets the number of packets written.
+     * @return the number of packets written
+     */
+    public long getPacketsWritten() {
+        return packetsWritten;
+    }
+
+    /**
+     * Gets the number of bytes written.
+     * @return the number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gets the number of writes with flush to the output stream.
+     * @return the number of flushes
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Gets the average number of bytes written per flush.
+     * @return the average bytes per flush or 0 if nothing has been written
+     */
+    public double getBytesPerFlush() {
+        final long flushCount = flushes;
+        return flushCount == 0 ? 0 : (double) bytesWritten / flushCount;
+    }
+}
@@ -135,4 +135,20 @@ public class AF_DATA_REQUEST extends ZToolPacket/* implements IREQUEST,IAF*/ {
 
     }
 
+    /**
+     * Gets the source endpoint from the frame.
+     * @return the source endpoint
+     */
+    public int getSrcEndpoint() {
+        return packet[ZToolPacket.PAYLOAD_START_INDEX + 3] & 0xFF;
+    }
+
+    /**
+     * Gets the transaction ID from the frame.
+     * @return the transaction ID
+     */
+    public int getTransId() {
+        return packet[ZToolPacket.PAYLOAD_START_INDEX + 6] & 0xFF;
+    }
+
 }
@@ -0,0 +1,100 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet.af;
+
+import org.bubblecloud.zigbee.network.packet.ZToolCMD;
+import org.bubblecloud.zigbee.network.packet.ZToolPacket;
+import org.bubblecloud.zigbee.util.DoubleByte;
+import org.bubblecloud.zigbee.util.Integers;
+
+/**
+ * Data request with extended addressing. Used to send a single frame to all members of a group
+ * instead of one {@link AF_DATA_REQUEST} per member.
+ */
+public class AF_DATA_REQUEST_EXT extends ZToolPacket {
+    /**
+     * The destination address mode for group addressing.
+     */
+    public static final int ADDRESS_MODE_GROUP = 0x01;
+    /**
+     * The maximum length of the payload.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = 128;
+
+    /**
+     * Constructor for group addressed data request.
+     *
+     * @param groupId the destination group ID
+     * @param srcEndPoint the source endpoint
+     * @param clusterId the cluster ID
+     * @param transId the transaction ID
+     * @param bitmapOpt the transmit options
+     * @param radius the radius
+     * @param msg the payload
+     */
+    public AF_DATA_REQUEST_EXT(int groupId, short srcEndPoint, int clusterId, byte transId, byte bitmapOpt,
+                               byte radius, byte[] msg) {
+        if (msg.length > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Payload is too big, maxium is " + MAX_PAYLOAD_LENGTH);
+        }
+
+        final int[] framedata = new int[msg.length + 20];
+        framedata[0] = ADDRESS_MODE_GROUP;
+        // Destination address is 8 bytes long with group ID in the two least significant bytes.
+        framedata[1] = Integers.getByteAsInteger(groupId, 0);
+        framedata[2] = Integers.getByteAsInteger(groupId, 1);
+        // Destination endpoint and PAN ID are not used with group addressing.
+        framedata[9] = 0;
+        framedata[10] = 0;
+        framedata[11] = 0;
+        framedata[12] = srcEndPoint & 0xFF;
+        framedata[13] = Integers.getByteAsInteger(clusterId, 0);
+        framedata[14] = Integers.getByteAsInteger(clusterId, 1);
+        framedata[15] = transId & 0xFF;
+        framedata[16] = bitmapOpt & 0xFF;
+        framedata[17] = radius & 0xFF;
+        framedata[18] = Integers.getByteAsInteger(msg.length, 0);
+        framedata[19] = Integers.getByteAsInteger(msg.length, 1);
+        for (int i = 0; i < msg.length; i++) {
+            framedata[20 + i] = msg[i] & 0xFF;
+        }
+        super.buildPacket(new DoubleByte(ZToolCMD.AF_DATA_REQUEST_EXT), framedata);
+    }
+
+    /**
+     * Gets the destination group ID from the frame.
+     * @return the group ID
+     */
+    public int getGroupId() {
+        return (packet[ZToolPacket.PAYLOAD_START_INDEX + 1] & 0xFF)
+                | ((packet[ZToolPacket.PAYLOAD_START_INDEX + 2] & 0xFF) << 8);
+    }
+
+    /**
+     * Gets the source endpoint from the frame.
+     * @return the source endpoint
+     */
+    public int getSrcEndpoint() {
+        return packet[ZToolPacket.PAYLOAD_START_INDEX + 12] & 0xFF;
+    }
+
+    /**
+     * Gets the transaction ID from the frame.
+     * @return the transaction ID
+     */
+    public int getTransId() {
+        return packet[ZToolPacket.PAYLOAD_START_INDEX + 15] & 0xFF;
+    }
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet.af;
+
+import org.bubblecloud.zigbee.network.packet.ResponseStatus;
+import org.bubblecloud.zigbee.network.packet.ZToolCMD;
+import org.bubblecloud.zigbee.network.packet.ZToolPacket;
+import org.bubblecloud.zigbee.util.DoubleByte;
+
+/**
+ * Synchronous response for {@link AF_DATA_REQUEST_EXT}.
+ */
+public class AF_DATA_SRSP_EXT extends ZToolPacket {
+    /**
+     * The status.
+     */
+    public int Status;
+
+    public AF_DATA_SRSP_EXT() {
+    }
+
+    public AF_DATA_SRSP_EXT(int[] framedata) {
+        this.Status = framedata[0];
+        super.buildPacket(new DoubleByte(ZToolCMD.AF_DATA_SRSP_EXT), framedata);
+    }
+
+    @Override
+    public String toString() {
+        return "AF_DATA_SRSP_EXT{" +
+                "Status=" + ResponseStatus.getStatus(Status) +
+                '}';
+    }
+}
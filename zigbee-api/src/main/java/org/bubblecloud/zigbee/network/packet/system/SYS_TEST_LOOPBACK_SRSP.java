@@ -39,8 +39,7 @@ public class SYS_TEST_LOOPBACK_SRSP extends ZToolPacket/* implements IRESPONSE,I
     }
 
     public SYS_TEST_LOOPBACK_SRSP(int[] framedata) {
-        this.TestData = new int[framedata.length];
-        this.TestData = framedata;
+        this.TestData = framedata.clone();
         super.buildPacket(new DoubleByte(ZToolCMD.SYS_TEST_LOOPBACK_SRSP), framedata);
     }
 
@@ -25,14 +25,16 @@ import org.bubblecloud.zigbee.network.AsynchronousCommandListener;
 import org.bubblecloud.zigbee.network.SynchronousCommandListener;
 import org.bubblecloud.zigbee.network.packet.ZToolPacket;
 import org.bubblecloud.zigbee.network.packet.ZToolPacketHandler;
+import org.bubblecloud.zigbee.network.packet.ZToolPacketWriteListener;
 import org.bubblecloud.zigbee.network.packet.ZToolPacketParser;
+import org.bubblecloud.zigbee.network.packet.ZToolPacketWriter;
 import org.bubblecloud.zigbee.util.DoubleByte;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * ZigBeeSerialInterface is used to startup connection to ZigBee network.
@@ -41,7 +43,7 @@ import java.util.*;
  * @author <a href="mailto:tommi.s.e.laukkanen@gmail.com">Tommi S.E. Laukkanen</a>
  * @author <a href="mailto:christopherhattonuk@gmail.com">Chris Hatton</a>
  */
-public class ZigBeeInterface implements ZToolPacketHandler {
+public class ZigBeeInterface implements ZToolPacketHandler, ZToolPacketWriteListener {
     /**
      * The logger.
      */
@@ -55,32 +57,62 @@ public class ZigBeeInterface implements ZToolPacketHandler {
      */
     private ZToolPacketParser parser;
     /**
-     * Support parallel processing of different command types.
-     * Only one command per command ID can be in process at a time.
+     * The packet writer.
      */
-    private final boolean supportMultipleSynchrounsCommand = false;
+    private ZToolPacketWriter writer;
     /**
-     * Synchronous command listeners.
+     * The default number of synchronous commands which can be in flight at the same time.
      */
-    private final Hashtable<Short, SynchronousCommandListener> synchronousCommandListeners
-            = new Hashtable<Short, SynchronousCommandListener>();
+    public static final int DEFAULT_SYNCHRONOUS_COMMAND_WINDOW = 4;
     /**
-     * Asynchronous command listeners.
+     * The number of synchronous command slots. Slot is the command ID without the command type bits.
+     */
+    private static final int SYNCHRONOUS_COMMAND_SLOTS = 0x2000;
+    /**
+     * Maximum number of synchronous commands in flight. Only one command per command ID can be in
+     * flight at a time regardless of the window.
+     */
+    private final int synchronousCommandWindow;
+    /**
+     * Pending synchronous commands indexed by command ID slot.
      */
-    private final HashSet<AsynchronousCommandListener> asynchrounsCommandListeners
-            = new HashSet<AsynchronousCommandListener>();
+    private final PendingSynchronousCommand[] synchronousCommandSlots =
+            new PendingSynchronousCommand[SYNCHRONOUS_COMMAND_SLOTS];
     /**
-     * Timeout times for synchronous command listeners.
+     * The slots of the synchronous commands currently in flight.
+     */
+    private final int[] synchronousCommandsInFlight;
+    /**
+     * The number of synchronous commands currently in flight.
+     */
+    private int synchronousCommandsInFlightCount = 0;
+    /**
+     * Asynchronous command listeners.
      */
-    private final HashMap<SynchronousCommandListener, Long> synchronousCommandListenerTimeouts =
-            new HashMap<SynchronousCommandListener, Long>();
+    private final CopyOnWriteArraySet<AsynchronousCommandListener> asynchrounsCommandListeners
+            = new CopyOnWriteArraySet<AsynchronousCommandListener>();
 
     /**
      * Constructor for configuring the ZigBee Network connection parameters.
      * @param port the ZigBee transport implementation.
      */
     public ZigBeeInterface(ZigBeePort port) {
+        this(port, DEFAULT_SYNCHRONOUS_COMMAND_WINDOW);
+    }
+
+    /**
+     * Constructor for configuring the ZigBee Network connection parameters.
+     * @param port the ZigBee transport implementation.
+     * @param synchronousCommandWindow the maximum number of synchronous commands in flight at the same time.
+     */
+    public ZigBeeInterface(ZigBeePort port, int synchronousCommandWindow) {
+        if (synchronousCommandWindow < 1) {
+            throw new IllegalArgumentException("Synchronous command window has to be at least 1: "
+                    + synchronousCommandWindow);
+        }
         this.port = port;
+        this.synchronousCommandWindow = synchronousCommandWindow;
+        this.synchronousCommandsInFlight = new int[synchronousCommandWindow];
     }
 
     /**
@@ -92,6 +124,9 @@ public class ZigBeeInterface implements ZToolPacketHandler {
             return false;
         }
         parser = new ZToolPacketParser(port.getInputStream(), this);
+        if (port.getOutputStream() != null) {
+            writer = new ZToolPacketWriter(port.getOutputStream(), ZToolPacketWriter.DEFAULT_QUEUE_CAPACITY, this);
+        }
         return true;
     }
 
@@ -100,6 +135,9 @@ public class ZigBeeInterface implements ZToolPacketHandler {
      */
     public void close() {
         synchronized (port) {
+            if (writer != null) {
+                writer.close();
+            }
             if (parser != null) {
                 parser.setClosing();
             }
@@ -154,48 +192,114 @@ public class ZigBeeInterface implements ZToolPacketHandler {
     private void sendPacket(final ZToolPacket packet)
             throws IOException {
         LOGGER.debug("-> {} ({}) ", packet.getClass().getSimpleName(), packet.toString());
-        final int[] pck = packet.getPacket();
-        synchronized (port) {
-            final OutputStream out = port.getOutputStream();
-            if (out == null) {
-                // Socket has not been opened or is already closed.
-                return;
-            }
-            for (int i = 0; i < pck.length; i++) {
-                out.write(pck[i]);
-            }
-            out.flush();
+        final ZToolPacketWriter writer = this.writer;
+        if (writer == null) {
+            // Port has not been opened or does not provide output stream.
+            return;
+        }
+        writer.write(packet);
+    }
+
+    /**
+     * Releases the synchronous command slot of the packet which failed to be written and notifies
+     * the listener of the command. Invoked from the writer thread.
+     * @param packet the packet
+     * @param exception the cause
+     */
+    public void packetWriteFailed(final ZToolPacket packet, final IOException exception) {
+        if ((packet.getCMD().getMsb() & 0xE0) != 0x20) {
+            LOGGER.warn("Failed to write {}: {}", packet.getClass().getSimpleName(), exception.getMessage());
+            return;
+        }
+        final int slot = packet.getCMD().get16BitValue() & 0x1FFF;
+        final PendingSynchronousCommand command;
+        synchronized (synchronousCommandSlots) {
+            command = synchronousCommandSlots[slot];
+        }
+        // The slot may have expired and been taken by a later command with the same command ID.
+        if (command != null && command.packet == packet && releaseSynchronousCommandSlot(slot, command)) {
+            command.listener.sendFailed(packet, exception);
         }
     }
 
+    /**
+     * Gets the number of packets waiting to be written to the port.
+     * @return the outbound queue depth
+     */
+    public int getOutboundQueueDepth() {
+        final ZToolPacketWriter writer = this.writer;
+        return writer == null ? 0 : writer.getQueueDepth();
+    }
 
     /**
-     * Cleans expired synchronous command listeners.
+     * Gets the average number of bytes written to the port per flush.
+     * @return the average bytes per flush
      */
-    private void cleanExpiredSynchronousCommandListeners() {
-        final long now = System.currentTimeMillis();
-        final ArrayList<Short> expired = new ArrayList<Short>();
-        synchronized (synchronousCommandListeners) {
-            final Iterator<Map.Entry<Short, SynchronousCommandListener>> i =
-                    synchronousCommandListeners.entrySet().iterator();
-            while (i.hasNext()) {
-                Map.Entry<Short, SynchronousCommandListener> entry = i.next();
+    public double getOutboundBytesPerFlush() {
+        final ZToolPacketWriter writer = this.writer;
+        return writer == null ? 0 : writer.getBytesPerFlush();
+    }
 
-                final long expiration = synchronousCommandListenerTimeouts.get(entry.getValue());
-                if (expiration != -1L && expiration < now) {
-                    expired.add(entry.getKey());
-                }
+
+    /**
+     * Releases expired synchronous command slots. Has to be called while holding the slot table lock.
+     * @param now the current time
+     * @return the earliest expiration time of the remaining commands or -1 if none of them expires
+     */
+    private long releaseExpiredSynchronousCommands(final long now) {
+        long nextExpiration = -1L;
+        int i = 0;
+        while (i < synchronousCommandsInFlightCount) {
+            final int slot = synchronousCommandsInFlight[i];
+            final long expiration = synchronousCommandSlots[slot].expiration;
+            if (expiration != -1L && expiration <= now) {
+                LOGGER.trace("Synchronous command {} expired without response", slot);
+                releaseSynchronousCommandSlot(i);
+                continue;
             }
+            if (expiration != -1L && (nextExpiration == -1L || expiration < nextExpiration)) {
+                nextExpiration = expiration;
+            }
+            i++;
+        }
+        return nextExpiration;
+    }
+
+    /**
+     * Releases synchronous command slot. Has to be called while holding the slot table lock.
+     * @param index the index of the slot in the in flight table
+     */
+    private void releaseSynchronousCommandSlot(final int index) {
+        synchronousCommandSlots[synchronousCommandsInFlight[index]] = null;
+        synchronousCommandsInFlightCount--;
+        synchronousCommandsInFlight[index] = synchronousCommandsInFlight[synchronousCommandsInFlightCount];
+        synchronousCommandSlots.notifyAll();
+    }
 
-            for (Short key : expired) {
-                synchronousCommandListeners.remove(key);
+    /**
+     * Releases synchronous command slot if it is still held by the given command.
+     * @param slot the slot
+     * @param command the command
+     * @return true if slot was released
+     */
+    private boolean releaseSynchronousCommandSlot(final int slot, final PendingSynchronousCommand command) {
+        synchronized (synchronousCommandSlots) {
+            if (synchronousCommandSlots[slot] != command) {
+                return false;
             }
-            synchronousCommandListeners.notifyAll();
+            for (int i = 0; i < synchronousCommandsInFlightCount; i++) {
+                if (synchronousCommandsInFlight[i] == slot) {
+                    releaseSynchronousCommandSlot(i);
+                    return true;
+                }
+            }
+            return false;
         }
     }
 
     /**
-     * Sends synchronous command and adds listener.
+     * Sends synchronous command and adds listener. Blocks until the command ID slot is free and
+     * the synchronous command window allows sending.
      * @param packet the command packet
      * @param listener the synchronous command response listener
      * @param timeout the timeout
@@ -204,13 +308,6 @@ public class ZigBeeInterface implements ZToolPacketHandler {
     public void sendSynchronousCommand(final ZToolPacket packet, final SynchronousCommandListener listener,
                                        final long timeout)
             throws IOException {
-        if (timeout == -1L) {
-            synchronousCommandListenerTimeouts.put(listener, -1L);
-        } else {
-            final long expirationTime = System.currentTimeMillis() + timeout;
-            synchronousCommandListenerTimeouts.put(listener, expirationTime);
-        }
-
         final DoubleByte cmdId = packet.getCMD();
         final int value = (cmdId.getMsb() & 0xE0);
         if (value != 0x20) {
@@ -220,38 +317,49 @@ public class ZigBeeInterface implements ZToolPacketHandler {
             );
         }
 
-        cleanExpiredSynchronousCommandListeners();
-
-        if (supportMultipleSynchrounsCommand) {
-            synchronized (synchronousCommandListeners) {
-                final short id = (short) (cmdId.get16BitValue() & 0x1FFF);
-                while (synchronousCommandListeners.get(cmdId) != null) {
-                    try {
-                        LOGGER.trace("Waiting for other request {} to complete", id);
-                        synchronousCommandListeners.wait(500);
-                        cleanExpiredSynchronousCommandListeners();
-                    } catch (InterruptedException ignored) {
-                    }
+        final int slot = cmdId.get16BitValue() & 0x1FFF;
+        final PendingSynchronousCommand command;
+        synchronized (synchronousCommandSlots) {
+            while (true) {
+                final long now = System.currentTimeMillis();
+                final long nextExpiration = releaseExpiredSynchronousCommands(now);
+                if (synchronousCommandSlots[slot] == null
+                        && synchronousCommandsInFlightCount < synchronousCommandWindow) {
+                    break;
                 }
-                synchronousCommandListeners.put(id, listener);
-            }
-        } else {
-            synchronized (synchronousCommandListeners) {
-                final short id = (short) (cmdId.get16BitValue() & 0x1FFF);
-                while (synchronousCommandListeners.isEmpty() == false) {
-                    try {
-                        LOGGER.debug("Waiting for other request to complete");
-                        synchronousCommandListeners.wait(500);
-                        cleanExpiredSynchronousCommandListeners();
-                    } catch (InterruptedException ignored) {
-                    }
+                try {
+                    LOGGER.trace("Waiting for other request {} to complete", slot);
+                    synchronousCommandSlots.wait(nextExpiration == -1L ? 0L : nextExpiration - now);
+                } catch (InterruptedException ignored) {
                 }
-                LOGGER.trace("Put synchronousCommandListeners listener for {} command", id);
-                synchronousCommandListeners.put(id, listener);
             }
+            command = new PendingSynchronousCommand(packet, listener,
+                    timeout == -1L ? -1L : System.currentTimeMillis() + timeout);
+            LOGGER.trace("Put synchronous command listener for {} command", slot);
+            synchronousCommandSlots[slot] = command;
+            synchronousCommandsInFlight[synchronousCommandsInFlightCount++] = slot;
         }
+
         LOGGER.trace("Sending SynchrounsCommand {} ", packet);
-        sendPacket(packet);
+        boolean sent = false;
+        try {
+            sendPacket(packet);
+            sent = true;
+        } finally {
+            if (!sent) {
+                releaseSynchronousCommandSlot(slot, command);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of synchronous commands waiting for response.
+     * @return the number of synchronous commands in flight
+     */
+    public int getSynchronousCommandsInFlight() {
+        synchronized (synchronousCommandSlots) {
+            return synchronousCommandsInFlightCount;
+        }
     }
 
     /**
@@ -275,18 +383,15 @@ public class ZigBeeInterface implements ZToolPacketHandler {
      * @param packet the received packet
      */
     private void notifySynchronousCommand(final ZToolPacket packet) {
-        final DoubleByte cmdId = packet.getCMD();
-        synchronized (synchronousCommandListeners) {
-            final short id = (short) (cmdId.get16BitValue() & 0x1FFF);
-            final SynchronousCommandListener listener = synchronousCommandListeners.get(id);
-            if (listener != null) {
-                listener.receivedCommandResponse(packet);
-                synchronousCommandListeners.remove(id);
-                synchronousCommandListeners.notifyAll();
-            } else {
-                LOGGER.warn("Received {} synchronous command response but no listeners were registered", id);
-            }
-
+        final int slot = packet.getCMD().get16BitValue() & 0x1FFF;
+        final PendingSynchronousCommand command;
+        synchronized (synchronousCommandSlots) {
+            command = synchronousCommandSlots[slot];
+        }
+        if (command != null && releaseSynchronousCommandSlot(slot, command)) {
+            command.listener.receivedCommandResponse(packet);
+        } else {
+            LOGGER.warn("Received {} synchronous command response but no listeners were registered", slot);
         }
     }
 
@@ -296,11 +401,7 @@ public class ZigBeeInterface implements ZToolPacketHandler {
      * @return true if listener did not already exist.
      */
     public boolean addAsynchronousCommandListener(AsynchronousCommandListener listener) {
-        boolean result = false;
-        synchronized (asynchrounsCommandListeners) {
-            result = asynchrounsCommandListeners.add(listener);
-        }
-        return result;
+        return asynchrounsCommandListeners.add(listener);
     }
 
     /**
@@ -309,11 +410,7 @@ public class ZigBeeInterface implements ZToolPacketHandler {
      * @return true if listener did not already exist.
      */
     public boolean removeAsynchronousCommandListener(AsynchronousCommandListener listener) {
-        boolean result = false;
-        synchronized (asynchrounsCommandListeners) {
-            result = asynchrounsCommandListeners.remove(listener);
-        }
-        return result;
+        return asynchrounsCommandListeners.remove(listener);
     }
 
     /**
@@ -321,13 +418,8 @@ public class ZigBeeInterface implements ZToolPacketHandler {
      * @param packet the packet containing the message
      */
     private void notifyAsynchronousCommand(final ZToolPacket packet) {
-        final AsynchronousCommandListener[] listeners;
-
-        synchronized (asynchrounsCommandListeners) {
-            listeners = asynchrounsCommandListeners.toArray(new AsynchronousCommandListener[]{});
-        }
-
-        for (final AsynchronousCommandListener listener : listeners) {
+        // Iterates the current snapshot of the copy-on-write set without copying or locking.
+        for (final AsynchronousCommandListener listener : asynchrounsCommandListeners) {
             try {
                 listener.receivedAsynchronousCommand(packet);
             } catch (Throwable e) {
@@ -335,4 +427,29 @@ public class ZigBeeInterface implements ZToolPacketHandler {
             }
         }
     }
+
+    /**
+     * Synchronous command waiting for its response in the slot table.
+     */
+    private static class PendingSynchronousCommand {
+        /**
+         * The command packet.
+         */
+        private final ZToolPacket packet;
+        /**
+         * The listener to be notified of the response.
+         */
+        private final SynchronousCommandListener listener;
+        /**
+         * The expiration time or -1 if the command does not expire.
+         */
+        private final long expiration;
+
+        private PendingSynchronousCommand(final ZToolPacket packet, final SynchronousCommandListener listener,
+                                          final long expiration) {
+            this.packet = packet;
+            this.listener = listener;
+            this.expiration = expiration;
+        }
+    }
 }
@@ -30,6 +30,7 @@ import org.bubblecloud.zigbee.network.packet.system.SYS_RESET_RESPONSE;
 import org.bubblecloud.zigbee.network.packet.util.UTIL_GET_DEVICE_INFO;
 import org.bubblecloud.zigbee.network.packet.util.UTIL_GET_DEVICE_INFO_RESPONSE;
 import org.bubblecloud.zigbee.network.packet.zdo.*;
+import org.bubblecloud.zigbee.util.DaemonThreadFactory;
 import org.bubblecloud.zigbee.util.DoubleByte;
 import org.bubblecloud.zigbee.util.Integers;
 import org.bubblecloud.zigbee.network.model.*;
@@ -37,10 +38,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The zigbee network manager port implementation.
@@ -75,12 +84,16 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
     public static final boolean RESEND_ONLY_EXCEPTION_DEFAULT = true;
     public static final String RESEND_ONLY_EXCEPTION_KEY = "zigbee.driver.cc2530.resend.exceptionally";
 
+    public static final int SYNCHRONOUS_COMMAND_WINDOW_DEFAULT = ZigBeeInterface.DEFAULT_SYNCHRONOUS_COMMAND_WINDOW;
+    public static final String SYNCHRONOUS_COMMAND_WINDOW_KEY = "zigbee.driver.cc2530.sreq.window";
+
     private final int TIMEOUT;
     private final int RESET_TIMEOUT;
     private final int STARTUP_TIMEOUT;
     private final int RESEND_TIMEOUT;
     private final int RESEND_MAX_RETRY;
     private final boolean RESEND_ONLY_EXCEPTION;
+    private final int SYNCHRONOUS_COMMAND_WINDOW;
 
     private ZigBeeInterface zigbeeInterface;
     private ZigBeePort port;
@@ -92,11 +105,38 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
     private final HashSet<AnnounceListener> announceListeners = new HashSet<AnnounceListener>();
     private final AnnounceListenerFilter announceListenerFilter = new AnnounceListenerFilter(announceListeners);
 
-    private final ArrayList<ApplicationFrameworkMessageListener> messageListeners = new ArrayList<ApplicationFrameworkMessageListener>();
+    private final CopyOnWriteArrayList<ApplicationFrameworkMessageListener> messageListeners = new CopyOnWriteArrayList<ApplicationFrameworkMessageListener>();
+    /**
+     * The AF message listeners indexed by the source network address and endpoint of the messages.
+     */
+    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<ApplicationFrameworkMessageListener>> endpointMessageListeners =
+            new ConcurrentHashMap<Integer, CopyOnWriteArrayList<ApplicationFrameworkMessageListener>>();
     private final AFMessageListenerFilter afMessageListenerFilter = new AFMessageListenerFilter(messageListeners);
 
     private long ieeeAddress = -1;
-    private final HashMap<Class<?>, Thread> conversation3Way = new HashMap<Class<?>, Thread>();
+    /**
+     * Remote request conversations queued per conversation key. The head of each queue is in flight.
+     * The key is the response command ID and destination network address for ZDO requests and
+     * the source endpoint and transaction ID for AF_DATA_REQUEST.
+     */
+    private final HashMap<Object, LinkedList<PendingRequest<?>>> conversations =
+            new HashMap<Object, LinkedList<PendingRequest<?>>>();
+    /**
+     * Correlates AF_DATA_CONFIRM messages with AF_DATA_REQUEST conversations.
+     */
+    private final DataConfirmListener dataConfirmListener = new DataConfirmListener();
+    /**
+     * Response ID of requests which are completed by their synchronous response.
+     */
+    private static final int LOCAL_RESPONSE = -1;
+    /**
+     * The shared timer driving the timeouts of the asynchronous requests.
+     */
+    private volatile ScheduledExecutorService requestTimer;
+    /**
+     * The dispatcher sending the asynchronous requests to the dongle.
+     */
+    private volatile ExecutorService requestDispatcher;
 
     public ZigBeeNetworkManagerImpl(ZigBeePort port, NetworkMode mode, int pan, int channel, long timeout) {
 
@@ -146,13 +186,22 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
         RESEND_MAX_RETRY = aux;
 
         boolean b = RESEND_ONLY_EXCEPTION_DEFAULT;
+        if (System.getProperty(RESEND_ONLY_EXCEPTION_KEY) != null) {
+            b = Boolean.parseBoolean(System.getProperty(RESEND_ONLY_EXCEPTION_KEY));
+            logger.trace("Using RESEND_ONLY_EXCEPTION set from enviroment {}", b);
+        } else {
+            logger.trace("Using RESEND_ONLY_EXCEPTION set as DEFAULT {}", b);
+        }
+        RESEND_ONLY_EXCEPTION = b;
+
+        aux = SYNCHRONOUS_COMMAND_WINDOW_DEFAULT;
         try {
-            aux = Integer.parseInt(System.getProperty(RESEND_ONLY_EXCEPTION_KEY));
-            logger.trace("Using RESEND_MAX_RETRY set from enviroment {}", aux);
+            aux = Integer.parseInt(System.getProperty(SYNCHRONOUS_COMMAND_WINDOW_KEY));
+            logger.trace("Using SYNCHRONOUS_COMMAND_WINDOW set from enviroment {}", aux);
         } catch (NumberFormatException ex) {
-            logger.trace("Using RESEND_MAX_RETRY set as DEFAULT {}", aux);
+            logger.trace("Using SYNCHRONOUS_COMMAND_WINDOW set as DEFAULT {}", aux);
         }
-        RESEND_ONLY_EXCEPTION = b;
+        SYNCHRONOUS_COMMAND_WINDOW = Math.max(1, aux);
         state = DriverStatus.CLOSED;
         setPort(port);
         setZigBeeNetwork((byte) channel, (short) pan);
@@ -199,6 +248,11 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
         if (state == DriverStatus.HARDWARE_OPEN || state == DriverStatus.HARDWARE_READY || 
         		state == DriverStatus.NETWORK_INITIALIZING) {
             logger.trace("Closing HARDWARE");
+            // Pending request timeouts are still executed after shutdown so that the waiters are released.
+            if (requestDispatcher != null) {
+                requestDispatcher.shutdown();
+                requestTimer.shutdown();
+            }
             zigbeeInterface.close();
             setState(DriverStatus.CREATED);
         }
@@ -206,7 +260,9 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
     }
 
     private boolean initializeHardware() {
-        zigbeeInterface = new ZigBeeInterface(port);
+        zigbeeInterface = new ZigBeeInterface(port, SYNCHRONOUS_COMMAND_WINDOW);
+        requestTimer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ZigBeeRequestTimer"));
+        requestDispatcher = Executors.newSingleThreadExecutor(new DaemonThreadFactory("ZigBeeRequestDispatcher"));
         if (!zigbeeInterface.open()) {
             logger.error("Failed to initialize the dongle on port {}.", port);
             return false;
@@ -488,6 +544,7 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
     }
 
     private void postHardwareEnabled() {
+        zigbeeInterface.addAsynchronousCommandListener(dataConfirmListener);
         if (!messageListeners.contains(afMessageListenerFilter)) {
             zigbeeInterface.addAsynchronousCommandListener(afMessageListenerFilter);
         }
@@ -572,148 +629,83 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
         if (waitForNetwork() == false) {
         	return null;
         }
-        RESPONSE result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_MGMT_PERMIT_JOIN_RSP, zigbeeInterface);
-
-        logger.trace("Sending {}", request);
-        ZToolPacket response = sendSynchrouns(zigbeeInterface, request);
-        if (response == null) {
-            logger.error("{} timed out waiting for synchronous local response.", request.getClass().getSimpleName());
-            waiter.cleanup();
-            return null;
-        } else {
+        final CommandFuture<RESPONSE> future = sendRemoteRequestAsync(request, ZToolCMD.ZDO_MGMT_PERMIT_JOIN_RSP, true);
+        final RESPONSE result = future.join();
+        if (result == null) {
             logger.error("{} timed out waiting for asynchronous remote response.", request.getClass().getSimpleName());
-            result = (RESPONSE) waiter.getCommand(TIMEOUT);
-            unLock3WayConversation(request);
-            return result;
         }
+        return result;
     }
 
     public ZDO_MGMT_LQI_RSP sendLQIRequest(ZDO_MGMT_LQI_REQ request) {
-
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_MGMT_LQI_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_MGMT_LQI_RSP, zigbeeInterface);
+        return sendLQIRequestAsync(request).join();
+    }
 
+    public CommandFuture<ZDO_MGMT_LQI_RSP> sendLQIRequestAsync(ZDO_MGMT_LQI_REQ request) {
         logger.trace("Sending ZDO_MGMT_LQI_REQ {}", request);
-        ZDO_MGMT_LQI_REQ_SRSP response = (ZDO_MGMT_LQI_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            logger.trace("ZDO_MGMT_LQI_REQ failed, received {}", response);
-            waiter.cleanup();
-        } else {
-            result = (ZDO_MGMT_LQI_RSP) waiter.getCommand(TIMEOUT);
-        }
-        unLock3WayConversation(request);
-        return result;
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_MGMT_LQI_RSP, true);
     }
 
     public ZDO_IEEE_ADDR_RSP sendZDOIEEEAddressRequest(ZDO_IEEE_ADDR_REQ request) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_IEEE_ADDR_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_IEEE_ADDR_RSP, zigbeeInterface);
+        return sendZDOIEEEAddressRequestAsync(request).join();
+    }
 
+    public CommandFuture<ZDO_IEEE_ADDR_RSP> sendZDOIEEEAddressRequestAsync(ZDO_IEEE_ADDR_REQ request) {
         logger.trace("Sending ZDO_IEEE_ADDR_REQ {}", request);
-        ZDO_IEEE_ADDR_REQ_SRSP response = (ZDO_IEEE_ADDR_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            logger.warn("ZDO_IEEE_ADDR_REQ failed, received {}", response);
-            waiter.cleanup();
-        } else {
-            result = (ZDO_IEEE_ADDR_RSP) waiter.getCommand(TIMEOUT);
-        }
-        unLock3WayConversation(request);
-        return result;
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_IEEE_ADDR_RSP, true);
     }
 
     public ZDO_NODE_DESC_RSP sendZDONodeDescriptionRequest(ZDO_NODE_DESC_REQ request) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_NODE_DESC_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_NODE_DESC_RSP, zigbeeInterface);
-
-        ZDO_NODE_DESC_REQ_SRSP response = (ZDO_NODE_DESC_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            waiter.cleanup();
-        } else {
-            result = (ZDO_NODE_DESC_RSP) waiter.getCommand(TIMEOUT);
-        }
+        return sendZDONodeDescriptionRequestAsync(request).join();
+    }
 
-        unLock3WayConversation(request);
-        return result;
+    public CommandFuture<ZDO_NODE_DESC_RSP> sendZDONodeDescriptionRequestAsync(ZDO_NODE_DESC_REQ request) {
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_NODE_DESC_RSP, true);
     }
 
     public ZDO_POWER_DESC_RSP sendZDOPowerDescriptionRequest(ZDO_POWER_DESC_REQ request) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_POWER_DESC_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_POWER_DESC_RSP, zigbeeInterface);
-
-        ZDO_POWER_DESC_REQ_SRSP response = (ZDO_POWER_DESC_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            waiter.cleanup();
-        } else {
-            result = (ZDO_POWER_DESC_RSP) waiter.getCommand(TIMEOUT);
-        }
+        return sendZDOPowerDescriptionRequestAsync(request).join();
+    }
 
-        unLock3WayConversation(request);
-        return result;
+    public CommandFuture<ZDO_POWER_DESC_RSP> sendZDOPowerDescriptionRequestAsync(ZDO_POWER_DESC_REQ request) {
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_POWER_DESC_RSP, true);
     }
 
     public ZDO_ACTIVE_EP_RSP sendZDOActiveEndPointRequest(ZDO_ACTIVE_EP_REQ request) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_ACTIVE_EP_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_ACTIVE_EP_RSP, zigbeeInterface);
+        return sendZDOActiveEndPointRequestAsync(request).join();
+    }
 
+    public CommandFuture<ZDO_ACTIVE_EP_RSP> sendZDOActiveEndPointRequestAsync(ZDO_ACTIVE_EP_REQ request) {
         logger.trace("Sending ZDO_ACTIVE_EP_REQ {}", request);
-        ZDO_ACTIVE_EP_REQ_SRSP response = (ZDO_ACTIVE_EP_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            logger.trace("ZDO_ACTIVE_EP_REQ failed, received {}", response);
-            waiter.cleanup();
-        } else {
-            result = (ZDO_ACTIVE_EP_RSP) waiter.getCommand(TIMEOUT);
-        }
-        unLock3WayConversation(request);
-        return result;
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_ACTIVE_EP_RSP, true);
     }
 
     public ZDO_MGMT_PERMIT_JOIN_RSP sendPermitJoinRequest(ZDO_MGMT_PERMIT_JOIN_REQ request, boolean waitForCommand) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_MGMT_PERMIT_JOIN_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_MGMT_PERMIT_JOIN_RSP, zigbeeInterface);
+        return sendPermitJoinRequestAsync(request, waitForCommand).join();
+    }
 
+    public CommandFuture<ZDO_MGMT_PERMIT_JOIN_RSP> sendPermitJoinRequestAsync(ZDO_MGMT_PERMIT_JOIN_REQ request,
+                                                                            boolean waitForCommand) {
         logger.trace("Sending ZDO_MGMT_PERMIT_JOIN_REQ {}", request);
-        ZDO_MGMT_PERMIT_JOIN_REQ_SRSP response = (ZDO_MGMT_PERMIT_JOIN_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            logger.trace("ZDO_MGMT_PERMIT_JOIN_REQ failed, received {}", response);
-            waiter.cleanup();
-        } else if (waitForCommand == true) {
-            result = (ZDO_MGMT_PERMIT_JOIN_RSP) waiter.getCommand(TIMEOUT);
-        }
-        unLock3WayConversation(request);
-        return result;
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_MGMT_PERMIT_JOIN_RSP, waitForCommand);
     }
 
     public boolean sendZDOLeaveRequest(ZToolAddress16[] addresses) {
@@ -777,76 +769,397 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
     }
 
 
+    public ZDO_SIMPLE_DESC_RSP sendZDOSimpleDescriptionRequest(ZDO_SIMPLE_DESC_REQ request) {
+        if (waitForNetwork() == false) {
+        	return null;
+        }
+        return sendZDOSimpleDescriptionRequestAsync(request).join();
+    }
+
+    public CommandFuture<ZDO_SIMPLE_DESC_RSP> sendZDOSimpleDescriptionRequestAsync(ZDO_SIMPLE_DESC_REQ request) {
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_SIMPLE_DESC_RSP, true);
+    }
+
     /**
-     * @param request
+     * Sends local request which is completed by its synchronous response.
+     * @param request the request
+     * @return the future completed with the synchronous response or null on timeout
      */
-    private void waitAndLock3WayConversation(ZToolPacket request) {
-        synchronized (conversation3Way) {
-            Class<?> clz = request.getClass();
-            Thread requestor = null;
-            while ((requestor = conversation3Way.get(clz)) != null) {
-                if (requestor.isAlive() == false) {
-                    logger.error("Thread {} whom requested {} DIED before unlocking the conversation");
-                    logger.debug("The thread {} who was waiting for {} to complete DIED, so we have to remove the lock");
-                    conversation3Way.put(clz, null);
-                    break;
-                }
-                logger.trace(
-                        "{} is waiting for {} to complete which was issued by {} to complete",
-                        new Object[]{Thread.currentThread(), clz, requestor}
-                );
-                try {
-                    conversation3Way.wait();
-                } catch (InterruptedException ex) {
-                    //ex.printStackTrace();
-                } catch (IllegalMonitorStateException ex) {
-                    ex.printStackTrace();
-                }
+    private <RESPONSE extends ZToolPacket> CommandFuture<RESPONSE> sendLocalRequestAsync(final ZToolPacket request) {
+        final PendingRequest<RESPONSE> pending = new PendingRequest<RESPONSE>(request, null, LOCAL_RESPONSE, false);
+        if (!isNetworkReady()) {
+            pending.complete(null);
+        } else {
+            pending.start();
+        }
+        return pending.future;
+    }
+
+    /**
+     * Sends remote request which is completed by an asynchronous response. Requests with the same
+     * response type to the same destination are queued so that only one of them is waiting for
+     * the asynchronous response at a time, requests to different destinations are in flight in parallel.
+     * @param request the request
+     * @param responseId the command ID of the asynchronous response
+     * @param waitForResponse false if request should be completed on successful synchronous response
+     * @return the future completed with the asynchronous response or null on error or timeout
+     */
+    private <RESPONSE extends ZToolPacket> CommandFuture<RESPONSE> sendRemoteRequestAsync(
+            final ZToolPacket request, final int responseId, final boolean waitForResponse) {
+        final int destination = getRemoteDestination(request);
+        return sendConversationRequestAsync(new PendingRequest<RESPONSE>(
+                request, Long.valueOf((long) responseId << 16 | destination), responseId, waitForResponse,
+                destination));
+    }
+
+    /**
+     * Gets the destination network address of a ZDO request. The destination is the first field of
+     * the ZDO requests, only ZDO_MGMT_PERMIT_JOIN_REQ is preceded by the address mode.
+     * @param request the ZDO request
+     * @return the destination network address
+     */
+    private static int getRemoteDestination(final ZToolPacket request) {
+        final int[] packet = request.getPacket();
+        final int index = ZToolPacket.PAYLOAD_START_INDEX
+                + (request.getCMD().get16BitValue() == ZToolCMD.ZDO_MGMT_PERMIT_JOIN_REQ ? 1 : 0);
+        return (packet[index] & 0xFF) | (packet[index + 1] & 0xFF) << 8;
+    }
+
+    /**
+     * Gets the source network address of a ZDO response. The source is the first field of the ZDO
+     * responses, ZDO_IEEE_ADDR_RSP carries the network address of the responding node after its
+     * status and IEEE address instead.
+     * @param response the ZDO response
+     * @return the source network address
+     */
+    private static int getRemoteSource(final ZToolPacket response) {
+        final int[] packet = response.getPacket();
+        final int index = ZToolPacket.PAYLOAD_START_INDEX
+                + (response.getCMD().get16BitValue() == ZToolCMD.ZDO_IEEE_ADDR_RSP ? 9 : 0);
+        return (packet[index] & 0xFF) | (packet[index + 1] & 0xFF) << 8;
+    }
+
+    /**
+     * Starts the conversation of the request or queues it if other conversation with the same key is in flight.
+     * @param pending the request
+     * @return the future completed with the asynchronous response or null on error or timeout
+     */
+    private <RESPONSE extends ZToolPacket> CommandFuture<RESPONSE> sendConversationRequestAsync(
+            final PendingRequest<RESPONSE> pending) {
+        if (!isNetworkReady()) {
+            pending.complete(null);
+            return pending.future;
+        }
+        final boolean idle;
+        synchronized (conversations) {
+            LinkedList<PendingRequest<?>> queue = conversations.get(pending.conversation);
+            if (queue == null) {
+                queue = new LinkedList<PendingRequest<?>>();
+                conversations.put(pending.conversation, queue);
             }
-            conversation3Way.put(clz, Thread.currentThread());
+            queue.add(pending);
+            idle = queue.size() == 1;
+        }
+        if (idle) {
+            pending.start();
+        } else {
+            logger.trace("{} queued after other conversation {}.", pending.request.getClass().getSimpleName(),
+                    pending.conversation);
         }
+        return pending.future;
     }
 
     /**
-     * Release the lock held for the 3-way communication
-     *
-     * @param request
+     * Gets the request in flight for the conversation.
+     * @param conversation the conversation key
+     * @return the request or null if no request is in flight
      */
-    private void unLock3WayConversation(ZToolPacket request) {
-        Class<?> clz = request.getClass();
-        Thread requestor = null;
-        synchronized (conversation3Way) {
-            requestor = conversation3Way.get(clz);
-            conversation3Way.put(clz, null);
-            conversation3Way.notify();
-        }
-        if (requestor == null) {
-            logger.error("LOCKING BROKEN - SOMEONE RELEASE THE LOCK WITHOUT LOCKING IN ADVANCE for {}", clz);
-        } else if (requestor != Thread.currentThread()) {
-            logger.error(
-                    "Thread {} stolen the answer of {} waited by {}",
-                    new Object[]{Thread.currentThread(), clz, requestor}
-            );
+    private PendingRequest<?> getConversationRequest(final Object conversation) {
+        synchronized (conversations) {
+            final LinkedList<PendingRequest<?>> queue = conversations.get(conversation);
+            return queue == null ? null : queue.peek();
         }
     }
 
-    public ZDO_SIMPLE_DESC_RSP sendZDOSimpleDescriptionRequest(ZDO_SIMPLE_DESC_REQ request) {
-        if (waitForNetwork() == false) {
-        	return null;
+    /**
+     * Ends the conversation of completed remote request and starts the next queued request of the same type.
+     * @param pending the completed request
+     */
+    private void finishConversation(final PendingRequest<?> pending) {
+        PendingRequest<?> next = null;
+        synchronized (conversations) {
+            final LinkedList<PendingRequest<?>> queue = conversations.get(pending.conversation);
+            if (queue == null) {
+                return;
+            }
+            final boolean active = queue.peek() == pending;
+            queue.remove(pending);
+            if (queue.isEmpty()) {
+                conversations.remove(pending.conversation);
+            } else if (active) {
+                next = queue.peek();
+            }
+        }
+        if (next != null) {
+            next.start();
+        }
+    }
+
+    /**
+     * Request waiting for its synchronous and optionally asynchronous response. The request is
+     * completed from the packet parser thread or by the shared request timer on timeout. Request
+     * which fails to be sent is resent up to RESEND_MAX_RETRY times, request which is not
+     * acknowledged with synchronous response in RESEND_TIMEOUT is resent as well unless
+     * RESEND_ONLY_EXCEPTION is set.
+     */
+    private class PendingRequest<RESPONSE extends ZToolPacket>
+            implements SynchronousCommandListener, AsynchronousCommandListener, Runnable {
+
+        final ZToolPacket request;
+        final Object conversation;
+        final int responseId;
+        final boolean waitForResponse;
+        /**
+         * The network address the asynchronous response is expected from or -1 if any source is accepted.
+         */
+        final int destination;
+        final CommandFuture<RESPONSE> future = new CommandFuture<RESPONSE>();
+        private ScheduledFuture<?> timeoutTask = null;
+        private boolean completed = false;
+        private boolean acknowledged = false;
+        private int attempts = 0;
+
+        /**
+         * @param request the request
+         * @param conversation the conversation key or null if request is completed by its synchronous response
+         * @param responseId the command ID of the asynchronous response
+         * @param waitForResponse false if request should be completed on successful synchronous response
+         */
+        PendingRequest(final ZToolPacket request, final Object conversation, final int responseId,
+                       final boolean waitForResponse) {
+            this(request, conversation, responseId, waitForResponse, -1);
         }
-        ZDO_SIMPLE_DESC_RSP result = null;
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_SIMPLE_DESC_RSP, zigbeeInterface);
 
-        ZDO_SIMPLE_DESC_REQ_SRSP response = (ZDO_SIMPLE_DESC_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            waiter.cleanup();
-        } else {
-            result = (ZDO_SIMPLE_DESC_RSP) waiter.getCommand(TIMEOUT);
+        /**
+         * @param request the request
+         * @param conversation the conversation key or null if request is completed by its synchronous response
+         * @param responseId the command ID of the asynchronous response
+         * @param waitForResponse false if request should be completed on successful synchronous response
+         * @param destination the network address of the destination or -1 if any response source is accepted
+         */
+        PendingRequest(final ZToolPacket request, final Object conversation, final int responseId,
+                       final boolean waitForResponse, final int destination) {
+            this.request = request;
+            this.conversation = conversation;
+            this.responseId = responseId;
+            this.waitForResponse = waitForResponse;
+            // Responses to broadcasts come from any node.
+            this.destination = destination >= 0xFFF8 ? -1 : destination;
+        }
+
+        void start() {
+            final ZigBeeInterface driver = zigbeeInterface;
+            if (driver == null) {
+                complete(null);
+                return;
+            }
+            if (isListening()) {
+                driver.addAsynchronousCommandListener(this);
+            }
+            send();
         }
 
-        unLock3WayConversation(request);
-        return result;
+        /**
+         * Sends the request from the dispatcher thread and starts waiting for the synchronous response.
+         */
+        private void send() {
+            final ZigBeeInterface driver = zigbeeInterface;
+            final ScheduledExecutorService timer = requestTimer;
+            final ExecutorService dispatcher = requestDispatcher;
+            if (driver == null || timer == null || dispatcher == null) {
+                complete(null);
+                return;
+            }
+            final int attempt;
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                attempt = ++attempts;
+                acknowledged = false;
+            }
+            try {
+                dispatcher.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            driver.sendSynchronousCommand(request, PendingRequest.this, RESEND_TIMEOUT);
+                            logger.trace("{} sent (synchronous command, retry: {}).",
+                                    request.getClass().getSimpleName(), attempts);
+                        } catch (Exception e) {
+                            logger.info("Failed to send {} during the {}-th tentative",
+                                    request.getClass().getName(), attempts);
+                            logger.trace("Sending operation failed due to ", e);
+                            retry(true);
+                            return;
+                        }
+                        schedule(RESEND_TIMEOUT, attempt);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.debug("{} rejected as network manager is shutting down.", request.getClass().getSimpleName());
+                complete(null);
+            }
+        }
+
+        /**
+         * Resends the request or completes it with null if resending is not allowed or all retries are used.
+         * @param exception true if sending failed with exception, false if synchronous response timed out
+         */
+        private void retry(final boolean exception) {
+            final boolean resend;
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                resend = attempts < RESEND_MAX_RETRY && (exception || !RESEND_ONLY_EXCEPTION);
+            }
+            if (resend) {
+                send();
+            } else {
+                complete(null);
+            }
+        }
+
+        /**
+         * Replaces the timeout of the request.
+         * @param timeout the timeout in milliseconds
+         */
+        private void schedule(final long timeout) {
+            schedule(timeout, -1);
+        }
+
+        /**
+         * Replaces the timeout of the request unless the attempt has already been acknowledged or resent.
+         * The synchronous response may be received before the dispatcher has armed the timeout of the
+         * attempt, in which case the response timeout must not be replaced.
+         * @param timeout the timeout in milliseconds
+         * @param attempt the attempt the timeout is armed for or -1 to replace the timeout unconditionally
+         */
+        private void schedule(final long timeout, final int attempt) {
+            final ScheduledExecutorService timer = requestTimer;
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                if (attempt != -1 && (acknowledged || attempt != attempts)) {
+                    return;
+                }
+                if (timeoutTask != null) {
+                    timeoutTask.cancel(false);
+                }
+                try {
+                    timeoutTask = timer == null ? null : timer.schedule(this, timeout, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    timeoutTask = null;
+                }
+                if (timeoutTask != null) {
+                    return;
+                }
+            }
+            complete(null);
+        }
+
+        public void sendFailed(final ZToolPacket packet, final IOException exception) {
+            logger.info("Failed to write {} during the {}-th tentative", request.getClass().getName(), attempts);
+            logger.trace("Writing failed due to ", exception);
+            retry(true);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void receivedCommandResponse(ZToolPacket packet) {
+            logger.trace(" {} received as synchronous command.", packet.getClass().getSimpleName());
+            synchronized (this) {
+                acknowledged = true;
+            }
+            if (responseId == LOCAL_RESPONSE) {
+                complete((RESPONSE) packet);
+            } else if (packet.getPacket()[ZToolPacket.PAYLOAD_START_INDEX] != 0) {
+                logger.trace("{} failed, received {}", request.getClass().getSimpleName(), packet);
+                complete(null);
+            } else if (!waitForResponse) {
+                complete(null);
+            } else {
+                schedule(TIMEOUT);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public void receivedAsynchronousCommand(ZToolPacket packet) {
+            if (packet.isError()) {
+                return;
+            }
+            if (packet.getCMD().get16BitValue() != responseId) {
+                return;
+            }
+            if (destination != -1 && getRemoteSource(packet) != destination) {
+                logger4Waiter.trace("Received {} from #{} while waiting for response from #{}",
+                        new Object[]{packet.getClass().getSimpleName(), getRemoteSource(packet), destination});
+                return;
+            }
+            logger4Waiter.trace("Received expected response: {}", packet.getClass().getSimpleName());
+            complete((RESPONSE) packet);
+        }
+
+        /**
+         * Invoked by the request timer on timeout.
+         */
+        public void run() {
+            final boolean waitingSynchronousResponse;
+            synchronized (this) {
+                waitingSynchronousResponse = !acknowledged;
+            }
+            if (waitingSynchronousResponse) {
+                logger.warn("{} executed and timed out while waiting for response.",
+                        request.getClass().getSimpleName());
+                retry(false);
+                return;
+            }
+            logger4Waiter.trace("Timeout expired and no response received for {}", request.getClass().getSimpleName());
+            complete(null);
+        }
+
+        void complete(final RESPONSE response) {
+            final ScheduledFuture<?> task;
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                task = timeoutTask;
+            }
+            if (task != null) {
+                task.cancel(false);
+            }
+            if (isListening()) {
+                final ZigBeeInterface driver = zigbeeInterface;
+                if (driver != null) {
+                    driver.removeAsynchronousCommandListener(this);
+                }
+            }
+            if (conversation != null) {
+                finishConversation(this);
+            }
+            future.set(response);
+        }
+
+        /**
+         * Checks whether this request listens for its asynchronous response by itself. Correlated
+         * AF_DATA_REQUEST conversations are completed by the {@link DataConfirmListener} instead.
+         * @return true if request registers as asynchronous command listener
+         */
+        private boolean isListening() {
+            return responseId != LOCAL_RESPONSE && responseId != ZToolCMD.AF_DATA_CONFIRM;
+        }
     }
 
     private class WaitForCommand implements AsynchronousCommandListener {
@@ -1038,6 +1351,7 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
 
     private ZToolPacket sendSynchrouns(final ZigBeeInterface hwDriver, final ZToolPacket request, int timeout) {
         final ZToolPacket[] response = new ZToolPacket[]{null};
+        final boolean[] failed = new boolean[]{false};
 //        final int RESEND_MAX_RETRY = 3;
         int sending = 1;
 
@@ -1053,10 +1367,21 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
                     response.notify();
                 }
             }
+
+            public void sendFailed(ZToolPacket packet, IOException exception) {
+                logger.trace("Writing {} failed due to ", packet.getClass().getSimpleName(), exception);
+                synchronized (response) {
+                    failed[0] = true;
+                    response.notify();
+                }
+            }
         };
 
         while (sending <= RESEND_MAX_RETRY) {
             try {
+                synchronized (response) {
+                    failed[0] = false;
+                }
                 try {
                     hwDriver.sendSynchronousCommand(request, listener, timeout);
                 } catch (Exception ex) {
@@ -1065,7 +1390,7 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
                 logger.trace("{} sent (synchronous command, retry: {}).", request.getClass().getSimpleName(), sending);
                 synchronized (response) {
                     long wakeUpTime = System.currentTimeMillis() + timeout;
-                    while (response[0] == null && wakeUpTime > System.currentTimeMillis()) {
+                    while (response[0] == null && !failed[0] && wakeUpTime > System.currentTimeMillis()) {
                         final long sleeping = wakeUpTime - System.currentTimeMillis();
                         logger.trace("Waiting for synchronous command up to {}ms till {} Unixtime", sleeping, wakeUpTime);
                         if (sleeping <= 0) {
@@ -1081,6 +1406,11 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
                     logger.trace("{} -> {}",
                             request.getClass().getSimpleName(), response[0].getClass().getSimpleName());
                     break; // Break out as we have response.
+                } else if (failed[0]) {
+                    // Writing failed, resend as if sending had thrown exception.
+                    logger.info("Failed to send {} during the {}-th tentative", request.getClass().getName(), sending);
+                    sending++;
+                    continue;
                 } else {
                     logger.warn("{} executed and timed out while waiting for response.",
                             request.getClass().getSimpleName());
@@ -1120,68 +1450,69 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
         if (waitForNetwork() == false) {
         	return null;
         }
+        return sendAFRegisterAsync(request).join();
+    }
 
-        AF_REGISTER_SRSP response = (AF_REGISTER_SRSP) sendSynchrouns(zigbeeInterface, request);
-        return response;
+    public CommandFuture<AF_REGISTER_SRSP> sendAFRegisterAsync(AF_REGISTER request) {
+        return sendLocalRequestAsync(request);
     }
 
     public AF_DATA_CONFIRM sendAFDataRequest(AF_DATA_REQUEST request) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        AF_DATA_CONFIRM result = null;
+        return sendAFDataRequestAsync(request).join();
+    }
 
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.AF_DATA_CONFIRM, zigbeeInterface);
+    public CommandFuture<AF_DATA_CONFIRM> sendAFDataRequestAsync(AF_DATA_REQUEST request) {
+        final Integer conversation = getDataConfirmKey(request.getSrcEndpoint(), request.getTransId());
+        return sendConversationRequestAsync(new PendingRequest<AF_DATA_CONFIRM>(
+                request, conversation, ZToolCMD.AF_DATA_CONFIRM, true));
+    }
 
-        AF_DATA_SRSP response = (AF_DATA_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            waiter.cleanup();
-        } else {
-            result = (AF_DATA_CONFIRM) waiter.getCommand(TIMEOUT);
+    public AF_DATA_CONFIRM sendAFDataRequestExt(AF_DATA_REQUEST_EXT request) {
+        if (waitForNetwork() == false) {
+        	return null;
         }
-        unLock3WayConversation(request);
+        return sendAFDataRequestExtAsync(request).join();
+    }
 
-        return result;
+    public CommandFuture<AF_DATA_CONFIRM> sendAFDataRequestExtAsync(AF_DATA_REQUEST_EXT request) {
+        final Integer conversation = getDataConfirmKey(request.getSrcEndpoint(), request.getTransId());
+        return sendConversationRequestAsync(new PendingRequest<AF_DATA_CONFIRM>(
+                request, conversation, ZToolCMD.AF_DATA_CONFIRM, true));
+    }
+
+    /**
+     * Gets the key correlating AF_DATA_CONFIRM with its AF_DATA_REQUEST.
+     * @param endpoint the source endpoint
+     * @param transId the transaction ID
+     * @return the correlation key
+     */
+    private static Integer getDataConfirmKey(final int endpoint, final int transId) {
+        return Integer.valueOf(((endpoint & 0xFF) << 8) | (transId & 0xFF));
     }
 
     public ZDO_BIND_RSP sendZDOBind(ZDO_BIND_REQ request) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_BIND_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_BIND_RSP, zigbeeInterface);
+        return sendZDOBindAsync(request).join();
+    }
 
-        ZDO_BIND_REQ_SRSP response = (ZDO_BIND_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            waiter.cleanup();
-        } else {
-            result = (ZDO_BIND_RSP) waiter.getCommand(TIMEOUT);
-        }
-        unLock3WayConversation(request);
-        return result;
+    public CommandFuture<ZDO_BIND_RSP> sendZDOBindAsync(ZDO_BIND_REQ request) {
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_BIND_RSP, true);
     }
 
     public ZDO_UNBIND_RSP sendZDOUnbind(ZDO_UNBIND_REQ request) {
         if (waitForNetwork() == false) {
         	return null;
         }
-        ZDO_UNBIND_RSP result = null;
-
-        waitAndLock3WayConversation(request);
-        final WaitForCommand waiter = new WaitForCommand(ZToolCMD.ZDO_UNBIND_RSP, zigbeeInterface);
-
-        ZDO_UNBIND_REQ_SRSP response = (ZDO_UNBIND_REQ_SRSP) sendSynchrouns(zigbeeInterface, request);
-        if (response == null || response.Status != 0) {
-            waiter.cleanup();
-        } else {
-            result = (ZDO_UNBIND_RSP) waiter.getCommand(TIMEOUT);
-        }
+        return sendZDOUnbindAsync(request).join();
+    }
 
-        unLock3WayConversation(request);
-        return result;
+    public CommandFuture<ZDO_UNBIND_RSP> sendZDOUnbindAsync(ZDO_UNBIND_REQ request) {
+        return sendRemoteRequestAsync(request, ZToolCMD.ZDO_UNBIND_RSP, true);
     }
 
     /**
@@ -1190,17 +1521,10 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
      * @return true if the listener was added
      */
     public boolean removeAFMessageListener(ApplicationFrameworkMessageListener listner) {
-        boolean result = false;
-        synchronized (messageListeners) {
+        final boolean result;
+        synchronized (endpointMessageListeners) {
             result = messageListeners.remove(listner);
-        }
-
-        if (messageListeners.isEmpty() && isHardwareReady()) {
-            if (zigbeeInterface.removeAsynchronousCommandListener(afMessageListenerFilter)) {
-                logger.trace("Removed AsynchrounsCommandListener {} to ZigBeeSerialInterface", afMessageListenerFilter.getClass().getName());
-            } else {
-                logger.warn("Could not remove AsynchrounsCommandListener {} to ZigBeeSerialInterface", afMessageListenerFilter.getClass().getName());
-            }
+            updateAFMessageListenerFilter();
         }
         if (result) {
             logger.trace("Removed ApplicationFrameworkMessageListener {}:{}", listner, listner.getClass().getName());
@@ -1217,18 +1541,11 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
      * @return true if the listener was added
      */
     public boolean addAFMessageListner(ApplicationFrameworkMessageListener listner) {
-        if (messageListeners.isEmpty() && isHardwareReady()) {
-            if (zigbeeInterface.addAsynchronousCommandListener(afMessageListenerFilter)) {
-                logger.trace("Added AsynchrounsCommandListener {} to ZigBeeSerialInterface", afMessageListenerFilter.getClass().getName());
-            } else {
-                logger.trace("Could not add AsynchrounsCommandListener {} to ZigBeeSerialInterface", afMessageListenerFilter.getClass().getName());
-            }
-        }
-        boolean result = false;
-        synchronized (messageListeners) {
+        final boolean result;
+        synchronized (endpointMessageListeners) {
             result = messageListeners.add(listner);
+            updateAFMessageListenerFilter();
         }
-
         if (result) {
             logger.trace("Added ApplicationFrameworkMessageListener {}:{}", listner, listner.getClass().getName());
             return true;
@@ -1238,6 +1555,69 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
         }
     }
 
+    @Override
+    public boolean addAFMessageListener(int networkAddress, short endpoint, ApplicationFrameworkMessageListener listener) {
+        final Integer key = getEndpointKey(networkAddress, endpoint);
+        synchronized (endpointMessageListeners) {
+            CopyOnWriteArrayList<ApplicationFrameworkMessageListener> listeners = endpointMessageListeners.get(key);
+            if (listeners == null) {
+                listeners = new CopyOnWriteArrayList<ApplicationFrameworkMessageListener>();
+                endpointMessageListeners.put(key, listeners);
+            }
+            listeners.add(listener);
+            updateAFMessageListenerFilter();
+        }
+        logger.trace("Added ApplicationFrameworkMessageListener {} for #{}/{}", new Object[]{listener, networkAddress, endpoint});
+        return true;
+    }
+
+    @Override
+    public boolean removeAFMessageListener(int networkAddress, short endpoint, ApplicationFrameworkMessageListener listener) {
+        final Integer key = getEndpointKey(networkAddress, endpoint);
+        final boolean result;
+        synchronized (endpointMessageListeners) {
+            final CopyOnWriteArrayList<ApplicationFrameworkMessageListener> listeners = endpointMessageListeners.get(key);
+            result = listeners != null && listeners.remove(listener);
+            if (listeners != null && listeners.isEmpty()) {
+                endpointMessageListeners.remove(key);
+            }
+            updateAFMessageListenerFilter();
+        }
+        if (!result) {
+            logger.warn("Could not remove ApplicationFrameworkMessageListener {} for #{}/{}", new Object[]{listener, networkAddress, endpoint});
+        }
+        return result;
+    }
+
+    /**
+     * Registers the AF message filter to the interface while there are AF message listeners.
+     * Has to be called while holding the lock of {@link #endpointMessageListeners}.
+     */
+    private void updateAFMessageListenerFilter() {
+        if (!isHardwareReady()) {
+            return;
+        }
+        if (messageListeners.isEmpty() && endpointMessageListeners.isEmpty()) {
+            if (zigbeeInterface.removeAsynchronousCommandListener(afMessageListenerFilter)) {
+                logger.trace("Removed AsynchrounsCommandListener {} to ZigBeeSerialInterface", afMessageListenerFilter.getClass().getName());
+            }
+        } else {
+            if (zigbeeInterface.addAsynchronousCommandListener(afMessageListenerFilter)) {
+                logger.trace("Added AsynchrounsCommandListener {} to ZigBeeSerialInterface", afMessageListenerFilter.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Gets the index key of the AF message listeners of an endpoint.
+     * @param networkAddress the network address
+     * @param endpoint the endpoint
+     * @return the key
+     */
+    private static Integer getEndpointKey(final int networkAddress, final int endpoint) {
+        return ((networkAddress & 0xFFFF) << 8) | (endpoint & 0xFF);
+    }
+
     private boolean isNetworkReady() {
         synchronized (this) {
             return state.ordinal() >= DriverStatus.NETWORK_READY.ordinal()
@@ -1630,6 +2010,28 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
         }
     }
 
+    /**
+     * Completes the AF_DATA_REQUEST conversation matching the source endpoint and transaction ID
+     * of the received AF_DATA_CONFIRM.
+     */
+    private class DataConfirmListener implements AsynchronousCommandListener {
+
+        @SuppressWarnings("unchecked")
+        public void receivedAsynchronousCommand(ZToolPacket packet) {
+            if (packet.isError() || packet.getCMD().get16BitValue() != ZToolCMD.AF_DATA_CONFIRM) {
+                return;
+            }
+            final AF_DATA_CONFIRM confirm = (AF_DATA_CONFIRM) packet;
+            final PendingRequest<AF_DATA_CONFIRM> pending = (PendingRequest<AF_DATA_CONFIRM>)
+                    getConversationRequest(getDataConfirmKey(confirm.Endpoint, confirm.TransID));
+            if (pending == null) {
+                logger.debug("Received {} without matching AF_DATA_REQUEST.", confirm);
+                return;
+            }
+            pending.complete(confirm);
+        }
+    }
+
     private class AFMessageListenerFilter implements AsynchronousCommandListener {
 
         private final Collection<ApplicationFrameworkMessageListener> listners;
@@ -1648,7 +2050,9 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
             }
             if (packet.getCMD().get16BitValue() == ZToolCMD.AF_INCOMING_MSG) {
                 AF_INCOMING_MSG msg = (AF_INCOMING_MSG) packet;
-                if (listners.isEmpty()) {
+                final CopyOnWriteArrayList<ApplicationFrameworkMessageListener> endpointListeners =
+                        endpointMessageListeners.get(getEndpointKey(msg.getSrcAddr(), msg.getSrcEndpoint()));
+                if (listners.isEmpty() && endpointListeners == null) {
                     logger.warn("Received AF_INCOMING_MSG but no listeners. " +
                                     "Message was from {} and cluster {} to end point {}. Data: {}",
                             msg.getSrcAddr(), msg.getClusterId(),
@@ -1658,11 +2062,12 @@ public class ZigBeeNetworkManagerImpl implements ZigBeeNetworkManager {
                             msg.getSrcAddr(), msg.getClusterId(),
                             msg.getDstEndpoint(), msg);
                 }
-                ArrayList<ApplicationFrameworkMessageListener> localCopy = null;
-                synchronized (listners) {
-                    localCopy = new ArrayList<ApplicationFrameworkMessageListener>(listners);
+                if (endpointListeners != null) {
+                    for (ApplicationFrameworkMessageListener l : endpointListeners) {
+                        l.notify(msg);
+                    }
                 }
-                for (ApplicationFrameworkMessageListener l : localCopy) {
+                for (ApplicationFrameworkMessageListener l : listners) {
                     l.notify(msg);
                 }
             }
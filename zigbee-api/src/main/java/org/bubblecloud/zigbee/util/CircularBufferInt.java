@@ -107,6 +107,15 @@ public class CircularBufferInt {
         return buffer[(head + idx) % buffer.length];
     }
 
+    public void set(int idx, int value) {
+        if (idx >= size() || idx < 0) {
+            throw new IndexOutOfBoundsException(
+                    "Trying to set data at " + idx + " but size is " + size()
+            );
+        }
+        buffer[(head + idx) % buffer.length] = value;
+    }
+
     public int remove() {
         if (isEmpty()) {
             throw new IndexOutOfBoundsException(
@@ -121,14 +130,8 @@ public class CircularBufferInt {
 
     public int[] toArray() {
         int[] values = new int[size()];
-        int i = 0;
-        for (int j = head; j < buffer.length; j++) {
-            values[i] = buffer[j];
-            i += 1;
-        }
-        for (int j = 0; j < tail; j++) {
-            values[i] = buffer[j];
-            i += 1;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer[(head + i) % buffer.length];
         }
         return values;
     }
@@ -0,0 +1,45 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory creating named daemon threads for the internal executors.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+    /**
+     * The thread name prefix.
+     */
+    private final String name;
+    /**
+     * The thread counter.
+     */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Constructor which sets the thread name prefix.
+     * @param name the thread name prefix
+     */
+    public DaemonThreadFactory(final String name) {
+        this.name = name;
+    }
+
+    public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
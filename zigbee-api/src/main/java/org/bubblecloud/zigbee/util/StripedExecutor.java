@@ -0,0 +1,259 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor of single threaded stripes. Tasks submitted with the same key are executed by the same
+ * stripe in submission order, while tasks of different keys can execute in parallel. Each stripe has
+ * a bounded queue and the {@link OverflowPolicy} decides what happens to a task submitted to a full queue.
+ * <p>
+ * With zero stripes the tasks are executed directly in the submitting thread.
+ */
+public class StripedExecutor {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StripedExecutor.class);
+
+    /**
+     * Policy applied to a task submitted to a stripe with full queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The submitted task is dropped.
+         */
+        DISCARD,
+        /**
+         * The oldest queued task of the stripe is dropped.
+         */
+        DISCARD_OLDEST,
+        /**
+         * The submitted task is executed in the submitting thread, which slows down the producer.
+         * Ordering of the key is not guaranteed for the overflowing task. Not suitable for producers
+         * which must not run listener code, such as the packet parser thread.
+         */
+        CALLER_RUNS
+    }
+
+    /**
+     * The stripes.
+     */
+    private final ThreadPoolExecutor[] stripes;
+    /**
+     * The overflow policy.
+     */
+    private final OverflowPolicy overflowPolicy;
+    /**
+     * The number of executed tasks.
+     */
+    private final AtomicLong executed = new AtomicLong();
+    /**
+     * The number of dropped tasks.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * The total execution time of the tasks in nanoseconds.
+     */
+    private final AtomicLong executionNanos = new AtomicLong();
+    /**
+     * The maximum execution time of a task in nanoseconds.
+     */
+    private volatile long maxExecutionNanos = 0;
+    /**
+     * The total latency of the tasks from submission to completion in nanoseconds.
+     */
+    private final AtomicLong latencyNanos = new AtomicLong();
+    /**
+     * The maximum latency of a task from submission to completion in nanoseconds.
+     */
+    private volatile long maxLatencyNanos = 0;
+
+    /**
+     * Constructor which creates the stripes.
+     * @param name the thread name prefix
+     * @param stripeCount the number of stripes or 0 to execute tasks in the submitting thread
+     * @param queueCapacity the queue capacity of each stripe
+     * @param overflowPolicy the overflow policy
+     */
+    public StripedExecutor(final String name, final int stripeCount, final int queueCapacity,
+                           final OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        this.stripes = new ThreadPoolExecutor[Math.max(0, stripeCount)];
+        final RejectedExecutionHandler overflowHandler = new OverflowHandler();
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity),
+                    new DaemonThreadFactory(name + "-" + i), overflowHandler);
+        }
+    }
+
+    /**
+     * Executes task in the stripe of the key.
+     * @param key the key or null to use the first stripe
+     * @param task the task
+     */
+    public void execute(final Object key, final Runnable task) {
+        if (stripes.length == 0) {
+            new MeasuredTask(task).run();
+            return;
+        }
+        final int hash = key == null ? 0 : key.hashCode();
+        stripes[(hash & 0x7FFFFFFF) % stripes.length].execute(new MeasuredTask(task));
+    }
+
+    /**
+     * Shuts down the stripes. Already queued tasks are executed.
+     */
+    public void shutdown() {
+        for (final ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    /**
+     * Gets the number of tasks waiting in the queues of all stripes.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (final ThreadPoolExecutor stripe : stripes) {
+            depth += stripe.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * Gets the number of executed tasks.
+     * @return the number of executed tasks
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * Gets the number of tasks dropped due to the overflow policy.
+     * @return the number of dropped tasks
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the average task execution time.
+     * @return the average execution time in milliseconds
+     */
+    public double getAverageExecutionMillis() {
+        final long count = executed.get();
+        return count == 0 ? 0 : executionNanos.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Gets the maximum task execution time.
+     * @return the maximum execution time in milliseconds
+     */
+    public double getMaxExecutionMillis() {
+        return maxExecutionNanos / 1000000.0;
+    }
+
+    /**
+     * Gets the average task latency from submission to completion including the time waited in queue.
+     * @return the average latency in milliseconds
+     */
+    public double getAverageLatencyMillis() {
+        final long count = executed.get();
+        return count == 0 ? 0 : latencyNanos.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Gets the maximum task latency from submission to completion including the time waited in queue.
+     * @return the maximum latency in milliseconds
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1000000.0;
+    }
+
+    /**
+     * Task wrapper which measures the execution time and the latency from submission.
+     */
+    private class MeasuredTask implements Runnable {
+        private final Runnable task;
+        private final long submitted;
+
+        private MeasuredTask(final Runnable task) {
+            this.task = task;
+            this.submitted = System.nanoTime();
+        }
+
+        public void run() {
+            final long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (final Throwable t) {
+                logger.error("Error in executing task.", t);
+            } finally {
+                final long end = System.nanoTime();
+                final long duration = end - start;
+                final long latency = end - submitted;
+                executed.incrementAndGet();
+                executionNanos.addAndGet(duration);
+                if (duration > maxExecutionNanos) {
+                    maxExecutionNanos = duration;
+                }
+                latencyNanos.addAndGet(latency);
+                if (latency > maxLatencyNanos) {
+                    maxLatencyNanos = latency;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handler applying the overflow policy.
+     */
+    private class OverflowHandler implements RejectedExecutionHandler {
+        public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            switch (overflowPolicy) {
+                case CALLER_RUNS:
+                    task.run();
+                    break;
+                case DISCARD_OLDEST:
+                    if (executor.getQueue().poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                    executor.execute(task);
+                    break;
+                default:
+                    final long count = dropped.incrementAndGet();
+                    // Warn on powers of two to avoid flooding the log while the queue stays full.
+                    if ((count & (count - 1)) == 0) {
+                        logger.warn("Executor queue full, dropped {} tasks in total.", count);
+                    }
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.util;
+
+import java.util.Arrays;
+
+/**
+ * Time series of int samples with fixed memory. The newest samples are kept as they are in a
+ * {@link CircularBufferInt}. Samples evicted from it are downsampled into buckets of the first
+ * resolution, buckets evicted from there into buckets of the next resolution and so on. Buckets
+ * evicted from the last resolution are dropped. Each bucket keeps the sum and the count of its
+ * samples, so sums of the samples of one bucket have to fit in an int.
+ * <p>
+ * Timestamps are stored as seconds relative to the creation of the series and samples older
+ * than the newest sample are recorded at the time of the newest sample.
+ */
+public class TimeSeriesInt {
+    /**
+     * The time the series was created in milliseconds.
+     */
+    private final long epoch;
+    /**
+     * The timestamps of the newest samples.
+     */
+    private final CircularBufferInt sampleTimes;
+    /**
+     * The values of the newest samples.
+     */
+    private final CircularBufferInt sampleValues;
+    /**
+     * The bucket durations in seconds of each resolution.
+     */
+    private final int[] resolutions;
+    /**
+     * The start times of the buckets of each resolution.
+     */
+    private final CircularBufferInt[] bucketTimes;
+    /**
+     * The sums of the samples in the buckets of each resolution.
+     */
+    private final CircularBufferInt[] bucketSums;
+    /**
+     * The counts of the samples in the buckets of each resolution.
+     */
+    private final CircularBufferInt[] bucketCounts;
+    /**
+     * The timestamp of the newest sample.
+     */
+    private int lastTime = Integer.MIN_VALUE;
+
+    /**
+     * Constructor.
+     *
+     * @param samples the number of samples kept at full resolution
+     * @param resolutions the bucket durations in seconds, from the finest to the coarsest
+     * @param buckets the number of buckets kept for each resolution
+     */
+    public TimeSeriesInt(final int samples, final int[] resolutions, final int[] buckets) {
+        if (resolutions.length != buckets.length) {
+            throw new IllegalArgumentException("Resolution and bucket counts do not match.");
+        }
+        epoch = System.currentTimeMillis();
+        sampleTimes = new CircularBufferInt(samples, true);
+        sampleValues = new CircularBufferInt(samples, true);
+        this.resolutions = resolutions.clone();
+        bucketTimes = new CircularBufferInt[resolutions.length];
+        bucketSums = new CircularBufferInt[resolutions.length];
+        bucketCounts = new CircularBufferInt[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            bucketTimes[i] = new CircularBufferInt(buckets[i], true);
+            bucketSums[i] = new CircularBufferInt(buckets[i], true);
+            bucketCounts[i] = new CircularBufferInt(buckets[i], true);
+        }
+    }
+
+    /**
+     * Gets the number of ints allocated by the series.
+     *
+     * @return the number of ints
+     */
+    public int getCapacity() {
+        int capacity = sampleTimes.slots() * 2;
+        for (final CircularBufferInt times : bucketTimes) {
+            capacity += times.slots() * 3;
+        }
+        return capacity;
+    }
+
+    /**
+     * Adds sample.
+     *
+     * @param time the time of the sample in milliseconds
+     * @param value the value
+     */
+    public synchronized void add(final long time, final int value) {
+        final int seconds = Math.max(toSeconds(time), lastTime);
+        lastTime = seconds;
+        if (sampleTimes.isFull()) {
+            downsample(0, sampleTimes.remove(), sampleValues.remove(), 1);
+        }
+        sampleTimes.add(seconds);
+        sampleValues.add(value);
+    }
+
+    /**
+     * Gets the number of samples in time window including downsampled samples.
+     *
+     * @param from the start of the window in milliseconds, inclusive
+     * @param to the end of the window in milliseconds, inclusive
+     * @return the number of samples
+     */
+    public synchronized int getCount(final long from, final long to) {
+        final int start = toSeconds(from);
+        final int end = toSeconds(to);
+        int count = 0;
+        for (int i = 0; i < sampleTimes.size(); i++) {
+            if (inWindow(sampleTimes.get(i), start, end)) {
+                count++;
+            }
+        }
+        for (int tier = 0; tier < resolutions.length; tier++) {
+            for (int i = 0; i < bucketTimes[tier].size(); i++) {
+                if (inWindow(bucketTimes[tier].get(i), start, end)) {
+                    count += bucketCounts[tier].get(i);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the mean of the samples in time window.
+     *
+     * @param from the start of the window in milliseconds, inclusive
+     * @param to the end of the window in milliseconds, inclusive
+     * @return the mean or NaN if there are no samples in the window
+     */
+    public synchronized double getMean(final long from, final long to) {
+        final int start = toSeconds(from);
+        final int end = toSeconds(to);
+        long sum = 0;
+        long count = 0;
+        for (int i = 0; i < sampleTimes.size(); i++) {
+            if (inWindow(sampleTimes.get(i), start, end)) {
+                sum += sampleValues.get(i);
+                count++;
+            }
+        }
+        for (int tier = 0; tier < resolutions.length; tier++) {
+            for (int i = 0; i < bucketTimes[tier].size(); i++) {
+                if (inWindow(bucketTimes[tier].get(i), start, end)) {
+                    sum += bucketSums[tier].get(i);
+                    count += bucketCounts[tier].get(i);
+                }
+            }
+        }
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    /**
+     * Gets percentile of the samples in time window with the nearest rank method. Downsampled
+     * samples are represented by the mean of their bucket.
+     *
+     * @param from the start of the window in milliseconds, inclusive
+     * @param to the end of the window in milliseconds, inclusive
+     * @param percentile the percentile between 0 and 100
+     * @return the percentile value or -1 if there are no samples in the window
+     */
+    public synchronized int getPercentile(final long from, final long to, final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile " + percentile + " is not between 0 and 100.");
+        }
+        final int start = toSeconds(from);
+        final int end = toSeconds(to);
+
+        int entryCount = sampleTimes.size();
+        for (final CircularBufferInt times : bucketTimes) {
+            entryCount += times.size();
+        }
+        // Entries are packed as value << 32 | weight so that sorting orders them by value.
+        final long[] entries = new long[entryCount];
+        int size = 0;
+        long total = 0;
+        for (int i = 0; i < sampleTimes.size(); i++) {
+            if (inWindow(sampleTimes.get(i), start, end)) {
+                entries[size++] = ((long) sampleValues.get(i) << 32) | 1;
+                total++;
+            }
+        }
+        for (int tier = 0; tier < resolutions.length; tier++) {
+            for (int i = 0; i < bucketTimes[tier].size(); i++) {
+                if (inWindow(bucketTimes[tier].get(i), start, end)) {
+                    final int count = bucketCounts[tier].get(i);
+                    final int mean = Math.round((float) bucketSums[tier].get(i) / count);
+                    entries[size++] = ((long) mean << 32) | count;
+                    total += count;
+                }
+            }
+        }
+        if (total == 0) {
+            return -1;
+        }
+        Arrays.sort(entries, 0, size);
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int i = 0; i < size; i++) {
+            cumulative += entries[i] & 0xFFFFFFFFL;
+            if (cumulative >= rank) {
+                return (int) (entries[i] >> 32);
+            }
+        }
+        return (int) (entries[size - 1] >> 32);
+    }
+
+    private void downsample(final int tier, final int time, final int sum, final int count) {
+        if (tier >= resolutions.length) {
+            return;
+        }
+        final int bucketStart = (int) (Math.floor((double) time / resolutions[tier]) * resolutions[tier]);
+        final CircularBufferInt times = bucketTimes[tier];
+        final int last = times.size() - 1;
+        if (last >= 0 && times.get(last) == bucketStart) {
+            bucketSums[tier].set(last, bucketSums[tier].get(last) + sum);
+            bucketCounts[tier].set(last, bucketCounts[tier].get(last) + count);
+            return;
+        }
+        if (times.isFull()) {
+            downsample(tier + 1, times.remove(), bucketSums[tier].remove(), bucketCounts[tier].remove());
+        }
+        times.add(bucketStart);
+        bucketSums[tier].add(sum);
+        bucketCounts[tier].add(count);
+    }
+
+    private static boolean inWindow(final int time, final int start, final int end) {
+        return time >= start && time <= end;
+    }
+
+    private int toSeconds(final long time) {
+        final long seconds = (long) Math.floor((time - epoch) / 1000.0);
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, seconds));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.api;
+
+import org.bubblecloud.zigbee.api.cluster.impl.RawClusterMessageImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
+import org.bubblecloud.zigbee.api.cluster.impl.api.general.Scenes;
+import org.bubblecloud.zigbee.api.cluster.impl.api.general.scenes.ExtensionFieldSetAddScene;
+import org.bubblecloud.zigbee.api.cluster.impl.general.scenes.AddScenePayloadImpl;
+import org.bubblecloud.zigbee.network.ClusterMessage;
+import org.bubblecloud.zigbee.network.GroupMembershipRegistry;
+import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.impl.ApplicationFrameworkLayer;
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_CONFIRM;
+import org.bubblecloud.zigbee.network.packet.af.AF_DATA_REQUEST_EXT;
+import org.easymock.Capture;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link SceneManager}.
+ */
+public class SceneManagerTest {
+
+    @Test
+    public void testProgramAndRecallScene() throws Exception {
+        final ZigBeeNetworkManager networkManager = createNiceMock(ZigBeeNetworkManager.class);
+        final Capture<AF_DATA_REQUEST_EXT> request = new Capture<AF_DATA_REQUEST_EXT>();
+        expect(networkManager.sendAFDataRequestExt(capture(request))).andReturn(new AF_DATA_CONFIRM(0, 1, 1));
+        replay(networkManager);
+
+        final ApplicationFrameworkLayer af = ApplicationFrameworkLayer.getAFLayer(networkManager);
+        af.registerSenderEndPoint((short) 1, ZigBeeApiConstants.PROFILE_ID_HOME_AUTOMATION, new int[]{Scenes.ID});
+
+        final ZigBeeEndpoint light1 = createEndpoint("00:12:4B:00:01:02:03:04/1", true, (byte) 0x00);
+        final ZigBeeEndpoint light2 = createEndpoint("00:12:4B:00:01:02:03:05/1", true, (byte) 0x89);
+        final ZigBeeEndpoint sensor = createEndpoint("00:12:4B:00:01:02:03:06/1", false, (byte) 0x00);
+        final GroupMembershipRegistry registry = af.getGroupMembershipRegistry();
+        registry.addMembership(light1, 0x10);
+        registry.addMembership(light2, 0x10);
+        registry.addMembership(sensor, 0x10);
+
+        final SceneManager sceneManager = new SceneManager(networkManager, 2);
+        try {
+            sceneManager.defineScene(new AddScenePayloadImpl(0x10, (short) 1, "", 0, new ExtensionFieldSetAddScene[0]));
+            assertEquals(1, sceneManager.getSceneDefinitions(0x10).size());
+
+            final Map<ZigBeeEndpoint, Status> statuses = sceneManager.programScene(0x10, (short) 1);
+            assertEquals(3, statuses.size());
+            assertEquals(Status.SUCCESS, statuses.get(light1));
+            assertEquals(Status.INSUFFICIENT_SPACE, statuses.get(light2));
+            assertEquals(Status.UNSUP_CLUSTER_COMMAND, statuses.get(sensor));
+
+            sceneManager.recallScene(0x10, (short) 1);
+            verify(networkManager);
+            assertEquals(0x10, request.getValue().getGroupId());
+            assertEquals(1, request.getValue().getSrcEndpoint());
+        } finally {
+            sceneManager.shutdown();
+        }
+    }
+
+    private ZigBeeEndpoint createEndpoint(final String endpointId, final boolean scenes, final byte status)
+            throws Exception {
+        final ZigBeeEndpoint endpoint = createNiceMock(ZigBeeEndpoint.class);
+        expect(endpoint.getEndpointId()).andReturn(endpointId).anyTimes();
+        expect(endpoint.providesInputCluster(Scenes.ID)).andReturn(scenes).anyTimes();
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Scenes.ID, new byte[]{
+                0x19, 0x00, Scenes.ADD_SCENE, status, 0x10, 0x00, 0x01
+        })).anyTimes();
+        replay(endpoint);
+        return endpoint;
+    }
+}
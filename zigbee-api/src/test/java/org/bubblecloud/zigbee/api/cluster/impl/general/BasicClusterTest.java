@@ -0,0 +1,163 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.api.cluster.impl.general;
+
+import org.bubblecloud.zigbee.api.cluster.impl.RawClusterMessageImpl;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.Attribute;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
+import org.bubblecloud.zigbee.api.cluster.impl.api.core.ZigBeeClusterException;
+import org.bubblecloud.zigbee.api.cluster.impl.api.general.Basic;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.ReadAttributesStatus;
+import org.bubblecloud.zigbee.api.cluster.impl.api.global.WriteAttributesStatus;
+import org.bubblecloud.zigbee.network.AttributeCache;
+import org.bubblecloud.zigbee.network.ClusterMessage;
+import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test for batched attribute reads and writes of {@link BasicCluster}.
+ */
+public class BasicClusterTest {
+
+    @Test
+    public void testReadAttributesWithTruncatedResponse() throws Exception {
+        final AttributeCache cache = new AttributeCache();
+        final ZigBeeEndpoint endpoint = createNiceMock(ZigBeeEndpoint.class);
+        expect(endpoint.getAttributeCache()).andReturn(cache).anyTimes();
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Basic.ID, new byte[]{
+                0x18, 0x00, 0x01,
+                0x00, 0x00, 0x00, 0x20, 0x02,   // ZCL version
+                0x01, 0x00, (byte) 0x86         // application version, unsupported attribute
+        }));
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Basic.ID, new byte[]{
+                0x18, 0x01, 0x01,
+                0x07, 0x00, 0x00, 0x30, 0x01    // power source
+        }));
+        replay(endpoint);
+
+        final BasicCluster cluster = new BasicCluster(endpoint);
+        final Attribute zclVersion = cluster.getAttributeZCLVersion();
+        final Attribute applicationVersion = cluster.getAttributeApplicationVersion();
+        final Attribute powerSource = cluster.getPowerSource();
+        final Map<Attribute, ReadAttributesStatus> result = cluster.readAttributes(zclVersion, applicationVersion, powerSource);
+        verify(endpoint);
+
+        assertEquals(3, result.size());
+        assertEquals(2, result.get(zclVersion).getAttributeData());
+        assertEquals((byte) Status.UNSUPPORTED_ATTRIBUTE.id, result.get(applicationVersion).getStatus());
+        assertEquals(1, result.get(powerSource).getAttributeData());
+        assertEquals(2, cache.get(Basic.ID, zclVersion.getId(), 1000));
+        assertNull(cache.get(Basic.ID, applicationVersion.getId(), 1000));
+    }
+
+    @Test
+    public void testWriteAttributesSplitByFrameSize() throws Exception {
+        final AttributeCache cache = new AttributeCache();
+        final ZigBeeEndpoint endpoint = createNiceMock(ZigBeeEndpoint.class);
+        expect(endpoint.getAttributeCache()).andReturn(cache).anyTimes();
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Basic.ID, new byte[]{
+                0x18, 0x00, 0x04, 0x00
+        }));
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Basic.ID, new byte[]{
+                0x18, 0x01, 0x04, (byte) 0x87, 0x11, 0x00   // physical environment, invalid value
+        }));
+        replay(endpoint);
+
+        final BasicCluster cluster = new BasicCluster(endpoint);
+        final Attribute locationDescription = cluster.getAttributeLocationDescription();
+        final Attribute physicalEnvironment = cluster.getAttributePhysicalEnvironment();
+        final Attribute deviceEnabled = cluster.getAttributeDeviceEnabled();
+        cache.put(Basic.ID, locationDescription.getId(), "old");
+        final Map<Attribute, Object> values = new LinkedHashMap<Attribute, Object>();
+        values.put(locationDescription, "0123456789012345678901234567890123456789012345678901234567890123456789");
+        values.put(physicalEnvironment, 0x7F);
+        values.put(deviceEnabled, Boolean.TRUE);
+
+        try {
+            cluster.writeAttributesUndivided(values);
+            fail("Undivided write exceeding frame size should fail.");
+        } catch (ZigBeeClusterException e) {
+        }
+
+        final Map<Attribute, WriteAttributesStatus> result = cluster.writeAttributes(values);
+        verify(endpoint);
+        assertEquals(3, result.size());
+        assertEquals((byte) Status.SUCCESS.id, result.get(locationDescription).getStatus());
+        assertEquals((byte) Status.INVALID_VALUE.id, result.get(physicalEnvironment).getStatus());
+        assertEquals((byte) Status.SUCCESS.id, result.get(deviceEnabled).getStatus());
+        assertNull(cache.get(Basic.ID, locationDescription.getId(), 1000));
+    }
+
+    @Test
+    public void testRejectedUndividedWrite() throws Exception {
+        final AttributeCache cache = new AttributeCache();
+        final ZigBeeEndpoint endpoint = createNiceMock(ZigBeeEndpoint.class);
+        expect(endpoint.getAttributeCache()).andReturn(cache).anyTimes();
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Basic.ID, new byte[]{
+                0x18, 0x00, 0x04, (byte) 0x87, 0x11, 0x00   // physical environment, invalid value
+        }));
+        replay(endpoint);
+
+        final BasicCluster cluster = new BasicCluster(endpoint);
+        final Attribute physicalEnvironment = cluster.getAttributePhysicalEnvironment();
+        final Attribute deviceEnabled = cluster.getAttributeDeviceEnabled();
+        final Map<Attribute, Object> values = new LinkedHashMap<Attribute, Object>();
+        values.put(physicalEnvironment, 0x7F);
+        values.put(deviceEnabled, Boolean.TRUE);
+
+        final Map<Attribute, WriteAttributesStatus> result = cluster.writeAttributesUndivided(values);
+        verify(endpoint);
+        assertEquals(2, result.size());
+        assertEquals((byte) Status.INVALID_VALUE.id, result.get(physicalEnvironment).getStatus());
+        assertEquals((byte) Status.FAILURE.id, result.get(deviceEnabled).getStatus());
+    }
+
+    @Test
+    public void testFailedWriteInvalidatesWrittenBatches() throws Exception {
+        final AttributeCache cache = new AttributeCache();
+        final ZigBeeEndpoint endpoint = createNiceMock(ZigBeeEndpoint.class);
+        expect(endpoint.getAttributeCache()).andReturn(cache).anyTimes();
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Basic.ID, new byte[]{
+                0x18, 0x00, 0x04, 0x00
+        }));
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Basic.ID, new byte[]{
+                0x18, 0x01, 0x0B, 0x02, 0x01                // default response, failure
+        }));
+        replay(endpoint);
+
+        final BasicCluster cluster = new BasicCluster(endpoint);
+        final Attribute locationDescription = cluster.getAttributeLocationDescription();
+        final Attribute deviceEnabled = cluster.getAttributeDeviceEnabled();
+        cache.put(Basic.ID, locationDescription.getId(), "old");
+        cache.put(Basic.ID, deviceEnabled.getId(), Boolean.FALSE);
+        final Map<Attribute, Object> values = new LinkedHashMap<Attribute, Object>();
+        values.put(locationDescription, "0123456789012345678901234567890123456789012345678901234567890123456789");
+        values.put(deviceEnabled, Boolean.TRUE);
+
+        try {
+            cluster.writeAttributes(values);
+            fail("Write with failed batch should fail.");
+        } catch (ZigBeeClusterException e) {
+        }
+        verify(endpoint);
+        assertNull(cache.get(Basic.ID, locationDescription.getId(), 1000));
+        assertNull(cache.get(Basic.ID, deviceEnabled.getId(), 1000));
+    }
+}
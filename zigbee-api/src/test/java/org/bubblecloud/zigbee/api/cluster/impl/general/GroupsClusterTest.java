@@ -27,6 +27,7 @@ import static org.easymock.EasyMock.*;
 
 import static org.junit.Assert.*;
 import org.bubblecloud.zigbee.network.ClusterMessage;
+import org.bubblecloud.zigbee.network.GroupMembershipRegistry;
 import org.bubblecloud.zigbee.network.ZigBeeEndpoint;
 import org.bubblecloud.zigbee.network.impl.ZigBeeNetworkManagerException;
 import org.bubblecloud.zigbee.api.cluster.impl.api.core.Status;
@@ -102,4 +103,44 @@ public class GroupsClusterTest {
             ex.printStackTrace();
         }
     }
+
+    @Test
+    public void testMembershipSync() throws Exception {
+        final GroupMembershipRegistry registry = new GroupMembershipRegistry();
+        final ZigBeeEndpoint endpoint = createNiceMock(ZigBeeEndpoint.class);
+        expect(endpoint.getEndpointId()).andReturn("00:12:4B:00:01:02:03:04/1").anyTimes();
+        expect(endpoint.getGroupMembershipRegistry()).andReturn(registry).anyTimes();
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Groups.ID, new byte[]{
+                0x19, 0x00, 0x00, 0x00, 0x01, 0x00                  // add group 1 success
+        }));
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Groups.ID, new byte[]{
+                0x19, 0x01, 0x00, (byte) 0x8a, 0x02, 0x00           // add group 2 duplicate
+        }));
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Groups.ID, new byte[]{
+                0x19, 0x02, 0x02, 0x10, 0x02, 0x02, 0x00, 0x03, 0x00  // membership of all groups: 2, 3
+        }));
+        expect(endpoint.invoke((ClusterMessage) anyObject())).andReturn(new RawClusterMessageImpl(Groups.ID, new byte[]{
+                0x19, 0x03, 0x03, 0x00, 0x02, 0x00                  // remove group 2 success
+        }));
+        replay(endpoint);
+
+        final GroupsCluster cluster = new GroupsCluster(endpoint);
+        cluster.addGroup(1, "");
+        assertArrayEquals(new int[]{1}, registry.getGroups(endpoint));
+        cluster.addGroup(2, "");
+        assertArrayEquals(new int[]{1, 2}, registry.getGroups(endpoint));
+        cluster.getGroupMembership(new int[0]);
+        assertArrayEquals(new int[]{2, 3}, registry.getGroups(endpoint));
+        cluster.removeGroup(2);
+        verify(endpoint);
+
+        assertArrayEquals(new int[]{3}, registry.getGroups(endpoint));
+        assertEquals(0, registry.getMembers(2).size());
+        assertEquals(1, registry.getMembers(3).size());
+        assertTrue(registry.isMember(endpoint, 3));
+        assertArrayEquals(new int[]{3}, registry.getGroupIds());
+
+        registry.endpointRemoved(endpoint);
+        assertArrayEquals(new int[0], registry.getGroupIds());
+    }
 }
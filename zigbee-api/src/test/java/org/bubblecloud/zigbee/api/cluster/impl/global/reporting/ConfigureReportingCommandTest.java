@@ -64,6 +64,11 @@ public class ConfigureReportingCommandTest {
 								return null;
 							}
 
+							public Object getValue(long maxAge)
+									throws ZigBeeClusterException {
+								return null;
+							}
+
 							public ZigBeeType getZigBeeType() {
 								return ZigBeeType.UnsignedInteger32bit;
 							}
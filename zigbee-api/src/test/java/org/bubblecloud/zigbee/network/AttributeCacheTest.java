@@ -0,0 +1,50 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for {@link AttributeCache}.
+ */
+public class AttributeCacheTest {
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        final AttributeCache cache = new AttributeCache();
+        assertNull(cache.get(6, 0, 1000));
+        cache.put(6, 0, Boolean.TRUE);
+        assertEquals(Boolean.TRUE, cache.get(6, 0, 1000));
+        assertNull(cache.get(8, 0, 1000));
+        Thread.sleep(20);
+        assertNull(cache.get(6, 0, 10));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidateAndMaxAge() {
+        final AttributeCache cache = new AttributeCache();
+        cache.put(0x402, 0, 2150);
+        cache.invalidate(0x402, 0);
+        assertNull(cache.get(0x402, 0, 1000));
+
+        assertEquals(AttributeCache.MAX_AGE_DEFAULT, cache.getMaxAge(0x402, 0));
+        cache.setMaxAge(0x402, 0, 5000);
+        assertEquals(5000, cache.getMaxAge(0x402, 0));
+        assertEquals(AttributeCache.MAX_AGE_DEFAULT, cache.getMaxAge(0x402, 1));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for {@link CommandFuture}.
+ */
+public class CommandFutureTest {
+
+    @Test
+    public void testListenerNotifiedOnce() {
+        final List<String> results = new ArrayList<String>();
+        final CommandFuture<String> future = new CommandFuture<String>();
+        future.addListener(new CommandFutureListener<String>() {
+            public void commandCompleted(String response) {
+                results.add(response);
+            }
+        });
+        assertFalse(future.isDone());
+        assertTrue(future.set("first"));
+        assertFalse(future.set("second"));
+        assertEquals(1, results.size());
+        assertEquals("first", results.get(0));
+        assertEquals("first", future.join());
+    }
+
+    @Test
+    public void testListenerAddedAfterCompletion() {
+        final List<String> results = new ArrayList<String>();
+        final CommandFuture<String> future = CommandFuture.completed(null);
+        future.addListener(new CommandFutureListener<String>() {
+            public void commandCompleted(String response) {
+                results.add(response);
+            }
+        });
+        assertEquals(1, results.size());
+        assertNull(results.get(0));
+    }
+
+    @Test
+    public void testJoinFromOtherThread() throws Exception {
+        final CommandFuture<String> future = new CommandFuture<String>();
+        new Thread() {
+            public void run() {
+                future.set("done");
+            }
+        }.start();
+        assertEquals("done", future.join());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimeout() throws Exception {
+        new CommandFuture<String>().get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testCancel() {
+        final CommandFuture<String> future = new CommandFuture<String>();
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertNull(future.join());
+        assertFalse(future.set("late"));
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.bubblecloud.zigbee.network.CommandFuture;
+import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress16;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
+import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_REQ;
+import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_RSP;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link AssociationNetworkBrowser}.
+ */
+public class AssociationNetworkBrowserTest {
+
+    private static final int PAGE_SIZE = 2;
+
+    @Test
+    public void testBrowseWalksOnlyChangedSubtrees() {
+        final List<String> requests = new ArrayList<String>();
+        final Map<Integer, int[]> tree = new HashMap<Integer, int[]>();
+        tree.put(0x0000, new int[]{0x1111, 0x2222});
+        tree.put(0x1111, new int[]{0x3333, 0x4444, 0x5555});
+
+        final ZigBeeNetworkManager driver = createNiceMock(ZigBeeNetworkManager.class);
+        expect(driver.sendZDOIEEEAddressRequestAsync((ZDO_IEEE_ADDR_REQ) anyObject())).andAnswer(
+                new IAnswer<CommandFuture<ZDO_IEEE_ADDR_RSP>>() {
+                    public CommandFuture<ZDO_IEEE_ADDR_RSP> answer() {
+                        final ZDO_IEEE_ADDR_REQ request = (ZDO_IEEE_ADDR_REQ) getCurrentArguments()[0];
+                        final int address = request.getShortAddress() & 0xFFFF;
+                        final int startIndex = request.getStartIndex();
+                        requests.add(address + "/" + startIndex);
+                        if (address == 0x4444) {
+                            return CommandFuture.completed(null);
+                        }
+                        final int[] children = tree.containsKey(address) ? tree.get(address) : new int[0];
+                        return CommandFuture.completed(response(address, startIndex, children));
+                    }
+                }).anyTimes();
+        replay(driver);
+
+        final ImportingQueue queue = new ImportingQueue();
+        final AssociationNetworkBrowser browser = new AssociationNetworkBrowser(queue, driver, 3, 60000);
+        browser.browse();
+
+        // Coordinator, two pages of router 0x1111 and the four other nodes.
+        assertEquals(7, requests.size());
+        assertTrue(requests.contains(0x1111 + "/2"));
+        assertEquals(5, queue.size());
+
+        // Nothing changed so only the routers and the node which did not answer are queried again.
+        requests.clear();
+        browser.browse();
+        assertEquals(3, requests.size());
+        assertTrue(requests.contains("0/0"));
+        assertTrue(requests.contains(0x1111 + "/0"));
+        assertTrue(requests.contains(0x4444 + "/0"));
+
+        // A node joins router 0x1111, only its subtree is walked again.
+        tree.put(0x1111, new int[]{0x3333, 0x4444, 0x5555, 0x6666});
+        requests.clear();
+        browser.browse();
+        assertEquals(7, requests.size());
+        assertTrue(requests.contains(0x1111 + "/2"));
+        assertTrue(requests.contains(0x6666 + "/0"));
+        assertFalse(requests.contains(0x2222 + "/0"));
+    }
+
+    @Test
+    public void testBrowseDiscardsResponsesFromOtherNodes() {
+        final List<String> requests = new ArrayList<String>();
+        final ZigBeeNetworkManager driver = createNiceMock(ZigBeeNetworkManager.class);
+        expect(driver.sendZDOIEEEAddressRequestAsync((ZDO_IEEE_ADDR_REQ) anyObject())).andAnswer(
+                new IAnswer<CommandFuture<ZDO_IEEE_ADDR_RSP>>() {
+                    public CommandFuture<ZDO_IEEE_ADDR_RSP> answer() {
+                        final ZDO_IEEE_ADDR_REQ request = (ZDO_IEEE_ADDR_REQ) getCurrentArguments()[0];
+                        final int address = request.getShortAddress() & 0xFFFF;
+                        requests.add(address + "/" + request.getStartIndex());
+                        if (address == 0x0000) {
+                            return CommandFuture.completed(response(0x0000, 0, new int[]{0x1111}));
+                        }
+                        // Late response of other router must not be taken as the associations of this node.
+                        return CommandFuture.completed(response(0x7777, 0, new int[]{0x9999}));
+                    }
+                }).anyTimes();
+        replay(driver);
+
+        final ImportingQueue queue = new ImportingQueue();
+        final AssociationNetworkBrowser browser = new AssociationNetworkBrowser(queue, driver, 3, 60000);
+        browser.browse();
+
+        assertEquals(2, requests.size());
+        assertFalse(requests.contains(0x9999 + "/0"));
+        assertEquals(1, queue.size());
+    }
+
+    private static ZDO_IEEE_ADDR_RSP response(final int address, final int startIndex, final int[] children) {
+        final ZDO_IEEE_ADDR_RSP response = new ZDO_IEEE_ADDR_RSP();
+        response.Status = 0;
+        response.IEEEAddr = new ZToolAddress64(0x00124B0000000000L | address);
+        response.nwkAddr = new ZToolAddress16(address >> 8, address & 0xFF);
+        response.StartIndex = startIndex;
+        response.NumAssocDev = children.length;
+        final int count = Math.max(0, Math.min(PAGE_SIZE, children.length - startIndex));
+        response.AssocDevList = new ZToolAddress16[count];
+        for (int i = 0; i < count; i++) {
+            final int child = children[startIndex + i];
+            response.AssocDevList[i] = new ZToolAddress16(child >> 8, child & 0xFF);
+        }
+        return response;
+    }
+}
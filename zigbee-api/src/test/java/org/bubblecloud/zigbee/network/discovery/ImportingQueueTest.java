@@ -0,0 +1,138 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.bubblecloud.zigbee.network.discovery.ImportingQueue.Priority;
+import org.bubblecloud.zigbee.network.discovery.ImportingQueue.ZigBeeNodeAddress;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress16;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link ImportingQueue}.
+ */
+public class ImportingQueueTest {
+
+    @Test
+    public void testCoalescingAndPriority() {
+        final ImportingQueue queue = new ImportingQueue(60000);
+        queue.push(nwk(0x1111), ieee(1), 0);
+        queue.push(nwk(0x2222), ieee(2));
+        queue.push(nwk(0x1111), ieee(1));
+        queue.push(nwk(0x3333), ieee(3), -1, Priority.UNKNOWN_SENDER);
+        // Node 2 rejoined with a new network address and announced itself.
+        queue.push(nwk(0x4444), ieee(2), -1, Priority.ANNOUNCE);
+        // Network address of node 3 was reused by node 5.
+        queue.push(nwk(0x3333), ieee(5));
+
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getCoalescedPushes());
+        assertEquals(1, queue.getDepth(Priority.ANNOUNCE));
+        assertEquals(0, queue.getDepth(Priority.UNKNOWN_SENDER));
+        assertEquals(2, queue.getDepth(Priority.REDISCOVERY));
+        assertTrue(queue.getOldestAge() >= 0);
+
+        final ZigBeeNodeAddress announced = queue.pop();
+        assertEquals(Priority.ANNOUNCE, announced.getPriority());
+        assertEquals(2, announced.getIeeeAddress().getLong());
+        assertEquals(0x4444, announced.getNetworkAddress().get16BitValue());
+
+        final ZigBeeNodeAddress rediscovered = queue.pop();
+        assertEquals(1, rediscovered.getIeeeAddress().getLong());
+        assertEquals(0, rediscovered.getParentNetworkAddress());
+        final ZigBeeNodeAddress reused = queue.pop();
+        assertEquals(5, reused.getIeeeAddress().getLong());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getOldestAge());
+        assertEquals(3, queue.getInFlight());
+
+        // Nodes being interrogated are not queued again, whatever the priority.
+        queue.push(nwk(0x4444), ieee(2), -1, Priority.ANNOUNCE);
+        queue.push(nwk(0x1111), ieee(1));
+        assertTrue(queue.isEmpty());
+
+        // Recently interrogated nodes are not rediscovered again unless they moved or announced.
+        queue.done(announced);
+        queue.done(rediscovered);
+        queue.done(reused);
+        assertEquals(0, queue.getInFlight());
+        queue.push(nwk(0x1111), ieee(1));
+        queue.push(nwk(0x3333), ieee(5), 0);
+        assertTrue(queue.isEmpty());
+        queue.push(nwk(0x5555), ieee(1));
+        queue.push(nwk(0x4444), ieee(2), -1, Priority.ANNOUNCE);
+        assertEquals(2, queue.size());
+        assertEquals(6, queue.getCoalescedPushes());
+    }
+
+    @Test
+    public void testMovedNodeInFlightQueuedWhenDone() {
+        final ImportingQueue queue = new ImportingQueue(60000);
+        queue.push(nwk(0x1111), ieee(1));
+        final ZigBeeNodeAddress first = queue.pop();
+
+        // Node rejoined with new network addresses while being interrogated.
+        queue.push(nwk(0x2222), ieee(1));
+        queue.push(nwk(0x3333), ieee(1), -1, Priority.ANNOUNCE);
+        assertTrue(queue.isEmpty());
+        assertEquals(1, queue.getInFlight());
+        assertEquals(1, queue.getCoalescedPushes());
+
+        queue.done(first);
+        assertEquals(1, queue.size());
+        final ZigBeeNodeAddress second = queue.pop();
+        assertEquals(1, second.getIeeeAddress().getLong());
+        assertEquals(0x3333, second.getNetworkAddress().get16BitValue());
+        assertEquals(Priority.ANNOUNCE, second.getPriority());
+        assertEquals(1, queue.getInFlight());
+
+        queue.done(second);
+        assertEquals(0, queue.getInFlight());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testCloseReleasesWaitingThreads() throws InterruptedException {
+        final ImportingQueue queue = new ImportingQueue(0);
+        final CountDownLatch released = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    if (queue.pop() == null) {
+                        released.countDown();
+                    }
+                }
+            }).start();
+        }
+        Thread.sleep(50);
+        queue.close();
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        queue.push(nwk(0x1111), ieee(1));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.pop());
+    }
+
+    private static ZToolAddress16 nwk(final int address) {
+        return new ZToolAddress16(address >> 8, address & 0xFF);
+    }
+
+    private static ZToolAddress64 ieee(final long address) {
+        return new ZToolAddress64(address);
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link LinkQualityHistory}.
+ */
+public class LinkQualityHistoryTest {
+
+    @Test
+    public void testLeastRecentlyUpdatedNodeEvicted() {
+        final LinkQualityHistory history = new LinkQualityHistory(4, 2, 2, 2, 3);
+        assertEquals(3L * history.getCapacityPerNode(), history.getCapacity());
+
+        history.addFrameSample(1, 100, 1000);
+        history.addFrameSample(2, 110, 1000);
+        history.addLinkSample(3, 1, 120, 1000);
+        history.addFrameSample(1, 130, 2000);
+        history.addFrameSample(4, 140, 2000);
+        assertEquals(Arrays.asList(1, 3, 4), history.getNodes());
+        assertNull(history.getFrameSeries(2));
+
+        history.removeNode(3);
+        assertEquals(Arrays.asList(1, 4), history.getNodes());
+        assertEquals(-1, history.getLinkPercentile(3, 1, 0, 3000, 50));
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.bubblecloud.zigbee.network.CommandFuture;
+import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
+import org.bubblecloud.zigbee.network.packet.ZToolAddress64;
+import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_REQ;
+import org.bubblecloud.zigbee.network.packet.zdo.ZDO_IEEE_ADDR_RSP;
+import org.bubblecloud.zigbee.network.packet.zdo.ZDO_MGMT_LQI_REQ;
+import org.bubblecloud.zigbee.network.packet.zdo.ZDO_MGMT_LQI_RSP;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link LinkQualityIndicatorNetworkBrowser}.
+ */
+public class LinkQualityIndicatorNetworkBrowserTest {
+
+    private static final int ROUTER = 0x11;
+    private static final int END_DEVICE = 0x12;
+    private static final int PARENT = 0x01;
+
+    @Test
+    public void testBrowseWithPagingAndTtl() {
+        final List<String> requests = new ArrayList<String>();
+        final ZigBeeNetworkManager driver = createNiceMock(ZigBeeNetworkManager.class);
+        final ZDO_IEEE_ADDR_RSP coordinator = new ZDO_IEEE_ADDR_RSP();
+        coordinator.IEEEAddr = new ZToolAddress64(0x00124B0000000000L);
+        expect(driver.sendZDOIEEEAddressRequest((ZDO_IEEE_ADDR_REQ) anyObject())).andReturn(coordinator).anyTimes();
+        expect(driver.sendLQIRequestAsync((ZDO_MGMT_LQI_REQ) anyObject())).andAnswer(
+                new IAnswer<CommandFuture<ZDO_MGMT_LQI_RSP>>() {
+                    public CommandFuture<ZDO_MGMT_LQI_RSP> answer() {
+                        final ZDO_MGMT_LQI_REQ request = (ZDO_MGMT_LQI_REQ) getCurrentArguments()[0];
+                        final int address = request.DstAddr.get16BitValue();
+                        requests.add(address + "/" + request.StartIndex);
+                        if (address == 0 && request.StartIndex == 0) {
+                            return CommandFuture.completed(response(0x0000, 3, 0, new int[][]{
+                                    {0x1111, ROUTER, 200}, {0x2222, END_DEVICE, 150}}));
+                        } else if (address == 0 && request.StartIndex == 2) {
+                            return CommandFuture.completed(response(0x0000, 3, 2, new int[][]{
+                                    {0x3333, ROUTER, 90}}));
+                        } else if (address == 0x1111) {
+                            return CommandFuture.completed(response(0x1111, 2, 0, new int[][]{
+                                    {0x0000, PARENT, 190}, {0x3333, ROUTER, 120}}));
+                        } else if (address == 0x3333) {
+                            // Late response of other router must not be taken as the table of this router.
+                            return CommandFuture.completed(response(0x1111, 1, 0, new int[][]{
+                                    {0x0000, PARENT, 190}}));
+                        }
+                        return CommandFuture.completed(null);
+                    }
+                }).anyTimes();
+        replay(driver);
+
+        final ImportingQueue queue = new ImportingQueue();
+        final LinkQualityIndicatorNetworkBrowser browser =
+                new LinkQualityIndicatorNetworkBrowser(queue, driver, 2, 60000);
+        final LinkQualityHistory history = new LinkQualityHistory();
+        browser.setLinkQualityHistory(history);
+        browser.browse();
+
+        assertEquals(4, requests.size());
+        assertTrue(requests.contains("0/2"));
+        assertEquals(4, queue.size());
+
+        final NeighbourGraph graph = browser.getNeighbourGraph();
+        assertEquals(2, graph.size());
+        final NeighbourTable table = graph.getTable(0);
+        assertEquals(3, table.size());
+        assertEquals(0x3333, table.getAddress(2));
+        assertEquals(0x00124B0000003333L, table.getIeeeAddress(2));
+        assertEquals(NeighbourGraph.DEVICE_TYPE_END_DEVICE, table.getDeviceType(table.indexOf(0x2222)));
+        assertEquals(NeighbourGraph.RELATIONSHIP_CHILD, table.getRelationship(table.indexOf(0x2222)));
+        assertEquals(120, graph.getLqi(0x1111, 0x3333));
+        assertEquals(-1, graph.getLqi(0x3333, 0x1111));
+        assertEquals(190, browser.getConnectedNodes().getLast(0x1111, 0x0000));
+        assertEquals(120, history.getLinkPercentile(0x1111, 0x3333, 0, Long.MAX_VALUE, 50));
+        assertEquals(3, history.getNeighbours(0).size());
+
+        // Tables are up to date so the second walk only retries the router which did not answer.
+        requests.clear();
+        browser.browse();
+        assertEquals(1, requests.size());
+        assertEquals(0x3333 + "/0", requests.get(0));
+        assertEquals(2, graph.size());
+    }
+
+    private static ZDO_MGMT_LQI_RSP response(final int source, final int entries, final int startIndex,
+                                             final int[][] neighbors) {
+        final int[] frame = new int[6 + neighbors.length * 22];
+        frame[0] = source & 0xFF;
+        frame[1] = source >> 8;
+        frame[3] = entries;
+        frame[4] = startIndex;
+        frame[5] = neighbors.length;
+        for (int i = 0; i < neighbors.length; i++) {
+            final int k = 6 + i * 22;
+            final int address = neighbors[i][0];
+            // IEEE address 00:12:4B:00:00:00:<address>
+            frame[k + 8] = address & 0xFF;
+            frame[k + 9] = address >> 8;
+            frame[k + 13] = 0x4B;
+            frame[k + 14] = 0x12;
+            frame[k + 16] = address & 0xFF;
+            frame[k + 17] = address >> 8;
+            frame[k + 18] = neighbors[i][1];
+            frame[k + 20] = 1;
+            frame[k + 21] = neighbors[i][2];
+        }
+        return new ZDO_MGMT_LQI_RSP(frame);
+    }
+}
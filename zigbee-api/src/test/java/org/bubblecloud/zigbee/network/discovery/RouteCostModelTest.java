@@ -0,0 +1,125 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.discovery;
+
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
+import org.bubblecloud.zigbee.network.discovery.RouteCostModel.Route;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link RouteCostModel}.
+ */
+public class RouteCostModelTest {
+
+    private static final int ROUTER = 0x11;
+    private static final int END_DEVICE = 0x12;
+
+    @Test
+    public void testRoutesAndBottlenecks() {
+        final NeighbourGraph graph = new NeighbourGraph();
+        graph.update(table(0, new int[][]{{1, ROUTER, 255}, {2, ROUTER, 200}}));
+        final RouteCostModel model = new RouteCostModel(graph, 3);
+        graph.update(table(1, new int[][]{{0, ROUTER, 255}, {2, ROUTER, 255}, {3, ROUTER, 255},
+                {10, END_DEVICE, 255}, {11, END_DEVICE, 230}}));
+        graph.update(table(2, new int[][]{{0, ROUTER, 200}, {1, ROUTER, 255}}));
+        graph.update(table(3, new int[][]{{1, ROUTER, 255}, {12, END_DEVICE, 255}}));
+
+        assertEquals(1, RouteCostModel.getLinkCost(255));
+        assertEquals(3, RouteCostModel.getLinkCost(200));
+        assertEquals(7, RouteCostModel.getLinkCost(100));
+
+        assertEquals(0, model.getRoute(0).getCost());
+        assertEquals(2, model.getRoute(2).getCost());
+        assertEquals(1, model.getRoute(2).getNextHop());
+        assertEquals(3, model.getRoute(12).getCost());
+        assertEquals(3, model.getRoute(12).getHops());
+        assertEquals(3, model.getRoute(12).getNextHop());
+        assertEquals(7, model.getRoutes().size());
+
+        List<Route> bottlenecks = model.getBottlenecks();
+        assertEquals(1, bottlenecks.size());
+        assertEquals(1, bottlenecks.get(0).getAddress());
+        assertEquals(5, bottlenecks.get(0).getDependents());
+
+        // Link between coordinator and router 1 degrades, router 1 now routes through router 2.
+        graph.update(table(0, new int[][]{{1, ROUTER, 100}, {2, ROUTER, 200}}));
+        assertEquals(4, model.getRoute(1).getCost());
+        assertEquals(2, model.getRoute(1).getNextHop());
+        assertEquals(2, model.getRoute(1).getHops());
+        assertEquals(6, model.getRoute(12).getCost());
+        bottlenecks = model.getBottlenecks();
+        assertEquals(2, bottlenecks.size());
+        assertEquals(2, bottlenecks.get(0).getAddress());
+        assertEquals(5, bottlenecks.get(0).getDependents());
+
+        // Router 3 disappears, its end device is no longer reachable.
+        graph.remove(3);
+        graph.update(table(1, new int[][]{{0, ROUTER, 100}, {2, ROUTER, 255},
+                {10, END_DEVICE, 255}, {11, END_DEVICE, 230}}));
+        assertNull(model.getRoute(3));
+        assertNull(model.getRoute(12));
+        assertEquals(5, model.getRoutes().size());
+    }
+
+    @Test
+    public void testIncrementalUpdatesMatchFullComputation() {
+        final Random random = new Random(1);
+        final NeighbourGraph graph = new NeighbourGraph();
+        final RouteCostModel model = new RouteCostModel(graph, 1);
+        for (int step = 0; step < 300; step++) {
+            final int source = random.nextInt(12);
+            if (random.nextInt(10) == 0) {
+                graph.remove(source);
+            } else {
+                final int count = random.nextInt(5);
+                final int[][] neighbours = new int[count][];
+                for (int i = 0; i < count; i++) {
+                    final int address = random.nextInt(16);
+                    neighbours[i] = new int[]{address, address >= 12 ? END_DEVICE : ROUTER, 60 + random.nextInt(196)};
+                }
+                graph.update(table(source, neighbours));
+            }
+
+            final RouteCostModel full = new RouteCostModel(graph, 1);
+            final List<Route> expected = full.getRoutes();
+            final List<Route> actual = model.getRoutes();
+            assertEquals("Step " + step, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Step " + step, expected.get(i).getAddress(), actual.get(i).getAddress());
+                assertEquals("Step " + step, expected.get(i).getCost(), actual.get(i).getCost());
+            }
+            assertEquals(full.getUnreachable(), model.getUnreachable());
+        }
+    }
+
+    private static NeighbourTable table(final int source, final int[][] neighbours) {
+        final int[] addresses = new int[neighbours.length];
+        final long[] ieeeAddresses = new long[neighbours.length];
+        final int[] lqis = new int[neighbours.length];
+        final int[] flags = new int[neighbours.length];
+        final int[] depths = new int[neighbours.length];
+        for (int i = 0; i < neighbours.length; i++) {
+            addresses[i] = neighbours[i][0];
+            ieeeAddresses[i] = neighbours[i][0];
+            flags[i] = neighbours[i][1];
+            lqis[i] = neighbours[i][2];
+        }
+        return new NeighbourTable(source, System.currentTimeMillis(), addresses, ieeeAddresses, lqis, flags, depths);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.bubblecloud.zigbee.network.ZigBeeNode;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Test for network state journal.
+ */
+public class NetworkStateJournalTest {
+    private static final String IEEE_ADDRESS = "00:12:4B:00:01:02:03:04";
+    private static final String OTHER_IEEE_ADDRESS = "00:12:4B:00:01:02:03:05";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("network-state", "");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReplayAndCompaction() throws IOException {
+        final ZigBeeNetwork network = new ZigBeeNetwork();
+        NetworkStateJournal journal = new NetworkStateJournal(null, network, directory, 3);
+        journal.open();
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(1, IEEE_ADDRESS, (short) 2);
+        network.addNode(node);
+        network.addEndpoint(new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 4, new int[] {0, 6}, new int[] {25}));
+        final ZigBeeEndpointImpl removed = new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 5, new int[] {0}, new int[] {});
+        network.addEndpoint(removed);
+        network.removeEndpoint(removed);
+        network.addEndpoint(new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 6, new int[] {0, 8}, new int[] {}));
+        journal.close();
+        Assert.assertTrue(new File(directory, NetworkStateJournal.SNAPSHOT_FILE_NAME).exists());
+
+        final ZigBeeNetwork restoredNetwork = new ZigBeeNetwork();
+        journal = new NetworkStateJournal(null, restoredNetwork, directory, 3);
+        journal.open();
+        final ZigBeeNodeImpl restoredNode = restoredNetwork.getNode(IEEE_ADDRESS);
+        Assert.assertNotNull(restoredNode);
+        Assert.assertEquals(1, restoredNode.getNetworkAddress());
+        Assert.assertEquals(2, restoredNetwork.getEndPoints(restoredNode).size());
+        Assert.assertNull(restoredNetwork.getDevices().get(restoredNode).get(5));
+        Assert.assertArrayEquals(new int[] {0, 8},
+                restoredNetwork.getDevices().get(restoredNode).get(6).getInputClusters());
+
+        restoredNetwork.removeEndpoint(restoredNetwork.getDevices().get(restoredNode).get(4));
+        journal.close();
+
+        final ZigBeeNetwork replayedNetwork = new ZigBeeNetwork();
+        journal = new NetworkStateJournal(null, replayedNetwork, directory, 3);
+        journal.open();
+        final ZigBeeNodeImpl replayedNode = replayedNetwork.getNode(IEEE_ADDRESS);
+        Assert.assertEquals(1, replayedNetwork.getEndPoints(replayedNode).size());
+        Assert.assertNotNull(replayedNetwork.getDevices().get(replayedNode).get(6));
+        journal.close();
+    }
+
+    @Test
+    public void testDiscoveredNodesWithoutEndpoints() throws IOException {
+        final ZigBeeNetwork network = new ZigBeeNetwork();
+        NetworkStateJournal journal = new NetworkStateJournal(null, network, directory, 3);
+        journal.open();
+        network.notifyNodeBrowsed(new ZigBeeNodeImpl(7, IEEE_ADDRESS, (short) 2));
+        network.notifyNodeAnnounced(new ZigBeeNodeImpl(7, IEEE_ADDRESS, (short) 2));
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(8, OTHER_IEEE_ADDRESS, (short) 2);
+        network.notifyNodeAnnounced(node);
+        network.addNode(node);
+        // Third record triggers compaction after which only the node without endpoints is journaled.
+        network.addEndpoint(new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 4, new int[] {0}, new int[] {}));
+        journal.close();
+
+        final ZigBeeNetwork restoredNetwork = new ZigBeeNetwork();
+        journal = new NetworkStateJournal(null, restoredNetwork, directory, 3);
+        journal.open();
+        Assert.assertNull(restoredNetwork.getNode(IEEE_ADDRESS));
+        Assert.assertNotNull(restoredNetwork.getNode(OTHER_IEEE_ADDRESS));
+        final List<ZigBeeNode> discoveredNodes = journal.getDiscoveredNodes();
+        Assert.assertEquals(1, discoveredNodes.size());
+        Assert.assertEquals(IEEE_ADDRESS, discoveredNodes.get(0).getIeeeAddress());
+        Assert.assertEquals(7, discoveredNodes.get(0).getNetworkAddress());
+        journal.close();
+    }
+
+    @Test
+    public void testRestoreInterruptedCompaction() throws IOException {
+        final ZigBeeNetwork network = new ZigBeeNetwork();
+        NetworkStateJournal journal = new NetworkStateJournal(null, network, directory, 1);
+        journal.open();
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(1, IEEE_ADDRESS, (short) 2);
+        network.addNode(node);
+        network.addEndpoint(new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 4, new int[] {0}, new int[] {}));
+        journal.close();
+
+        // Simulate stop between removing the previous snapshot and renaming the new one.
+        final File snapshotFile = new File(directory, NetworkStateJournal.SNAPSHOT_FILE_NAME);
+        Assert.assertTrue(snapshotFile.renameTo(new File(directory, NetworkStateJournal.SNAPSHOT_FILE_NAME + ".tmp")));
+
+        final ZigBeeNetwork restoredNetwork = new ZigBeeNetwork();
+        journal = new NetworkStateJournal(null, restoredNetwork, directory, 1);
+        journal.open();
+        Assert.assertTrue(snapshotFile.exists());
+        final ZigBeeNodeImpl restoredNode = restoredNetwork.getNode(IEEE_ADDRESS);
+        Assert.assertNotNull(restoredNode);
+        Assert.assertEquals(1, restoredNetwork.getEndPoints(restoredNode).size());
+        journal.close();
+    }
+
+    @Test
+    public void testNeighbourTables() throws IOException {
+        final NeighbourGraph neighbourGraph = new NeighbourGraph();
+        NetworkStateJournal journal = new NetworkStateJournal(null, new ZigBeeNetwork(), neighbourGraph, directory, 3);
+        journal.open();
+        neighbourGraph.update(createTable(0, 200));
+        neighbourGraph.update(createTable(1, 100));
+        neighbourGraph.update(createTable(0, 150));
+        // Compacted snapshot contains the tables, the journal the removal.
+        neighbourGraph.remove(1);
+        journal.close();
+
+        final NeighbourGraph restoredGraph = new NeighbourGraph();
+        journal = new NetworkStateJournal(null, new ZigBeeNetwork(), restoredGraph, directory, 3);
+        journal.open();
+        Assert.assertEquals(1, restoredGraph.size());
+        Assert.assertEquals(150, restoredGraph.getLqi(0, 0x1234));
+        Assert.assertNull(restoredGraph.getTable(1));
+        journal.close();
+    }
+
+    @Test
+    public void testPartialRecordKeepsReplayedRecords() throws IOException {
+        final ZigBeeNetwork network = new ZigBeeNetwork();
+        NetworkStateJournal journal = new NetworkStateJournal(null, network, directory, 100);
+        journal.open();
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(1, IEEE_ADDRESS, (short) 2);
+        network.addNode(node);
+        network.addEndpoint(new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 4, new int[] {0}, new int[] {}));
+        journal.close();
+
+        final File journalFile = new File(directory, NetworkStateJournal.JOURNAL_FILE_NAME);
+        final FileOutputStream out = new FileOutputStream(journalFile, true);
+        out.write(new byte[] {1, 40, 0});
+        out.close();
+
+        journal = new NetworkStateJournal(null, new ZigBeeNetwork(), directory, 100);
+        journal.open();
+        journal.close();
+
+        // The replayed records are in the snapshot written before the journal was truncated.
+        Assert.assertTrue(journalFile.delete());
+        final ZigBeeNetwork restoredNetwork = new ZigBeeNetwork();
+        journal = new NetworkStateJournal(null, restoredNetwork, directory, 100);
+        journal.open();
+        final ZigBeeNodeImpl restoredNode = restoredNetwork.getNode(IEEE_ADDRESS);
+        Assert.assertNotNull(restoredNode);
+        Assert.assertEquals(1, restoredNetwork.getEndPoints(restoredNode).size());
+        journal.close();
+    }
+
+    private static NeighbourTable createTable(final int source, final int lqi) {
+        return new NeighbourTable(source, 1000L, new int[] {0x1234}, new long[] {0x00124B0001020304L},
+                new int[] {lqi}, new int[] {0x25}, new int[] {1});
+    }
+}
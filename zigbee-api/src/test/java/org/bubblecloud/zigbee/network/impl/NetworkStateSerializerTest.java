@@ -15,6 +15,8 @@
  */
 package org.bubblecloud.zigbee.network.impl;
 
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph;
+import org.bubblecloud.zigbee.network.discovery.NeighbourGraph.NeighbourTable;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -48,4 +50,75 @@ public class NetworkStateSerializerTest {
         final String networkStateOfRestoredNetwork = networkStateSerializer.serialize(zigBeeNetworkRestored);
         Assert.assertEquals(networkState, networkStateOfRestoredNetwork);
     }
+
+    @Test
+    public void testBinaryNetworkStateMigration() {
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(1, "00:12:4B:00:01:02:03:04", (short) 2);
+        final ZigBeeEndpointImpl endpoint1 = new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 4, new int[] {0, 6}, new int[] {25});
+        final ZigBeeEndpointImpl endpoint2 = new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 5, new int[] {0, 6}, new int[] {});
+
+        final ZigBeeNetwork zigBeeNetwork = new ZigBeeNetwork();
+        zigBeeNetwork.addNode(node);
+        zigBeeNetwork.addEndpoint(endpoint1);
+        zigBeeNetwork.addEndpoint(endpoint2);
+
+        final NetworkStateSerializer networkStateSerializer = new NetworkStateSerializer();
+        final String jsonState = networkStateSerializer.serialize(zigBeeNetwork);
+        Assert.assertEquals(NetworkStateSerializer.Format.JSON, NetworkStateSerializer.getFormat(jsonState));
+
+        final ZigBeeNetwork migratedNetwork = new ZigBeeNetwork();
+        networkStateSerializer.deserialize(null, migratedNetwork, jsonState);
+        final String binaryState = networkStateSerializer.serialize(migratedNetwork, NetworkStateSerializer.Format.BINARY);
+        Assert.assertEquals(NetworkStateSerializer.Format.BINARY, NetworkStateSerializer.getFormat(binaryState));
+        Assert.assertTrue(binaryState.length() < jsonState.length());
+
+        final ZigBeeNetwork restoredNetwork = new ZigBeeNetwork();
+        networkStateSerializer.deserialize(null, restoredNetwork, binaryState);
+        final ZigBeeNodeImpl restoredNode = restoredNetwork.getNode("00:12:4B:00:01:02:03:04");
+        Assert.assertNotNull(restoredNode);
+        Assert.assertEquals(1, restoredNode.getNetworkAddress());
+        Assert.assertEquals(2, restoredNode.getPan());
+        Assert.assertEquals(2, restoredNetwork.getEndPoints(restoredNode).size());
+        Assert.assertSame(restoredNetwork.getDevices().get(restoredNode).get(4).getInputClusters(),
+                restoredNetwork.getDevices().get(restoredNode).get(5).getInputClusters());
+
+        Assert.assertEquals(jsonState.length(), networkStateSerializer.serialize(restoredNetwork).length());
+        Assert.assertEquals(binaryState, networkStateSerializer.serialize(restoredNetwork, NetworkStateSerializer.Format.BINARY));
+    }
+
+    @Test
+    public void testBinaryNeighbourTables() {
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(1, "00:12:4B:00:01:02:03:04", (short) 2);
+        final ZigBeeNetwork zigBeeNetwork = new ZigBeeNetwork();
+        zigBeeNetwork.addNode(node);
+        zigBeeNetwork.addEndpoint(new ZigBeeEndpointImpl(node, 260, 2, (byte) 3, (short) 4, new int[] {0}, new int[] {}));
+
+        final NeighbourGraph neighbourGraph = new NeighbourGraph();
+        neighbourGraph.update(new NeighbourTable(0, 1000L, new int[] {1, 0x1234},
+                new long[] {0x00124B0001020304L, 0x00124B0001020305L}, new int[] {200, 50},
+                new int[] {0x25, 0x12}, new int[] {1, 2}));
+
+        final NetworkStateSerializer networkStateSerializer = new NetworkStateSerializer();
+        final String binaryState = networkStateSerializer.serialize(zigBeeNetwork, neighbourGraph,
+                NetworkStateSerializer.Format.BINARY);
+
+        final ZigBeeNetwork restoredNetwork = new ZigBeeNetwork();
+        networkStateSerializer.deserialize(null, restoredNetwork, null, binaryState);
+        Assert.assertNotNull(restoredNetwork.getNode("00:12:4B:00:01:02:03:04"));
+
+        final NeighbourGraph restoredGraph = new NeighbourGraph();
+        networkStateSerializer.deserialize(null, new ZigBeeNetwork(), restoredGraph, binaryState);
+        final NeighbourTable table = restoredGraph.getTable(0);
+        Assert.assertNotNull(table);
+        Assert.assertEquals(1000L, table.getTimestamp());
+        Assert.assertEquals(2, table.size());
+        Assert.assertEquals(50, table.getLqi(table.indexOf(0x1234)));
+        Assert.assertEquals(0x12, table.getFlags(table.indexOf(0x1234)));
+        Assert.assertEquals(2, table.getDepth(table.indexOf(0x1234)));
+        Assert.assertEquals(0x00124B0001020305L, table.getIeeeAddress(table.indexOf(0x1234)));
+        Assert.assertTrue(table.hasSameLinks(neighbourGraph.getTable(0)));
+
+        Assert.assertEquals(binaryState, networkStateSerializer.serialize(zigBeeNetwork, restoredGraph,
+                NetworkStateSerializer.Format.BINARY));
+    }
 }
@@ -0,0 +1,52 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for {@link PendingClusterResponses}.
+ */
+public class PendingClusterResponsesTest {
+
+    @Test
+    public void testTransactionSequence() {
+        assertEquals(0x85, PendingClusterResponses.getTransactionSequence(new byte[]{0x18, (byte) 0x85, 0x01}));
+        assertEquals(0x22, PendingClusterResponses.getTransactionSequence(
+                new byte[]{0x1C, 0x0B, 0x10, 0x22, 0x01}));
+        assertEquals(-1, PendingClusterResponses.getTransactionSequence(new byte[]{0x18}));
+        assertEquals(-1, PendingClusterResponses.getTransactionSequence(null));
+    }
+
+    @Test
+    public void testKeysAreDistinct() {
+        final long key = PendingClusterResponses.getKey(0x1234, 1, 0x0006, 7);
+        assertEquals(key, PendingClusterResponses.getKey(0x1234, 1, 0x0006, 7));
+        assertTrue(key != PendingClusterResponses.getKey(0x1234, 2, 0x0006, 7));
+        assertTrue(key != PendingClusterResponses.getKey(0x1235, 1, 0x0006, 7));
+        assertTrue(key != PendingClusterResponses.getKey(0x1234, 1, 0x0008, 7));
+        assertTrue(key != PendingClusterResponses.getKey(0x1234, 1, 0x0006, 8));
+    }
+
+    @Test
+    public void testWaiterRegistration() {
+        final PendingClusterResponses pending = new PendingClusterResponses();
+        final WaitForClusterResponse waiter = new WaitForClusterResponse(pending, 0x1234, (short) 1, (short) 6, 7, 1);
+        assertEquals(1, pending.size());
+        assertNull(waiter.getResponse());
+        assertEquals(0, pending.size());
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.bubblecloud.zigbee.network.ZigBeeNetworkManager;
+import org.bubblecloud.zigbee.network.packet.af.AF_INCOMING_MSG;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test for the inbound message handling of {@link ZigBeeEndpointImpl}.
+ */
+public class ZigBeeEndpointImplTest {
+
+    private ZigBeeNetworkManager networkManager;
+
+    @After
+    public void tearDown() {
+        ApplicationFrameworkLayer.getAFLayer(networkManager).shutdown();
+    }
+
+    @Test
+    public void testReportsCachedWithoutListeners() {
+        networkManager = createNiceMock(ZigBeeNetworkManager.class);
+        replay(networkManager);
+        final ZigBeeNodeImpl node = new ZigBeeNodeImpl(0x1234, "00:12:4B:00:01:02:03:04", (short) 2);
+        final ZigBeeEndpointImpl endpoint = new ZigBeeEndpointImpl(node, 260, 0x302, (byte) 0, (short) 2,
+                new int[]{0, 0x402}, new int[]{});
+        endpoint.setNetworkManager(networkManager);
+
+        // Report of measured value 0x0708 (int16) from temperature measurement cluster.
+        endpoint.notify(createMessage(0x1234, 2, 0x402, new int[]{0x18, 0x01, 0x0A, 0x00, 0x00, 0x29, 0x08, 0x07}));
+        assertEquals(0x0708, endpoint.getAttributeCache().get(0x402, 0, 1000));
+
+        // Reports of other endpoints and manufacturer specific reports are not cached.
+        endpoint.notify(createMessage(0x1234, 3, 0x402, new int[]{0x18, 0x02, 0x0A, 0x01, 0x00, 0x29, 0x08, 0x07}));
+        endpoint.notify(createMessage(0x1234, 2, 0x402,
+                new int[]{0x1C, 0x34, 0x12, 0x03, 0x0A, 0x02, 0x00, 0x29, 0x08, 0x07}));
+        assertNull(endpoint.getAttributeCache().get(0x402, 1, 1000));
+        assertNull(endpoint.getAttributeCache().get(0x402, 2, 1000));
+    }
+
+    private static AF_INCOMING_MSG createMessage(final int source, final int sourceEndpoint, final int clusterId,
+                                                 final int[] data) {
+        final int[] frame = new int[17 + data.length];
+        frame[2] = clusterId & 0xFF;
+        frame[3] = clusterId >> 8;
+        frame[4] = source & 0xFF;
+        frame[5] = source >> 8;
+        frame[6] = sourceEndpoint;
+        frame[7] = 1;
+        frame[16] = data.length;
+        System.arraycopy(data, 0, frame, 17, data.length);
+        return new AF_INCOMING_MSG(frame);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.impl;
+
+import org.bubblecloud.zigbee.network.model.IEEEAddress;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the topology indexes of {@link ZigBeeNetwork}.
+ */
+public class ZigBeeNetworkTest {
+
+    @Test
+    public void testIndexes() {
+        final ZigBeeNodeImpl node1 = new ZigBeeNodeImpl(0x1234, "00:12:4B:00:01:02:03:04", (short) 2);
+        final ZigBeeNodeImpl node2 = new ZigBeeNodeImpl(0x0001, "F0:12:4B:00:01:02:03:05", (short) 2);
+        final ZigBeeEndpointImpl light = new ZigBeeEndpointImpl(node1, 260, 0x100, (byte) 0, (short) 1, new int[]{0, 6}, new int[]{});
+        final ZigBeeEndpointImpl sensor = new ZigBeeEndpointImpl(node2, 260, 0x302, (byte) 0, (short) 2, new int[]{0, 0x402}, new int[]{});
+        final ZigBeeEndpointImpl other = new ZigBeeEndpointImpl(node2, 0xC05E, 0x100, (byte) 0, (short) 1, new int[]{6}, new int[]{});
+
+        final ZigBeeNetwork network = new ZigBeeNetwork();
+        assertTrue(network.addNode(node1));
+        assertTrue(network.addNode(node2));
+        assertFalse(network.addNode(new ZigBeeNodeImpl(0x4321, "00:12:4B:00:01:02:03:04", (short) 2)));
+        assertTrue(network.addEndpoint(light));
+        assertTrue(network.addEndpoint(sensor));
+        assertTrue(network.addEndpoint(other));
+        assertFalse(network.addEndpoint(light));
+
+        assertEquals(2, network.getNodeCount());
+        assertSame(node2, network.getNode(IEEEAddress.fromColonNotation("F0:12:4B:00:01:02:03:05")));
+        assertSame(node1, network.getNode("00:12:4B:00:01:02:03:04"));
+        assertSame(node1, network.getNodeByNetworkAddress(0x1234));
+        assertSame(node2, network.getNodeByNetworkAddress(0x0001));
+        assertNull(network.getNodeByNetworkAddress(0x0002));
+
+        assertTrue(network.containsEndpoint("F0:12:4B:00:01:02:03:05", (short) 2));
+        assertFalse(network.containsEndpoint("F0:12:4B:00:01:02:03:05", (short) 3));
+        assertSame(other, network.getEndpoint(node2, 1));
+        assertEquals(2, network.getEndPoints(node2).size());
+        assertEquals(2, network.getEndpoints(260).size());
+        assertEquals(2, network.getEndpoints(260, 0).size());
+        assertEquals(1, network.getEndpoints(260, 6).size());
+        assertSame(light, network.getEndpoints(260, 6).get(0));
+        assertSame(other, network.getEndpoints(0xC05E, 6).get(0));
+        assertTrue(network.getEndpoints(260, 0x300).isEmpty());
+
+        network.updateNetworkAddress(node1, 0x5678);
+        assertNull(network.getNodeByNetworkAddress(0x1234));
+        assertSame(node1, network.getNodeByNetworkAddress(0x5678));
+
+        assertTrue(network.removeEndpoint(sensor));
+        assertTrue(network.getEndpoints(260, 0x402).isEmpty());
+        assertTrue(network.removeNode(node2));
+        assertNull(network.getNodeByNetworkAddress(0x0001));
+        assertTrue(network.getEndpoints(0xC05E).isEmpty());
+        assertEquals(1, network.getDevices().size());
+        assertEquals(1, network.getNodes().size());
+    }
+
+    @Test
+    public void testIncrementalIndexes() {
+        final ZigBeeNodeImpl node1 = new ZigBeeNodeImpl(0x0002, "00:12:4B:00:01:02:03:04", (short) 2);
+        final ZigBeeNodeImpl node2 = new ZigBeeNodeImpl(0x0002, "00:12:4B:00:01:02:03:05", (short) 2);
+        final ZigBeeEndpointImpl endpoint2 = new ZigBeeEndpointImpl(node2, 260, 0x100, (byte) 0, (short) 1, new int[]{6}, new int[]{});
+        final ZigBeeEndpointImpl endpoint12 = new ZigBeeEndpointImpl(node1, 260, 0x100, (byte) 0, (short) 2, new int[]{6, 6}, new int[]{});
+        final ZigBeeEndpointImpl endpoint11 = new ZigBeeEndpointImpl(node1, 260, 0x100, (byte) 0, (short) 1, new int[]{6}, new int[]{});
+
+        final ZigBeeNetwork network = new ZigBeeNetwork();
+        assertTrue(network.addNode(node2));
+        assertTrue(network.addNode(node1));
+        assertTrue(network.addEndpoint(endpoint2));
+        assertTrue(network.addEndpoint(endpoint12));
+        assertTrue(network.addEndpoint(endpoint11));
+
+        // Endpoints are ordered by IEEE address and endpoint address regardless of the order of adding.
+        assertEquals(3, network.getEndpoints(260, 6).size());
+        assertSame(endpoint11, network.getEndpoints(260, 6).get(0));
+        assertSame(endpoint12, network.getEndpoints(260, 6).get(1));
+        assertSame(endpoint2, network.getEndpoints(260, 6).get(2));
+
+        // Nodes sharing a stale network address are separated when one of them is updated.
+        network.updateNetworkAddress(node2, 0x0003);
+        assertSame(node1, network.getNodeByNetworkAddress(0x0002));
+        assertSame(node2, network.getNodeByNetworkAddress(0x0003));
+        assertEquals(0x0003, node2.getNetworkAddress());
+
+        assertTrue(network.removeEndpoint(endpoint12));
+        assertEquals(2, network.getEndpoints(260, 6).size());
+        assertTrue(network.removeNode(node1));
+        assertSame(endpoint2, network.getEndpoints(260).iterator().next());
+        assertEquals(1, network.getEndpoints(260).size());
+        assertNull(network.getNodeByNetworkAddress(0x0002));
+        assertTrue(network.removeNode(node2));
+        assertTrue(network.getEndpoints(260, 6).isEmpty());
+        assertNull(network.getNodeByNetworkAddress(0x0003));
+    }
+}
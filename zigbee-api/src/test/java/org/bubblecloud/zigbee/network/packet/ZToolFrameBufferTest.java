@@ -0,0 +1,95 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet;
+
+import org.bubblecloud.zigbee.util.ByteUtils;
+import org.bubblecloud.zigbee.util.DoubleByte;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for {@link ZToolFrameBuffer}.
+ */
+public class ZToolFrameBufferTest {
+
+    private static final byte[] FRAME = ByteUtils.fromBase16toByteArray(
+            "0xfe 0x09 0x66 0x06 0x06 0x4d 0x05 0x09 0x8d 0x0f 0x00 0x2b 0xe2 0x65");
+
+    @Test
+    public void testFrameSplitAcrossWrites() {
+        final ZToolFrameBuffer buffer = new ZToolFrameBuffer();
+        buffer.write(FRAME, 0, 5);
+        assertFalse(buffer.nextFrame());
+        buffer.write(FRAME, 5, FRAME.length - 5);
+        assertTrue(buffer.nextFrame());
+        assertEquals(9, buffer.getPayloadLength());
+        assertEquals(0x6606, buffer.getCommandId());
+        assertEquals(0x06, buffer.getPayload(0));
+        assertEquals(0xe2, buffer.getPayload(8));
+        assertFalse(buffer.nextFrame());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testResynchronization() {
+        final ZToolFrameBuffer buffer = new ZToolFrameBuffer();
+        final byte[] corrupted = FRAME.clone();
+        corrupted[6] = 0x00;
+        buffer.write(new byte[]{0x01, 0x02}, 0, 2);
+        buffer.write(corrupted, 0, corrupted.length);
+        buffer.write(FRAME, 0, FRAME.length);
+        assertTrue(buffer.nextFrame());
+        assertEquals(2 + corrupted.length, buffer.takeDiscardedBytes());
+        final int[] payload = new int[buffer.getPayloadLength()];
+        buffer.copyPayload(payload);
+        assertEquals(0x4d, payload[1]);
+        assertFalse(buffer.nextFrame());
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        final ZToolFrameBuffer buffer = new ZToolFrameBuffer(512);
+        int frames = 0;
+        for (int i = 0; i < 100; i++) {
+            final ByteArrayInputStream inputStream = new ByteArrayInputStream(FRAME);
+            while (inputStream.available() > 0) {
+                buffer.fill(inputStream);
+            }
+            while (buffer.nextFrame()) {
+                assertEquals(0x2b, buffer.getPayload(7));
+                frames++;
+            }
+        }
+        assertEquals(100, frames);
+        assertEquals(0, buffer.takeDiscardedBytes());
+    }
+
+    @Test
+    public void testParsedPacketMatchesStreamParser() {
+        final ZToolFrameBuffer buffer = new ZToolFrameBuffer();
+        buffer.write(FRAME, 0, FRAME.length);
+        assertTrue(buffer.nextFrame());
+        final int[] payload = new int[buffer.getPayloadLength()];
+        buffer.copyPayload(payload);
+        final ZToolPacket packet = ZToolPacketStream.parsePayload(
+                new DoubleByte(buffer.getCommandMsb(), buffer.getCommandLsb()), payload);
+        final ZToolPacket expected = ZToolPacketStream.parsePacket(ByteUtils.fromBase16toIntArray(
+                "0xfe 0x09 0x66 0x06 0x06 0x4d 0x05 0x09 0x8d 0x0f 0x00 0x2b 0xe2 0x65"));
+        assertEquals(expected.getClass(), packet.getClass());
+        assertArrayEquals(expected.getPacket(), packet.getPacket());
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet;
+
+import org.bubblecloud.zigbee.network.packet.simple.ZB_GET_DEVICE_INFO_RSP;
+import org.bubblecloud.zigbee.util.DoubleByte;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for {@link ZToolPacketFactory}.
+ */
+public class ZToolPacketFactoryTest {
+
+    private static final int[] PAYLOAD = new int[]{0x06, 0x4d, 0x05, 0x09, 0x8d, 0x0f, 0x00, 0x2b, 0xe2};
+
+    @Test
+    public void testRegisteredCommand() {
+        final ZToolPacket packet = new ZToolPacketFactory().create(
+                new DoubleByte(ZToolCMD.ZB_GET_DEVICE_INFO_RSP), PAYLOAD);
+        assertEquals(ZB_GET_DEVICE_INFO_RSP.class, packet.getClass());
+        assertEquals(0x65, packet.getFCS());
+    }
+
+    @Test
+    public void testUnknownCommand() {
+        final ZToolPacket packet = new ZToolPacketFactory().create(new DoubleByte(0x7F, 0xFF), PAYLOAD);
+        assertEquals(ZToolPacket.class, packet.getClass());
+        assertEquals(0x7FFF, packet.getCMD().get16BitValue());
+    }
+
+    @Test
+    public void testIgnoredCommand() {
+        final ZToolPacketFactory factory = new ZToolPacketFactory();
+        assertFalse(factory.isIgnored(ZToolCMD.ZB_GET_DEVICE_INFO_RSP));
+        factory.ignore(ZToolCMD.ZB_GET_DEVICE_INFO_RSP);
+        assertTrue(factory.isIgnored(ZToolCMD.ZB_GET_DEVICE_INFO_RSP));
+        assertNull(factory.create(new DoubleByte(ZToolCMD.ZB_GET_DEVICE_INFO_RSP), PAYLOAD));
+    }
+
+    @Test
+    public void testIgnoredCommandsFromEnvironment() {
+        System.setProperty(ZToolPacketFactory.IGNORED_COMMANDS_KEY, "0x4780, invalid,0x" + Integer.toHexString(ZToolCMD.ZB_GET_DEVICE_INFO_RSP));
+        try {
+            final ZToolPacketFactory factory = new ZToolPacketFactory();
+            assertTrue(factory.isIgnored(0x4780));
+            assertTrue(factory.isIgnored(ZToolCMD.ZB_GET_DEVICE_INFO_RSP));
+            assertFalse(factory.isIgnored(ZToolCMD.ZDO_IEEE_ADDR_RSP));
+        } finally {
+            System.clearProperty(ZToolPacketFactory.IGNORED_COMMANDS_KEY);
+        }
+    }
+}
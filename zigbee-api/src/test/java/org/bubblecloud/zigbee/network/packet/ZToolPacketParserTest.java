@@ -23,11 +23,16 @@ package org.bubblecloud.zigbee.network.packet;
 import org.bubblecloud.zigbee.network.port.ZigBeePortEmulator;
 import org.bubblecloud.zigbee.network.packet.simple.ZB_GET_DEVICE_INFO_RSP;
 import org.bubblecloud.zigbee.util.ByteUtils;
+import org.bubblecloud.zigbee.util.DoubleByte;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 
@@ -64,6 +69,39 @@ public class ZToolPacketParserTest {
 
     }
 
+    @Test
+    public void testPayloadBufferReuse() throws Exception {
+        final int[] first = new ZToolPacket(new DoubleByte(0x4F, 0x01), new int[]{0x01, 0x02}).getPacket();
+        final int[] second = new ZToolPacket(new DoubleByte(0x4F, 0x01), new int[]{0x03, 0x04}).getPacket();
+        final byte[] bytes = new byte[first.length + second.length];
+        for (int i = 0; i < first.length; i++) {
+            bytes[i] = (byte) first[i];
+            bytes[first.length + i] = (byte) second[i];
+        }
+        final List<ZToolPacket> received = new ArrayList<ZToolPacket>();
+        final ZToolPacketParser parser = new ZToolPacketParser(new ByteArrayInputStream(bytes), new ZToolPacketHandler() {
+            public void handlePacket(ZToolPacket packet) {
+                synchronized (received) {
+                    received.add(packet);
+                    received.notifyAll();
+                }
+            }
+
+            public void error(Throwable th) {
+            }
+        });
+        synchronized (received) {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() < 2 && System.currentTimeMillis() < deadline) {
+                received.wait(100);
+            }
+        }
+        parser.close();
+        assertEquals(2, received.size());
+        assertArrayEquals(first, received.get(0).getPacket());
+        assertArrayEquals(second, received.get(1).getPacket());
+    }
+
     @Test
     @Ignore
     public void testOverwrittenPacketHandling() throws Exception {
@@ -0,0 +1,114 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet;
+
+import org.bubblecloud.zigbee.util.DoubleByte;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for {@link ZToolPacketWriter}.
+ */
+public class ZToolPacketWriterTest {
+
+    @Test
+    public void testBackToBackPacketsAreCoalesced() throws Exception {
+        final CountDownLatch firstWrite = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            private int writes = 0;
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                if (writes++ == 0) {
+                    firstWrite.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        };
+
+        final ZToolPacketWriter writer = new ZToolPacketWriter(output, 16);
+        final ZToolPacket packet = new ZToolPacket(new DoubleByte(0x21, 0x01), new int[]{0x01, 0x02});
+        writer.write(packet);
+        firstWrite.await();
+        // The writer is blocked in the first write so the following packets queue up.
+        for (int i = 0; i < 5; i++) {
+            writer.write(packet);
+        }
+        assertEquals(5, writer.getQueueDepth());
+        release.countDown();
+        writer.close();
+
+        assertEquals(6, writer.getPacketsWritten());
+        assertEquals(2, writer.getFlushes());
+        assertEquals(6 * 7, writer.getBytesWritten());
+        assertEquals(21.0, writer.getBytesPerFlush(), 0.001);
+        final byte[] bytes = output.toByteArray();
+        assertEquals(6 * 7, bytes.length);
+        assertEquals((byte) 0xFE, bytes[7]);
+        assertEquals((byte) packet.getFCS(), bytes[13]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws Exception {
+        final ZToolPacketWriter writer = new ZToolPacketWriter(new ByteArrayOutputStream(), 4);
+        writer.close();
+        writer.write(new ZToolPacket(new DoubleByte(0x21, 0x01), new int[0]));
+    }
+
+    @Test
+    public void testWriteFailureIsReportedPerPacket() throws Exception {
+        final OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Port closed.");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Port closed.");
+            }
+        };
+        final List<ZToolPacket> failed = new ArrayList<ZToolPacket>();
+        final ZToolPacketWriter writer = new ZToolPacketWriter(output, 4, new ZToolPacketWriteListener() {
+            public void packetWriteFailed(ZToolPacket packet, IOException exception) {
+                synchronized (failed) {
+                    failed.add(packet);
+                }
+            }
+        });
+        final ZToolPacket first = new ZToolPacket(new DoubleByte(0x21, 0x01), new int[0]);
+        final ZToolPacket second = new ZToolPacket(new DoubleByte(0x21, 0x02), new int[0]);
+        writer.write(first);
+        writer.write(second);
+        writer.close();
+
+        assertEquals(2, failed.size());
+        assertSame(first, failed.get(0));
+        assertSame(second, failed.get(1));
+        assertEquals(0, writer.getPacketsWritten());
+    }
+}
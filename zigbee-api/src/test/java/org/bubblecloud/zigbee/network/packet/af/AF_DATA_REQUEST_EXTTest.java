@@ -0,0 +1,53 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.network.packet.af;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class of {@link AF_DATA_REQUEST_EXT}
+ */
+public class AF_DATA_REQUEST_EXTTest {
+
+    @Test
+    public void testGroupAddressedFrame() {
+        final AF_DATA_REQUEST_EXT request = new AF_DATA_REQUEST_EXT(
+                0x1234, (short) 0x02, 0x0006, (byte) 0x05, (byte) 0, (byte) 0,
+                new byte[]{0x11, 0x05, 0x01}
+        );
+
+        final int[] payload = new int[23];
+        System.arraycopy(request.getPacket(), 4, payload, 0, payload.length);
+        assertArrayEquals(new int[]{
+                0x01,
+                0x34, 0x12, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0x00,
+                0x00, 0x00,
+                0x02,
+                0x06, 0x00,
+                0x05,
+                0x00,
+                0x00,
+                0x03, 0x00,
+                0x11, 0x05, 0x01
+        }, payload);
+        assertEquals(0x1234, request.getGroupId());
+        assertEquals(0x02, request.getSrcEndpoint());
+        assertEquals(0x05, request.getTransId());
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+   Copyright 2008-2013 CNR-ISTI, http://isti.cnr.it
+   Institute of Information Science and Technologies
+   of the Italian National Research Council
+
+   See the NOTICE file distributed with this work for additional
+   information regarding copyright ownership
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.bubblecloud.zigbee.network.port;
+
+import org.bubblecloud.zigbee.network.SynchronousCommandListener;
+import org.bubblecloud.zigbee.network.packet.ZToolPacket;
+import org.bubblecloud.zigbee.util.DoubleByte;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for synchronous command pipelining in {@link ZigBeeInterface}.
+ */
+public class ZigBeeInterfaceTest {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private final ZigBeePort port = new ZigBeePort() {
+        public boolean open() {
+            return true;
+        }
+
+        public void close() {
+        }
+
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        public InputStream getInputStream() {
+            return null;
+        }
+    };
+
+    private final List<ZToolPacket> responses = new ArrayList<ZToolPacket>();
+
+    private final List<ZToolPacket> failures = new ArrayList<ZToolPacket>();
+
+    private final SynchronousCommandListener listener = new SynchronousCommandListener() {
+        public void receivedCommandResponse(ZToolPacket packet) {
+            synchronized (responses) {
+                responses.add(packet);
+            }
+        }
+
+        public void sendFailed(ZToolPacket request, IOException exception) {
+            synchronized (failures) {
+                failures.add(request);
+            }
+        }
+    };
+
+    @Test
+    public void testDifferentCommandsInFlight() throws Exception {
+        final ZigBeeInterface zigBeeInterface = new ZigBeeInterface(port, 2);
+
+        zigBeeInterface.sendSynchronousCommand(packet(0x21, 0x01), listener, 5000);
+        zigBeeInterface.sendSynchronousCommand(packet(0x25, 0x02), listener, 5000);
+        assertEquals(2, zigBeeInterface.getSynchronousCommandsInFlight());
+
+        zigBeeInterface.handlePacket(packet(0x65, 0x02));
+        zigBeeInterface.handlePacket(packet(0x61, 0x01));
+        assertEquals(0, zigBeeInterface.getSynchronousCommandsInFlight());
+        assertEquals(2, responses.size());
+        assertEquals(0x6502, responses.get(0).getCMD().get16BitValue());
+        assertEquals(0x6101, responses.get(1).getCMD().get16BitValue());
+    }
+
+    @Test
+    public void testSameCommandWaitsForResponse() throws Exception {
+        final ZigBeeInterface zigBeeInterface = new ZigBeeInterface(port, 4);
+
+        zigBeeInterface.sendSynchronousCommand(packet(0x21, 0x01), listener, 5000);
+
+        final Thread second = new Thread() {
+            public void run() {
+                try {
+                    zigBeeInterface.sendSynchronousCommand(packet(0x21, 0x01), listener, 5000);
+                } catch (Exception e) {
+                    fail(e.getMessage());
+                }
+            }
+        };
+        second.start();
+        second.join(200);
+        assertTrue("Second request with the same command ID was sent before response", second.isAlive());
+
+        zigBeeInterface.handlePacket(packet(0x61, 0x01));
+        second.join(5000);
+        assertFalse(second.isAlive());
+        assertEquals(1, zigBeeInterface.getSynchronousCommandsInFlight());
+    }
+
+    @Test
+    public void testWindowLimitAndExpiration() throws Exception {
+        final ZigBeeInterface zigBeeInterface = new ZigBeeInterface(port, 1);
+
+        zigBeeInterface.sendSynchronousCommand(packet(0x21, 0x01), listener, 100);
+        final long start = System.currentTimeMillis();
+        zigBeeInterface.sendSynchronousCommand(packet(0x25, 0x02), listener, 100);
+        assertTrue(System.currentTimeMillis() - start >= 90);
+        assertEquals(1, zigBeeInterface.getSynchronousCommandsInFlight());
+
+        // Response to the expired command is ignored.
+        zigBeeInterface.handlePacket(packet(0x61, 0x01));
+        assertEquals(0, responses.size());
+    }
+
+    @Test
+    public void testWriteFailureReleasesSlot() throws Exception {
+        final ZigBeeInterface zigBeeInterface = new ZigBeeInterface(port, 2);
+
+        final ZToolPacket request = packet(0x21, 0x01);
+        zigBeeInterface.sendSynchronousCommand(request, listener, 5000);
+        zigBeeInterface.sendSynchronousCommand(packet(0x25, 0x02), listener, 5000);
+
+        // Failure of a packet which does not hold the slot is ignored.
+        zigBeeInterface.packetWriteFailed(packet(0x21, 0x01), new IOException());
+        assertEquals(2, zigBeeInterface.getSynchronousCommandsInFlight());
+
+        zigBeeInterface.packetWriteFailed(request, new IOException());
+        assertEquals(1, zigBeeInterface.getSynchronousCommandsInFlight());
+        assertEquals(1, failures.size());
+        assertSame(request, failures.get(0));
+    }
+
+    private static ZToolPacket packet(final int msb, final int lsb) {
+        return new ZToolPacket(new DoubleByte(msb, lsb), new int[]{0x00});
+    }
+}
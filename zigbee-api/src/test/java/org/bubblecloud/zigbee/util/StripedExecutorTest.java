@@ -0,0 +1,122 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test unit for {@link StripedExecutor}.
+ */
+public class StripedExecutorTest {
+
+    @Test
+    public void testOrderingPerKey() throws Exception {
+        final StripedExecutor executor = new StripedExecutor("test", 4, 1000, StripedExecutor.OverflowPolicy.CALLER_RUNS);
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            executor.execute("00:12:4B:00:01:02:03:04", new Runnable() {
+                public void run() {
+                    values.add(value);
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, values.get(i).intValue());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDiscardOverflow() throws Exception {
+        final StripedExecutor executor = new StripedExecutor("test", 1, 1, StripedExecutor.OverflowPolicy.DISCARD);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute("key", new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final Runnable empty = new Runnable() {
+            public void run() {
+            }
+        };
+        executor.execute("key", empty);
+        executor.execute("key", empty);
+        assertEquals(1, executor.getQueueDepth());
+        assertEquals(1, executor.getDroppedCount());
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDirectExecution() {
+        final StripedExecutor executor = new StripedExecutor("test", 0, 1, StripedExecutor.OverflowPolicy.DISCARD);
+        final Thread[] thread = new Thread[1];
+        executor.execute(null, new Runnable() {
+            public void run() {
+                thread[0] = Thread.currentThread();
+            }
+        });
+        assertSame(Thread.currentThread(), thread[0]);
+        assertEquals(1, executor.getExecutedCount());
+        assertTrue(executor.getMaxExecutionMillis() >= executor.getAverageExecutionMillis());
+    }
+
+    @Test
+    public void testLatencyIncludesQueueWait() throws Exception {
+        final StripedExecutor executor = new StripedExecutor("test", 1, 10, StripedExecutor.OverflowPolicy.DISCARD);
+        final CountDownLatch done = new CountDownLatch(2);
+        executor.execute("key", new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+                done.countDown();
+            }
+        });
+        executor.execute("key", new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // Metrics are recorded after the task returns.
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getExecutedCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.shutdown();
+        assertEquals(2, executor.getExecutedCount());
+        assertTrue(executor.getMaxLatencyMillis() >= 50);
+        assertTrue(executor.getAverageLatencyMillis() > executor.getAverageExecutionMillis());
+    }
+}
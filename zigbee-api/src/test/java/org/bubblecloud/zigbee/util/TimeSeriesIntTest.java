@@ -0,0 +1,62 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bubblecloud.zigbee.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link TimeSeriesInt}.
+ */
+public class TimeSeriesIntTest {
+
+    @Test
+    public void testDownsamplingAndPercentiles() {
+        final TimeSeriesInt series = new TimeSeriesInt(4, new int[]{60, 900}, new int[]{2, 2});
+        assertEquals(4 * 2 + 2 * 3 * 2, series.getCapacity());
+        assertEquals(-1, series.getPercentile(0, Long.MAX_VALUE, 50));
+
+        // One sample every 20 seconds for 4 minutes, values 0..11.
+        final long start = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 12; i++) {
+            series.add(start + i * 20000, i * 10);
+        }
+
+        // 4 samples at full resolution, 5 samples in two minute buckets and the oldest 3 in a quarter hour bucket.
+        assertEquals(12, series.getCount(0, Long.MAX_VALUE));
+        assertEquals(55.0, series.getMean(0, Long.MAX_VALUE), 0.001);
+        assertEquals(4, series.getCount(start + 160000, Long.MAX_VALUE));
+        assertEquals(80, series.getPercentile(start + 160000, Long.MAX_VALUE, 0));
+        assertEquals(90, series.getPercentile(start + 160000, Long.MAX_VALUE, 50));
+        assertEquals(110, series.getPercentile(start + 160000, Long.MAX_VALUE, 100));
+        assertEquals(110, series.getPercentile(0, Long.MAX_VALUE, 100));
+
+        // Samples added in the past are recorded at the time of the newest sample.
+        series.add(start, 200);
+        assertEquals(200, series.getPercentile(start + 220000, Long.MAX_VALUE, 100));
+    }
+
+    @Test
+    public void testCircularBufferSet() {
+        final CircularBufferInt buffer = new CircularBufferInt(3, true);
+        buffer.add(1);
+        buffer.add(2);
+        assertArrayEquals(new int[]{1, 2}, buffer.toArray());
+        buffer.add(3);
+        buffer.add(4);
+        buffer.set(2, 5);
+        assertArrayEquals(new int[]{2, 3, 5}, buffer.toArray());
+    }
+}
@@ -101,6 +101,7 @@ public final class ZigBeeConsole {
             try {
                 final String networkState = FileUtils.readFileToString(networkStateFile);
                 zigbeeApi.deserializeNetworkState(networkState);
+                zigbeeApi.setWarmStart(true);
             } catch (final Exception e) {
                 e.printStackTrace();
                 // Fall through and just start the network without persistence
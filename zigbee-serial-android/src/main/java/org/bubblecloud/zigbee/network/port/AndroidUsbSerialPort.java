@@ -389,6 +389,27 @@ public class AndroidUsbSerialPort implements ZigBeePort
                     }
                 }
 
+                @Override
+                public synchronized void write(byte[] writeBufferIn, int offset, int length) throws IOException
+                {
+                    if (deviceConnection == null)
+                        throw new IOException("Connection closed.");
+
+                    if (offset < 0 || length < 0 || offset + length > writeBufferIn.length)
+                        throw new IndexOutOfBoundsException();
+
+                    if (length == 0)
+                        return;
+
+                    synchronized (writeMonitor)
+                    {
+                        for (int i = offset; i < offset + length; ++i)
+                            writeBuffer.push(writeBufferIn[i]);
+
+                        pushWriteBuffer();
+                    }
+                }
+
                 private void pushWriteBuffer() throws IOException
                 {
                     synchronized (writeMonitor)